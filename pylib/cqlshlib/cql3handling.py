@@ -473,6 +473,12 @@ def cf_prop_val_mapkey_completer(ctxt, cass):
             opts.add('base_time_seconds')
             opts.add('max_sstable_age_days')
             opts.add('timestamp_resolution')
+        elif csc == 'TimeWindowCompactionStrategy':
+            opts.add('compaction_window_unit')
+            opts.add('compaction_window_size')
+            opts.add('min_threshold')
+            opts.add('timestamp_resolution')
+            opts.add('expired_sstable_check_frequency_seconds')
         return map(escape_value, opts)
     return ()
 
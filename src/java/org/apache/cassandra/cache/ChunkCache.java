@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.CacheMetrics;
+
+/**
+ * Caches the decompressed chunks of compressed files off-heap, so that reads of hot data in compressed tables copy
+ * their chunks rather than read and decompress them again.
+ *
+ * Chunks are keyed by the absolute path of their file and their position in the uncompressed data. As the content of
+ * a chunk never changes, the chunks of a file only need dropping once it is not read anymore, to make room sooner;
+ * the positions of the cached chunks of each file are indexed for that.
+ *
+ * The memory returned by {@link #get} is referenced, and must be unreferenced once read.
+ */
+public class ChunkCache implements ICache<ChunkCache.Key, RefCountedMemory>
+{
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+
+    public static final ChunkCache instance = DatabaseDescriptor.getChunkCacheSizeInMB() > 0
+                                            ? new ChunkCache(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024 * 1024)
+                                            : null;
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> map;
+    // the positions of the chunks of each file; may miss a chunk cached again while it was being evicted, which is
+    // then only dropped once evicted again
+    private final ConcurrentMap<String, Set<Long>> positionsByPath = new ConcurrentHashMap<>();
+    public final CacheMetrics metrics;
+
+    public ChunkCache(long capacity)
+    {
+        EvictionListener<Key, RefCountedMemory> listener = new EvictionListener<Key, RefCountedMemory>()
+        {
+            public void onEviction(Key key, RefCountedMemory chunk)
+            {
+                unindex(key);
+                chunk.unreference();
+            }
+        };
+
+        map = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+              .weigher(new Weigher<RefCountedMemory>()
+              {
+                  public int weightOf(RefCountedMemory chunk)
+                  {
+                      return (int) chunk.size();
+                  }
+              })
+              .maximumWeightedCapacity(capacity)
+              .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+              .listener(listener)
+              .build();
+        metrics = new CacheMetrics("ChunkCache", this);
+    }
+
+    /**
+     * Copies the chunk at the position of the file to the start of the buffer, which must have a backing array, and
+     * limits the buffer to the length of the chunk, if the chunk is cached.
+     *
+     * @return true if the chunk was cached
+     */
+    public boolean read(String path, long position, ByteBuffer buffer)
+    {
+        metrics.requests.mark();
+        RefCountedMemory chunk = get(new Key(path, position));
+        if (chunk == null)
+            return false;
+
+        try
+        {
+            int length = (int) chunk.size();
+            chunk.getBytes(0, buffer.array(), buffer.arrayOffset(), length);
+            buffer.clear();
+            buffer.limit(length);
+        }
+        finally
+        {
+            chunk.unreference();
+        }
+        metrics.hits.mark();
+        return true;
+    }
+
+    /**
+     * Caches the chunk at the position of the file, from the start of the buffer, which must have a backing array, to
+     * its limit.
+     */
+    public void write(String path, long position, ByteBuffer buffer)
+    {
+        int length = buffer.limit();
+        if (length == 0)
+            return;
+
+        RefCountedMemory chunk;
+        try
+        {
+            chunk = new RefCountedMemory(length);
+        }
+        catch (OutOfMemoryError e)
+        {
+            return; // never mind, it will be decompressed again
+        }
+        chunk.setBytes(0, buffer.array(), buffer.arrayOffset(), length);
+
+        Key key = new Key(path, position);
+        index(key);
+        RefCountedMemory old = map.putIfAbsent(key, chunk);
+        if (old != null)
+            chunk.unreference(); // another reader cached it first
+    }
+
+    /**
+     * Drops the chunks of the file, which is not going to be read anymore.
+     */
+    public void invalidateFile(String path)
+    {
+        Set<Long> positions = positionsByPath.remove(path);
+        if (positions == null)
+            return;
+
+        for (Long position : positions)
+            remove(new Key(path, position));
+    }
+
+    private void index(Key key)
+    {
+        Set<Long> positions = positionsByPath.get(key.path);
+        if (positions == null)
+        {
+            Set<Long> created = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+            positions = positionsByPath.putIfAbsent(key.path, created);
+            if (positions == null)
+                positions = created;
+        }
+        positions.add(key.position);
+    }
+
+    private void unindex(Key key)
+    {
+        Set<Long> positions = positionsByPath.get(key.path);
+        if (positions != null)
+            positions.remove(key.position);
+    }
+
+    public long capacity()
+    {
+        return map.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        map.setCapacity(capacity);
+    }
+
+    public void put(Key key, RefCountedMemory chunk)
+    {
+        index(key);
+        RefCountedMemory old = map.put(key, chunk);
+        if (old != null)
+            old.unreference();
+    }
+
+    public boolean putIfAbsent(Key key, RefCountedMemory chunk)
+    {
+        index(key);
+        return map.putIfAbsent(key, chunk) == null;
+    }
+
+    public boolean replace(Key key, RefCountedMemory old, RefCountedMemory chunk)
+    {
+        if (!map.replace(key, old, chunk))
+            return false;
+        old.unreference();
+        return true;
+    }
+
+    public RefCountedMemory get(Key key)
+    {
+        RefCountedMemory chunk = map.get(key);
+        if (chunk == null || !chunk.reference())
+            return null; // not cached, or evicted and freed since
+        return chunk;
+    }
+
+    public void remove(Key key)
+    {
+        RefCountedMemory chunk = map.remove(key);
+        if (chunk != null)
+        {
+            unindex(key);
+            chunk.unreference();
+        }
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public long weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    public void clear()
+    {
+        // removes the chunks one by one, as clearing the map does not notify its eviction listener
+        for (Key key : map.keySet())
+            remove(key);
+    }
+
+    public Set<Key> keySet()
+    {
+        return map.keySet();
+    }
+
+    public Set<Key> hotKeySet(int n)
+    {
+        return map.descendingKeySetWithLimit(n);
+    }
+
+    public boolean containsKey(Key key)
+    {
+        return map.containsKey(key);
+    }
+
+    public static final class Key
+    {
+        public final String path;
+        public final long position;
+
+        public Key(String path, long position)
+        {
+            this.path = path;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return position == that.position && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * path.hashCode() + (int) (position ^ (position >>> 32));
+        }
+
+        @Override
+        public String toString()
+        {
+            return path + "@" + position;
+        }
+    }
+}
@@ -0,0 +1,696 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.util.DataOutputByteBuffer;
+import org.apache.cassandra.io.util.IAllocator;
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
+/**
+ * A key cache keeping both its keys and its serialized RowIndexEntry values in native memory, so that its size does
+ * not add to the heap.
+ *
+ * Entries are spread by hash over a fixed number of segments, each a chained hash table whose bucket array and entries
+ * are allocated off-heap. Segments evict with the CLOCK algorithm: a hit sets the reference bit of its entry, and the
+ * clock hand sweeps the buckets, clearing the bits it finds set and evicting the entries it finds clear. Each segment
+ * has its own lock, only held to walk a chain and to copy an entry in or out, so that no reader ever touches memory
+ * freed concurrently; serialization and allocation happen outside of it.
+ *
+ * The sstable descriptors of the keys are not stored in the entries, but interned to ids that count their entries,
+ * and that are dropped once an sstable has no entry left.
+ */
+@SuppressWarnings("rawtypes") // the key cache holds raw RowIndexEntry values, see CacheService.keyCache
+public class OffHeapKeyCache implements ICache<KeyCacheKey, RowIndexEntry>
+{
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapKeyCache.class);
+
+    private static final int SEGMENT_SHIFT = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+    private static final int INITIAL_BUCKETS = 256;
+    private static final int MAX_BUCKETS = 1 << 30;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // entry layout: the fixed size header, followed by the key and the value
+    private static final long NEXT_OFFSET = 0;
+    private static final long HASH_OFFSET = 8;
+    private static final long KEY_LENGTH_OFFSET = 12;
+    private static final long VALUE_LENGTH_OFFSET = 16;
+    private static final long REFERENCED_OFFSET = 20;
+    private static final long CFID_MSB_OFFSET = 24;
+    private static final long CFID_LSB_OFFSET = 32;
+    private static final long SSTABLE_ID_OFFSET = 40;
+    private static final long KEY_OFFSET = 44;
+
+    private final IAllocator allocator;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private volatile long capacity;
+
+    private final ConcurrentMap<Descriptor, SSTableId> idsByDescriptor = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, SSTableId> idsById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    public OffHeapKeyCache(long capacity)
+    {
+        this(capacity, DatabaseDescriptor.getoffHeapMemoryAllocator());
+    }
+
+    OffHeapKeyCache(long capacity, IAllocator allocator)
+    {
+        this.allocator = allocator;
+        this.capacity = capacity;
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(capacity / SEGMENTS);
+    }
+
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity)
+    {
+        this.capacity = capacity;
+        for (Segment segment : segments)
+            segment.setCapacity(capacity / SEGMENTS);
+    }
+
+    public void put(KeyCacheKey key, RowIndexEntry value)
+    {
+        insert(key, value, false);
+    }
+
+    public boolean putIfAbsent(KeyCacheKey key, RowIndexEntry value)
+    {
+        return insert(key, value, true);
+    }
+
+    private boolean insert(KeyCacheKey key, RowIndexEntry value, boolean ifAbsent)
+    {
+        SSTableId id = acquireId(key.desc);
+        if (id == null)
+            return false;
+
+        long entry = serialize(key, id, value);
+        if (entry == 0)
+        {
+            id.release();
+            return false;
+        }
+
+        int hash = MemoryUtil.getInt(entry + HASH_OFFSET);
+        boolean inserted = false;
+        try
+        {
+            inserted = segmentFor(hash).insert(entry, ifAbsent);
+        }
+        finally
+        {
+            if (!inserted)
+            {
+                allocator.free(entry);
+                id.release();
+            }
+        }
+        return inserted;
+    }
+
+    public boolean replace(KeyCacheKey key, RowIndexEntry old, RowIndexEntry value)
+    {
+        SSTableId id = acquireId(key.desc);
+        if (id == null)
+            return false;
+
+        long oldEntry = serialize(key, id, old);
+        long entry = oldEntry == 0 ? 0 : serialize(key, id, value);
+        if (entry == 0)
+        {
+            if (oldEntry != 0)
+                allocator.free(oldEntry);
+            id.release();
+            return false;
+        }
+
+        boolean replaced = false;
+        try
+        {
+            replaced = segmentFor(MemoryUtil.getInt(entry + HASH_OFFSET)).replace(oldEntry, entry);
+        }
+        finally
+        {
+            allocator.free(oldEntry);
+            if (!replaced)
+            {
+                allocator.free(entry);
+                id.release();
+            }
+        }
+        return replaced;
+    }
+
+    public RowIndexEntry get(KeyCacheKey key)
+    {
+        SSTableId id = idsByDescriptor.get(key.desc);
+        if (id == null)
+            return null;
+
+        int hash = hash(key.cfId, id.id, key.key);
+        byte[] value = segmentFor(hash).get(hash, key.cfId, id.id, key.key);
+        if (value == null)
+            return null;
+
+        try
+        {
+            return id.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(value)), key.desc.version);
+        }
+        catch (IOException e)
+        {
+            logger.debug("Cannot fetch in memory data, we will fallback to read from disk ", e);
+            return null;
+        }
+    }
+
+    public void remove(KeyCacheKey key)
+    {
+        SSTableId id = idsByDescriptor.get(key.desc);
+        if (id == null)
+            return;
+
+        int hash = hash(key.cfId, id.id, key.key);
+        segmentFor(hash).remove(hash, key.cfId, id.id, key.key);
+    }
+
+    public boolean containsKey(KeyCacheKey key)
+    {
+        SSTableId id = idsByDescriptor.get(key.desc);
+        if (id == null)
+            return false;
+
+        int hash = hash(key.cfId, id.id, key.key);
+        return segmentFor(hash).contains(hash, key.cfId, id.id, key.key);
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public long weightedSize()
+    {
+        long weight = 0;
+        for (Segment segment : segments)
+            weight += segment.weight();
+        return weight;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    public Set<KeyCacheKey> keySet()
+    {
+        Set<KeyCacheKey> keys = new HashSet<>();
+        for (Segment segment : segments)
+            segment.collectKeys(keys, false, Integer.MAX_VALUE);
+        return keys;
+    }
+
+    /**
+     * CLOCK keeps no recency order, so the keys returned are those referenced since the clock hand last went past
+     * them, followed by the others.
+     */
+    public Set<KeyCacheKey> hotKeySet(int n)
+    {
+        Set<KeyCacheKey> keys = new LinkedHashSet<>();
+        for (Segment segment : segments)
+            segment.collectKeys(keys, true, n);
+        for (Segment segment : segments)
+            segment.collectKeys(keys, false, n);
+        return keys;
+    }
+
+    private Segment segmentFor(int hash)
+    {
+        return segments[hash >>> (32 - SEGMENT_SHIFT)];
+    }
+
+    private static int hash(UUID cfId, int id, byte[] key)
+    {
+        int h = Arrays.hashCode(key);
+        h = 31 * h + id;
+        h = 31 * h + cfId.hashCode();
+        // spread the bits, as the top ones pick the segment and the bottom ones the bucket
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return the address of a new entry for the key and value, or 0 if it could not be allocated
+     */
+    @SuppressWarnings("unchecked") // the entries of an sstable are those of the index serializer of its format
+    private long serialize(KeyCacheKey key, SSTableId id, RowIndexEntry value)
+    {
+        int valueLength = id.serializer.serializedSize(value);
+        long size = KEY_OFFSET + key.key.length + valueLength;
+
+        long entry;
+        try
+        {
+            entry = allocator.allocate(size);
+        }
+        catch (OutOfMemoryError e)
+        {
+            return 0;
+        }
+
+        MemoryUtil.setLong(entry + NEXT_OFFSET, 0);
+        MemoryUtil.setInt(entry + HASH_OFFSET, hash(key.cfId, id.id, key.key));
+        MemoryUtil.setInt(entry + KEY_LENGTH_OFFSET, key.key.length);
+        MemoryUtil.setInt(entry + VALUE_LENGTH_OFFSET, valueLength);
+        MemoryUtil.setInt(entry + REFERENCED_OFFSET, 0);
+        MemoryUtil.setLong(entry + CFID_MSB_OFFSET, key.cfId.getMostSignificantBits());
+        MemoryUtil.setLong(entry + CFID_LSB_OFFSET, key.cfId.getLeastSignificantBits());
+        MemoryUtil.setInt(entry + SSTABLE_ID_OFFSET, id.id);
+        MemoryUtil.setBytes(entry + KEY_OFFSET, key.key, 0, key.key.length);
+        try
+        {
+            ByteBuffer buffer = MemoryUtil.getByteBuffer(entry + KEY_OFFSET + key.key.length, valueLength);
+            id.serializer.serialize(value, new DataOutputByteBuffer(buffer));
+        }
+        catch (IOException e)
+        {
+            allocator.free(entry);
+            throw new RuntimeException(e);
+        }
+        return entry;
+    }
+
+    private static long weightOf(long entry)
+    {
+        return KEY_OFFSET + MemoryUtil.getInt(entry + KEY_LENGTH_OFFSET) + MemoryUtil.getInt(entry + VALUE_LENGTH_OFFSET);
+    }
+
+    private static boolean matches(long entry, int hash, UUID cfId, int id, byte[] key)
+    {
+        if (MemoryUtil.getInt(entry + HASH_OFFSET) != hash
+            || MemoryUtil.getInt(entry + KEY_LENGTH_OFFSET) != key.length
+            || MemoryUtil.getInt(entry + SSTABLE_ID_OFFSET) != id
+            || MemoryUtil.getLong(entry + CFID_MSB_OFFSET) != cfId.getMostSignificantBits()
+            || MemoryUtil.getLong(entry + CFID_LSB_OFFSET) != cfId.getLeastSignificantBits())
+            return false;
+
+        for (int i = 0; i < key.length; i++)
+        {
+            if (MemoryUtil.getByte(entry + KEY_OFFSET + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    // whether both entries have the same key
+    private static boolean sameKey(long entry, long other)
+    {
+        int keyLength = MemoryUtil.getInt(other + KEY_LENGTH_OFFSET);
+        if (MemoryUtil.getInt(entry + HASH_OFFSET) != MemoryUtil.getInt(other + HASH_OFFSET)
+            || MemoryUtil.getInt(entry + KEY_LENGTH_OFFSET) != keyLength)
+            return false;
+        return sameBytes(entry + CFID_MSB_OFFSET, other + CFID_MSB_OFFSET, KEY_OFFSET - CFID_MSB_OFFSET + keyLength);
+    }
+
+    // whether both entries have the same key and value
+    private static boolean sameEntry(long entry, long other)
+    {
+        return sameKey(entry, other)
+               && MemoryUtil.getInt(entry + VALUE_LENGTH_OFFSET) == MemoryUtil.getInt(other + VALUE_LENGTH_OFFSET)
+               && sameBytes(entry + KEY_OFFSET, other + KEY_OFFSET, weightOf(entry) - KEY_OFFSET);
+    }
+
+    private static boolean sameBytes(long address, long other, long length)
+    {
+        for (long i = 0; i < length; i++)
+        {
+            if (MemoryUtil.getByte(address + i) != MemoryUtil.getByte(other + i))
+                return false;
+        }
+        return true;
+    }
+
+    private SSTableId acquireId(Descriptor descriptor)
+    {
+        while (true)
+        {
+            SSTableId id = idsByDescriptor.get(descriptor);
+            if (id == null)
+            {
+                CFMetaData cfm = Schema.instance.getCFMetaData(descriptor.ksname, descriptor.cfname);
+                if (cfm == null)
+                    return null;
+
+                SSTableId created = new SSTableId(nextId.getAndIncrement(), descriptor, descriptor.getFormat().getIndexSerializer(cfm));
+                // published by id first, so that a retired id is never published again
+                idsById.put(created.id, created);
+                id = idsByDescriptor.putIfAbsent(descriptor, created);
+                if (id == null)
+                    id = created;
+                else
+                    idsById.remove(created.id, created);
+            }
+
+            if (id.acquire())
+                return id;
+            // retired by its last entry going away; make room for a new one
+            idsByDescriptor.remove(descriptor, id);
+        }
+    }
+
+    private void free(long entry)
+    {
+        SSTableId id = idsById.get(MemoryUtil.getInt(entry + SSTABLE_ID_OFFSET));
+        allocator.free(entry);
+        // the id is only retired once its last entry is freed
+        id.release();
+    }
+
+    /**
+     * The id of an sstable in the entries of the cache, counting its entries.
+     */
+    private final class SSTableId
+    {
+        final int id;
+        final Descriptor descriptor;
+        final RowIndexEntry.IndexSerializer<?> serializer;
+        // the number of entries of the sstable, or -1 once retired
+        private final AtomicInteger entries = new AtomicInteger();
+
+        SSTableId(int id, Descriptor descriptor, RowIndexEntry.IndexSerializer<?> serializer)
+        {
+            this.id = id;
+            this.descriptor = descriptor;
+            this.serializer = serializer;
+        }
+
+        boolean acquire()
+        {
+            while (true)
+            {
+                int current = entries.get();
+                if (current < 0)
+                    return false;
+                if (entries.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+
+        void release()
+        {
+            if (entries.decrementAndGet() == 0 && entries.compareAndSet(0, -1))
+            {
+                idsByDescriptor.remove(descriptor, this);
+                idsById.remove(id, this);
+            }
+        }
+    }
+
+    private final class Segment
+    {
+        // the address of the bucket array, each bucket holding the address of the first entry of its chain
+        private long table;
+        private int buckets;
+        private int size;
+        private long weight;
+        private long capacity;
+        // the bucket the clock hand is on
+        private int clockHand;
+
+        Segment(long capacity)
+        {
+            this.capacity = capacity;
+            this.buckets = INITIAL_BUCKETS;
+            this.table = allocateTable(buckets);
+        }
+
+        private long allocateTable(int buckets)
+        {
+            long table = allocator.allocate(8L * buckets);
+            for (int i = 0; i < buckets; i++)
+                MemoryUtil.setLong(table + 8L * i, 0);
+            return table;
+        }
+
+        private long bucket(int hash)
+        {
+            return table + 8L * (hash & (buckets - 1));
+        }
+
+        private long find(int hash, UUID cfId, int id, byte[] key)
+        {
+            for (long entry = MemoryUtil.getLong(bucket(hash)); entry != 0; entry = MemoryUtil.getLong(entry + NEXT_OFFSET))
+            {
+                if (matches(entry, hash, cfId, id, key))
+                    return entry;
+            }
+            return 0;
+        }
+
+        synchronized byte[] get(int hash, UUID cfId, int id, byte[] key)
+        {
+            long entry = find(hash, cfId, id, key);
+            if (entry == 0)
+                return null;
+
+            MemoryUtil.setInt(entry + REFERENCED_OFFSET, 1);
+            byte[] value = new byte[MemoryUtil.getInt(entry + VALUE_LENGTH_OFFSET)];
+            MemoryUtil.getBytes(entry + KEY_OFFSET + key.length, value, 0, value.length);
+            return value;
+        }
+
+        synchronized boolean contains(int hash, UUID cfId, int id, byte[] key)
+        {
+            return find(hash, cfId, id, key) != 0;
+        }
+
+        /**
+         * Inserts the entry, replacing any entry with the same key unless ifAbsent is set.
+         *
+         * @return whether the entry was inserted; if not, it is still owned by the caller
+         */
+        synchronized boolean insert(long entry, boolean ifAbsent)
+        {
+            long bucket = bucket(MemoryUtil.getInt(entry + HASH_OFFSET));
+            long prev = 0;
+            for (long existing = MemoryUtil.getLong(bucket); existing != 0; existing = MemoryUtil.getLong(existing + NEXT_OFFSET))
+            {
+                if (sameKey(existing, entry))
+                {
+                    if (ifAbsent)
+                        return false;
+                    unlink(bucket, prev, existing);
+                    break;
+                }
+                prev = existing;
+            }
+
+            link(entry);
+            evict();
+            return true;
+        }
+
+        /**
+         * Replaces the entry with the same key and value as old with entry.
+         *
+         * @return whether the entry was inserted; if not, it is still owned by the caller
+         */
+        synchronized boolean replace(long old, long entry)
+        {
+            long bucket = bucket(MemoryUtil.getInt(entry + HASH_OFFSET));
+            long prev = 0;
+            for (long existing = MemoryUtil.getLong(bucket); existing != 0; existing = MemoryUtil.getLong(existing + NEXT_OFFSET))
+            {
+                if (sameKey(existing, entry))
+                {
+                    if (!sameEntry(existing, old))
+                        return false;
+                    unlink(bucket, prev, existing);
+                    link(entry);
+                    evict();
+                    return true;
+                }
+                prev = existing;
+            }
+            return false;
+        }
+
+        synchronized void remove(int hash, UUID cfId, int id, byte[] key)
+        {
+            long bucket = bucket(hash);
+            long prev = 0;
+            for (long entry = MemoryUtil.getLong(bucket); entry != 0; entry = MemoryUtil.getLong(entry + NEXT_OFFSET))
+            {
+                if (matches(entry, hash, cfId, id, key))
+                {
+                    unlink(bucket, prev, entry);
+                    return;
+                }
+                prev = entry;
+            }
+        }
+
+        private void link(long entry)
+        {
+            long bucket = bucket(MemoryUtil.getInt(entry + HASH_OFFSET));
+            MemoryUtil.setLong(entry + NEXT_OFFSET, MemoryUtil.getLong(bucket));
+            MemoryUtil.setLong(bucket, entry);
+            size++;
+            weight += weightOf(entry);
+            if (size > buckets * LOAD_FACTOR && buckets < MAX_BUCKETS)
+                resize();
+        }
+
+        // unlinks and frees the entry
+        private void unlink(long bucket, long prev, long entry)
+        {
+            long next = MemoryUtil.getLong(entry + NEXT_OFFSET);
+            if (prev == 0)
+                MemoryUtil.setLong(bucket, next);
+            else
+                MemoryUtil.setLong(prev + NEXT_OFFSET, next);
+            size--;
+            weight -= weightOf(entry);
+            free(entry);
+        }
+
+        private void resize()
+        {
+            long oldTable = table;
+            int oldBuckets = buckets;
+            table = allocateTable(buckets * 2);
+            buckets *= 2;
+            for (int i = 0; i < oldBuckets; i++)
+            {
+                long entry = MemoryUtil.getLong(oldTable + 8L * i);
+                while (entry != 0)
+                {
+                    long next = MemoryUtil.getLong(entry + NEXT_OFFSET);
+                    long bucket = bucket(MemoryUtil.getInt(entry + HASH_OFFSET));
+                    MemoryUtil.setLong(entry + NEXT_OFFSET, MemoryUtil.getLong(bucket));
+                    MemoryUtil.setLong(bucket, entry);
+                    entry = next;
+                }
+            }
+            allocator.free(oldTable);
+            clockHand = 0;
+        }
+
+        private void evict()
+        {
+            while (weight > capacity && size > 0)
+            {
+                long bucket = table + 8L * clockHand;
+                long prev = 0;
+                long entry = MemoryUtil.getLong(bucket);
+                while (entry != 0 && weight > capacity)
+                {
+                    long next = MemoryUtil.getLong(entry + NEXT_OFFSET);
+                    if (MemoryUtil.getInt(entry + REFERENCED_OFFSET) != 0)
+                    {
+                        // second chance
+                        MemoryUtil.setInt(entry + REFERENCED_OFFSET, 0);
+                        prev = entry;
+                    }
+                    else
+                    {
+                        unlink(bucket, prev, entry);
+                    }
+                    entry = next;
+                }
+                // stay on a bucket left part way through
+                if (entry == 0)
+                    clockHand = (clockHand + 1) & (buckets - 1);
+            }
+        }
+
+        synchronized void setCapacity(long capacity)
+        {
+            this.capacity = capacity;
+            evict();
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        synchronized long weight()
+        {
+            return weight;
+        }
+
+        synchronized void clear()
+        {
+            for (int i = 0; i < buckets; i++)
+            {
+                long bucket = table + 8L * i;
+                while (MemoryUtil.getLong(bucket) != 0)
+                    unlink(bucket, 0, MemoryUtil.getLong(bucket));
+            }
+        }
+
+        synchronized void collectKeys(Set<KeyCacheKey> keys, boolean referencedOnly, int limit)
+        {
+            for (int i = 0; i < buckets && keys.size() < limit; i++)
+            {
+                for (long entry = MemoryUtil.getLong(table + 8L * i); entry != 0 && keys.size() < limit; entry = MemoryUtil.getLong(entry + NEXT_OFFSET))
+                {
+                    if (referencedOnly && MemoryUtil.getInt(entry + REFERENCED_OFFSET) == 0)
+                        continue;
+
+                    SSTableId id = idsById.get(MemoryUtil.getInt(entry + SSTABLE_ID_OFFSET));
+                    UUID cfId = new UUID(MemoryUtil.getLong(entry + CFID_MSB_OFFSET), MemoryUtil.getLong(entry + CFID_LSB_OFFSET));
+                    byte[] key = new byte[MemoryUtil.getInt(entry + KEY_LENGTH_OFFSET)];
+                    MemoryUtil.getBytes(entry + KEY_OFFSET, key, 0, key.length);
+                    keys.add(new KeyCacheKey(cfId, id.descriptor, ByteBuffer.wrap(key)));
+                }
+            }
+        }
+    }
+}
@@ -86,14 +86,17 @@ public class Config
     public Integer concurrent_reads = 32;
     public Integer concurrent_writes = 32;
     public Integer concurrent_counter_writes = 32;
+    public int concurrent_sstable_reads = 0;
 
     @Deprecated
     public Integer concurrent_replicates = null;
 
     public Integer memtable_flush_writers = null;
+    public Integer memtable_flush_ranges = null;
     public Integer memtable_heap_space_in_mb;
     public Integer memtable_offheap_space_in_mb;
     public Float memtable_cleanup_threshold = null;
+    public boolean memtable_flush_scheduler_enabled = false;
 
     public Integer storage_port = 7000;
     public Integer ssl_storage_port = 7001;
@@ -134,6 +137,7 @@ public class Config
     public Integer batch_size_warn_threshold_in_kb = 5;
     public volatile Integer batch_size_fail_threshold_in_kb = 50;
     public Integer concurrent_compactors;
+    public Integer concurrent_compaction_subranges = 1;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
 
     public Integer max_streaming_retries = 3;
@@ -147,12 +151,18 @@ public class Config
 
     // Commit Log
     public String commitlog_directory;
+    public String[] commitlog_directories;
+    public CommitLogDirectoryAllocation commitlog_directory_allocation = CommitLogDirectoryAllocation.round_robin;
     public Integer commitlog_total_space_in_mb;
     public CommitLogSync commitlog_sync;
     public Double commitlog_sync_batch_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
+    public int commitlog_sync_group_size_in_kb = 1024;
     public int commitlog_segment_size_in_mb = 32;
     public int commitlog_periodic_queue_size = 1024 * FBUtilities.getAvailableProcessors();
+    public ParameterizedClass commitlog_compression;
+    public CommitLogDiskAccessMode commitlog_disk_access_mode = CommitLogDiskAccessMode.mmap;
 
     public String endpoint_snitch;
     public Boolean dynamic_snitch = true;
@@ -186,6 +196,7 @@ public class Config
     public Long key_cache_size_in_mb = null;
     public volatile int key_cache_save_period = 14400;
     public volatile int key_cache_keys_to_save = Integer.MAX_VALUE;
+    public KeyCacheAllocationType key_cache_allocation_type = KeyCacheAllocationType.heap;
 
     public long row_cache_size_in_mb = 0;
     public volatile int row_cache_save_period = 0;
@@ -195,6 +206,10 @@ public class Config
     public volatile int counter_cache_save_period = 7200;
     public volatile int counter_cache_keys_to_save = Integer.MAX_VALUE;
 
+    public long chunk_cache_size_in_mb = 0;
+
+    public String sstable_format = "big";
+
     public String memory_allocator = NativeAllocator.class.getSimpleName();
 
     public Integer file_cache_size_in_mb;
@@ -202,6 +217,8 @@ public class Config
     public boolean inter_dc_tcp_nodelay = true;
 
     public MemtableAllocationType memtable_allocation_type = MemtableAllocationType.heap_buffers;
+    public MemtablePartitionIndexType memtable_partition_index;
+    public int memtable_shards = 1;
 
     private static boolean outboundBindAny = false;
 
@@ -210,6 +227,7 @@ public class Config
 
     public volatile Long index_summary_capacity_in_mb;
     public volatile int index_summary_resize_interval_in_minutes = 60;
+    public int expired_sstable_check_interval_in_seconds = 600;
 
     private static final CsvPreference STANDARD_SURROUNDING_SPACES_NEED_QUOTES = new CsvPreference.Builder(CsvPreference.STANDARD_PREFERENCE)
                                                                                                   .surroundingSpacesNeedQuotes(true).build();
@@ -261,7 +279,20 @@ public class Config
     public static enum CommitLogSync
     {
         periodic,
-        batch
+        batch,
+        group
+    }
+
+    public static enum CommitLogDirectoryAllocation
+    {
+        round_robin,
+        queue_depth
+    }
+
+    public static enum CommitLogDiskAccessMode
+    {
+        mmap,
+        direct
     }
     public static enum InternodeCompression
     {
@@ -284,6 +315,18 @@ public class Config
         offheap_objects
     }
 
+    public static enum KeyCacheAllocationType
+    {
+        heap,
+        offheap
+    }
+
+    public static enum MemtablePartitionIndexType
+    {
+        skiplist,
+        token_buckets
+    }
+
     public static enum DiskFailurePolicy
     {
         best_effort,
@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -56,6 +57,7 @@ import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.CompressionParameters;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.IAllocator;
 import org.apache.cassandra.locator.DynamicEndpointSnitch;
@@ -162,6 +164,22 @@ public class DatabaseDescriptor
             }
             logger.debug("Syncing log with a batch window of {}", conf.commitlog_sync_batch_window_in_ms);
         }
+        else if (conf.commitlog_sync == Config.CommitLogSync.group)
+        {
+            if (conf.commitlog_sync_group_window_in_ms == null)
+            {
+                throw new ConfigurationException("Missing value for commitlog_sync_group_window_in_ms: Double expected.");
+            }
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_batch_window_in_ms != null)
+            {
+                throw new ConfigurationException("Group sync specified, but commitlog_sync_period_in_ms or commitlog_sync_batch_window_in_ms found. Only specify commitlog_sync_group_window_in_ms and commitlog_sync_group_size_in_kb when using group sync");
+            }
+            else if (conf.commitlog_sync_group_size_in_kb <= 0)
+            {
+                throw new ConfigurationException("commitlog_sync_group_size_in_kb must be positive");
+            }
+            logger.debug("Syncing log with a group window of {} and a group size of {}KB", conf.commitlog_sync_group_window_in_ms, conf.commitlog_sync_group_size_in_kb);
+        }
         else
         {
             if (conf.commitlog_sync_period_in_ms == null)
@@ -178,6 +196,18 @@ public class DatabaseDescriptor
         if (conf.commitlog_total_space_in_mb == null)
             conf.commitlog_total_space_in_mb = hasLargeAddressSpace() ? 8192 : 32;
 
+        if (conf.commitlog_compression != null)
+        {
+            // fail fast on an unknown compressor or unsupported options rather than when the first segment is created
+            CompressionParameters.createCompressor(conf.commitlog_compression);
+            logger.debug("Compressing commit log segments with {}", conf.commitlog_compression);
+        }
+
+        if (conf.commitlog_disk_access_mode == null)
+            throw new ConfigurationException("commitlog_disk_access_mode must be one of mmap or direct");
+        if (conf.commitlog_disk_access_mode == Config.CommitLogDiskAccessMode.direct && conf.commitlog_compression != null)
+            throw new ConfigurationException("commitlog_disk_access_mode: direct cannot be combined with commitlog_compression");
+
         if (FBUtilities.isUnix())
         {
             /* evaluate the DiskAccessMode Config directive, which also affects indexAccessMode selection */
@@ -267,6 +297,9 @@ public class DatabaseDescriptor
         if (conf.concurrent_counter_writes != null && conf.concurrent_counter_writes < 2)
             throw new ConfigurationException("concurrent_counter_writes must be at least 2");
 
+        if (conf.concurrent_sstable_reads < 0)
+            throw new ConfigurationException("concurrent_sstable_reads must be non-negative");
+
         if (conf.concurrent_replicates != null)
             logger.warn("concurrent_replicates has been deprecated and should be removed from cassandra.yaml");
 
@@ -471,13 +504,25 @@ public class DatabaseDescriptor
 
         // if data dirs, commitlog dir, or saved caches dir are set in cassandra.yaml, use that.  Otherwise,
         // use -Dcassandra.storagedir (set in cassandra-env.sh) as the parent dir for data/, commitlog/, and saved_caches/
-        if (conf.commitlog_directory == null)
+        if (conf.commitlog_directories != null && conf.commitlog_directories.length > 0)
+        {
+            if (conf.commitlog_directory != null)
+                throw new ConfigurationException("Only one of commitlog_directory and commitlog_directories may be specified");
+            conf.commitlog_directory = conf.commitlog_directories[0];
+        }
+        else
         {
-            conf.commitlog_directory = System.getProperty("cassandra.storagedir", null);
             if (conf.commitlog_directory == null)
-                throw new ConfigurationException("commitlog_directory is missing and -Dcassandra.storagedir is not set");
-            conf.commitlog_directory += File.separator + "commitlog";
+            {
+                conf.commitlog_directory = System.getProperty("cassandra.storagedir", null);
+                if (conf.commitlog_directory == null)
+                    throw new ConfigurationException("commitlog_directory is missing and -Dcassandra.storagedir is not set");
+                conf.commitlog_directory += File.separator + "commitlog";
+            }
+            conf.commitlog_directories = new String[]{ conf.commitlog_directory };
         }
+        if (conf.commitlog_directories.length > 1)
+            logger.debug("Allocating commit log segments {} across {}", conf.commitlog_directory_allocation, Arrays.toString(conf.commitlog_directories));
         if (conf.saved_caches_directory == null)
         {
             conf.saved_caches_directory = System.getProperty("cassandra.storagedir", null);
@@ -496,21 +541,47 @@ public class DatabaseDescriptor
         /* data file and commit log directories. they get created later, when they're needed. */
         for (String datadir : conf.data_file_directories)
         {
-            if (datadir.equals(conf.commitlog_directory))
+            if (Arrays.asList(conf.commitlog_directories).contains(datadir))
                 throw new ConfigurationException("commitlog_directory must not be the same as any data_file_directories");
             if (datadir.equals(conf.saved_caches_directory))
                 throw new ConfigurationException("saved_caches_directory must not be the same as any data_file_directories");
         }
 
-        if (conf.commitlog_directory.equals(conf.saved_caches_directory))
+        if (Arrays.asList(conf.commitlog_directories).contains(conf.saved_caches_directory))
             throw new ConfigurationException("saved_caches_directory must not be the same as the commitlog_directory");
 
+        if (new HashSet<>(Arrays.asList(conf.commitlog_directories)).size() != conf.commitlog_directories.length)
+            throw new ConfigurationException("commitlog_directories must not contain the same directory twice");
+
         if (conf.memtable_flush_writers == null)
             conf.memtable_flush_writers = Math.min(8, Math.max(2, Math.min(FBUtilities.getAvailableProcessors(), conf.data_file_directories.length)));
 
         if (conf.memtable_flush_writers < 1)
             throw new ConfigurationException("memtable_flush_writers must be at least 1");
 
+        if (conf.memtable_flush_ranges == null)
+            conf.memtable_flush_ranges = conf.memtable_flush_writers;
+
+        if (conf.memtable_flush_ranges < 1)
+            throw new ConfigurationException("memtable_flush_ranges must be at least 1");
+
+        if (conf.memtable_partition_index == null)
+            conf.memtable_partition_index = conf.memtable_allocation_type == Config.MemtableAllocationType.offheap_objects
+                                          ? Config.MemtablePartitionIndexType.token_buckets
+                                          : Config.MemtablePartitionIndexType.skiplist;
+
+        try
+        {
+            sstable_format = SSTableFormat.Type.validate(conf.sstable_format);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException("Unknown sstable_format: " + conf.sstable_format);
+        }
+
+        if (conf.memtable_shards < 1 || Integer.bitCount(conf.memtable_shards) != 1)
+            throw new ConfigurationException("memtable_shards must be a positive power of two");
+
         if (conf.memtable_cleanup_threshold == null)
             conf.memtable_cleanup_threshold = (float) (1.0 / (1 + conf.memtable_flush_writers));
 
@@ -527,6 +598,9 @@ public class DatabaseDescriptor
         if (conf.concurrent_compactors <= 0)
             throw new ConfigurationException("concurrent_compactors should be strictly greater than 0");
 
+        if (conf.concurrent_compaction_subranges == null || conf.concurrent_compaction_subranges <= 0)
+            throw new ConfigurationException("concurrent_compaction_subranges should be strictly greater than 0");
+
         if (conf.initial_token != null)
             for (String token : tokensFromString(conf.initial_token))
                 partitioner.getTokenFactory().validate(token);
@@ -568,6 +642,10 @@ public class DatabaseDescriptor
                     + conf.counter_cache_size_in_mb + "', supported values are <integer> >= 0.");
         }
 
+        if (conf.chunk_cache_size_in_mb < 0)
+            throw new ConfigurationException("chunk_cache_size_in_mb option was set incorrectly to '"
+                    + conf.chunk_cache_size_in_mb + "', it should be a non-negative integer.");
+
         // if set to empty/"auto" then use 5% of Heap size
         indexSummaryCapacityInMB = (conf.index_summary_capacity_in_mb == null)
             ? Math.max(1, (int) (Runtime.getRuntime().totalMemory() * 0.05 / 1024 / 1024))
@@ -715,7 +793,10 @@ public class DatabaseDescriptor
             if (conf.commitlog_directory == null)
                 throw new ConfigurationException("commitlog_directory must be specified");
 
-            FileUtils.createDirectory(conf.commitlog_directory);
+            for (String commitLogDirectory : conf.commitlog_directories)
+            {
+                FileUtils.createDirectory(commitLogDirectory);
+            }
 
             if (conf.saved_caches_directory == null)
                 throw new ConfigurationException("saved_caches_directory must be specified");
@@ -1025,16 +1106,43 @@ public class DatabaseDescriptor
         return conf.concurrent_counter_writes;
     }
 
+    public static int getConcurrentSSTableReaders()
+    {
+        return conf.concurrent_sstable_reads;
+    }
+
+    @VisibleForTesting
+    public static void setConcurrentSSTableReaders(int readers)
+    {
+        conf.concurrent_sstable_reads = readers;
+    }
+
     public static int getFlushWriters()
     {
             return conf.memtable_flush_writers;
     }
 
+    public static int getMemtableFlushRanges()
+    {
+        return conf.memtable_flush_ranges;
+    }
+
+    @VisibleForTesting
+    public static void setMemtableFlushRanges(int ranges)
+    {
+        conf.memtable_flush_ranges = ranges;
+    }
+
     public static int getConcurrentCompactors()
     {
         return conf.concurrent_compactors;
     }
 
+    public static int getConcurrentCompactionSubranges()
+    {
+        return conf.concurrent_compaction_subranges;
+    }
+
     public static int getCompactionThroughputMbPerSec()
     {
         return conf.compaction_throughput_mb_per_sec;
@@ -1075,11 +1183,24 @@ public class DatabaseDescriptor
         return conf.data_file_directories;
     }
 
+    /**
+     * @return the first of the commit log directories, which is the only one unless commitlog_directories is set
+     */
     public static String getCommitLogLocation()
     {
         return conf.commitlog_directory;
     }
 
+    public static String[] getCommitLogLocations()
+    {
+        return conf.commitlog_directories;
+    }
+
+    public static Config.CommitLogDirectoryAllocation getCommitLogDirectoryAllocation()
+    {
+        return conf.commitlog_directory_allocation;
+    }
+
     public static int getTombstoneWarnThreshold()
     {
         return conf.tombstone_warn_threshold;
@@ -1108,6 +1229,34 @@ public class DatabaseDescriptor
         return conf.commitlog_segment_size_in_mb * 1024 * 1024;
     }
 
+    /**
+     * compressor used for commitlog segments, or null if segments are written uncompressed
+     */
+    public static ParameterizedClass getCommitLogCompression()
+    {
+        return conf.commitlog_compression;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogCompression(ParameterizedClass compressor)
+    {
+        conf.commitlog_compression = compressor;
+    }
+
+    /**
+     * how uncompressed commitlog segments are written to disk
+     */
+    public static Config.CommitLogDiskAccessMode getCommitLogDiskAccessMode()
+    {
+        return conf.commitlog_disk_access_mode;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogDiskAccessMode(Config.CommitLogDiskAccessMode mode)
+    {
+        conf.commitlog_disk_access_mode = mode;
+    }
+
     public static String getSavedCachesLocation()
     {
         return conf.saved_caches_directory;
@@ -1228,6 +1377,19 @@ public class DatabaseDescriptor
         return conf.commitlog_sync_period_in_ms;
     }
 
+    public static double getCommitLogSyncGroupWindow()
+    {
+        return conf.commitlog_sync_group_window_in_ms;
+    }
+
+    /**
+     * size of the writes waiting on a group sync that triggers it early, in bytes
+     */
+    public static long getCommitLogSyncGroupSize()
+    {
+        return conf.commitlog_sync_group_size_in_kb * 1024L;
+    }
+
     public static int getCommitLogPeriodicQueueSize()
     {
         return conf.commitlog_periodic_queue_size;
@@ -1238,6 +1400,17 @@ public class DatabaseDescriptor
         return conf.commitlog_sync;
     }
 
+    /**
+     * Switches the commit log to group sync mode, before it is started.
+     */
+    @VisibleForTesting
+    public static void setCommitLogSyncGroup(double windowInMs, int sizeInKB)
+    {
+        conf.commitlog_sync = Config.CommitLogSync.group;
+        conf.commitlog_sync_group_window_in_ms = windowInMs;
+        conf.commitlog_sync_group_size_in_kb = sizeInKB;
+    }
+
     public static Config.DiskAccessMode getDiskAccessMode()
     {
         return conf.disk_access_mode;
@@ -1476,11 +1649,21 @@ public class DatabaseDescriptor
         conf.key_cache_keys_to_save = keyCacheKeysToSave;
     }
 
+    public static Config.KeyCacheAllocationType getKeyCacheAllocationType()
+    {
+        return conf.key_cache_allocation_type;
+    }
+
     public static long getRowCacheSizeInMB()
     {
         return conf.row_cache_size_in_mb;
     }
 
+    public static long getChunkCacheSizeInMB()
+    {
+        return conf.chunk_cache_size_in_mb;
+    }
+
     public static int getRowCacheSavePeriod()
     {
         return conf.row_cache_save_period;
@@ -1562,6 +1745,12 @@ public class DatabaseDescriptor
         return sstable_format;
     }
 
+    @VisibleForTesting
+    public static void setSSTableFormat(SSTableFormat.Type format)
+    {
+        sstable_format = format;
+    }
+
     public static MemtablePool getMemtableAllocatorPool()
     {
         long heapLimit = ((long) conf.memtable_heap_space_in_mb) << 20;
@@ -1585,11 +1774,37 @@ public class DatabaseDescriptor
         }
     }
 
+    public static Config.MemtablePartitionIndexType getMemtablePartitionIndex()
+    {
+        return conf.memtable_partition_index;
+    }
+
+    public static boolean isMemtableFlushSchedulerEnabled()
+    {
+        return conf.memtable_flush_scheduler_enabled;
+    }
+
+    public static int getMemtableShards()
+    {
+        return conf.memtable_shards;
+    }
+
+    @VisibleForTesting
+    public static void setMemtableShards(int shards)
+    {
+        conf.memtable_shards = shards;
+    }
+
     public static int getIndexSummaryResizeIntervalInMinutes()
     {
         return conf.index_summary_resize_interval_in_minutes;
     }
 
+    public static int getExpiredSSTableCheckIntervalInSeconds()
+    {
+        return conf.expired_sstable_check_interval_in_seconds;
+    }
+
     public static boolean hasLargeAddressSpace()
     {
         // currently we just check if it's a 64bit arch, but any we only really care if the address space is large
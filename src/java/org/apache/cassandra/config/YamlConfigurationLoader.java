@@ -107,6 +107,9 @@ public class YamlConfigurationLoader implements ConfigurationLoader
             TypeDescription seedDesc = new TypeDescription(SeedProviderDef.class);
             seedDesc.putMapPropertyType("parameters", String.class, String.class);
             constructor.addTypeDescription(seedDesc);
+            TypeDescription compressionDesc = new TypeDescription(ParameterizedClass.class);
+            compressionDesc.putMapPropertyType("parameters", String.class, String.class);
+            constructor.addTypeDescription(compressionDesc);
             MissingPropertiesChecker propertiesChecker = new MissingPropertiesChecker();
             constructor.setPropertyUtils(propertiesChecker);
             Yaml yaml = new Yaml(constructor);
@@ -376,6 +376,16 @@ public class ArrayBackedSortedColumns extends ColumnFamily
         return new CellCollection(!reversed);
     }
 
+    @Override
+    public Iterator<Cell> iterator()
+    {
+        // same as getSortedColumns().iterator(), without the collection; this is iterated by every write
+        maybeSortCells();
+        return reversed
+             ? new BackwardsCellIterator(0, size)
+             : new ForwardsCellIterator(0, size);
+    }
+
     public int getColumnCount()
     {
         maybeSortCells();
@@ -18,11 +18,13 @@
 package org.apache.cassandra.db;
 
 import java.util.AbstractCollection;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
@@ -105,6 +107,17 @@ public class AtomicBTreeColumns extends ColumnFamily
         }
     };
 
+    // ColumnUpdaters are reused by the writes of each thread; a queue rather than a single instance, as updating
+    // secondary indexes applies nested writes to the index tables
+    private static final ThreadLocal<Queue<ColumnUpdater>> updaters = new ThreadLocal<Queue<ColumnUpdater>>()
+    {
+        @Override
+        protected Queue<ColumnUpdater> initialValue()
+        {
+            return new ArrayDeque<>();
+        }
+    };
+
     private static final DeletionInfo LIVE = DeletionInfo.live();
     // This is a small optimization: DeletionInfo is mutable, but we know that we will always copy it in that class,
     // so we can safely alias one DeletionInfo.live() reference and avoid some allocations.
@@ -198,7 +211,11 @@ public class AtomicBTreeColumns extends ColumnFamily
      */
     public long addAllWithSizeDelta(final ColumnFamily cm, MemtableAllocator allocator, OpOrder.Group writeOp, Updater indexer)
     {
-        ColumnUpdater updater = new ColumnUpdater(this, cm.metadata, allocator, writeOp, indexer);
+        Queue<ColumnUpdater> queue = updaters.get();
+        ColumnUpdater updater = queue.poll();
+        if (updater == null)
+            updater = new ColumnUpdater();
+        updater.init(this, cm.metadata, allocator, writeOp, indexer);
         DeletionInfo inputDeletionInfoCopy = null;
 
         boolean monitorOwned = false;
@@ -256,6 +273,8 @@ public class AtomicBTreeColumns extends ColumnFamily
         {
             if (monitorOwned)
                 Locks.monitorExitUnsafe(this);
+            updater.clear();
+            queue.add(updater);
         }
     }
 
@@ -419,18 +438,21 @@ public class AtomicBTreeColumns extends ColumnFamily
     // the function we provide to the btree utilities to perform any column replacements
     private static final class ColumnUpdater implements UpdateFunction<Cell>
     {
-        final AtomicBTreeColumns updating;
-        final CFMetaData metadata;
-        final MemtableAllocator allocator;
-        final OpOrder.Group writeOp;
-        final Updater indexer;
+        // the largest list of inserted cells kept when the updater is reused
+        private static final int MAX_RETAINED_INSERTED = 1024;
+
+        AtomicBTreeColumns updating;
+        CFMetaData metadata;
+        MemtableAllocator allocator;
+        OpOrder.Group writeOp;
+        Updater indexer;
         Holder ref;
         long dataSize;
         long heapSize;
-        final MemtableAllocator.DataReclaimer reclaimer;
+        MemtableAllocator.DataReclaimer reclaimer;
         List<Cell> inserted; // TODO: replace with walk of aborted BTree
 
-        private ColumnUpdater(AtomicBTreeColumns updating, CFMetaData metadata, MemtableAllocator allocator, OpOrder.Group writeOp, Updater indexer)
+        void init(AtomicBTreeColumns updating, CFMetaData metadata, MemtableAllocator allocator, OpOrder.Group writeOp, Updater indexer)
         {
             this.updating = updating;
             this.allocator = allocator;
@@ -440,6 +462,27 @@ public class AtomicBTreeColumns extends ColumnFamily
             this.reclaimer = allocator.reclaimer();
         }
 
+        /**
+         * Drops the references to the update, so that a reused updater does not hold on to a flushed memtable.
+         */
+        void clear()
+        {
+            updating = null;
+            metadata = null;
+            allocator = null;
+            writeOp = null;
+            indexer = null;
+            ref = null;
+            reclaimer = null;
+            if (inserted != null)
+            {
+                if (inserted.size() > MAX_RETAINED_INSERTED)
+                    inserted = null;
+                else
+                    inserted.clear();
+            }
+        }
+
         public Cell apply(Cell insert)
         {
             indexer.insert(insert);
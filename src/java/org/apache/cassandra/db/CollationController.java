@@ -18,17 +18,26 @@
 package org.apache.cassandra.db;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.*;
 
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import net.nicoulaj.compilecommand.annotations.Inline;
+import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.compaction.SizeTieredCompactionStrategy;
 import org.apache.cassandra.db.composites.CellName;
@@ -37,12 +46,16 @@ import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.marshal.CounterColumnType;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.tracing.TraceState;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.SearchIterator;
 import org.apache.cassandra.utils.memory.HeapAllocator;
 
 public class CollationController
 {
+    // opens the sstables of a read concurrently, if concurrent_sstable_reads is set
+    private static final ExecutorService sstableReadExecutor = createSSTableReadExecutor();
+
     private final ColumnFamilyStore cfs;
     private final QueryFilter filter;
     private final int gcBefore;
@@ -52,10 +65,36 @@ public class CollationController
     public CollationController(ColumnFamilyStore cfs, QueryFilter filter, int gcBefore)
     {
         this.cfs = cfs;
-        this.filter = filter;
+        // hash the key once for the bloom filters of all the sstables it is looked up in
+        this.filter = filter.key instanceof PreHashedDecoratedKey
+                    ? filter
+                    : new QueryFilter(PreHashedDecoratedKey.of(filter.key), filter.cfName, filter.filter, filter.timestamp);
         this.gcBefore = gcBefore;
     }
 
+    private static ExecutorService createSSTableReadExecutor()
+    {
+        int readers = DatabaseDescriptor.getConcurrentSSTableReaders();
+        if (readers == 0)
+            return null;
+
+        JMXEnabledThreadPoolExecutor executor = new JMXEnabledThreadPoolExecutor(readers,
+                                                                                 StageManager.KEEPALIVE,
+                                                                                 TimeUnit.SECONDS,
+                                                                                 new LinkedBlockingQueue<Runnable>(readers),
+                                                                                 new NamedThreadFactory("SSTableReads"),
+                                                                                 "internal");
+        // rather than queueing up behind other reads, open the sstable on the read thread
+        executor.setRejectedExecutionHandler(new RejectedExecutionHandler()
+        {
+            public void rejectedExecution(Runnable task, ThreadPoolExecutor executor)
+            {
+                task.run();
+            }
+        });
+        return executor;
+    }
+
     public ColumnFamily getTopLevelColumns(boolean copyOnHeap)
     {
         return filter.filter instanceof NamesQueryFilter
@@ -76,6 +115,7 @@ public class CollationController
         boolean isEmpty = true;
         Tracing.trace("Acquiring sstable references");
         ColumnFamilyStore.ViewFragment view = cfs.select(cfs.viewFilter(filter.key));
+        ConcurrentSSTableReads concurrentReads = null;
 
         try
         {
@@ -109,6 +149,20 @@ public class CollationController
             /* add the SSTables on disk */
             Collections.sort(view.sstables, SSTableReader.maxTimestampComparator);
 
+            // open the sstables that may be read concurrently, with the columns left after the memtables
+            List<SSTableReader> candidates = new ArrayList<>(view.sstables.size());
+            for (SSTableReader sstable : view.sstables)
+            {
+                if (sstable.getMaxTimestamp() < mostRecentRowTombstone)
+                    break;
+                candidates.add(sstable);
+            }
+            if (sstableReadExecutor != null && candidates.size() > 1)
+            {
+                QueryFilter candidateFilter = new QueryFilter(filter.key, filter.cfName, namesFilter.withUpdatedColumns(new TreeSet<>(filterColumns)), filter.timestamp);
+                concurrentReads = new ConcurrentSSTableReads(candidateFilter, candidates);
+            }
+
             // read sorted sstables
             for (SSTableReader sstable : view.sstables)
             {
@@ -124,7 +178,9 @@ public class CollationController
                     break;
 
                 Tracing.trace("Merging data from sstable {}", sstable.descriptor.generation);
-                OnDiskAtomIterator iter = reducedFilter.getSSTableColumnIterator(sstable);
+                OnDiskAtomIterator iter = concurrentReads == null
+                                        ? reducedFilter.getSSTableColumnIterator(sstable)
+                                        : concurrentReads.next(mostRecentRowTombstone);
                 iterators.add(iter);
                 isEmpty = false;
                 if (iter.getColumnFamily() != null)
@@ -165,6 +221,8 @@ public class CollationController
         {
             for (OnDiskAtomIterator iter : iterators)
                 FileUtils.closeQuietly(iter);
+            if (concurrentReads != null)
+                concurrentReads.close();
         }
     }
 
@@ -197,6 +255,7 @@ public class CollationController
         List<Iterator<? extends OnDiskAtom>> iterators = new ArrayList<>(Iterables.size(view.memtables) + view.sstables.size());
         ColumnFamily returnCF = ArrayBackedSortedColumns.factory.create(cfs.metadata, filter.filter.isReversed());
         DeletionInfo returnDeletionInfo = returnCF.deletionInfo();
+        ConcurrentSSTableReads concurrentReads = null;
         try
         {
             Tracing.trace("Merging memtable tombstones");
@@ -239,6 +298,18 @@ public class CollationController
             long minTimestamp = Long.MAX_VALUE;
             int nonIntersectingSSTables = 0;
 
+            if (sstableReadExecutor != null)
+            {
+                List<SSTableReader> candidates = new ArrayList<>(view.sstables.size());
+                for (SSTableReader sstable : view.sstables)
+                {
+                    if (filter.shouldInclude(sstable))
+                        candidates.add(sstable);
+                }
+                if (candidates.size() > 1)
+                    concurrentReads = new ConcurrentSSTableReads(filter, candidates);
+            }
+
             for (SSTableReader sstable : view.sstables)
             {
                 minTimestamp = Math.min(minTimestamp, sstable.getMinTimestamp());
@@ -261,7 +332,9 @@ public class CollationController
                 }
 
                 sstable.incrementReadCount();
-                OnDiskAtomIterator iter = filter.getSSTableColumnIterator(sstable);
+                OnDiskAtomIterator iter = concurrentReads == null
+                                        ? filter.getSSTableColumnIterator(sstable)
+                                        : concurrentReads.next(mostRecentRowTombstone);
                 iterators.add(iter);
                 if (iter.getColumnFamily() != null)
                 {
@@ -318,6 +391,8 @@ public class CollationController
             for (Object iter : iterators)
                 if (iter instanceof Closeable)
                     FileUtils.closeQuietly((Closeable) iter);
+            if (concurrentReads != null)
+                concurrentReads.close();
         }
     }
 
@@ -325,4 +400,116 @@ public class CollationController
     {
         return sstablesIterated;
     }
+
+    /**
+     * Opens the iterators of sstables on the sstable read executor, so that their index lookups and first reads from
+     * disk are issued together, and hands them out in the order of the sstables, as soon as each is open.
+     * At most concurrent_sstable_reads sstables are opened ahead of the one merged, and none that a row tombstone
+     * merged so far makes irrelevant.
+     */
+    private static class ConcurrentSSTableReads
+    {
+        private final QueryFilter filter;
+        private final Iterator<SSTableReader> sstables;
+        private final TraceState state;
+        private final Deque<Future<OnDiskAtomIterator>> iterators = new ArrayDeque<>();
+        private SSTableReader nextSSTable;
+
+        /**
+         * @param sstables the sstables to read, by decreasing max timestamp
+         */
+        ConcurrentSSTableReads(QueryFilter filter, List<SSTableReader> sstables)
+        {
+            this.filter = filter;
+            this.sstables = sstables.iterator();
+            this.state = Tracing.instance.get();
+            nextSSTable = this.sstables.next();
+            submit(Long.MIN_VALUE);
+        }
+
+        private void submit(long mostRecentRowTombstone)
+        {
+            while (nextSSTable != null
+                   && nextSSTable.getMaxTimestamp() >= mostRecentRowTombstone
+                   && iterators.size() < DatabaseDescriptor.getConcurrentSSTableReaders())
+            {
+                iterators.add(sstableReadExecutor.submit(open(nextSSTable)));
+                nextSSTable = sstables.hasNext() ? sstables.next() : null;
+            }
+        }
+
+        private Callable<OnDiskAtomIterator> open(final SSTableReader sstable)
+        {
+            return new Callable<OnDiskAtomIterator>()
+            {
+                public OnDiskAtomIterator call()
+                {
+                    // this may run on the read thread itself, if the executor is busy
+                    TraceState current = Tracing.instance.get();
+                    Tracing.instance.set(state);
+                    try
+                    {
+                        OnDiskAtomIterator iter = filter.getSSTableColumnIterator(sstable);
+                        try
+                        {
+                            // read the first cells too, as the merge is going to need them
+                            if (iter.getColumnFamily() != null)
+                                iter.hasNext();
+                        }
+                        catch (RuntimeException e)
+                        {
+                            FileUtils.closeQuietly(iter);
+                            throw e;
+                        }
+                        return iter;
+                    }
+                    finally
+                    {
+                        Tracing.instance.set(current);
+                    }
+                }
+            };
+        }
+
+        /**
+         * @param mostRecentRowTombstone the timestamp of the most recent row tombstone merged so far; the sstables
+         * older than it are not opened
+         * @return the iterator of the next sstable, waiting for it to be open
+         */
+        OnDiskAtomIterator next(long mostRecentRowTombstone)
+        {
+            submit(mostRecentRowTombstone);
+            return get(iterators.poll());
+        }
+
+        private static OnDiskAtomIterator get(Future<OnDiskAtomIterator> iterator)
+        {
+            try
+            {
+                return Uninterruptibles.getUninterruptibly(iterator);
+            }
+            catch (ExecutionException e)
+            {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        /**
+         * Closes the iterators of the sstables that turned out not to be needed, once they are open.
+         */
+        void close()
+        {
+            while (!iterators.isEmpty())
+            {
+                try
+                {
+                    FileUtils.closeQuietly(get(iterators.poll()));
+                }
+                catch (RuntimeException e)
+                {
+                    // the read did not need this sstable, so does not fail with it
+                }
+            }
+        }
+    }
 }
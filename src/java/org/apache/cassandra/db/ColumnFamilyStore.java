@@ -29,6 +29,7 @@ import javax.management.*;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.*;
 import com.google.common.util.concurrent.*;
 import com.google.common.util.concurrent.Futures;
@@ -51,6 +52,7 @@ import org.apache.cassandra.config.CFMetaData.SpeculativeRetry;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.compaction.*;
+import org.apache.cassandra.db.composites.CBuilder;
 import org.apache.cassandra.db.composites.CellName;
 import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.db.composites.Composite;
@@ -78,7 +80,6 @@ import org.apache.cassandra.streaming.StreamLockfile;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.*;
 import org.apache.cassandra.utils.concurrent.OpOrder;
-import org.apache.cassandra.utils.memory.MemtableAllocator;
 
 public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 {
@@ -90,6 +91,13 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                                                                           new LinkedBlockingQueue<Runnable>(),
                                                                                           new NamedThreadFactory("MemtableFlushWriter"),
                                                                                           "internal");
+    // writes the ranges of memtables whose flush is split, besides the first range which is written by the flush writer
+    private static final ExecutorService rangeFlushExecutor = new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getFlushWriters(),
+                                                                                               StageManager.KEEPALIVE,
+                                                                                               TimeUnit.SECONDS,
+                                                                                               new LinkedBlockingQueue<Runnable>(),
+                                                                                               new NamedThreadFactory("MemtableRangeFlushWriter"),
+                                                                                               "internal");
     // post-flush executor is single threaded to provide guarantee that any flush Future on a CF will never return until prior flushes have completed
     public static final ExecutorService postFlushExecutor = new JMXEnabledThreadPoolExecutor(1,
                                                                                              StageManager.KEEPALIVE,
@@ -848,20 +856,20 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         float onHeapRatio = 0, offHeapRatio = 0;
         long onHeapTotal = 0, offHeapTotal = 0;
         Memtable memtable = getDataTracker().getView().getCurrentMemtable();
-        onHeapRatio +=  memtable.getAllocator().onHeap().ownershipRatio();
-        offHeapRatio += memtable.getAllocator().offHeap().ownershipRatio();
-        onHeapTotal += memtable.getAllocator().onHeap().owns();
-        offHeapTotal += memtable.getAllocator().offHeap().owns();
+        onHeapRatio +=  memtable.getOnHeapOwnershipRatio();
+        offHeapRatio += memtable.getOffHeapOwnershipRatio();
+        onHeapTotal += memtable.getOnHeapOwns();
+        offHeapTotal += memtable.getOffHeapOwns();
 
         for (SecondaryIndex index : indexManager.getIndexes())
         {
             if (index.getIndexCfs() != null)
             {
-                MemtableAllocator allocator = index.getIndexCfs().getDataTracker().getView().getCurrentMemtable().getAllocator();
-                onHeapRatio += allocator.onHeap().ownershipRatio();
-                offHeapRatio += allocator.offHeap().ownershipRatio();
-                onHeapTotal += allocator.onHeap().owns();
-                offHeapTotal += allocator.offHeap().owns();
+                Memtable indexMemtable = index.getIndexCfs().getDataTracker().getView().getCurrentMemtable();
+                onHeapRatio += indexMemtable.getOnHeapOwnershipRatio();
+                offHeapRatio += indexMemtable.getOffHeapOwnershipRatio();
+                onHeapTotal += indexMemtable.getOnHeapOwns();
+                offHeapTotal += indexMemtable.getOffHeapOwns();
             }
         }
 
@@ -1045,7 +1053,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 memtable.cfs.data.markFlushing(memtable);
                 if (memtable.isClean() || truncate)
                 {
-                    memtable.cfs.replaceFlushed(memtable, null);
+                    memtable.cfs.replaceFlushed(memtable, Collections.<SSTableReader>emptyList());
                     memtable.setDiscarded();
                     iter.remove();
                 }
@@ -1062,7 +1070,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             for (final Memtable memtable : memtables)
             {
                 // flush the memtable
-                MoreExecutors.sameThreadExecutor().execute(memtable.flushRunnable());
+                flushMemtable(memtable);
 
                 // issue a read barrier for reclaiming the memory, and offload the wait to another thread
                 final OpOrder.Barrier readBarrier = readOrdering.newBarrier();
@@ -1081,6 +1089,55 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             postFlush.lastReplayPosition = memtables.get(0).getLastReplayPosition();
             postFlush.latch.countDown();
         }
+
+        /**
+         * Writes the ranges of the memtable concurrently, and makes the resulting sstables live together once they
+         * have all been written. If any range fails, the sstables of the other ranges are deleted.
+         */
+        private void flushMemtable(Memtable memtable)
+        {
+            long start = System.nanoTime();
+            List<Memtable.FlushRunnable> flushRunnables = memtable.flushRunnables();
+            List<Future<?>> futures = new ArrayList<>(flushRunnables.size() - 1);
+            for (Memtable.FlushRunnable flushRunnable : flushRunnables.subList(1, flushRunnables.size()))
+                futures.add(rangeFlushExecutor.submit(flushRunnable));
+
+            try
+            {
+                try
+                {
+                    flushRunnables.get(0).run();
+                }
+                finally
+                {
+                    // wait for the other ranges even if ours failed, so that we know which sstables to clean up
+                    for (Future<?> future : futures)
+                        Uninterruptibles.getUninterruptibly(future);
+                }
+            }
+            catch (Throwable t)
+            {
+                for (Memtable.FlushRunnable flushRunnable : flushRunnables)
+                {
+                    SSTableReader sstable = flushRunnable.getSSTable();
+                    if (sstable != null)
+                    {
+                        sstable.markObsolete();
+                        sstable.releaseReference();
+                    }
+                }
+                throw Throwables.propagate(t instanceof ExecutionException ? t.getCause() : t);
+            }
+
+            List<SSTableReader> sstables = new ArrayList<>(flushRunnables.size());
+            for (Memtable.FlushRunnable flushRunnable : flushRunnables)
+            {
+                if (flushRunnable.getSSTable() != null)
+                    sstables.add(flushRunnable.getSSTable());
+            }
+            memtable.cfs.replaceFlushed(memtable, sstables);
+            MemtableFlushScheduler.instance.flushCompleted(memtable.getLiveDataSize(), System.nanoTime() - start);
+        }
     }
 
     /**
@@ -1103,16 +1160,16 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 // find the total ownership ratio for the memtable and all SecondaryIndexes owned by this CF,
                 // both on- and off-heap, and select the largest of the two ratios to weight this CF
                 float onHeap = 0f, offHeap = 0f;
-                onHeap += current.getAllocator().onHeap().ownershipRatio();
-                offHeap += current.getAllocator().offHeap().ownershipRatio();
+                onHeap += current.getOnHeapOwnershipRatio();
+                offHeap += current.getOffHeapOwnershipRatio();
 
                 for (SecondaryIndex index : cfs.indexManager.getIndexes())
                 {
                     if (index.getIndexCfs() != null)
                     {
-                        MemtableAllocator allocator = index.getIndexCfs().getDataTracker().getView().getCurrentMemtable().getAllocator();
-                        onHeap += allocator.onHeap().ownershipRatio();
-                        offHeap += allocator.offHeap().ownershipRatio();
+                        Memtable indexMemtable = index.getIndexCfs().getDataTracker().getView().getCurrentMemtable();
+                        onHeap += indexMemtable.getOnHeapOwnershipRatio();
+                        offHeap += indexMemtable.getOffHeapOwnershipRatio();
                     }
                 }
 
@@ -1130,13 +1187,56 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
-    public void maybeUpdateRowCache(DecoratedKey key)
+    public void maybeUpdateRowCache(DecoratedKey key, ColumnFamily update)
     {
         if (!isRowCacheEnabled())
             return;
 
         RowCacheKey cacheKey = new RowCacheKey(metadata.cfId, key);
-        invalidateCachedRow(cacheKey);
+        if (!isAfterCachedHead(cacheKey, update))
+            invalidateCachedRow(cacheKey);
+    }
+
+    /**
+     * When only the head of partitions is cached, writes that land entirely after the last row of a cached head leave
+     * that head unchanged, so that time series appending past the head of their partitions keep it cached.
+     *
+     * This deserializes the cached head of the partition if it uses a SerializingCache, so only heads are checked.
+     */
+    private boolean isAfterCachedHead(RowCacheKey cacheKey, ColumnFamily update)
+    {
+        if (metadata.getCaching().rowCache.cacheFullPartitions() || !update.deletionInfo().getTopLevelDeletion().isLive())
+            return false;
+
+        IRowCacheEntry cached = CacheService.instance.rowCache.getInternal(cacheKey);
+        if (!(cached instanceof ColumnFamily))
+            return false; // nothing cached, or being cached with data that may or may not include the update
+
+        // as in isFilterFullyCoveredBy, a head with less rows than are cached is the whole partition
+        ColumnFamily cachedCf = (ColumnFamily) cached;
+        if (cachedCf.getColumnCount() == 0 || cachedCf.liveCQL3RowCount(Integer.MIN_VALUE) < metadata.getCaching().rowCache.rowsToCache)
+            return false;
+
+        CellName last = cachedCf.getReverseSortedColumns().iterator().next().name();
+        if (last.clusteringSize() == 0)
+            return false;
+
+        CBuilder builder = metadata.comparator.prefixBuilder();
+        for (int i = 0; i < last.clusteringSize(); i++)
+            builder.add(last.get(i));
+        Composite headEnd = builder.build().end();
+
+        for (Cell cell : update)
+        {
+            if (metadata.comparator.compare(cell.name(), headEnd) <= 0)
+                return false;
+        }
+        for (Iterator<RangeTombstone> iter = update.deletionInfo().rangeIterator(); iter.hasNext();)
+        {
+            if (metadata.comparator.compare(iter.next().min, headEnd) <= 0)
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -1152,7 +1252,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         Memtable mt = data.getMemtableFor(opGroup);
         mt.put(key, columnFamily, indexer, opGroup, replayPosition);
-        maybeUpdateRowCache(key);
+        maybeUpdateRowCache(key, columnFamily);
         metric.writeLatency.addNano(System.nanoTime() - start);
     }
 
@@ -1377,9 +1477,9 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         data.markObsolete(sstables, compactionType);
     }
 
-    void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
     {
-        compactionStrategy.replaceFlushed(memtable, sstable);
+        compactionStrategy.replaceFlushed(memtable, sstables);
     }
 
     public boolean isValid()
@@ -63,12 +63,15 @@ public class DataTracker
         // there may be multiple memtables in the list that would 'accept' us, however we only ever choose
         // the oldest such memtable, as accepts() only prevents us falling behind (i.e. ensures we don't
         // assign operations to a memtable that was retired/queued before we started)
-        for (Memtable memtable : view.get().liveMemtables)
+        // indexed rather than iterated, as this is called for every write
+        List<Memtable> liveMemtables = view.get().liveMemtables;
+        for (int i = 0; i < liveMemtables.size(); i++)
         {
+            Memtable memtable = liveMemtables.get(i);
             if (memtable.accepts(opGroup))
                 return memtable;
         }
-        throw new AssertionError(view.get().liveMemtables.toString());
+        throw new AssertionError(liveMemtables.toString());
     }
 
     public Set<SSTableReader> getSSTables()
@@ -136,9 +139,10 @@ public class DataTracker
         while (!view.compareAndSet(currentView, newView));
     }
 
-    public void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    public void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
     {
-        // sstable may be null if we flushed batchlog and nothing needed to be retained
+        // sstables may be empty if we flushed batchlog and nothing needed to be retained;
+        // a memtable whose flush was split over several token ranges has several sstables
 
         if (!cfstore.isValid())
         {
@@ -146,30 +150,31 @@ public class DataTracker
             do
             {
                 currentView = view.get();
-                newView = currentView.replaceFlushed(memtable, sstable);
-                if (sstable != null)
-                    newView = newView.replace(Arrays.asList(sstable), Collections.<SSTableReader>emptyList());
+                newView = currentView.replaceFlushed(memtable, sstables);
+                if (!sstables.isEmpty())
+                    newView = newView.replace(sstables, Collections.<SSTableReader>emptyList());
             }
             while (!view.compareAndSet(currentView, newView));
             return;
         }
 
         // back up before creating a new View (which makes the new one eligible for compaction)
-        if (sstable != null)
+        for (SSTableReader sstable : sstables)
             maybeIncrementallyBackup(sstable);
 
         View currentView, newView;
         do
         {
             currentView = view.get();
-            newView = currentView.replaceFlushed(memtable, sstable);
+            newView = currentView.replaceFlushed(memtable, sstables);
         }
         while (!view.compareAndSet(currentView, newView));
 
-        if (sstable != null)
+        if (!sstables.isEmpty())
         {
-            addNewSSTablesSize(Arrays.asList(sstable));
-            notifyAdded(sstable);
+            addNewSSTablesSize(sstables);
+            for (SSTableReader sstable : sstables)
+                notifyAdded(sstable);
         }
     }
 
@@ -275,6 +280,26 @@ public class DataTracker
         addNewSSTablesSize(allReplacements);
     }
 
+    /**
+     * Replaces the compacted sstables by sstables that are not tracked yet (because they were never opened early)
+     * in a single step, so that readers see either all the old sstables or all their replacements.
+     */
+    public void replaceCompactedSSTables(Collection<SSTableReader> oldSSTables, Collection<SSTableReader> replacements, OperationType compactionType)
+    {
+        View currentView, newView;
+        do
+        {
+            currentView = view.get();
+            newView = currentView.replace(oldSSTables, replacements);
+        }
+        while (!view.compareAndSet(currentView, newView));
+
+        removeOldSSTablesSize(oldSSTables);
+        releaseReferences(oldSSTables, false);
+        notifySSTablesChanged(oldSSTables, replacements, compactionType);
+        addNewSSTablesSize(replacements);
+    }
+
     public void addInitialSSTables(Collection<SSTableReader> sstables)
     {
         addSSTablesToTracker(sstables);
@@ -693,16 +718,16 @@ public class DataTracker
             return new View(newLive, newFlushing, sstables, compacting, intervalTree);
         }
 
-        View replaceFlushed(Memtable flushedMemtable, SSTableReader newSSTable)
+        View replaceFlushed(Memtable flushedMemtable, Collection<SSTableReader> flushedSSTables)
         {
             int index = flushingMemtables.indexOf(flushedMemtable);
             List<Memtable> newQueuedMemtables = ImmutableList.<Memtable>builder()
                                                              .addAll(flushingMemtables.subList(0, index))
                                                              .addAll(flushingMemtables.subList(index + 1, flushingMemtables.size()))
                                                              .build();
-            Set<SSTableReader> newSSTables = newSSTable == null
+            Set<SSTableReader> newSSTables = flushedSSTables.isEmpty()
                                              ? sstables
-                                             : newSSTables(newSSTable);
+                                             : newSSTables(flushedSSTables);
             SSTableIntervalTree intervalTree = buildIntervalTree(newSSTables);
             return new View(liveMemtables, newQueuedMemtables, newSSTables, compacting, intervalTree);
         }
@@ -726,11 +751,10 @@ public class DataTracker
             return new View(liveMemtables, flushingMemtables, sstables, compactingNew, intervalTree);
         }
 
-        private Set<SSTableReader> newSSTables(SSTableReader newSSTable)
+        private Set<SSTableReader> newSSTables(Collection<SSTableReader> flushedSSTables)
         {
-            assert newSSTable != null;
             // not performance-sensitive, don't obsess over doing a selection merge here
-            return newSSTables(Collections.<SSTableReader>emptyList(), Collections.singletonList(newSSTable));
+            return newSSTables(Collections.<SSTableReader>emptyList(), flushedSSTables);
         }
 
         private Set<SSTableReader> newSSTables(Collection<SSTableReader> oldSSTables, Iterable<SSTableReader> replacements)
@@ -19,27 +19,34 @@ package org.apache.cassandra.db;
 
 import java.io.File;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.composites.CellNameType;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.util.DiskAwareRunnable;
 import org.apache.cassandra.service.ActiveRepairService;
@@ -53,11 +60,13 @@ public class Memtable
     private static final Logger logger = LoggerFactory.getLogger(Memtable.class);
 
     static final MemtablePool MEMORY_POOL = DatabaseDescriptor.getMemtableAllocatorPool();
-    private static final int ROW_OVERHEAD_HEAP_SIZE = estimateRowOverhead(Integer.parseInt(System.getProperty("cassandra.memtable_row_overhead_computation_step", "100000")));
-
-    private final MemtableAllocator allocator;
-    private final AtomicLong liveDataSize = new AtomicLong(0);
-    private final AtomicLong currentOperations = new AtomicLong(0);
+    // the smallest estimated sstable size a flush is split into; smaller memtables are written to a single sstable
+    static final long MIN_FLUSH_RANGE_SIZE = 1024 * 1024;
+    private static final int ROW_OVERHEAD_COMPUTATION_STEP = Integer.parseInt(System.getProperty("cassandra.memtable_row_overhead_computation_step", "100000"));
+    private static final int ROW_OVERHEAD_HEAP_SIZE = estimateRowOverhead(new SkipListPartitionIndex<Object>(), ROW_OVERHEAD_COMPUTATION_STEP);
+    private static final int TOKEN_BUCKET_ROW_OVERHEAD_HEAP_SIZE = DatabaseDescriptor.getMemtablePartitionIndex() == Config.MemtablePartitionIndexType.token_buckets
+                                                                   ? estimateRowOverhead(new TokenBucketPartitionIndex<Object>(), ROW_OVERHEAD_COMPUTATION_STEP)
+                                                                   : 0;
 
     // the write barrier for directing writes to this memtable during a switch
     private volatile OpOrder.Barrier writeBarrier;
@@ -66,10 +75,12 @@ public class Memtable
     // the "first" ReplayPosition owned by this Memtable; this is inaccurate, and only used as a convenience to prevent CLSM flushing wantonly
     private final ReplayPosition minReplayPosition = CommitLog.instance.getContext();
 
-    // We index the memtable by RowPosition only for the purpose of being able
-    // to select key range using Token.KeyBound. However put() ensures that we
-    // actually only store DecoratedKey.
-    private final ConcurrentNavigableMap<RowPosition, AtomicBTreeColumns> rows = new ConcurrentSkipListMap<>();
+    // the memtable is split into shards of contiguous token ranges, so that writes to different partitions touch
+    // disjoint structures; shardBoundaries[i] is the first token of shards[i + 1]
+    private final Shard[] shards;
+    private final Token[] shardBoundaries;
+    // the heap used by the index for each partition, on top of the partition itself
+    private final int rowOverhead;
     public final ColumnFamilyStore cfs;
     private final long creationTime = System.currentTimeMillis();
     private final long creationNano = System.nanoTime();
@@ -82,24 +93,100 @@ public class Memtable
     public Memtable(ColumnFamilyStore cfs)
     {
         this.cfs = cfs;
-        this.allocator = MEMORY_POOL.newAllocator();
         this.initialComparator = cfs.metadata.comparator;
+        // the token buckets rely on long tokens; secondary indexes, for one, use the LocalPartitioner
+        boolean tokenBuckets = DatabaseDescriptor.getMemtablePartitionIndex() == Config.MemtablePartitionIndexType.token_buckets
+                               && cfs.partitioner instanceof Murmur3Partitioner;
+        this.rowOverhead = tokenBuckets ? TOKEN_BUCKET_ROW_OVERHEAD_HEAP_SIZE : ROW_OVERHEAD_HEAP_SIZE;
+        // equal token ranges only spread the writes with a hashing partitioner
+        int shardCount = cfs.partitioner.preservesOrder() ? 1 : DatabaseDescriptor.getMemtableShards();
+        this.shardBoundaries = shardBoundaries(cfs.partitioner, shardCount);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++)
+            shards[i] = new Shard(tokenBuckets
+                                  ? new TokenBucketPartitionIndex<AtomicBTreeColumns>()
+                                  : new SkipListPartitionIndex<AtomicBTreeColumns>());
         this.cfs.scheduleFlush();
     }
 
-    public MemtableAllocator getAllocator()
+    private static Token[] shardBoundaries(IPartitioner partitioner, int shardCount)
     {
-        return allocator;
+        Token[] boundaries = new Token[shardCount - 1];
+        Token minimum = partitioner.getMinimumToken();
+        bisect(partitioner, minimum, minimum, boundaries, 0, shardCount);
+        return boundaries;
+    }
+
+    // fills boundaries[offset, offset + count - 1) with the tokens splitting (left, right] into count equal ranges
+    private static void bisect(IPartitioner partitioner, Token left, Token right, Token[] boundaries, int offset, int count)
+    {
+        if (count == 1)
+            return;
+        Token midpoint = partitioner.midpoint(left, right);
+        boundaries[offset + count / 2 - 1] = midpoint;
+        bisect(partitioner, left, midpoint, boundaries, offset, count / 2);
+        bisect(partitioner, midpoint, right, boundaries, offset + count / 2, count / 2);
+    }
+
+    private int shardIndex(Token token)
+    {
+        if (shards.length == 1)
+            return 0;
+        int i = Arrays.binarySearch(shardBoundaries, token);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    int shardCount()
+    {
+        return shards.length;
     }
 
     public long getLiveDataSize()
     {
-        return liveDataSize.get();
+        long size = 0;
+        for (Shard shard : shards)
+            size += shard.liveDataSize.get();
+        return size;
     }
 
     public long getOperations()
     {
-        return currentOperations.get();
+        long operations = 0;
+        for (Shard shard : shards)
+            operations += shard.currentOperations.get();
+        return operations;
+    }
+
+    public long getOnHeapOwns()
+    {
+        long owns = 0;
+        for (Shard shard : shards)
+            owns += shard.allocator.onHeap().owns();
+        return owns;
+    }
+
+    public long getOffHeapOwns()
+    {
+        long owns = 0;
+        for (Shard shard : shards)
+            owns += shard.allocator.offHeap().owns();
+        return owns;
+    }
+
+    public float getOnHeapOwnershipRatio()
+    {
+        float ratio = 0;
+        for (Shard shard : shards)
+            ratio += shard.allocator.onHeap().ownershipRatio();
+        return ratio;
+    }
+
+    public float getOffHeapOwnershipRatio()
+    {
+        float ratio = 0;
+        for (Shard shard : shards)
+            ratio += shard.allocator.offHeap().ownershipRatio();
+        return ratio;
     }
 
     void setDiscarding(OpOrder.Barrier writeBarrier, ReplayPosition minLastReplayPosition)
@@ -107,12 +194,14 @@ public class Memtable
         assert this.writeBarrier == null;
         this.lastReplayPosition.set(minLastReplayPosition);
         this.writeBarrier = writeBarrier;
-        allocator.setDiscarding();
+        for (Shard shard : shards)
+            shard.allocator.setDiscarding();
     }
 
     void setDiscarded()
     {
-        allocator.setDiscarded();
+        for (Shard shard : shards)
+            shard.allocator.setDiscarded();
     }
 
     public boolean accepts(OpOrder.Group opGroup)
@@ -123,12 +212,18 @@ public class Memtable
 
     public boolean isLive()
     {
-        return allocator.isLive();
+        // the shards are discarded together
+        return shards[0].allocator.isLive();
     }
 
     public boolean isClean()
     {
-        return rows.isEmpty();
+        for (Shard shard : shards)
+        {
+            if (!shard.rows.isEmpty())
+                return false;
+        }
+        return true;
     }
 
     public boolean isCleanAfter(ReplayPosition position)
@@ -167,20 +262,22 @@ public class Memtable
             }
         }
 
-        AtomicBTreeColumns previous = rows.get(key);
+        Shard shard = shards[shardIndex(key.getToken())];
+        MemtableAllocator allocator = shard.allocator;
+        AtomicBTreeColumns previous = shard.rows.get(key);
 
         if (previous == null)
         {
             AtomicBTreeColumns empty = cf.cloneMeShallow(AtomicBTreeColumns.factory, false);
             final DecoratedKey cloneKey = allocator.clone(key, opGroup);
             // We'll add the columns later. This avoids wasting works if we get beaten in the putIfAbsent
-            previous = rows.putIfAbsent(cloneKey, empty);
+            previous = shard.rows.putIfAbsent(cloneKey, empty);
             if (previous == null)
             {
                 previous = empty;
                 // allocate the row overhead after the fact; this saves over allocating and having to free after, but
                 // means we can overshoot our declared limit.
-                int overhead = (int) (cfs.partitioner.getHeapSizeOf(key.getToken()) + ROW_OVERHEAD_HEAP_SIZE);
+                int overhead = (int) (cfs.partitioner.getHeapSizeOf(key.getToken()) + rowOverhead);
                 allocator.onHeap().allocate(overhead, opGroup);
             }
             else
@@ -189,8 +286,25 @@ public class Memtable
             }
         }
 
-        liveDataSize.addAndGet(previous.addAllWithSizeDelta(cf, allocator, opGroup, indexer));
-        currentOperations.addAndGet(cf.getColumnCount() + (cf.isMarkedForDelete() ? 1 : 0) + cf.deletionInfo().rangeCount());
+        shard.liveDataSize.addAndGet(previous.addAllWithSizeDelta(cf, allocator, opGroup, indexer));
+        shard.currentOperations.addAndGet(cf.getColumnCount() + (cf.isMarkedForDelete() ? 1 : 0) + cf.deletionInfo().rangeCount());
+    }
+
+    /**
+     * Iterates over the partitions between the given bounds, in token order, across the shards covering them.
+     * A null bound leaves that end of the memtable unbounded.
+     */
+    private Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iterator(RowPosition from, boolean fromInclusive, RowPosition to, boolean toInclusive)
+    {
+        int first = from == null ? 0 : shardIndex(from.getToken());
+        int last = to == null ? shards.length - 1 : shardIndex(to.getToken());
+        if (first == last)
+            return shards[first].rows.iterator(from, fromInclusive, to, toInclusive);
+
+        List<Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>>> iterators = new ArrayList<>(Math.max(0, last - first + 1));
+        for (int i = first; i <= last; i++)
+            iterators.add(shards[i].rows.iterator(i == first ? from : null, fromInclusive, i == last ? to : null, toInclusive));
+        return Iterators.concat(iterators.iterator());
     }
 
     // for debugging
@@ -198,23 +312,81 @@ public class Memtable
     {
         StringBuilder builder = new StringBuilder();
         builder.append("{");
-        for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : rows.entrySet())
+        Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iter = iterator(null, true, null, true);
+        while (iter.hasNext())
         {
+            Map.Entry<DecoratedKey, AtomicBTreeColumns> entry = iter.next();
             builder.append(entry.getKey()).append(": ").append(entry.getValue()).append(", ");
         }
         builder.append("}");
         return builder.toString();
     }
 
-    public FlushRunnable flushRunnable()
+    /**
+     * Splits the flush of this memtable into contiguous ranges of partitions, to be written to separate sstables
+     * concurrently. A memtable is split into at most memtable_flush_ranges ranges, and only as far as each range
+     * would hold at least MIN_FLUSH_RANGE_SIZE bytes, so that small memtables are still flushed to a single sstable.
+     *
+     * @return one runnable per range, in token order
+     */
+    public List<FlushRunnable> flushRunnables()
     {
-        return new FlushRunnable(lastReplayPosition.get());
+        long keySize = 0;
+        int keyCount = 0;
+        Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iter = iterator(null, true, null, true);
+        while (iter.hasNext())
+        {
+            keySize += iter.next().getKey().getKey().remaining();
+            keyCount++;
+        }
+        long estimatedSize = (long) ((keySize // index entries
+                                      + keySize // keys in data file
+                                      + getLiveDataSize()) // data
+                                      * 1.2); // bloom filter and row index overhead
+
+        int rangeCount = (int) Math.max(1, Math.min(Math.min(DatabaseDescriptor.getMemtableFlushRanges(), keyCount),
+                                                    estimatedSize / MIN_FLUSH_RANGE_SIZE));
+        ReplayPosition context = lastReplayPosition.get();
+        if (rangeCount == 1)
+            return Collections.singletonList(new FlushRunnable(context, null, null, keyCount, estimatedSize));
+
+        // split on partition counts; the memtable is no longer written to, so the counts are stable
+        List<DecoratedKey> boundaries = new ArrayList<>(rangeCount - 1);
+        int index = 0;
+        iter = iterator(null, true, null, true);
+        while (iter.hasNext())
+        {
+            DecoratedKey key = iter.next().getKey();
+            if (index == firstKeyOfRange(boundaries.size() + 1, keyCount, rangeCount))
+            {
+                boundaries.add(key);
+                if (boundaries.size() == rangeCount - 1)
+                    break;
+            }
+            index++;
+        }
+
+        List<FlushRunnable> runnables = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++)
+        {
+            // each range includes its first key and excludes the first key of the next range
+            DecoratedKey from = i == 0 ? null : boundaries.get(i - 1);
+            DecoratedKey to = i == rangeCount - 1 ? null : boundaries.get(i);
+            int rangeKeyCount = firstKeyOfRange(i + 1, keyCount, rangeCount) - firstKeyOfRange(i, keyCount, rangeCount);
+            runnables.add(new FlushRunnable(context, from, to, rangeKeyCount, estimatedSize * rangeKeyCount / keyCount));
+        }
+        return runnables;
+    }
+
+    private static int firstKeyOfRange(int range, int keyCount, int rangeCount)
+    {
+        return (int) ((long) keyCount * range / rangeCount);
     }
 
     public String toString()
     {
         return String.format("Memtable-%s@%s(%s serialized bytes, %s ops, %.0f%%/%.0f%% of on/off-heap limit)",
-                             cfs.name, hashCode(), liveDataSize, currentOperations, 100 * allocator.onHeap().ownershipRatio(), 100 * allocator.offHeap().ownershipRatio());
+                             cfs.name, hashCode(), getLiveDataSize(), getOperations(), 100 * getOnHeapOwnershipRatio(), 100 * getOffHeapOwnershipRatio());
     }
 
     /**
@@ -226,8 +398,8 @@ public class Memtable
         return new Iterator<Map.Entry<DecoratedKey, ColumnFamily>>()
         {
             private Iterator<? extends Map.Entry<? extends RowPosition, AtomicBTreeColumns>> iter = stopAt.isMinimum(cfs.partitioner)
-                    ? rows.tailMap(startWith).entrySet().iterator()
-                    : rows.subMap(startWith, true, stopAt, true).entrySet().iterator();
+                    ? iterator(startWith, true, null, true)
+                    : iterator(startWith, true, stopAt, true);
 
             private Map.Entry<? extends RowPosition, ? extends ColumnFamily> currentEntry;
 
@@ -257,7 +429,7 @@ public class Memtable
             public void remove()
             {
                 iter.remove();
-                liveDataSize.addAndGet(-currentEntry.getValue().dataSize());
+                shards[shardIndex(currentEntry.getKey().getToken())].liveDataSize.addAndGet(-currentEntry.getValue().dataSize());
                 currentEntry = null;
             }
         };
@@ -265,7 +437,7 @@ public class Memtable
 
     public ColumnFamily getColumnFamily(DecoratedKey key)
     {
-        return rows.get(key);
+        return shards[shardIndex(key.getToken())].rows.get(key);
     }
 
     public long creationTime()
@@ -278,26 +450,29 @@ public class Memtable
         return lastReplayPosition.get();
     }
 
+    /**
+     * Writes a range of the memtable to a new sstable, on the disk picked by DiskAwareRunnable. The written sstable
+     * is not made live here; that is up to the caller, once all the ranges of the memtable have been written.
+     */
     class FlushRunnable extends DiskAwareRunnable
     {
         private final ReplayPosition context;
+        // the bounds of the flushed range, null for the ends of the memtable
+        private final DecoratedKey from;
+        private final DecoratedKey to;
+        private final int keyCount;
         private final long estimatedSize;
 
-        FlushRunnable(ReplayPosition context)
+        // the written sstable, or null if nothing needed to be retained
+        private volatile SSTableReader sstable;
+
+        FlushRunnable(ReplayPosition context, DecoratedKey from, DecoratedKey to, int keyCount, long estimatedSize)
         {
             this.context = context;
-
-            long keySize = 0;
-            for (RowPosition key : rows.keySet())
-            {
-                //  make sure we don't write non-sensical keys
-                assert key instanceof DecoratedKey;
-                keySize += ((DecoratedKey)key).getKey().remaining();
-            }
-            estimatedSize = (long) ((keySize // index entries
-                                    + keySize // keys in data file
-                                    + liveDataSize.get()) // data
-                                    * 1.2); // bloom filter and row index overhead
+            this.from = from;
+            this.to = to;
+            this.keyCount = keyCount;
+            this.estimatedSize = estimatedSize;
         }
 
         public long getExpectedWriteSize()
@@ -309,8 +484,7 @@ public class Memtable
         {
             assert sstableDirectory != null : "Flush task is not bound to any disk";
 
-            SSTableReader sstable = writeSortedContents(context, sstableDirectory);
-            cfs.replaceFlushed(Memtable.this, sstable);
+            sstable = writeSortedContents(context, sstableDirectory);
         }
 
         protected Directories getDirectories()
@@ -318,9 +492,17 @@ public class Memtable
             return cfs.directories;
         }
 
+        public SSTableReader getSSTable()
+        {
+            return sstable;
+        }
+
         private SSTableReader writeSortedContents(ReplayPosition context, File sstableDirectory)
         {
-            logger.info("Writing {}", Memtable.this.toString());
+            if (from == null && to == null)
+                logger.info("Writing {}", Memtable.this.toString());
+            else
+                logger.info("Writing {} partitions of {}", keyCount, Memtable.this.toString());
 
             SSTableReader ssTable;
             // errors when creating the writer that may leave empty temp files.
@@ -331,8 +513,10 @@ public class Memtable
                 int heavilyContendedRowCount = 0;
                 // (we can't clear out the map as-we-go to free up memory,
                 //  since the memtable is being used for queries in the "pending flush" category)
-                for (Map.Entry<RowPosition, AtomicBTreeColumns> entry : rows.entrySet())
+                Iterator<Map.Entry<DecoratedKey, AtomicBTreeColumns>> iter = iterator(from, true, to, false);
+                while (iter.hasNext())
                 {
+                    Map.Entry<DecoratedKey, AtomicBTreeColumns> entry = iter.next();
                     AtomicBTreeColumns cf = entry.getValue();
 
                     if (cf.isMarkedForDelete() && cf.hasColumns())
@@ -350,7 +534,7 @@ public class Memtable
                         heavilyContendedRowCount++;
 
                     if (!cf.isEmpty())
-                        writer.append((DecoratedKey)entry.getKey(), cf);
+                        writer.append(entry.getKey(), cf);
                 }
 
                 if (writer.getFilePointer() > 0)
@@ -371,7 +555,7 @@ public class Memtable
                 }
 
                 if (heavilyContendedRowCount > 0)
-                    logger.debug(String.format("High update contention in %d/%d partitions of %s ", heavilyContendedRowCount, rows.size(), Memtable.this.toString()));
+                    logger.debug(String.format("High update contention in %d/%d partitions of %s ", heavilyContendedRowCount, keyCount, Memtable.this.toString()));
 
                 return ssTable;
             }
@@ -386,20 +570,40 @@ public class Memtable
         {
             MetadataCollector sstableMetadataCollector = new MetadataCollector(cfs.metadata.comparator).replayPosition(context);
 
-            return SSTableWriter.create(Descriptor.fromFilename(filename), (long) rows.size(), ActiveRepairService.UNREPAIRED_SSTABLE, cfs.metadata, cfs.partitioner, sstableMetadataCollector);
+            return SSTableWriter.create(Descriptor.fromFilename(filename), (long) keyCount, ActiveRepairService.UNREPAIRED_SSTABLE, cfs.metadata, cfs.partitioner, sstableMetadataCollector);
+        }
+    }
+
+    /**
+     * A token range of the memtable, with its own partition index and allocator, and its own counters so that
+     * writes to different shards do not contend on them either.
+     */
+    private static final class Shard
+    {
+        final MemtablePartitionIndex<AtomicBTreeColumns> rows;
+        final MemtableAllocator allocator = MEMORY_POOL.newAllocator();
+        final AtomicLong liveDataSize = new AtomicLong(0);
+        final AtomicLong currentOperations = new AtomicLong(0);
+
+        Shard(MemtablePartitionIndex<AtomicBTreeColumns> rows)
+        {
+            this.rows = rows;
         }
     }
 
-    private static int estimateRowOverhead(final int count)
+    private static int estimateRowOverhead(MemtablePartitionIndex<Object> rows, final int count)
     {
         // calculate row overhead
         final OpOrder.Group group = new OpOrder().start();
         int rowOverhead;
         MemtableAllocator allocator = MEMORY_POOL.newAllocator();
-        ConcurrentNavigableMap<RowPosition, Object> rows = new ConcurrentSkipListMap<>();
         final Object val = new Object();
         for (int i = 0 ; i < count ; i++)
-            rows.put(allocator.clone(new BufferDecoratedKey(new LongToken((long) i), ByteBufferUtil.EMPTY_BYTE_BUFFER), group), val);
+        {
+            // spread the tokens over the token range, as partitioners do
+            LongToken token = new LongToken(i * 0x9E3779B97F4A7C15L);
+            rows.putIfAbsent(allocator.clone(new BufferDecoratedKey(token, ByteBufferUtil.EMPTY_BYTE_BUFFER), group), val);
+        }
         double avgSize = ObjectSizes.measureDeep(rows) / (double) count;
         rowOverhead = (int) ((avgSize - Math.floor(avgSize)) < 0.05 ? Math.floor(avgSize) : Math.ceil(avgSize));
         rowOverhead -= ObjectSizes.measureDeep(new LongToken((long) 0));
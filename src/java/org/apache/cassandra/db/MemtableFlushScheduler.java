@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.index.SecondaryIndex;
+import org.apache.cassandra.service.StorageService;
+
+/**
+ * Starts memtable flushes ahead of the memtable cleanup threshold, so that they are spread over time rather than
+ * bunched up once the threshold is crossed.
+ *
+ * Every second, the scheduler estimates how fast each table fills its memtable, and from that how long it will take
+ * for the memtables to reach the cleanup threshold. If that is less than the time it would take to flush the largest
+ * memtable, at the throughput observed for recent flushes, that memtable is flushed straight away. Only one such
+ * flush is run at a time; once the threshold is crossed, flushing is left to the memtable pool cleaner, as usual.
+ */
+public class MemtableFlushScheduler implements MemtableFlushSchedulerMBean
+{
+    private static final Logger logger = LoggerFactory.getLogger(MemtableFlushScheduler.class);
+
+    private static final String MBEAN_NAME = "org.apache.cassandra.db:type=MemtableFlushScheduler";
+    static final long INTERVAL_IN_MS = 1000;
+    // the weight of the latest sample in the moving averages
+    private static final double ALPHA = 0.2;
+    // memtables smaller than this fraction of the cleanup threshold are not worth flushing early
+    static final double MIN_FLUSH_FRACTION = 0.25;
+
+    public static final MemtableFlushScheduler instance = new MemtableFlushScheduler();
+
+    private volatile boolean enabled = DatabaseDescriptor.isMemtableFlushSchedulerEnabled();
+
+    private final Map<UUID, WriteRate> writeRates = new ConcurrentHashMap<>();
+    // in bytes of memtable data per second
+    private volatile double flushThroughput;
+    private volatile double secondsToThreshold = Double.POSITIVE_INFINITY;
+
+    private final AtomicLong scheduledFlushes = new AtomicLong();
+    private volatile String lastDecision = "none";
+    // the latest flush started by the scheduler
+    private volatile Future<?> scheduledFlush;
+
+    public void start()
+    {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            mbs.registerMBean(this, new ObjectName(MBEAN_NAME));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        Runnable runnable = new Runnable()
+        {
+            public void run()
+            {
+                schedule();
+            }
+        };
+        StorageService.optionalTasks.scheduleWithFixedDelay(runnable, INTERVAL_IN_MS, INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @VisibleForTesting
+    void schedule()
+    {
+        long now = System.nanoTime();
+        float cleanThreshold = Memtable.MEMORY_POOL.onHeap.cleanThreshold;
+
+        float liveOnHeap = 0f, liveOffHeap = 0f;
+        double totalRate = 0;
+        float largestRatio = 0f;
+        Memtable largest = null;
+        Set<UUID> tables = new HashSet<>();
+        for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+        {
+            // as in FlushLargestColumnFamily, a table owns its memtable and the memtables of its secondary indexes
+            Memtable current = cfs.getDataTracker().getView().getCurrentMemtable();
+            float onHeap = current.getOnHeapOwnershipRatio();
+            float offHeap = current.getOffHeapOwnershipRatio();
+            for (SecondaryIndex index : cfs.indexManager.getIndexes())
+            {
+                if (index.getIndexCfs() != null)
+                {
+                    Memtable indexMemtable = index.getIndexCfs().getDataTracker().getView().getCurrentMemtable();
+                    onHeap += indexMemtable.getOnHeapOwnershipRatio();
+                    offHeap += indexMemtable.getOffHeapOwnershipRatio();
+                }
+            }
+            liveOnHeap += onHeap;
+            liveOffHeap += offHeap;
+            float ratio = Math.max(onHeap, offHeap);
+
+            WriteRate rate = writeRates.get(cfs.metadata.cfId);
+            if (rate == null)
+            {
+                rate = new WriteRate(cfs.keyspace.getName() + '.' + cfs.name);
+                writeRates.put(cfs.metadata.cfId, rate);
+            }
+            totalRate += rate.update(current, ratio, now);
+            tables.add(cfs.metadata.cfId);
+
+            if (ratio > largestRatio)
+            {
+                largest = current;
+                largestRatio = ratio;
+            }
+        }
+        // forget dropped tables
+        writeRates.keySet().retainAll(tables);
+
+        float liveRatio = Math.max(liveOnHeap, liveOffHeap);
+        secondsToThreshold = secondsToThreshold(liveRatio, cleanThreshold, totalRate);
+
+        Future<?> previous = scheduledFlush;
+        String decision;
+        if (!enabled)
+        {
+            decision = "disabled";
+        }
+        else if (liveRatio >= cleanThreshold)
+        {
+            decision = "cleanup threshold crossed, flushing is left to the memtable cleaner";
+        }
+        else if (previous != null && !previous.isDone())
+        {
+            decision = "waiting for the previous scheduled flush to complete";
+        }
+        else if (largest == null)
+        {
+            decision = "no memtable to flush";
+        }
+        else if (flushThroughput == 0)
+        {
+            decision = "waiting for a first flush to estimate the flush throughput";
+        }
+        else
+        {
+            double flushSeconds = largest.getLiveDataSize() / flushThroughput;
+            if (shouldFlush(secondsToThreshold, largestRatio / cleanThreshold, flushSeconds))
+            {
+                decision = String.format("flushing %s early: %.1fs to the cleanup threshold, %.1fs to flush",
+                                         largest.cfs.name, secondsToThreshold, flushSeconds);
+                logger.debug("Memtable flush scheduler {}", decision);
+                scheduledFlushes.incrementAndGet();
+                scheduledFlush = largest.cfs.switchMemtableIfCurrent(largest);
+            }
+            else
+            {
+                decision = String.format("not flushing: %.1fs to the cleanup threshold, %.1fs to flush %s",
+                                         secondsToThreshold, flushSeconds, largest.cfs.name);
+            }
+        }
+        lastDecision = decision;
+    }
+
+    @VisibleForTesting
+    static double secondsToThreshold(float liveRatio, float cleanThreshold, double totalRate)
+    {
+        if (liveRatio >= cleanThreshold)
+            return 0;
+        return totalRate > 0 ? (cleanThreshold - liveRatio) / totalRate : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param secondsToThreshold the estimated time before the cleanup threshold is crossed
+     * @param largestFraction the size of the largest memtable, as a fraction of the cleanup threshold
+     * @param flushSeconds the estimated time to flush the largest memtable
+     * @return whether the largest memtable should be flushed now, as it could not be flushed in time on the next run
+     */
+    @VisibleForTesting
+    static boolean shouldFlush(double secondsToThreshold, double largestFraction, double flushSeconds)
+    {
+        if (largestFraction < MIN_FLUSH_FRACTION)
+            return false;
+        return secondsToThreshold <= flushSeconds + INTERVAL_IN_MS / 1000.0;
+    }
+
+    /**
+     * Records a completed memtable flush, to estimate the flush throughput.
+     *
+     * @param bytes the live data size of the flushed memtable
+     * @param nanos the time the flush took
+     */
+    public synchronized void flushCompleted(long bytes, long nanos)
+    {
+        if (bytes <= 0 || nanos <= 0)
+            return;
+        double throughput = bytes * 1e9 / nanos;
+        flushThroughput = flushThroughput == 0 ? throughput : ALPHA * throughput + (1 - ALPHA) * flushThroughput;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public Map<String, Double> getWriteRates()
+    {
+        Map<String, Double> rates = new TreeMap<>();
+        for (WriteRate rate : writeRates.values())
+            rates.put(rate.table, 100 * rate.rate);
+        return rates;
+    }
+
+    public double getFlushThroughput()
+    {
+        return flushThroughput;
+    }
+
+    public double getSecondsToCleanupThreshold()
+    {
+        return secondsToThreshold;
+    }
+
+    public long getScheduledFlushes()
+    {
+        return scheduledFlushes.get();
+    }
+
+    public String getLastDecision()
+    {
+        return lastDecision;
+    }
+
+    /**
+     * The rate at which a table fills its memtable, as a fraction of the memtable space per second. Only updated
+     * by the scheduling task.
+     */
+    private static final class WriteRate
+    {
+        final String table;
+        volatile double rate;
+
+        private Memtable memtable;
+        private float ratio;
+        private long time;
+
+        WriteRate(String table)
+        {
+            this.table = table;
+        }
+
+        double update(Memtable current, float currentRatio, long now)
+        {
+            if (memtable != null && now > time)
+            {
+                // a memtable switched since the last sample was filled from nothing in the meantime
+                float growth = current == memtable ? currentRatio - ratio : currentRatio;
+                double sample = Math.max(0, growth) * 1e9 / (now - time);
+                rate = ALPHA * sample + (1 - ALPHA) * rate;
+            }
+            memtable = current;
+            ratio = currentRatio;
+            time = now;
+            return rate;
+        }
+    }
+}
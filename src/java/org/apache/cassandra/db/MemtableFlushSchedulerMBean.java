@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.Map;
+
+public interface MemtableFlushSchedulerMBean
+{
+    /**
+     * @return whether the scheduler starts flushes ahead of the memtable cleanup threshold
+     */
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    /**
+     * @return the estimated rate at which each table fills its memtable, as a percentage of the memtable space per second
+     */
+    public Map<String, Double> getWriteRates();
+
+    /**
+     * @return the estimated rate at which memtables are flushed, in bytes of memtable data per second
+     */
+    public double getFlushThroughput();
+
+    /**
+     * @return the estimated number of seconds before the memtable cleanup threshold is crossed
+     */
+    public double getSecondsToCleanupThreshold();
+
+    /**
+     * @return the number of flushes started by the scheduler since node start
+     */
+    public long getScheduledFlushes();
+
+    /**
+     * @return a description of the latest decision of the scheduler
+     */
+    public String getLastDecision();
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The index of the partitions of a memtable, sorted by DecoratedKey.
+ *
+ * Partitions are only ever added. Iterators are weakly consistent: they may or may not reflect the
+ * partitions added after their creation, and need not support removal.
+ */
+public interface MemtablePartitionIndex<V>
+{
+    public V get(DecoratedKey key);
+
+    /**
+     * @return the value already associated with key, or null if value has been added
+     */
+    public V putIfAbsent(DecoratedKey key, V value);
+
+    public boolean isEmpty();
+
+    /**
+     * Iterates over the partitions between from and to, in order.
+     *
+     * @param from  the lower bound, or null to start with the first partition
+     * @param to  the upper bound, or null to end with the last partition
+     */
+    public Iterator<Map.Entry<DecoratedKey, V>> iterator(RowPosition from, boolean fromInclusive, RowPosition to, boolean toInclusive);
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.dht.Token;
+
+/**
+ * A key that keeps its filter hash, so that bloom filter lookups don't hash it again.
+ */
+public class PreHashedDecoratedKey extends BufferDecoratedKey
+{
+    private final long hash0;
+    private final long hash1;
+
+    public PreHashedDecoratedKey(Token token, ByteBuffer key, long hash0, long hash1)
+    {
+        super(token, key);
+        this.hash0 = hash0;
+        this.hash1 = hash1;
+    }
+
+    public static PreHashedDecoratedKey of(DecoratedKey key)
+    {
+        long[] hash = new long[2];
+        key.filterHash(hash);
+        return new PreHashedDecoratedKey(key.getToken(), key.getKey(), hash[0], hash[1]);
+    }
+
+    @Override
+    public void filterHash(long[] dest)
+    {
+        dest[0] = hash0;
+        dest[1] = hash1;
+    }
+}
@@ -31,7 +31,9 @@ import org.apache.cassandra.io.ISerializer;
 import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.utils.ObjectSizes;
 
 public class RowIndexEntry<T> implements IMeasurableMemory
@@ -87,11 +89,24 @@ public class RowIndexEntry<T> implements IMeasurableMemory
         return 0;
     }
 
+    /**
+     * @return the column index held by this entry, which is empty for entries that only know its position in the
+     * primary index; {@link #columnsIndex(SegmentedFile, ISerializer)} returns the column index of any entry.
+     */
     public List<T> columnsIndex()
     {
         return Collections.emptyList();
     }
 
+    /**
+     * @return the column index of the row; entries that only know its position in the primary index return a view
+     * of it reading the IndexInfo asked for through {@code indexFile}.
+     */
+    public List<T> columnsIndex(SegmentedFile indexFile, ISerializer<T> idxSerializer)
+    {
+        return columnsIndex();
+    }
+
     public long unsharedHeapSize()
     {
         return EMPTY_SIZE;
@@ -113,16 +128,21 @@ public class RowIndexEntry<T> implements IMeasurableMemory
             this.idxSerializer = idxSerializer;
         }
 
+        /**
+         * Entries that don't hold their column index are written without it, as those of unindexed rows: the row
+         * header in the data file has their deletion time.
+         */
         public void serialize(RowIndexEntry<IndexHelper.IndexInfo> rie, DataOutputPlus out) throws IOException
         {
             out.writeLong(rie.position);
             out.writeInt(rie.promotedSize(idxSerializer));
 
-            if (rie.isIndexed())
+            List<IndexHelper.IndexInfo> index = rie.columnsIndex();
+            if (!index.isEmpty())
             {
                 DeletionTime.serializer.serialize(rie.deletionTime(), out);
-                out.writeInt(rie.columnsIndex().size());
-                for (IndexHelper.IndexInfo info : rie.columnsIndex())
+                out.writeInt(index.size());
+                for (IndexHelper.IndexInfo info : index)
                     idxSerializer.serialize(info, out);
             }
         }
@@ -168,10 +188,9 @@ public class RowIndexEntry<T> implements IMeasurableMemory
         {
             int size = TypeSizes.NATIVE.sizeof(rie.position) + TypeSizes.NATIVE.sizeof(rie.promotedSize(idxSerializer));
 
-            if (rie.isIndexed())
+            List<IndexHelper.IndexInfo> index = rie.columnsIndex();
+            if (!index.isEmpty())
             {
-                List<IndexHelper.IndexInfo> index = rie.columnsIndex();
-
                 size += DeletionTime.serializer.serializedSize(rie.deletionTime(), TypeSizes.NATIVE);
                 size += TypeSizes.NATIVE.sizeof(index.size());
 
@@ -184,6 +203,105 @@ public class RowIndexEntry<T> implements IMeasurableMemory
         }
     }
 
+    /**
+     * Serializes the column index of indexed entries after a table of the offsets of its IndexInfo, so that it can be
+     * binary searched where it is written. Entries read from a file, which must be the primary index, do not
+     * deserialize their column index but remember its position; the key cache serializes them as that position, after
+     * the negated number of IndexInfo.
+     */
+    public static class ShallowSerializer implements IndexSerializer<IndexHelper.IndexInfo>
+    {
+        private final ISerializer<IndexHelper.IndexInfo> idxSerializer;
+
+        public ShallowSerializer(ISerializer<IndexHelper.IndexInfo> idxSerializer)
+        {
+            this.idxSerializer = idxSerializer;
+        }
+
+        public void serialize(RowIndexEntry<IndexHelper.IndexInfo> rie, DataOutputPlus out) throws IOException
+        {
+            out.writeLong(rie.position);
+            out.writeInt(promotedSize(rie));
+
+            if (rie instanceof ShallowIndexedEntry)
+            {
+                ShallowIndexedEntry entry = (ShallowIndexedEntry) rie;
+                DeletionTime.serializer.serialize(entry.deletionTime, out);
+                out.writeInt(-entry.columnsCount);
+                out.writeLong(entry.columnsIndexPosition);
+            }
+            else if (!rie.columnsIndex().isEmpty())
+            {
+                List<IndexHelper.IndexInfo> index = rie.columnsIndex();
+                DeletionTime.serializer.serialize(rie.deletionTime(), out);
+                out.writeInt(index.size());
+                int offset = 0;
+                for (IndexHelper.IndexInfo info : index)
+                {
+                    out.writeInt(offset);
+                    offset += Ints.checkedCast(idxSerializer.serializedSize(info, TypeSizes.NATIVE));
+                }
+                for (IndexHelper.IndexInfo info : index)
+                    idxSerializer.serialize(info, out);
+            }
+        }
+
+        public RowIndexEntry<IndexHelper.IndexInfo> deserialize(DataInput in, Version version) throws IOException
+        {
+            long position = in.readLong();
+
+            int size = in.readInt();
+            if (size <= 0)
+                return new RowIndexEntry<>(position);
+
+            DeletionTime deletionTime = DeletionTime.serializer.deserialize(in);
+            int entries = in.readInt();
+            if (entries < 0)
+                return new ShallowIndexedEntry(position, deletionTime, -entries, in.readLong());
+
+            if (in instanceof FileDataInput)
+            {
+                long columnsIndexPosition = ((FileDataInput) in).getFilePointer();
+                FileUtils.skipBytesFully(in, size - (int) DeletionTime.serializer.serializedSize(deletionTime, TypeSizes.NATIVE) - TypeSizes.NATIVE.sizeof(entries));
+                return new ShallowIndexedEntry(position, deletionTime, entries, columnsIndexPosition);
+            }
+
+            FileUtils.skipBytesFully(in, entries * TypeSizes.NATIVE.sizeof(0));
+            List<IndexHelper.IndexInfo> columnsIndex = new ArrayList<>(entries);
+            for (int i = 0; i < entries; i++)
+                columnsIndex.add(idxSerializer.deserialize(in));
+            return new IndexedEntry(position, deletionTime, columnsIndex);
+        }
+
+        public int serializedSize(RowIndexEntry<IndexHelper.IndexInfo> rie)
+        {
+            int size = promotedSize(rie);
+            return TypeSizes.NATIVE.sizeof(rie.position) + TypeSizes.NATIVE.sizeof(size) + size;
+        }
+
+        private int promotedSize(RowIndexEntry<IndexHelper.IndexInfo> rie)
+        {
+            TypeSizes typeSizes = TypeSizes.NATIVE;
+            if (rie instanceof ShallowIndexedEntry)
+            {
+                ShallowIndexedEntry entry = (ShallowIndexedEntry) rie;
+                return (int) DeletionTime.serializer.serializedSize(entry.deletionTime, typeSizes)
+                     + typeSizes.sizeof(entry.columnsCount)
+                     + typeSizes.sizeof(entry.columnsIndexPosition);
+            }
+
+            List<IndexHelper.IndexInfo> index = rie.columnsIndex();
+            if (index.isEmpty())
+                return 0;
+
+            long size = DeletionTime.serializer.serializedSize(rie.deletionTime(), typeSizes);
+            size += typeSizes.sizeof(index.size());
+            for (IndexHelper.IndexInfo info : index)
+                size += typeSizes.sizeof(0) + idxSerializer.serializedSize(info, typeSizes); // offset and IndexInfo
+            return Ints.checkedCast(size);
+        }
+    }
+
     /**
      * An entry in the row index for a row whose columns are indexed.
      */
@@ -241,4 +359,51 @@ public class RowIndexEntry<T> implements IMeasurableMemory
                    + ObjectSizes.sizeOfReferenceArray(columnsIndex.size());
         }
     }
+
+    /**
+     * An entry in the row index for a row whose columns are indexed, holding the position of the column index in the
+     * primary index rather than the column index itself.
+     */
+    private static class ShallowIndexedEntry extends RowIndexEntry<IndexHelper.IndexInfo>
+    {
+        private static final long BASE_SIZE = ObjectSizes.measure(new ShallowIndexedEntry(0, DeletionTime.LIVE, 2, 0));
+
+        private final DeletionTime deletionTime;
+        private final int columnsCount;
+        private final long columnsIndexPosition;
+
+        private ShallowIndexedEntry(long position, DeletionTime deletionTime, int columnsCount, long columnsIndexPosition)
+        {
+            super(position);
+            assert deletionTime != null;
+            assert columnsCount > 1;
+            this.deletionTime = deletionTime;
+            this.columnsCount = columnsCount;
+            this.columnsIndexPosition = columnsIndexPosition;
+        }
+
+        @Override
+        public boolean isIndexed()
+        {
+            return true;
+        }
+
+        @Override
+        public DeletionTime deletionTime()
+        {
+            return deletionTime;
+        }
+
+        @Override
+        public List<IndexHelper.IndexInfo> columnsIndex(SegmentedFile indexFile, ISerializer<IndexHelper.IndexInfo> idxSerializer)
+        {
+            return new IndexHelper.SerializedIndexInfoList(indexFile, columnsIndexPosition, columnsCount, idxSerializer);
+        }
+
+        @Override
+        public long unsharedHeapSize()
+        {
+            return BASE_SIZE + deletionTime.unsharedHeapSize();
+        }
+    }
 }
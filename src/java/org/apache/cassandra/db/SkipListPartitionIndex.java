@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Indexes the partitions of a memtable in a ConcurrentSkipListMap; works with any partitioner.
+ */
+public class SkipListPartitionIndex<V> implements MemtablePartitionIndex<V>
+{
+    // We index the memtable by RowPosition only for the purpose of being able
+    // to select key range using Token.KeyBound. However putIfAbsent() ensures that we
+    // actually only store DecoratedKey.
+    private final ConcurrentNavigableMap<RowPosition, V> rows = new ConcurrentSkipListMap<>();
+
+    public V get(DecoratedKey key)
+    {
+        return rows.get(key);
+    }
+
+    public V putIfAbsent(DecoratedKey key, V value)
+    {
+        return rows.putIfAbsent(key, value);
+    }
+
+    public boolean isEmpty()
+    {
+        return rows.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    public Iterator<Map.Entry<DecoratedKey, V>> iterator(RowPosition from, boolean fromInclusive, RowPosition to, boolean toInclusive)
+    {
+        ConcurrentNavigableMap<RowPosition, V> range = rows;
+        if (from != null)
+            range = range.tailMap(from, fromInclusive);
+        if (to != null)
+            range = range.headMap(to, toInclusive);
+        // Object cast is required since otherwise we can't turn RowPosition into DecoratedKey
+        return (Iterator<Map.Entry<DecoratedKey, V>>) (Object) range.entrySet().iterator();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.collect.AbstractIterator;
+
+import org.apache.cassandra.dht.LongToken;
+
+/**
+ * Indexes the partitions of a memtable by their (long) token, for the Murmur3Partitioner.
+ *
+ * The token range is split into a fixed number of buckets by the high bits of the token, and each bucket keeps its
+ * partitions in sorted arrays, guarded by a read-write lock. Unlike a ConcurrentSkipListMap, this allocates no
+ * object per partition besides its key (the arrays grow by doubling), which keeps the GC cost of memtables holding
+ * millions of small partitions down, especially when their contents are off-heap. Murmur3 tokens are evenly
+ * distributed, so the buckets stay small enough for insertions into the arrays to be cheap.
+ */
+public class TokenBucketPartitionIndex<V> implements MemtablePartitionIndex<V>
+{
+    private static final int BUCKET_BITS = 12;
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+    private static final Object[] EMPTY = new Object[0];
+
+    // buckets are created on their first partition, as most memtables are small
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(1 << BUCKET_BITS);
+    private volatile boolean isEmpty = true;
+
+    public V get(DecoratedKey key)
+    {
+        long token = token(key);
+        Bucket bucket = buckets.get(bucketIndex(token));
+        return bucket == null ? null : this.<V>cast(bucket.get(token, key));
+    }
+
+    public V putIfAbsent(DecoratedKey key, V value)
+    {
+        long token = token(key);
+        int index = bucketIndex(token);
+        Bucket bucket = buckets.get(index);
+        if (bucket == null)
+        {
+            bucket = new Bucket();
+            if (!buckets.compareAndSet(index, null, bucket))
+                bucket = buckets.get(index);
+        }
+
+        V previous = cast(bucket.putIfAbsent(token, key, value));
+        if (previous == null && isEmpty)
+            isEmpty = false;
+        return previous;
+    }
+
+    public boolean isEmpty()
+    {
+        return isEmpty;
+    }
+
+    public Iterator<Map.Entry<DecoratedKey, V>> iterator(final RowPosition from, final boolean fromInclusive, final RowPosition to, final boolean toInclusive)
+    {
+        return new AbstractIterator<Map.Entry<DecoratedKey, V>>()
+        {
+            private int nextBucket = from == null ? 0 : bucketIndex(token(from));
+            private final int lastBucket = to == null ? buckets.length() - 1 : bucketIndex(token(to));
+
+            // the keys and values of the current bucket within the bounds, interleaved
+            private Object[] entries = EMPTY;
+            private int position;
+
+            protected Map.Entry<DecoratedKey, V> computeNext()
+            {
+                while (position == entries.length)
+                {
+                    if (nextBucket > lastBucket)
+                        return endOfData();
+
+                    Bucket bucket = buckets.get(nextBucket++);
+                    entries = bucket == null ? EMPTY : bucket.entries(from, fromInclusive, to, toInclusive);
+                    position = 0;
+                }
+
+                DecoratedKey key = (DecoratedKey) entries[position++];
+                V value = cast(entries[position++]);
+                return new AbstractMap.SimpleImmutableEntry<>(key, value);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cast(Object value)
+    {
+        return (T) value;
+    }
+
+    private static long token(RowPosition position)
+    {
+        return ((LongToken) position.getToken()).longValue();
+    }
+
+    // maps the signed token range onto the buckets in order
+    private static int bucketIndex(long token)
+    {
+        return (int) ((token ^ Long.MIN_VALUE) >>> (64 - BUCKET_BITS));
+    }
+
+    private static final class Bucket
+    {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // sorted by token, then key
+        private long[] tokens = new long[INITIAL_BUCKET_CAPACITY];
+        private DecoratedKey[] keys = new DecoratedKey[INITIAL_BUCKET_CAPACITY];
+        private Object[] values = new Object[INITIAL_BUCKET_CAPACITY];
+        private int size;
+
+        Object get(long token, DecoratedKey key)
+        {
+            lock.readLock().lock();
+            try
+            {
+                int index = search(token, key);
+                return index >= 0 ? values[index] : null;
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+
+        Object putIfAbsent(long token, DecoratedKey key, Object value)
+        {
+            lock.writeLock().lock();
+            try
+            {
+                int index = search(token, key);
+                if (index >= 0)
+                    return values[index];
+
+                index = -index - 1;
+                if (size == tokens.length)
+                {
+                    int capacity = size * 2;
+                    tokens = Arrays.copyOf(tokens, capacity);
+                    keys = Arrays.copyOf(keys, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+                System.arraycopy(tokens, index, tokens, index + 1, size - index);
+                System.arraycopy(keys, index, keys, index + 1, size - index);
+                System.arraycopy(values, index, values, index + 1, size - index);
+                tokens[index] = token;
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                return null;
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return the keys and values between the bounds, interleaved
+         */
+        Object[] entries(RowPosition from, boolean fromInclusive, RowPosition to, boolean toInclusive)
+        {
+            lock.readLock().lock();
+            try
+            {
+                int start = from == null ? 0 : ceiling(from, fromInclusive);
+                int end = to == null ? size : ceiling(to, !toInclusive);
+                if (end <= start)
+                    return EMPTY;
+
+                Object[] entries = new Object[2 * (end - start)];
+                for (int i = start, j = 0; i < end; i++)
+                {
+                    entries[j++] = keys[i];
+                    entries[j++] = values[i];
+                }
+                return entries;
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+
+        // binary search, with the same return value convention as Arrays.binarySearch
+        private int search(long token, DecoratedKey key)
+        {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, token, key);
+                if (cmp < 0)
+                    low = mid + 1;
+                else if (cmp > 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+
+        // the index of the first entry at (if inclusive) or after position
+        private int ceiling(RowPosition position, boolean inclusive)
+        {
+            long token = token(position);
+            int low = 0;
+            int high = size;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, token, position);
+                if (cmp < 0 || (cmp == 0 && !inclusive))
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        private int compare(int index, long token, RowPosition position)
+        {
+            int cmp = Long.compare(tokens[index], token);
+            return cmp != 0 ? cmp : keys[index].compareTo(position);
+        }
+    }
+}
@@ -17,12 +17,17 @@
  */
 package org.apache.cassandra.db.commitlog;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.utils.concurrent.WaitQueue;
 import org.slf4j.*;
 
+import java.io.File;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import static org.apache.cassandra.db.commitlog.CommitLogSegment.Allocation;
 
@@ -31,25 +36,31 @@ public abstract class AbstractCommitLogService
     // how often should we log syngs that lag behind our desired period
     private static final long LAG_REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(5);
 
-    private final Thread thread;
-    private volatile boolean shutdown = false;
+    // one sync thread per commit log directory, so that a slow disk doesn't hold back the others
+    private final Thread[] threads;
+    private final Semaphore[] haveWork;
+    // the directory synced by each thread, null for a single thread syncing all segments
+    private final File[] directories;
+    protected volatile boolean shutdown = false;
 
     // all Allocations written before this time will be synced
     protected volatile long lastSyncedAt = System.currentTimeMillis();
+    // the same, for the segments of each commit log directory
+    private final AtomicLongArray lastSyncedAtByDirectory;
 
     // counts of total written, and pending, log messages
     private final AtomicLong written = new AtomicLong(0);
+    private final AtomicLong syncs = new AtomicLong(0);
     protected final AtomicLong pending = new AtomicLong(0);
 
     // signal that writers can wait on to be notified of a completed sync
     protected final WaitQueue syncComplete = new WaitQueue();
-    private final Semaphore haveWork = new Semaphore(1);
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractCommitLogService.class);
 
     /**
      * CommitLogService provides a fsync service for Allocations, fulfilling either the
-     * Batch or Periodic contract.
+     * Batch, Group or Periodic contract.
      *
      * Subclasses may be notified when a sync finishes by using the syncComplete WaitQueue.
      */
@@ -58,7 +69,35 @@ public abstract class AbstractCommitLogService
         if (pollIntervalMillis < 1)
             throw new IllegalArgumentException(String.format("Commit log flush interval must be positive: %dms", pollIntervalMillis));
 
-        Runnable runnable = new Runnable()
+        String[] locations = DatabaseDescriptor.getCommitLogLocations();
+        threads = new Thread[locations.length];
+        haveWork = new Semaphore[locations.length];
+        directories = new File[locations.length];
+        lastSyncedAtByDirectory = new AtomicLongArray(locations.length);
+        for (int i = 0; i < locations.length; i++)
+        {
+            haveWork[i] = new Semaphore(1);
+            lastSyncedAtByDirectory.set(i, lastSyncedAt);
+            // with a single directory, sync all segments wherever they are
+            directories[i] = locations.length == 1 ? null : new File(locations[i]);
+            threads[i] = new Thread(syncRunnable(commitLog, directories[i], i, pollIntervalMillis),
+                                    locations.length == 1 ? name : name + ":" + i);
+        }
+    }
+
+    /**
+     * Starts the sync threads, once the subclass is fully constructed.
+     */
+    void start()
+    {
+        for (Thread thread : threads)
+            thread.start();
+    }
+
+    private Runnable syncRunnable(final CommitLog commitLog, final File directory, final int index, final long pollIntervalMillis)
+    {
+        final Semaphore haveWork = this.haveWork[index];
+        return new Runnable()
         {
             public void run()
             {
@@ -78,8 +117,10 @@ public abstract class AbstractCommitLogService
 
                         // sync and signal
                         long syncStarted = System.currentTimeMillis();
-                        commitLog.sync(shutdown);
-                        lastSyncedAt = syncStarted;
+                        beforeSync(index);
+                        commitLog.sync(shutdown, directory);
+                        markSynced(index, syncStarted);
+                        syncs.incrementAndGet();
                         syncComplete.signalAll();
 
 
@@ -113,7 +154,7 @@ public abstract class AbstractCommitLogService
 
                         try
                         {
-                            haveWork.tryAcquire(sleep, TimeUnit.MILLISECONDS);
+                            awaitNextSync(index, sleep);
                         }
                         catch (InterruptedException e)
                         {
@@ -138,9 +179,16 @@ public abstract class AbstractCommitLogService
                 }
             }
         };
+    }
 
-        thread = new Thread(runnable, name);
-        thread.start();
+    private void markSynced(int index, long syncStarted)
+    {
+        lastSyncedAtByDirectory.set(index, syncStarted);
+        long min = syncStarted;
+        for (int i = 0; i < lastSyncedAtByDirectory.length(); i++)
+            min = Math.min(min, lastSyncedAtByDirectory.get(i));
+        // racing threads may publish a stale minimum, which is only ever conservative
+        lastSyncedAt = min;
     }
 
     /**
@@ -154,25 +202,100 @@ public abstract class AbstractCommitLogService
 
     protected abstract void maybeWaitForSync(Allocation alloc);
 
+    /**
+     * Called by the sync thread of the given directory before each sync; any Allocation of that directory
+     * completed before this call will be synced.
+     */
+    protected void beforeSync(int index)
+    {
+    }
+
+    /**
+     * Called by the sync thread of the given directory between two syncs, once it is done with the first one.
+     * Waits until the next sync is due in {@code millis}, or requested sooner.
+     */
+    protected void awaitNextSync(int index, long millis) throws InterruptedException
+    {
+        awaitWork(index, millis);
+    }
+
+    /**
+     * Waits up to {@code millis} for a sync of the given directory to be requested.
+     *
+     * @return true if one was requested
+     */
+    protected final boolean awaitWork(int index, long millis) throws InterruptedException
+    {
+        return haveWork[index].tryAcquire(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for a sync of the given directory to be requested, however long it takes.
+     */
+    protected final void awaitWork(int index) throws InterruptedException
+    {
+        haveWork[index].acquire();
+    }
+
+    /**
+     * @return the index of the directory the given Allocation is synced with, that is of its sync thread
+     */
+    protected int directoryIndex(Allocation alloc)
+    {
+        if (directories.length == 1)
+            return 0;
+        File directory = alloc.getSegment().getDirectory();
+        for (int i = 0; i < directories.length; i++)
+        {
+            if (directories[i].equals(directory))
+                return i;
+        }
+        throw new IllegalStateException("Commit log segment outside of the commit log directories: " + alloc.getSegment());
+    }
+
     /**
      * Sync immediately, but don't block for the sync to cmplete
      */
     public WaitQueue.Signal requestExtraSync()
     {
         WaitQueue.Signal signal = syncComplete.register();
-        haveWork.release(1);
+        requestSync();
         return signal;
     }
 
+    /**
+     * Wake up the sync thread, if it is waiting for its next scheduled sync
+     */
+    protected void requestSync()
+    {
+        for (Semaphore semaphore : haveWork)
+            semaphore.release(1);
+    }
+
+    /**
+     * Wake up the sync thread of the given directory, if it is waiting for its next scheduled sync
+     */
+    protected void requestSync(int index)
+    {
+        haveWork[index].release(1);
+    }
+
     public void shutdown()
     {
         shutdown = true;
-        haveWork.release(1);
+        requestSync();
     }
 
     public void awaitTermination() throws InterruptedException
     {
-        thread.join();
+        for (Thread thread : threads)
+            thread.join();
+    }
+
+    @VisibleForTesting
+    long getSyncCount()
+    {
+        return syncs.get();
     }
 
     public long getCompletedTasks()
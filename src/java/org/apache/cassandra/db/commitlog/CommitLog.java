@@ -31,7 +31,6 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.commons.lang3.StringUtils;
 
-import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.io.FSWriteError;
@@ -69,9 +68,18 @@ public class CommitLog implements CommitLogMBean
 
         allocator = new CommitLogSegmentManager();
 
-        executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
-                 ? new BatchCommitLogService(this)
-                 : new PeriodicCommitLogService(this);
+        switch (DatabaseDescriptor.getCommitLogSync())
+        {
+            case batch:
+                executor = new BatchCommitLogService(this);
+                break;
+            case group:
+                executor = new GroupCommitLogService(this);
+                break;
+            default:
+                executor = new PeriodicCommitLogService(this);
+        }
+        executor.start();
 
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         try
@@ -105,17 +113,24 @@ public class CommitLog implements CommitLogMBean
             }
         };
 
-        // submit all existing files in the commit log dir for archiving prior to recovery - CASSANDRA-6904
-        for (File file : new File(DatabaseDescriptor.getCommitLogLocation()).listFiles(unmanagedFilesFilter))
+        // submit all existing files in the commit log dirs for archiving prior to recovery - CASSANDRA-6904
+        for (String directory : DatabaseDescriptor.getCommitLogLocations())
         {
-            archiver.maybeArchive(file.getPath(), file.getName());
-            archiver.maybeWaitForArchiving(file.getName());
+            for (File file : new File(directory).listFiles(unmanagedFilesFilter))
+            {
+                archiver.maybeArchive(file.getPath(), file.getName());
+                archiver.maybeWaitForArchiving(file.getName());
+            }
         }
 
         assert archiver.archivePending.isEmpty() : "Not all commit log archive tasks were completed before restore";
         archiver.maybeRestoreArchive();
 
-        File[] files = new File(DatabaseDescriptor.getCommitLogLocation()).listFiles(unmanagedFilesFilter);
+        // segment ids are unique across directories, and replay follows their order
+        List<File> allFiles = new ArrayList<>();
+        for (String directory : DatabaseDescriptor.getCommitLogLocations())
+            allFiles.addAll(Arrays.asList(new File(directory).listFiles(unmanagedFilesFilter)));
+        File[] files = allFiles.toArray(new File[allFiles.size()]);
         int replayed = 0;
         if (files.length == 0)
         {
@@ -145,7 +160,16 @@ public class CommitLog implements CommitLogMBean
     public int recover(File... clogs) throws IOException
     {
         CommitLogReplayer recovery = new CommitLogReplayer();
-        recovery.recover(clogs);
+        try
+        {
+            recovery.recover(clogs);
+        }
+        catch (Throwable t)
+        {
+            // blockForWrites won't be called to stop the replay threads
+            recovery.shutdown();
+            throw t;
+        }
         return recovery.blockForWrites();
     }
 
@@ -186,13 +210,22 @@ public class CommitLog implements CommitLogMBean
      * Forces a disk flush on the commit log files that need it.  Blocking.
      */
     public void sync(boolean syncAllSegments)
+    {
+        sync(syncAllSegments, null);
+    }
+
+    /**
+     * Forces a disk flush of the segments in the provided commit log directory, or of all segments if it is null.
+     */
+    void sync(boolean syncAllSegments, File directory)
     {
         CommitLogSegment current = allocator.allocatingFrom();
         for (CommitLogSegment segment : allocator.getActiveSegments())
         {
             if (!syncAllSegments && segment.id > current.id)
                 return;
-            segment.sync();
+            if (directory == null || directory.equals(segment.getDirectory()))
+                segment.sync();
         }
     }
 
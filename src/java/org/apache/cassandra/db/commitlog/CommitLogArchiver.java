@@ -39,6 +39,7 @@ import org.apache.cassandra.utils.WrappedRunnable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 
 public class CommitLogArchiver
@@ -189,6 +190,7 @@ public class CommitLogArchiver
         if (Strings.isNullOrEmpty(restoreDirectories))
             return;
 
+        String[] locations = DatabaseDescriptor.getCommitLogLocations();
         for (String dir : restoreDirectories.split(DELIMITER))
         {
             File[] files = new File(dir).listFiles();
@@ -214,7 +216,7 @@ public class CommitLogArchiver
                 if (descriptor.version > CommitLogDescriptor.VERSION_21)
                     throw new IllegalStateException("Unsupported commit log version: " + descriptor.version);
 
-                File toFile = new File(DatabaseDescriptor.getCommitLogLocation(), descriptor.fileName());
+                File toFile = restoreTarget(descriptor, locations);
                 if (toFile.exists())
                 {
                     logger.debug("Skipping restore of archive {} as the segment already exists in the restore location {}",
@@ -236,6 +238,23 @@ public class CommitLogArchiver
         }
     }
 
+    /**
+     * @return the file to restore the archived segment with the given descriptor to: spread over the commit log
+     * directories by segment id, or wherever a previous restore already put it
+     */
+    @VisibleForTesting
+    static File restoreTarget(CommitLogDescriptor descriptor, String[] locations)
+    {
+        String fileName = descriptor.fileName();
+        for (String location : locations)
+        {
+            File file = new File(location, fileName);
+            if (file.exists())
+                return file;
+        }
+        return new File(locations[(int) Math.abs(descriptor.id % locations.length)], fileName);
+    }
+
     private void exec(String command) throws IOException
     {
         ProcessBuilder pb = new ProcessBuilder(command.split(" "));
@@ -20,15 +20,23 @@
  */
 package org.apache.cassandra.db.commitlog;
 
+import java.io.DataInput;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import org.json.simple.JSONValue;
+
+import org.apache.cassandra.config.ParameterizedClass;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.PureJavaCrc32;
@@ -52,32 +60,88 @@ public class CommitLogDescriptor
     @VisibleForTesting
     public static final int current_version = VERSION_30;
 
-    // [version, id, checksum]
+    // [version, id, checksum]; since VERSION_30 the parameters length and parameters precede the checksum
     static final int HEADER_SIZE = 4 + 8 + 4;
 
+    private static final String COMPRESSION_PARAMETERS_KEY = "compressionParameters";
+    private static final String COMPRESSION_CLASS_KEY = "compressionClass";
+
     final int version;
     public final long id;
+    public final ParameterizedClass compression;
 
-    public CommitLogDescriptor(int version, long id)
+    public CommitLogDescriptor(int version, long id, ParameterizedClass compression)
     {
         this.version = version;
         this.id = id;
+        this.compression = compression;
+    }
+
+    public CommitLogDescriptor(int version, long id)
+    {
+        this(version, id, null);
+    }
+
+    public CommitLogDescriptor(long id, ParameterizedClass compression)
+    {
+        this(current_version, id, compression);
     }
 
     public CommitLogDescriptor(long id)
     {
-        this(current_version, id);
+        this(id, null);
     }
 
-    static void writeHeader(ByteBuffer out, CommitLogDescriptor descriptor)
+    /**
+     * @return the size of the header as written by {@link #writeHeader}; the first sync marker follows it
+     */
+    public int headerSize()
     {
-        out.putInt(0, descriptor.version);
-        out.putLong(4, descriptor.id);
+        if (version < VERSION_30)
+            return HEADER_SIZE;
+        return HEADER_SIZE + 2 + encodeParameters(compression).length;
+    }
+
+    public static void writeHeader(ByteBuffer out, CommitLogDescriptor descriptor)
+    {
+        ByteBuffer header = out.duplicate();
+        header.position(0);
         PureJavaCrc32 crc = new PureJavaCrc32();
+        header.putInt(descriptor.version);
         crc.updateInt(descriptor.version);
+        header.putLong(descriptor.id);
         crc.updateInt((int) (descriptor.id & 0xFFFFFFFFL));
         crc.updateInt((int) (descriptor.id >>> 32));
-        out.putInt(12, crc.getCrc());
+        if (descriptor.version >= VERSION_30)
+        {
+            byte[] parameters = encodeParameters(descriptor.compression);
+            header.putShort((short) parameters.length);
+            crc.updateInt(parameters.length);
+            header.put(parameters);
+            crc.update(parameters, 0, parameters.length);
+        }
+        header.putInt(crc.getCrc());
+    }
+
+    private static byte[] encodeParameters(ParameterizedClass compression)
+    {
+        Map<String, Object> params = new TreeMap<>();
+        if (compression != null)
+        {
+            params.put(COMPRESSION_CLASS_KEY, compression.class_name);
+            params.put(COMPRESSION_PARAMETERS_KEY, compression.parameters);
+        }
+        return JSONValue.toJSONString(params).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ParameterizedClass decodeParameters(byte[] encoded)
+    {
+        Map<String, Object> params = (Map<String, Object>) JSONValue.parse(new String(encoded, StandardCharsets.UTF_8));
+        if (params == null || !params.containsKey(COMPRESSION_CLASS_KEY))
+            return null;
+        return new ParameterizedClass((String) params.get(COMPRESSION_CLASS_KEY),
+                                      (Map<String, String>) params.get(COMPRESSION_PARAMETERS_KEY));
     }
 
     public static CommitLogDescriptor fromHeader(File file)
@@ -85,16 +149,7 @@ public class CommitLogDescriptor
         try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
         {
             assert raf.getFilePointer() == 0;
-            int version = raf.readInt();
-            long id = raf.readLong();
-            int crc = raf.readInt();
-            PureJavaCrc32 checkcrc = new PureJavaCrc32();
-            checkcrc.updateInt(version);
-            checkcrc.updateInt((int) (id & 0xFFFFFFFFL));
-            checkcrc.updateInt((int) (id >>> 32));
-            if (crc == checkcrc.getCrc())
-                return new CommitLogDescriptor(version, id);
-            return null;
+            return readHeader(raf);
         }
         catch (EOFException e)
         {
@@ -106,6 +161,34 @@ public class CommitLogDescriptor
         }
     }
 
+    /**
+     * Reads a header written by {@link #writeHeader} from the current position of the input.
+     *
+     * @return the descriptor recorded in the header, or null if the header checksum does not match
+     */
+    public static CommitLogDescriptor readHeader(DataInput input) throws IOException
+    {
+        PureJavaCrc32 checkcrc = new PureJavaCrc32();
+        int version = input.readInt();
+        checkcrc.updateInt(version);
+        long id = input.readLong();
+        checkcrc.updateInt((int) (id & 0xFFFFFFFFL));
+        checkcrc.updateInt((int) (id >>> 32));
+        byte[] parameters = null;
+        if (version >= VERSION_30)
+        {
+            int parametersLength = input.readShort() & 0xFFFF;
+            checkcrc.updateInt(parametersLength);
+            parameters = new byte[parametersLength];
+            input.readFully(parameters);
+            checkcrc.update(parameters, 0, parametersLength);
+        }
+        int crc = input.readInt();
+        if (crc != checkcrc.getCrc())
+            return null;
+        return new CommitLogDescriptor(version, id, parameters == null ? null : decodeParameters(parameters));
+    }
+
     public static CommitLogDescriptor fromFileName(String name)
     {
         Matcher matcher;
@@ -152,7 +235,7 @@ public class CommitLogDescriptor
 
     public String toString()
     {
-        return "(" + version + "," + id + ")";
+        return "(" + version + "," + id + (compression == null ? "" : "," + compression) + ")";
     }
 
     public boolean equals(Object that)
@@ -162,7 +245,7 @@ public class CommitLogDescriptor
 
     public boolean equals(CommitLogDescriptor that)
     {
-        return this.version == that.version && this.id == that.id;
+        return this.version == that.version && this.id == that.id && Objects.equal(this.compression, that.compression);
     }
 
 }
@@ -19,8 +19,13 @@
 package org.apache.cassandra.db.commitlog;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Predicate;
@@ -32,13 +37,19 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.FileSegmentInputStream;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.*;
 
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
@@ -48,22 +59,33 @@ public class CommitLogReplayer
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = 1024;
     private static final int LEGACY_END_OF_SEGMENT_MARKER = 0;
+    private static final int REPLAY_THREADS = Integer.getInteger("cassandra.commitlog_replay_threads", DatabaseDescriptor.getConcurrentWriters());
 
     private final Set<Keyspace> keyspacesRecovered;
-    private final List<Future<?>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final Queue<Future<?>> futures;
+    // mutations are applied by single-threaded executors chosen by partition key, so that
+    // the mutations of a given partition are applied in the order they were written
+    private final ExecutorService[] applyExecutors;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
     private final PureJavaCrc32 checksum;
     private byte[] buffer;
+    private byte[] uncompressedBuffer;
+    private final long startNanos;
 
     public CommitLogReplayer()
     {
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
-        this.futures = new ArrayList<Future<?>>();
+        this.futures = new ArrayDeque<Future<?>>();
+        this.applyExecutors = new ExecutorService[Math.max(1, REPLAY_THREADS)];
+        for (int i = 0; i < applyExecutors.length; i++)
+            applyExecutors[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplay:" + i, 1);
         this.buffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.uncompressedBuffer = new byte[4096];
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
+        this.startNanos = System.nanoTime();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
         this.checksum = new PureJavaCrc32();
@@ -97,21 +119,69 @@ public class CommitLogReplayer
 
     public int blockForWrites()
     {
+        // wait for all the writes to finish on the replay executors
+        try
+        {
+            FBUtilities.waitOnFutures(futures);
+            futures.clear();
+        }
+        finally
+        {
+            shutdown();
+        }
+        logger.debug("Finished waiting on mutations from recovery");
+
+        // counted on the replay executors, so only complete once they are done
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.info(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
 
-        // wait for all the writes to finish on the mutation stage
-        FBUtilities.waitOnFutures(futures);
-        logger.debug("Finished waiting on mutations from recovery");
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        logger.info("Replayed {} mutations in {} ms ({} mutations/s) using {} threads",
+                    replayedCount.get(), elapsedMillis, replayedCount.get() * 1000L / elapsedMillis, applyExecutors.length);
 
         // flush replayed keyspaces
-        futures.clear();
+        List<Future<?>> flushes = new ArrayList<Future<?>>();
         for (Keyspace keyspace : keyspacesRecovered)
-            futures.addAll(keyspace.flush());
-        FBUtilities.waitOnFutures(futures);
+            flushes.addAll(keyspace.flush());
+        FBUtilities.waitOnFutures(flushes);
         return replayedCount.get();
     }
 
+    /**
+     * Stops the threads mutations are replayed on, once the submitted ones are applied. Called by
+     * {@link #blockForWrites()}, and needs to be called directly if replay fails before that.
+     */
+    public void shutdown()
+    {
+        for (ExecutorService executor : applyExecutors)
+            executor.shutdown();
+    }
+
+    /**
+     * Picks the executor to apply a serialized mutation on from its partition key, which is all we need to read
+     * before handing the rest of the deserialization to that executor.
+     */
+    private ExecutorService applyExecutorFor(byte[] serializedMutation, int messagingVersion)
+    {
+        if (applyExecutors.length == 1)
+            return applyExecutors[0];
+
+        int hash;
+        try
+        {
+            DataInputStream in = new DataInputStream(new FastByteArrayInputStream(serializedMutation));
+            if (messagingVersion < MessagingService.VERSION_20)
+                in.readUTF();
+            hash = ByteBufferUtil.readWithShortLength(in).hashCode();
+        }
+        catch (IOException e)
+        {
+            // the mutation can't be deserialized either; let the executor report it
+            hash = 0;
+        }
+        return applyExecutors[(hash & Integer.MAX_VALUE) % applyExecutors.length];
+    }
+
     private int readSyncMarker(CommitLogDescriptor descriptor, int offset, RandomAccessReader reader) throws IOException
     {
         if (offset > reader.length() - CommitLogSegment.SYNC_MARKER_SIZE)
@@ -148,16 +218,16 @@ public class CommitLogReplayer
         return end;
     }
 
-    private int getStartOffset(long segmentId, int version)
+    private int getStartOffset(CommitLogDescriptor desc)
     {
-        if (globalPosition.segment < segmentId)
+        if (globalPosition.segment < desc.id)
         {
-            if (version >= CommitLogDescriptor.VERSION_21)
-                return CommitLogDescriptor.HEADER_SIZE + CommitLogSegment.SYNC_MARKER_SIZE;
+            if (desc.version >= CommitLogDescriptor.VERSION_21)
+                return desc.headerSize() + CommitLogSegment.SYNC_MARKER_SIZE;
             else
                 return 0;
         }
-        else if (globalPosition.segment == segmentId)
+        else if (globalPosition.segment == desc.id)
             return globalPosition.position;
         else
             return -1;
@@ -230,25 +300,49 @@ public class CommitLogReplayer
         final ReplayFilter replayFilter = ReplayFilter.create();
         logger.info("Replaying {}", file.getPath());
         CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
-        final long segmentId = desc.id;
-        logger.info("Replaying {} (CL version {}, messaging version {})",
-                    file.getPath(),
-                    desc.version,
-                    desc.getMessagingVersion());
         RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
 
         try
         {
             assert reader.length() <= Integer.MAX_VALUE;
-            int offset = getStartOffset(segmentId, desc.version);
+            if (desc.version >= CommitLogDescriptor.VERSION_21)
+            {
+                // the header records how the segment was written, e.g. its compression
+                try
+                {
+                    desc = CommitLogDescriptor.readHeader(reader);
+                }
+                catch (EOFException e)
+                {
+                    desc = null;
+                }
+                if (desc == null)
+                {
+                    logger.warn("Encountered bad header in commit log {}, skipping", file.getPath());
+                    return;
+                }
+            }
+            logger.info("Replaying {} (CL version {}, messaging version {}, compression {})",
+                        file.getPath(),
+                        desc.version,
+                        desc.getMessagingVersion(),
+                        desc.compression);
+
+            int offset = getStartOffset(desc);
             if (offset < 0)
             {
                 logger.debug("skipping replay of fully-flushed {}", file);
                 return;
             }
 
-            int prevEnd = CommitLogDescriptor.HEADER_SIZE;
-            main: while (true)
+            if (desc.compression != null)
+            {
+                replayCompressed(reader, desc, offset, replayFilter);
+                return;
+            }
+
+            int prevEnd = desc.headerSize();
+            while (true)
             {
 
                 int end = prevEnd;
@@ -268,178 +362,280 @@ public class CommitLogReplayer
 
                 reader.seek(offset);
 
-                 /* read the logs populate Mutation and apply */
-                while (reader.getPosition() < end && !reader.isEOF())
+                if (!replaySyncSection(reader, end, desc, replayFilter))
+                    break;
+
+                if (desc.version < CommitLogDescriptor.VERSION_21)
+                    break;
+
+                offset = end + CommitLogSegment.SYNC_MARKER_SIZE;
+                prevEnd = end;
+            }
+        }
+        finally
+        {
+            FileUtils.closeQuietly(reader);
+            logger.info("Finished reading {}", file);
+        }
+    }
+
+    /**
+     * Replays the sections of a compressed segment. The sync markers locate the compressed sections within the file,
+     * while replay positions refer to the uncompressed data, so we rebuild the latter from the section lengths.
+     */
+    private void replayCompressed(RandomAccessReader reader, CommitLogDescriptor desc, int offset, ReplayFilter replayFilter) throws IOException
+    {
+        ICompressor compressor;
+        try
+        {
+            compressor = CompressionParameters.createCompressor(desc.compression);
+        }
+        catch (ConfigurationException e)
+        {
+            throw new IOException(String.format("Could not create compressor %s to replay commit log %s", desc.compression, reader.getPath()), e);
+        }
+
+        int prevEnd = desc.headerSize();
+        int sectionStart = prevEnd + CommitLogSegment.SYNC_MARKER_SIZE;
+        while (true)
+        {
+            int end = readSyncMarker(desc, prevEnd, reader);
+            if (end <= prevEnd)
+                break;
+
+            int uncompressedLength;
+            try
+            {
+                uncompressedLength = reader.readInt();
+            }
+            catch (EOFException e)
+            {
+                break;
+            }
+            int sectionEnd = sectionStart + uncompressedLength;
+
+            if (sectionEnd > offset)
+            {
+                int compressedLength = end - (int) reader.getFilePointer();
+                if (compressedLength < 0 || uncompressedLength < 0)
                 {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Reading mutation at {}", reader.getFilePointer());
+                    logger.warn("Encountered bad compressed section at position {} of commit log {}", prevEnd, reader.getPath());
+                    break;
+                }
+                if (compressedLength > buffer.length)
+                    buffer = new byte[(int) (1.2 * compressedLength)];
+                if (uncompressedLength > uncompressedBuffer.length)
+                    uncompressedBuffer = new byte[(int) (1.2 * uncompressedLength)];
 
-                    long claimedCRC32;
-                    int serializedSize;
-                    try
-                    {
-                        // any of the reads may hit EOF
-                        serializedSize = reader.readInt();
-                        if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
-                        {
-                            logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
-                            break main;
-                        }
+                try
+                {
+                    reader.readFully(buffer, 0, compressedLength);
+                    if (compressor.uncompress(buffer, 0, compressedLength, uncompressedBuffer, 0) != uncompressedLength)
+                        throw new IOException("Uncompressed length does not match the one recorded in the section");
+                }
+                catch (IOException e)
+                {
+                    // the sync marker checksum was valid, so this is real corruption rather than a torn write
+                    logger.warn(String.format("Could not decompress section at position %d of commit log %s", prevEnd, reader.getPath()), e);
+                    break;
+                }
 
-                        // Mutation must be at LEAST 10 bytes:
-                        // 3 each for a non-empty Keyspace and Key (including the
-                        // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
-                        // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
-                        if (serializedSize < 10)
-                            break main;
-
-                        long claimedSizeChecksum;
-                        if (desc.version < CommitLogDescriptor.VERSION_21)
-                            claimedSizeChecksum = reader.readLong();
-                        else
-                            claimedSizeChecksum = reader.readInt() & 0xffffffffL;
-                        checksum.reset();
-                        if (desc.version < CommitLogDescriptor.VERSION_20)
-                            checksum.update(serializedSize);
-                        else
-                            checksum.updateInt(serializedSize);
-
-                        if (checksum.getValue() != claimedSizeChecksum)
-                            break main; // entry wasn't synced correctly/fully. that's
-                        // ok.
-
-                        if (serializedSize > buffer.length)
-                            buffer = new byte[(int) (1.2 * serializedSize)];
-                        reader.readFully(buffer, 0, serializedSize);
-                        if (desc.version < CommitLogDescriptor.VERSION_21)
-                            claimedCRC32 = reader.readLong();
-                        else
-                            claimedCRC32 = reader.readInt() & 0xffffffffL;
-                    }
-                    catch (EOFException eof)
-                    {
-                        break main; // last CL entry didn't get completely written. that's ok.
-                    }
+                if (logger.isDebugEnabled())
+                    logger.debug("Replaying {} between {} and {}", reader.getPath(), Math.max(offset, sectionStart), sectionEnd);
 
-                    checksum.update(buffer, 0, serializedSize);
-                    if (claimedCRC32 != checksum.getValue())
-                    {
-                        // this entry must not have been fsynced. probably the rest is bad too,
-                        // but just in case there is no harm in trying them (since we still read on an entry boundary)
-                        continue;
-                    }
+                FileSegmentInputStream sectionReader = new FileSegmentInputStream(ByteBuffer.wrap(uncompressedBuffer, 0, uncompressedLength),
+                                                                                  reader.getPath(),
+                                                                                  sectionStart);
+                sectionReader.seek(Math.max(offset, sectionStart));
+                if (!replaySyncSection(sectionReader, sectionEnd, desc, replayFilter))
+                    break;
+            }
 
-                    /* deserialize the commit log entry */
-                    FastByteArrayInputStream bufIn = new FastByteArrayInputStream(buffer, 0, serializedSize);
-                    final Mutation mutation;
-                    try
-                    {
-                        mutation = Mutation.serializer.deserialize(new DataInputStream(bufIn),
-                                                                   desc.getMessagingVersion(),
-                                                                   ColumnSerializer.Flag.LOCAL);
-                        // doublecheck that what we read is [still] valid for the current schema
-                        for (ColumnFamily cf : mutation.getColumnFamilies())
-                            for (Cell cell : cf)
-                                cf.getComparator().validate(cell.name());
-                    }
-                    catch (UnknownColumnFamilyException ex)
-                    {
-                        if (ex.cfId == null)
-                            continue;
-                        AtomicInteger i = invalidMutations.get(ex.cfId);
-                        if (i == null)
-                        {
-                            i = new AtomicInteger(1);
-                            invalidMutations.put(ex.cfId, i);
-                        }
-                        else
-                            i.incrementAndGet();
-                        continue;
-                    }
-                    catch (Throwable t)
-                    {
-                        JVMStabilityInspector.inspectThrowable(t);
-                        File f = File.createTempFile("mutation", "dat");
-                        DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
-                        try
-                        {
-                            out.write(buffer, 0, serializedSize);
-                        }
-                        finally
-                        {
-                            out.close();
-                        }
-                        String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
-                                                  f.getAbsolutePath());
-                        logger.error(st, t);
-                        continue;
-                    }
+            sectionStart = sectionEnd + CommitLogSegment.SYNC_MARKER_SIZE;
+            prevEnd = end;
+        }
+    }
+
+    /**
+     * Reads and applies the mutations from the reader's position up to end.
+     *
+     * @return false if the rest of the segment should not be replayed, i.e. we encountered the end of the
+     * written data or an entry that was not completely synced
+     */
+    private boolean replaySyncSection(FileDataInput reader, int end, CommitLogDescriptor desc, final ReplayFilter replayFilter) throws IOException
+    {
+        final long segmentId = desc.id;
+        final int messagingVersion = desc.getMessagingVersion();
+        /* read and checksum the entries here, and hand them to the apply executors to deserialize and apply */
+        while (reader.getFilePointer() < end && !reader.isEOF())
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Reading mutation at {}", reader.getFilePointer());
+
+            long claimedCRC32;
+            int serializedSize;
+            byte[] serializedMutation;
+            try
+            {
+                // any of the reads may hit EOF
+                serializedSize = reader.readInt();
+                if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
+                {
+                    logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
+                    return false;
+                }
+
+                // Mutation must be at LEAST 10 bytes:
+                // 3 each for a non-empty Keyspace and Key (including the
+                // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
+                // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
+                if (serializedSize < 10)
+                    return false;
+
+                long claimedSizeChecksum;
+                if (desc.version < CommitLogDescriptor.VERSION_21)
+                    claimedSizeChecksum = reader.readLong();
+                else
+                    claimedSizeChecksum = reader.readInt() & 0xffffffffL;
+                checksum.reset();
+                if (desc.version < CommitLogDescriptor.VERSION_20)
+                    checksum.update(serializedSize);
+                else
+                    checksum.updateInt(serializedSize);
+
+                if (checksum.getValue() != claimedSizeChecksum)
+                    return false; // entry wasn't synced correctly/fully. that's
+                // ok.
+
+                // the entry is handed over to another thread, so it can't share the read buffer
+                serializedMutation = new byte[serializedSize];
+                reader.readFully(serializedMutation, 0, serializedSize);
+                if (desc.version < CommitLogDescriptor.VERSION_21)
+                    claimedCRC32 = reader.readLong();
+                else
+                    claimedCRC32 = reader.readInt() & 0xffffffffL;
+            }
+            catch (EOFException eof)
+            {
+                return false; // last CL entry didn't get completely written. that's ok.
+            }
+
+            checksum.update(serializedMutation, 0, serializedSize);
+            if (claimedCRC32 != checksum.getValue())
+            {
+                // this entry must not have been fsynced. probably the rest is bad too,
+                // but just in case there is no harm in trying them (since we still read on an entry boundary)
+                continue;
+            }
+            CommitLog.instance.metrics.replayedBytes.mark(serializedSize);
+
+            final byte[] entry = serializedMutation;
+            final long entryLocation = reader.getFilePointer();
+            Runnable runnable = new WrappedRunnable()
+            {
+                public void runMayThrow() throws IOException
+                {
+                    Mutation mutation = deserializeMutation(entry, messagingVersion);
+                    if (mutation == null)
+                        return;
 
                     if (logger.isDebugEnabled())
                         logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), ByteBufferUtil.bytesToHex(mutation.key()), "{" + StringUtils.join(mutation.getColumnFamilies().iterator(), ", ") + "}");
 
-                    final long entryLocation = reader.getFilePointer();
-                    Runnable runnable = new WrappedRunnable()
+                    if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
+                        return;
+                    if (pointInTimeExceeded(mutation))
+                        return;
+
+                    final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
+
+                    // Rebuild the mutation, omitting column families that
+                    //    a) the user has requested that we ignore,
+                    //    b) have already been flushed,
+                    // or c) are part of a cf that was dropped.
+                    // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
+                    Mutation newMutation = null;
+                    for (ColumnFamily columnFamily : replayFilter.filter(mutation))
                     {
-                        public void runMayThrow() throws IOException
+                        if (Schema.instance.getCF(columnFamily.id()) == null)
+                            continue; // dropped
+
+                        ReplayPosition rp = cfPositions.get(columnFamily.id());
+
+                        // replay if current segment is newer than last flushed one or,
+                        // if it is the last known segment, if we are after the replay position
+                        if (segmentId > rp.segment || (segmentId == rp.segment && entryLocation > rp.position))
                         {
-                            if (Schema.instance.getKSMetaData(mutation.getKeyspaceName()) == null)
-                                return;
-                            if (pointInTimeExceeded(mutation))
-                                return;
-
-                            final Keyspace keyspace = Keyspace.open(mutation.getKeyspaceName());
-
-                            // Rebuild the mutation, omitting column families that
-                            //    a) the user has requested that we ignore,
-                            //    b) have already been flushed,
-                            // or c) are part of a cf that was dropped.
-                            // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
-                            Mutation newMutation = null;
-                            for (ColumnFamily columnFamily : replayFilter.filter(mutation))
-                            {
-                                if (Schema.instance.getCF(columnFamily.id()) == null)
-                                    continue; // dropped
-
-                                ReplayPosition rp = cfPositions.get(columnFamily.id());
-
-                                // replay if current segment is newer than last flushed one or,
-                                // if it is the last known segment, if we are after the replay position
-                                if (segmentId > rp.segment || (segmentId == rp.segment && entryLocation > rp.position))
-                                {
-                                    if (newMutation == null)
-                                        newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
-                                    newMutation.add(columnFamily);
-                                    replayedCount.incrementAndGet();
-                                }
-                            }
-                            if (newMutation != null)
-                            {
-                                assert !newMutation.isEmpty();
-                                Keyspace.open(newMutation.getKeyspaceName()).apply(newMutation, false);
-                                keyspacesRecovered.add(keyspace);
-                            }
+                            if (newMutation == null)
+                                newMutation = new Mutation(mutation.getKeyspaceName(), mutation.key());
+                            newMutation.add(columnFamily);
+                            replayedCount.incrementAndGet();
                         }
-                    };
-                    futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
-                    if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+                    }
+                    if (newMutation != null)
                     {
-                        FBUtilities.waitOnFutures(futures);
-                        futures.clear();
+                        assert !newMutation.isEmpty();
+                        Keyspace.open(newMutation.getKeyspaceName()).apply(newMutation, false);
+                        keyspacesRecovered.add(keyspace);
+                        CommitLog.instance.metrics.replayedMutations.mark();
                     }
                 }
+            };
+            futures.add(applyExecutorFor(entry, messagingVersion).submit(runnable));
+            // bound the number of entries held in memory, without draining the executors
+            while (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+                FBUtilities.waitOnFuture(futures.poll());
+        }
+        return true;
+    }
 
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    break;
-
-                offset = end + CommitLogSegment.SYNC_MARKER_SIZE;
-                prevEnd = end;
+    /**
+     * @return the deserialized mutation, or null if it can't be replayed
+     */
+    private Mutation deserializeMutation(byte[] serializedMutation, int messagingVersion) throws IOException
+    {
+        try
+        {
+            Mutation mutation = Mutation.serializer.deserialize(new DataInputStream(new FastByteArrayInputStream(serializedMutation)),
+                                                                messagingVersion,
+                                                                ColumnSerializer.Flag.LOCAL);
+            // doublecheck that what we read is [still] valid for the current schema
+            for (ColumnFamily cf : mutation.getColumnFamilies())
+                for (Cell cell : cf)
+                    cf.getComparator().validate(cell.name());
+            return mutation;
+        }
+        catch (UnknownColumnFamilyException ex)
+        {
+            if (ex.cfId == null)
+                return null;
+            AtomicInteger i = invalidMutations.get(ex.cfId);
+            if (i == null)
+            {
+                i = invalidMutations.putIfAbsent(ex.cfId, new AtomicInteger(1));
+                if (i == null)
+                    return null;
             }
+            i.incrementAndGet();
+            return null;
         }
-        finally
+        catch (Throwable t)
         {
-            FileUtils.closeQuietly(reader);
-            logger.info("Finished reading {}", file);
+            JVMStabilityInspector.inspectThrowable(t);
+            File f = File.createTempFile("mutation", "dat");
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(f));
+            try
+            {
+                out.write(serializedMutation);
+            }
+            finally
+            {
+                out.close();
+            }
+            String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
+                                      f.getAbsolutePath());
+            logger.error(st, t);
+            return null;
         }
     }
 
@@ -21,7 +21,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -39,7 +38,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.ParameterizedClass;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.Mutation;
@@ -54,8 +55,11 @@ import org.apache.cassandra.utils.concurrent.WaitQueue;
  * A single commit log file on disk. Manages creation of the file and writing mutations to disk,
  * as well as tracking the last mutation position of any "dirty" CFs covered by the segment file. Segment
  * files are initially allocated to a fixed size and can grow to accomidate a larger value if necessary.
+ *
+ * Mutations are always appended to an in-memory buffer of the segment size; subclasses decide how the
+ * synced sections of that buffer reach the disk (see MemoryMappedSegment, DirectIOSegment and CompressedSegment).
  */
-public class CommitLogSegment
+public abstract class CommitLogSegment
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogSegment.class);
 
@@ -64,10 +68,13 @@ public class CommitLogSegment
     static
     {
         long maxId = Long.MIN_VALUE;
-        for (File file : new File(DatabaseDescriptor.getCommitLogLocation()).listFiles())
+        for (String directory : DatabaseDescriptor.getCommitLogLocations())
         {
-            if (CommitLogDescriptor.isValid(file.getName()))
-                maxId = Math.max(CommitLogDescriptor.fromFileName(file.getName()).id, maxId);
+            for (File file : new File(directory).listFiles())
+            {
+                if (CommitLogDescriptor.isValid(file.getName()))
+                    maxId = Math.max(CommitLogDescriptor.fromFileName(file.getName()).id, maxId);
+            }
         }
         idBase = Math.max(System.currentTimeMillis(), maxId + 1);
     }
@@ -92,6 +99,9 @@ public class CommitLogSegment
     // to ensure nobody writes to it after we've decided we're done with it
     private int discardedTailFrom;
 
+    // guards against releasing the buffer and file more than once, as a segment may be closed both on its final sync and on recycling
+    private boolean closed;
+
     // a signal for writers to wait on to confirm the log message they provided has been written to disk
     private final WaitQueue syncComplete = new WaitQueue();
 
@@ -104,19 +114,42 @@ public class CommitLogSegment
     public final long id;
 
     private final File logFile;
-    private final RandomAccessFile logFileAccessor;
-    private final int fd;
+    protected final RandomAccessFile logFileAccessor;
+    protected final FileChannel channel;
+    protected final int fd;
 
-    private final MappedByteBuffer buffer;
+    protected final ByteBuffer buffer;
 
     public final CommitLogDescriptor descriptor;
 
     /**
-     * @return a newly minted segment file
+     * @return a newly minted segment file in the provided commit log directory
+     */
+    static CommitLogSegment freshSegment(File directory)
+    {
+        return createSegment(directory, null);
+    }
+
+    /**
+     * @return a segment recycling the existing file at filePath, in the same directory
+     */
+    static CommitLogSegment createSegment(String filePath)
+    {
+        return createSegment(new File(filePath).getParentFile(), filePath);
+    }
+
+    /**
+     * Creates a segment of the type configured by commitlog_compression and commitlog_disk_access_mode.
+     *
+     * @param filePath  if not null, the existing file to recycle.
      */
-    static CommitLogSegment freshSegment()
+    private static CommitLogSegment createSegment(File directory, String filePath)
     {
-        return new CommitLogSegment(null);
+        if (DatabaseDescriptor.getCommitLogCompression() != null)
+            return new CompressedSegment(directory, filePath);
+        return DatabaseDescriptor.getCommitLogDiskAccessMode() == Config.CommitLogDiskAccessMode.direct
+             ? new DirectIOSegment(directory, filePath)
+             : new MemoryMappedSegment(directory, filePath);
     }
 
     static long getNextId()
@@ -127,13 +160,15 @@ public class CommitLogSegment
     /**
      * Constructs a new segment file.
      *
+     * @param directory  the commit log directory the segment is created in.
      * @param filePath  if not null, recycles the existing file by renaming it and truncating it to CommitLog.SEGMENT_SIZE.
+     * @param compression  the compression recorded in the segment header, or null.
      */
-    CommitLogSegment(String filePath)
+    CommitLogSegment(File directory, String filePath, ParameterizedClass compression)
     {
         id = getNextId();
-        descriptor = new CommitLogDescriptor(id);
-        logFile = new File(DatabaseDescriptor.getCommitLogLocation(), descriptor.fileName());
+        descriptor = new CommitLogDescriptor(id, compression);
+        logFile = new File(directory, descriptor.fileName());
         boolean isCreating = true;
 
         try
@@ -157,20 +192,18 @@ public class CommitLogSegment
             if (isCreating)
                 logger.debug("Creating new commit log segment {}", logFile.getPath());
 
-            // Map the segment, extending or truncating it to the standard segment size.
-            // (We may have restarted after a segment size configuration change, leaving "incorrectly"
-            // sized segments on disk.)
-            logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
+            channel = logFileAccessor.getChannel();
             fd = CLibrary.getfd(logFileAccessor.getFD());
 
-            buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
+            buffer = createBuffer();
             // write the header
             CommitLogDescriptor.writeHeader(buffer, descriptor);
+            int headerSize = descriptor.headerSize();
             // mark the initial sync marker as uninitialised
-            buffer.putInt(CommitLogDescriptor.HEADER_SIZE, 0);
-            buffer.putLong(CommitLogDescriptor.HEADER_SIZE + 4, 0);
-            allocatePosition.set(CommitLogDescriptor.HEADER_SIZE + SYNC_MARKER_SIZE);
-            lastSyncedOffset = CommitLogDescriptor.HEADER_SIZE;
+            buffer.putInt(headerSize, 0);
+            buffer.putInt(headerSize + 4, 0);
+            allocatePosition.set(headerSize + SYNC_MARKER_SIZE);
+            lastSyncedOffset = headerSize;
         }
         catch (IOException e)
         {
@@ -178,6 +211,13 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * Creates the buffer mutations are appended to, sized to the commit log segment size. Called by the
+     * constructor once the segment file has been opened, so implementations may only rely on the state
+     * initialised by this class.
+     */
+    abstract ByteBuffer createBuffer() throws IOException;
+
     /**
      * Allocate space in this buffer for the provided mutation, and return the allocated Allocation object.
      * Returns null if there is not enough space in this segment, and a new segment is needed.
@@ -258,8 +298,8 @@ public class CommitLogSegment
     {
         try
         {
-            // check we have more work to do
-            if (allocatePosition.get() <= lastSyncedOffset + SYNC_MARKER_SIZE)
+            // check we have more work to do; a closed segment no longer has a buffer to write from
+            if (closed || allocatePosition.get() <= lastSyncedOffset + SYNC_MARKER_SIZE)
                 return;
 
             // allocate a new sync marker; this is both necessary in itself, but also serves to demarcate
@@ -294,25 +334,11 @@ public class CommitLogSegment
 
             assert nextMarker > lastSyncedOffset;
 
-            // write previous sync marker to point to next sync marker
-            // we don't chain the crcs here to ensure this method is idempotent if it fails
-            int offset = lastSyncedOffset;
-            final PureJavaCrc32 crc = new PureJavaCrc32();
-            crc.updateInt((int) (id & 0xFFFFFFFFL));
-            crc.updateInt((int) (id >>> 32));
-            crc.updateInt(offset);
-            buffer.putInt(offset, nextMarker);
-            buffer.putInt(offset + 4, crc.getCrc());
-
-            // zero out the next sync marker so replayer can cleanly exit
-            if (nextMarker < buffer.capacity())
-            {
-                buffer.putInt(nextMarker, 0);
-                buffer.putInt(nextMarker + 4, 0);
-            }
-
+            // write out the section between the previous and the next sync marker, then
             // actually perform the sync and signal those waiting for it
-            buffer.force();
+            int startMarker = lastSyncedOffset;
+            write(startMarker, nextMarker);
+            flush(startMarker, nextMarker);
 
             if (close)
                 nextMarker = buffer.capacity();
@@ -320,7 +346,6 @@ public class CommitLogSegment
             lastSyncedOffset = nextMarker;
             syncComplete.signalAll();
 
-            CLibrary.trySkipCache(fd, offset, nextMarker);
             if (close)
                 close();
         }
@@ -330,6 +355,32 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * Writes the section of the buffer between the sync marker at startMarker and nextMarker, including a
+     * sync marker that allows the replayer to find the end of the section.
+     */
+    abstract void write(int startMarker, int nextMarker) throws IOException;
+
+    /**
+     * Forces the section written by {@link #write} to disk.
+     */
+    abstract void flush(int startMarker, int nextMarker) throws IOException;
+
+    /**
+     * Writes a sync marker at offset in the provided buffer, pointing to the next marker at nextMarker.
+     * The checksum covers the segment id and the position of the marker within the file.
+     * We don't chain the crcs here to ensure sync() is idempotent if it fails.
+     */
+    protected void writeSyncMarker(ByteBuffer out, int offset, int filePosition, int nextMarker)
+    {
+        PureJavaCrc32 crc = new PureJavaCrc32();
+        crc.updateInt((int) (id & 0xFFFFFFFFL));
+        crc.updateInt((int) (id >>> 32));
+        crc.updateInt(filePosition);
+        out.putInt(offset, nextMarker);
+        out.putInt(offset + 4, crc.getCrc());
+    }
+
     public boolean isStillAllocating()
     {
         return allocatePosition.get() < buffer.capacity();
@@ -362,7 +413,7 @@ public class CommitLogSegment
 
         close();
 
-        return new CommitLogSegment(getPath());
+        return createSegment(getPath());
     }
 
     /**
@@ -381,6 +432,22 @@ public class CommitLogSegment
         return logFile.getPath();
     }
 
+    /**
+     * @return the commit log directory containing the segment file
+     */
+    File getDirectory()
+    {
+        return logFile.getParentFile();
+    }
+
+    /**
+     * @return the number of bytes allocated in the segment that have not been synced yet
+     */
+    int unsyncedBytes()
+    {
+        return Math.max(0, Math.min(allocatePosition.get(), buffer.capacity()) - lastSyncedOffset);
+    }
+
     /**
      * @return the file name of this segment
      */
@@ -409,13 +476,15 @@ public class CommitLogSegment
     /**
      * Close the segment file.
      */
-    void close()
+    synchronized void close()
     {
+        if (closed)
+            return;
+        closed = true;
+
         try
         {
-            if (FileUtils.isCleanerAvailable())
-                FileUtils.clean(buffer);
-            logFileAccessor.close();
+            internalClose();
         }
         catch (IOException e)
         {
@@ -423,6 +492,14 @@ public class CommitLogSegment
         }
     }
 
+    /**
+     * Releases the buffer and the file handle; only ever called once.
+     */
+    protected void internalClose() throws IOException
+    {
+        logFileAccessor.close();
+    }
+
     void markDirty(Mutation mutation, int allocatedPosition)
     {
         for (ColumnFamily columnFamily : mutation.getColumnFamilies())
@@ -604,6 +681,11 @@ public class CommitLogSegment
             return buffer;
         }
 
+        int size()
+        {
+            return buffer.limit() - position;
+        }
+
         // markWritten() MUST be called once we are done with the segment or the CL will never flush
         // but must not be called more than once
         void markWritten()
@@ -19,8 +19,10 @@ package org.apache.cassandra.db.commitlog;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -40,6 +42,7 @@ import com.google.common.util.concurrent.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamilyStore;
@@ -93,11 +96,21 @@ public class CommitLogSegmentManager
      */
     private volatile boolean createReserveSegments = false;
 
+    /** The commit log directories segments are spread across */
+    private final File[] directories;
+
     private final Thread managerThread;
+    // held by the manager thread while it creates or recycles a segment, so that resetUnsafe doesn't miss it
+    private final Object resetLock = new Object();
     private volatile boolean run = true;
 
     public CommitLogSegmentManager()
     {
+        String[] locations = DatabaseDescriptor.getCommitLogLocations();
+        directories = new File[locations.length];
+        for (int i = 0; i < locations.length; i++)
+            directories[i] = new File(locations[i]);
+
         // The run loop for the manager thread
         Runnable runnable = new WrappedRunnable()
         {
@@ -111,13 +124,16 @@ public class CommitLogSegmentManager
                         if (task == null)
                         {
                             // if we have no more work to do, check if we should create a new segment
-                            if (availableSegments.isEmpty() && (activeSegments.isEmpty() || createReserveSegments))
+                            synchronized (resetLock)
                             {
-                                logger.debug("No segments in reserve; creating a fresh one");
-                                size.addAndGet(DatabaseDescriptor.getCommitLogSegmentSize());
-                                // TODO : some error handling in case we fail to create a new segment
-                                availableSegments.add(CommitLogSegment.freshSegment());
-                                hasAvailableSegments.signalAll();
+                                if (availableSegments.isEmpty() && (activeSegments.isEmpty() || createReserveSegments))
+                                {
+                                    logger.debug("No segments in reserve; creating a fresh one");
+                                    size.addAndGet(DatabaseDescriptor.getCommitLogSegmentSize());
+                                    // TODO : some error handling in case we fail to create a new segment
+                                    availableSegments.add(CommitLogSegment.freshSegment(nextSegmentDirectory()));
+                                    hasAvailableSegments.signalAll();
+                                }
                             }
 
                             // flush old Cfs if we're full
@@ -150,12 +166,15 @@ public class CommitLogSegmentManager
                             }
                         }
 
-                        CommitLogSegment recycled = task.call();
-                        if (recycled != null)
+                        synchronized (resetLock)
                         {
-                            // if the work resulted in a segment to recycle, publish it
-                            availableSegments.add(recycled);
-                            hasAvailableSegments.signalAll();
+                            CommitLogSegment recycled = task.call();
+                            if (recycled != null)
+                            {
+                                // if the work resulted in a segment to recycle, publish it
+                                availableSegments.add(recycled);
+                                hasAvailableSegments.signalAll();
+                            }
                         }
                     }
                     catch (Throwable t)
@@ -273,6 +292,50 @@ public class CommitLogSegmentManager
         }
     }
 
+    /**
+     * Picks the directory of the next fresh segment according to commitlog_directory_allocation.
+     *
+     * Segments are still filled one at a time, in the order they were created, so that segment ids and replay
+     * positions keep following the order of the writes regardless of the directory a segment lives in.
+     * Recycled segments stay in the directory of the file they reuse.
+     */
+    private File nextSegmentDirectory()
+    {
+        if (directories.length == 1)
+            return directories[0];
+
+        CommitLogSegment last = null;
+        for (CommitLogSegment segment : Iterables.concat(activeSegments, availableSegments))
+            last = segment;
+        // the directory following the one of the most recent segment
+        int next = last == null ? 0 : (Arrays.asList(directories).indexOf(last.getDirectory()) + 1) % directories.length;
+
+        if (DatabaseDescriptor.getCommitLogDirectoryAllocation() == Config.CommitLogDirectoryAllocation.queue_depth)
+        {
+            // prefer the directory with the least data waiting to be synced to its disk
+            Map<File, Long> queueDepths = new HashMap<>();
+            for (CommitLogSegment segment : activeSegments)
+            {
+                Long depth = queueDepths.get(segment.getDirectory());
+                queueDepths.put(segment.getDirectory(), (depth == null ? 0 : depth) + segment.unsyncedBytes());
+            }
+            long minDepth = Long.MAX_VALUE;
+            int candidate = next;
+            for (int i = 0; i < directories.length; i++, candidate = (candidate + 1) % directories.length)
+            {
+                Long depth = queueDepths.get(directories[candidate]);
+                if (depth == null)
+                    depth = 0L;
+                if (depth < minDepth)
+                {
+                    next = candidate;
+                    minDepth = depth;
+                }
+            }
+        }
+        return directories[next];
+    }
+
     private void wakeManager()
     {
         // put a NO-OP on the queue, to trigger management thread (and create a new segment if necessary)
@@ -395,7 +458,7 @@ public class CommitLogSegmentManager
         {
             public CommitLogSegment call()
             {
-                return new CommitLogSegment(file.getPath());
+                return CommitLogSegment.createSegment(file.getPath());
             }
         });
     }
@@ -519,15 +582,28 @@ public class CommitLogSegmentManager
         while (!segmentManagementTasks.isEmpty())
             Thread.yield();
 
-        for (CommitLogSegment segment : activeSegments)
-            segment.close();
-        activeSegments.clear();
+        // also lock out writers switching to a new segment, which could publish one we have already closed
+        synchronized (resetLock)
+        {
+            synchronized (this)
+            {
+                // writers may still be appending to the active segments (e.g. background compactions recording their
+                // history), so stop further allocations and let the in-flight ones finish before unmapping the buffers
+                for (CommitLogSegment segment : activeSegments)
+                {
+                    segment.discardUnusedTail();
+                    segment.waitForModifications();
+                    segment.close();
+                }
+                activeSegments.clear();
 
-        for (CommitLogSegment segment : availableSegments)
-            segment.close();
-        availableSegments.clear();
+                for (CommitLogSegment segment : availableSegments)
+                    segment.close();
+                availableSegments.clear();
 
-        allocatingFrom = null;
+                allocatingFrom = null;
+            }
+        }
     }
 
     /**
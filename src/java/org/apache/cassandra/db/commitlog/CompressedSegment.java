@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.compress.ICompressor.WrappedArray;
+
+/*
+ * Compressed commit log segment. Provides an in-memory buffer for the mutation threads. On sync compresses the written
+ * section of the buffer and writes it to the destination channel, preceded by a sync marker and the uncompressed length
+ * of the section. The file therefore only grows as sections are synced.
+ *
+ * Positions within the segment (ReplayPosition, sync marker offsets in the buffer) always refer to the uncompressed
+ * data; the replayer rebuilds them from the section lengths.
+ */
+public class CompressedSegment extends CommitLogSegment
+{
+    // the compressed sync marker is followed by the uncompressed length of the section
+    static final int COMPRESSED_MARKER_SIZE = SYNC_MARKER_SIZE + 4;
+
+    // the compression buffer is reused by the (few) threads that sync segments
+    private static final ThreadLocal<WrappedArray> compressedBufferHolder = new ThreadLocal<WrappedArray>()
+    {
+        protected WrappedArray initialValue()
+        {
+            return new WrappedArray(new byte[0]);
+        }
+    };
+
+    // segment-sized buffers are expensive to allocate, so we keep the ones of closed segments for the next segments
+    private static final int MAX_BUFFERPOOL_SIZE = 3;
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private final ICompressor compressor;
+
+    /**
+     * Constructs a new segment file.
+     *
+     * @param directory  the commit log directory the segment is created in.
+     * @param filePath  if not null, recycles the existing file by renaming it and truncating it.
+     */
+    CompressedSegment(File directory, String filePath)
+    {
+        super(directory, filePath, DatabaseDescriptor.getCommitLogCompression());
+        try
+        {
+            compressor = CompressionParameters.createCompressor(descriptor.compression);
+        }
+        catch (ConfigurationException e)
+        {
+            // the configuration is validated on startup
+            throw new AssertionError(e);
+        }
+
+        // the header is written uncompressed, so that the replayer can learn about the compression used
+        try
+        {
+            ByteBuffer header = buffer.duplicate();
+            header.limit(descriptor.headerSize()).position(0);
+            while (header.hasRemaining())
+                channel.write(header);
+        }
+        catch (IOException e)
+        {
+            close();
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    ByteBuffer createBuffer() throws IOException
+    {
+        // a recycled file still contains the sections of its previous incarnation
+        channel.truncate(0);
+
+        ByteBuffer buf;
+        while ((buf = bufferPool.poll()) != null)
+        {
+            if (buf.capacity() == DatabaseDescriptor.getCommitLogSegmentSize())
+            {
+                buf.clear();
+                return buf;
+            }
+        }
+        return ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize());
+    }
+
+    void write(int startMarker, int nextMarker) throws IOException
+    {
+        int contentStart = startMarker + SYNC_MARKER_SIZE;
+        int length = nextMarker - contentStart;
+        // the length may be 0 when the segment is being closed
+        assert length > 0 || length == 0 && !isStillAllocating();
+
+        WrappedArray compressedBuffer = compressedBufferHolder.get();
+        int neededBufferSize = compressor.initialCompressedBufferLength(length) + COMPRESSED_MARKER_SIZE;
+        if (compressedBuffer.buffer.length < neededBufferSize)
+            compressedBuffer.buffer = new byte[neededBufferSize];
+
+        int compressedLength = compressor.compress(buffer.array(), buffer.arrayOffset() + contentStart, length,
+                                                   compressedBuffer, COMPRESSED_MARKER_SIZE);
+        ByteBuffer section = ByteBuffer.wrap(compressedBuffer.buffer, 0, COMPRESSED_MARKER_SIZE + compressedLength);
+
+        // Only one thread can be here at a given time, as sync() is synchronized.
+        int filePosition = (int) channel.position();
+        writeSyncMarker(section, 0, filePosition, filePosition + section.remaining());
+        section.putInt(SYNC_MARKER_SIZE, length);
+        while (section.hasRemaining())
+            channel.write(section);
+    }
+
+    void flush(int startMarker, int nextMarker) throws IOException
+    {
+        channel.force(true);
+    }
+
+    @Override
+    protected void internalClose() throws IOException
+    {
+        if (bufferPool.size() < MAX_BUFFERPOOL_SIZE)
+            bufferPool.add(buffer);
+        super.internalClose();
+    }
+}
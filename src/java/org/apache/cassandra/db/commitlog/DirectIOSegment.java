@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.utils.CLibrary;
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
+/*
+ * Direct I/O segment. Provides an off-heap, block-aligned buffer for the mutation threads. On sync writes the blocks
+ * covering the synced section to the destination channel and forces the data (but not the file metadata) to disk.
+ * The file is opened with O_DIRECT where the platform allows it, so that commit log writes neither pollute nor depend
+ * on the page cache; otherwise the written range is dropped from the page cache after the sync.
+ *
+ * The on-disk format is the same as for memory-mapped segments, as the file is preallocated and every section is
+ * written at its offset in the buffer.
+ */
+public class DirectIOSegment extends CommitLogSegment
+{
+    private static final Logger logger = LoggerFactory.getLogger(DirectIOSegment.class);
+
+    // O_DIRECT transfers must be aligned to the logical block size of the device, which is at most a page in practice
+    static final int BLOCK_SIZE = 4096;
+
+    // segment-sized buffers are expensive to allocate, so we keep the ones of closed segments for the next segments
+    private static final int MAX_BUFFERPOOL_SIZE = 3;
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+
+    private final boolean directIO;
+
+    /**
+     * Constructs a new segment file.
+     *
+     * @param directory  the commit log directory the segment is created in.
+     * @param filePath  if not null, recycles the existing file by renaming it and truncating it to CommitLog.SEGMENT_SIZE.
+     */
+    DirectIOSegment(File directory, String filePath)
+    {
+        super(directory, filePath, null);
+        directIO = CLibrary.tryDirectIO(fd);
+        if (!directIO)
+            logger.debug("Unable to open {} for direct I/O, writing through the page cache", getPath());
+    }
+
+    ByteBuffer createBuffer() throws IOException
+    {
+        // Preallocate the file to the standard segment size, so that it matches memory-mapped segments on disk.
+        logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
+
+        ByteBuffer buf;
+        while ((buf = bufferPool.poll()) != null)
+        {
+            if (buf.capacity() == DatabaseDescriptor.getCommitLogSegmentSize())
+            {
+                // whole blocks are written, so don't let the bytes of the previous segment leak past the sync markers
+                buf.clear();
+                MemoryUtil.setMemory(MemoryUtil.getAddress(buf), buf.capacity(), (byte) 0);
+                return buf;
+            }
+        }
+        return allocateAligned(DatabaseDescriptor.getCommitLogSegmentSize());
+    }
+
+    /**
+     * @return a direct buffer of the given size whose address is aligned to BLOCK_SIZE
+     */
+    static ByteBuffer allocateAligned(int size)
+    {
+        ByteBuffer buf = ByteBuffer.allocateDirect(size + BLOCK_SIZE);
+        int offset = (int) -MemoryUtil.getAddress(buf) & (BLOCK_SIZE - 1);
+        buf.position(offset).limit(offset + size);
+        return buf.slice();
+    }
+
+    void write(int startMarker, int nextMarker) throws IOException
+    {
+        // write previous sync marker to point to next sync marker
+        writeSyncMarker(buffer, startMarker, startMarker, nextMarker);
+
+        // zero out the next sync marker so replayer can cleanly exit
+        if (nextMarker < buffer.capacity())
+        {
+            buffer.putInt(nextMarker, 0);
+            buffer.putInt(nextMarker + 4, 0);
+        }
+
+        // Write whole blocks, from the one holding the previous sync marker to the one holding the next. The first
+        // block was partially written by the previous sync, and the last one may hold the beginning of mutations that
+        // are still being appended; both will be overwritten by the next sync.
+        // Only one thread can be here at a given time, as sync() is synchronized.
+        ByteBuffer section = buffer.duplicate();
+        section.limit(blockEnd(nextMarker)).position(startMarker & -BLOCK_SIZE);
+        while (section.hasRemaining())
+            channel.write(section, section.position());
+    }
+
+    void flush(int startMarker, int nextMarker) throws IOException
+    {
+        channel.force(false);
+        if (!directIO)
+            CLibrary.trySkipCache(fd, startMarker, blockEnd(nextMarker) - startMarker);
+    }
+
+    // the end of the block holding the sync marker at nextMarker
+    private int blockEnd(int nextMarker)
+    {
+        return Math.min(buffer.capacity(), (nextMarker + SYNC_MARKER_SIZE + BLOCK_SIZE - 1) & -BLOCK_SIZE);
+    }
+
+    @Override
+    protected void internalClose() throws IOException
+    {
+        if (bufferPool.size() < MAX_BUFFERPOOL_SIZE)
+            bufferPool.add(buffer);
+        super.internalClose();
+    }
+}
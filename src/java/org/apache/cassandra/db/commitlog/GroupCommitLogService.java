@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.utils.concurrent.WaitQueue;
+
+/**
+ * Like batch mode, writes are not acked until the commit log has been fsynced, but the sync thread stays idle until
+ * a writer waits for it. The window then opens: the sync is performed commitlog_sync_group_window_in_ms after the
+ * first writer arrived, or as soon as commitlog_sync_group_size_in_kb are waiting for it, so that every writer
+ * arriving in the meantime shares the same sync, and none waits for longer than the window plus the sync itself.
+ */
+class GroupCommitLogService extends AbstractCommitLogService
+{
+    private final long windowMillis;
+    private final long syncThresholdBytes;
+
+    // for each commit log directory, when the first writer waiting on its next sync arrived (0 if there is none),
+    // and the bytes written by the waiting writers
+    private final AtomicLongArray firstWaiterAt;
+    private final AtomicLongArray pendingBytes;
+
+    public GroupCommitLogService(CommitLog commitLog)
+    {
+        super(commitLog, "COMMIT-LOG-GROUP-WRITER", Math.max(1, (long) DatabaseDescriptor.getCommitLogSyncGroupWindow()));
+        windowMillis = Math.max(1, (long) DatabaseDescriptor.getCommitLogSyncGroupWindow());
+        syncThresholdBytes = DatabaseDescriptor.getCommitLogSyncGroupSize();
+        int directories = DatabaseDescriptor.getCommitLogLocations().length;
+        firstWaiterAt = new AtomicLongArray(directories);
+        pendingBytes = new AtomicLongArray(directories);
+    }
+
+    protected void beforeSync(int index)
+    {
+        // everything written so far is covered by the sync about to start
+        firstWaiterAt.set(index, 0);
+        pendingBytes.set(index, 0);
+    }
+
+    protected void awaitNextSync(int index, long millis) throws InterruptedException
+    {
+        while (!shutdown)
+        {
+            long firstWaiter = firstWaiterAt.get(index);
+            if (firstWaiter == 0)
+            {
+                // idle until a writer waits for a sync
+                awaitWork(index);
+                continue;
+            }
+
+            long remaining = firstWaiter + windowMillis - System.currentTimeMillis();
+            if (remaining <= 0 || pendingBytes.get(index) >= syncThresholdBytes)
+                return;
+            awaitWork(index, remaining);
+        }
+    }
+
+    @Override
+    public WaitQueue.Signal requestExtraSync()
+    {
+        // close the windows straight away, even if no writer is waiting
+        for (int i = 0; i < firstWaiterAt.length(); i++)
+            firstWaiterAt.set(i, 1);
+        return super.requestExtraSync();
+    }
+
+    protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
+    {
+        pending.incrementAndGet();
+        int index = directoryIndex(alloc);
+        long bytes = pendingBytes.addAndGet(index, alloc.size());
+        // the first writer opens the window, and the one crossing the threshold closes it early
+        if (firstWaiterAt.compareAndSet(index, 0, System.currentTimeMillis())
+            || (bytes >= syncThresholdBytes && bytes - alloc.size() < syncThresholdBytes))
+            requestSync(index);
+        alloc.awaitDiskSync();
+        pending.decrementAndGet();
+    }
+}
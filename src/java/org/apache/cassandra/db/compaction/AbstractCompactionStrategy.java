@@ -25,6 +25,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.RateLimiter;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.metadata.TombstoneMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -225,12 +226,12 @@ public abstract class AbstractCompactionStrategy
      * Handle a flushed memtable.
      *
      * @param memtable the flushed memtable
-     * @param sstable the written sstable. can be null if the memtable was clean.
+     * @param sstables the written sstables. can be empty if the memtable was clean.
      */
-    public void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    public void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
     {
-        cfs.getDataTracker().replaceFlushed(memtable, sstable);
-        if (sstable != null)
+        cfs.getDataTracker().replaceFlushed(memtable, sstables);
+        if (!sstables.isEmpty())
             CompactionManager.instance.submitBackground(cfs);
     }
 
@@ -361,6 +362,14 @@ public abstract class AbstractCompactionStrategy
         }
         else
         {
+            TombstoneMetadata tombstones = sstable.getTombstoneMetadata();
+            if (tombstones != null)
+            {
+                // only count the tombstones of the segments where no overlapping sstable holds older data
+                long cells = tombstones.getCellCount();
+                return cells > 0 && tombstones.getPurgeableTombstonesBefore(sstable.partitioner, overlaps, gcBefore) / cells > tombstoneThreshold;
+            }
+
             // what percentage of columns do we expect to compact outside of overlap?
             if (sstable.getIndexSummarySize() < 2)
             {
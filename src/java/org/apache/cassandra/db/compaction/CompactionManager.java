@@ -41,6 +41,7 @@ import javax.management.ObjectName;
 import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
@@ -67,9 +68,11 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.Cell;
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DataTracker;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.db.OnDiskAtom;
+import org.apache.cassandra.db.RowPosition;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.compaction.CompactionInfo.Holder;
 import org.apache.cassandra.db.index.SecondaryIndexBuilder;
@@ -130,6 +133,7 @@ public class CompactionManager implements CompactionManagerMBean
 
     private final CompactionExecutor executor = new CompactionExecutor();
     private final CompactionExecutor validationExecutor = new ValidationExecutor();
+    private final CompactionExecutor subrangeExecutor = new SubrangeExecutor();
     private final static CompactionExecutor cacheCleanupExecutor = new CacheCleanupExecutor();
 
     private final CompactionMetrics metrics = new CompactionMetrics(executor, validationExecutor);
@@ -200,6 +204,120 @@ public class CompactionManager implements CompactionManagerMBean
         return false;
     }
 
+    /**
+     * Periodically drops the sstables of every table that only hold data expired for longer than gc_grace,
+     * independently of the compaction strategy. See {@link #dropExpiredSSTables(ColumnFamilyStore)}.
+     */
+    public void scheduleExpiredSSTableDrops()
+    {
+        int interval = DatabaseDescriptor.getExpiredSSTableCheckIntervalInSeconds();
+        if (interval <= 0)
+            return;
+
+        Runnable runnable = new WrappedRunnable()
+        {
+            protected void runMayThrow()
+            {
+                for (Keyspace keyspace : Keyspace.all())
+                {
+                    for (ColumnFamilyStore cfs : keyspace.getColumnFamilyStores())
+                    {
+                        if (cfs.isAutoCompactionDisabled())
+                            continue;
+
+                        for (ColumnFamilyStore store : cfs.concatWithIndexes())
+                            dropExpiredSSTables(store);
+                    }
+                }
+            }
+        };
+        StorageService.optionalTasks.scheduleWithFixedDelay(runnable, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Deletes the sstables of the given table whose cells have all expired more than gc_grace ago, and that don't
+     * overlap any older data they could shadow. Only the sstable metadata is looked at, nothing is read or rewritten.
+     *
+     * @return the sstables that were dropped
+     */
+    public Set<SSTableReader> dropExpiredSSTables(ColumnFamilyStore cfs)
+    {
+        if (!cfs.isValid())
+            return Collections.emptySet();
+
+        int gcBefore = cfs.gcBefore(System.currentTimeMillis());
+        DataTracker.View view = cfs.getDataTracker().getView();
+        return dropExpiredSSTables(cfs, getExpiredSSTables(view, view.nonCompactingSStables(), gcBefore), gcBefore);
+    }
+
+    /**
+     * Marks the candidates compacting, then drops those that are still expired in the current view.
+     */
+    @VisibleForTesting
+    Set<SSTableReader> dropExpiredSSTables(ColumnFamilyStore cfs, Set<SSTableReader> candidates, int gcBefore)
+    {
+        if (candidates.isEmpty() || !cfs.getDataTracker().markCompacting(candidates))
+            return Collections.emptySet();
+
+        try
+        {
+            // sstables may have been added since we took the view, so check again now that nothing else can compact them
+            Set<SSTableReader> expired = getExpiredSSTables(cfs.getDataTracker().getView(), candidates, gcBefore);
+            if (expired.isEmpty())
+                return expired;
+
+            logger.info("Dropping {} fully expired sstables of {}.{}: {}", expired.size(), cfs.keyspace.getName(), cfs.name, expired);
+            cfs.markObsolete(expired, OperationType.COMPACTION);
+            return expired;
+        }
+        finally
+        {
+            // all of them, including those the second check kept
+            cfs.getDataTracker().unmarkCompacting(candidates);
+        }
+    }
+
+    /**
+     * Finds the candidates whose cells all have a local deletion time before gcBefore, and that can be removed without
+     * resurrecting anything: every sstable overlapping their key range, other than the ones dropped with them, must
+     * only hold data newer than theirs.
+     *
+     * Unlike {@link CompactionController#getFullyExpiredSSTables}, overlaps are checked for each sstable against the
+     * interval tree, so old live data elsewhere in the ring doesn't prevent dropping an sstable that doesn't cover it.
+     */
+    @VisibleForTesting
+    static Set<SSTableReader> getExpiredSSTables(DataTracker.View view, Iterable<SSTableReader> candidates, int gcBefore)
+    {
+        Set<SSTableReader> expired = new HashSet<>();
+        for (SSTableReader candidate : candidates)
+        {
+            if (candidate.getSSTableMetadata().maxLocalDeletionTime < gcBefore)
+                expired.add(candidate);
+        }
+
+        // removing a candidate may make it block those it overlaps, so iterate until no more is removed
+        boolean changed = !expired.isEmpty();
+        while (changed)
+        {
+            changed = false;
+            Iterator<SSTableReader> iterator = expired.iterator();
+            while (iterator.hasNext())
+            {
+                SSTableReader candidate = iterator.next();
+                for (SSTableReader overlapping : view.intervalTree.search(Interval.<RowPosition, SSTableReader>create(candidate.first, candidate.last)))
+                {
+                    if (!expired.contains(overlapping) && overlapping.getMinTimestamp() <= candidate.getMaxTimestamp())
+                    {
+                        iterator.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
     // the actual sstables to compact are not determined until we run the BCT; that way, if new sstables
     // are created between task submission and execution, we execute against the most up-to-date information
     class BackgroundCompactionTask implements Runnable
@@ -568,6 +686,15 @@ public class CompactionManager implements CompactionManagerMBean
         return validationExecutor.submit(callable);
     }
 
+    /**
+     * Runs one token sub-range of a compaction split by CompactionTask. Sub-ranges never split further or wait
+     * on anything, so a compaction waiting on its sub-ranges can't starve this executor, however many are queued.
+     */
+    public <T> Future<T> submitCompactionSubrange(Callable<T> subrange)
+    {
+        return subrangeExecutor.submit(subrange);
+    }
+
     /* Used in tests. */
     public void disableAutoCompaction()
     {
@@ -1283,6 +1410,14 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    private static class SubrangeExecutor extends CompactionExecutor
+    {
+        public SubrangeExecutor()
+        {
+            super(Math.max(1, DatabaseDescriptor.getConcurrentCompactors()), "CompactionSubrangeExecutor");
+        }
+    }
+
     private static class CacheCleanupExecutor extends CompactionExecutor
     {
         public CacheCleanupExecutor()
@@ -18,19 +18,27 @@
 package org.apache.cassandra.db.compaction;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
@@ -41,8 +49,12 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.SSTableRewriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.service.ActiveRepairService;
@@ -54,6 +66,8 @@ public class CompactionTask extends AbstractCompactionTask
     protected final int gcBefore;
     private final boolean offline;
     protected static long totalBytesCompacted = 0;
+    // compactions smaller than this are never split into sub-ranges
+    private static final long MIN_SUBRANGE_BYTES = 256L * 1024 * 1024;
     private CompactionExecutorStatsCollector collector;
 
     public CompactionTask(ColumnFamilyStore cfs, Iterable<SSTableReader> sstables, int gcBefore, boolean offline)
@@ -156,16 +170,50 @@ public class CompactionTask extends AbstractCompactionTask
 
             logger.debug("Expected bloom filter size : {}", keysPerSSTable);
 
+            // we can't preheat until the tracker has been set. This doesn't happen until we tell the cfs to
+            // replace the old entries.  Track entries to preheat here until then.
+            long minRepairedAt = getMinRepairedAt(actuallyCompact);
+            // we only need the age of the data that we're actually retaining
+            long maxAge = getMaxDataAge(actuallyCompact);
+
+            List<Range<Token>> ranges = offline
+                                      ? Collections.<Range<Token>>emptyList()
+                                      : getSubranges(actuallyCompact);
+            if (ranges.size() > 1)
+            {
+                long keysPerSubrangeSSTable = Math.min(keysPerSSTable, estimatedTotalKeys / ranges.size() + 1);
+                List<Subrange> subranges = new ArrayList<>(ranges.size());
+                for (Range<Token> range : ranges)
+                    subranges.add(new Subrange(range, strategy, actuallyCompact, sstableDirectory, keysPerSubrangeSSTable, minRepairedAt, maxAge, sstableFormat));
+
+                List<SSTableReader> newSStables;
+                try
+                {
+                    newSStables = runSubranges(subranges);
+                }
+                finally
+                {
+                    if (taskId != null)
+                        SystemKeyspace.finishCompaction(taskId);
+                }
+
+                cfs.getDataTracker().replaceCompactedSSTables(sstables, newSStables, compactionType);
+
+                long[] counts = new long[0];
+                for (Subrange subrange : subranges)
+                {
+                    totalKeysWritten += subrange.keysWritten;
+                    counts = addMergedRowCounts(counts, subrange.ci.getMergedRowCounts());
+                }
+                logCompaction(taskIdLoggerMsg, start, newSStables, counts, totalKeysWritten, estimatedTotalKeys);
+                return;
+            }
+
             try (AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact))
             {
                 AbstractCompactionIterable ci = new CompactionIterable(compactionType, scanners.scanners, controller, sstableFormat);
                 Iterator<AbstractCompactedRow> iter = ci.iterator();
                 List<SSTableReader> newSStables;
-                // we can't preheat until the tracker has been set. This doesn't happen until we tell the cfs to
-                // replace the old entries.  Track entries to preheat here until then.
-                long minRepairedAt = getMinRepairedAt(actuallyCompact);
-                // we only need the age of the data that we're actually retaining
-                long maxAge = getMaxDataAge(actuallyCompact);
                 if (collector != null)
                     collector.beginCompaction(ci);
                 long lastCheckObsoletion = start;
@@ -224,44 +272,127 @@ public class CompactionTask extends AbstractCompactionTask
                         collector.finishCompaction(ci);
                 }
 
-                Collection<SSTableReader> oldSStables = this.sstables;
                 if (!offline)
-                    cfs.getDataTracker().markCompactedSSTablesReplaced(oldSStables, newSStables, compactionType);
-
-                // log a bunch of statistics about the result and save to system table compaction_history
-                long dTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
-                long startsize = SSTableReader.getTotalBytes(oldSStables);
-                long endsize = SSTableReader.getTotalBytes(newSStables);
-                double ratio = (double) endsize / (double) startsize;
-
-                StringBuilder newSSTableNames = new StringBuilder();
-                for (SSTableReader reader : newSStables)
-                    newSSTableNames.append(reader.descriptor.baseFilename()).append(",");
-
-                double mbps = dTime > 0 ? (double) endsize / (1024 * 1024) / ((double) dTime / 1000) : 0;
-                long totalSourceRows = 0;
-                long[] counts = ci.getMergedRowCounts();
-                StringBuilder mergeSummary = new StringBuilder(counts.length * 10);
-                Map<Integer, Long> mergedRows = new HashMap<>();
-                for (int i = 0; i < counts.length; i++)
-                {
-                    long count = counts[i];
-                    if (count == 0)
-                        continue;
-
-                    int rows = i + 1;
-                    totalSourceRows += rows * count;
-                    mergeSummary.append(String.format("%d:%d, ", rows, count));
-                    mergedRows.put(rows, count);
-                }
+                    cfs.getDataTracker().markCompactedSSTablesReplaced(sstables, newSStables, compactionType);
+
+                logCompaction(taskIdLoggerMsg, start, newSStables, ci.getMergedRowCounts(), totalKeysWritten, estimatedTotalKeys);
+            }
+        }
+    }
+
+    private void logCompaction(String taskIdLoggerMsg, long start, Collection<SSTableReader> newSStables, long[] counts, long totalKeysWritten, long estimatedTotalKeys)
+    {
+        // log a bunch of statistics about the result and save to system table compaction_history
+        Collection<SSTableReader> oldSStables = this.sstables;
+        long dTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long startsize = SSTableReader.getTotalBytes(oldSStables);
+        long endsize = SSTableReader.getTotalBytes(newSStables);
+        double ratio = (double) endsize / (double) startsize;
+
+        StringBuilder newSSTableNames = new StringBuilder();
+        for (SSTableReader reader : newSStables)
+            newSSTableNames.append(reader.descriptor.baseFilename()).append(",");
+
+        double mbps = dTime > 0 ? (double) endsize / (1024 * 1024) / ((double) dTime / 1000) : 0;
+        long totalSourceRows = 0;
+        StringBuilder mergeSummary = new StringBuilder(counts.length * 10);
+        Map<Integer, Long> mergedRows = new HashMap<>();
+        for (int i = 0; i < counts.length; i++)
+        {
+            long count = counts[i];
+            if (count == 0)
+                continue;
+
+            int rows = i + 1;
+            totalSourceRows += rows * count;
+            mergeSummary.append(String.format("%d:%d, ", rows, count));
+            mergedRows.put(rows, count);
+        }
+
+        SystemKeyspace.updateCompactionHistory(cfs.keyspace.getName(), cfs.name, System.currentTimeMillis(), startsize, endsize, mergedRows);
+        logger.info(String.format("Compacted (%s) %d sstables to [%s] to level=%d.  %,d bytes to %,d (~%d%% of original) in %,dms = %fMB/s.  %,d total partitions merged to %,d.  Partition merge counts were {%s}",
+                                  taskIdLoggerMsg, oldSStables.size(), newSSTableNames.toString(), getLevel(), startsize, endsize, (int) (ratio * 100), dTime, mbps, totalSourceRows, totalKeysWritten, mergeSummary.toString()));
+        logger.debug(String.format("CF Total Bytes Compacted: %,d", CompactionTask.addToTotalBytesCompacted(endsize)));
+        logger.debug("Actual #keys: {}, Estimated #keys:{}, Err%: {}", totalKeysWritten, estimatedTotalKeys, ((double)(totalKeysWritten - estimatedTotalKeys)/totalKeysWritten));
+    }
+
+    private static long[] addMergedRowCounts(long[] total, long[] counts)
+    {
+        long[] sum = Arrays.copyOf(total, Math.max(total.length, counts.length));
+        for (int i = 0; i < counts.length; i++)
+            sum[i] += counts[i];
+        return sum;
+    }
+
+    /**
+     * Runs all the sub-ranges, the first one on this thread and the others on the sub-range executor, and finishes
+     * their writers once they have all completed. If any of them fails, the others are stopped and everything
+     * written so far is discarded.
+     */
+    private List<SSTableReader> runSubranges(List<Subrange> subranges)
+    {
+        List<Future<Void>> futures = new ArrayList<>(subranges.size() - 1);
+        for (Subrange subrange : subranges.subList(1, subranges.size()))
+            futures.add(CompactionManager.instance.submitCompactionSubrange(subrange));
+
+        Throwable failure = null;
+        try
+        {
+            subranges.get(0).call();
+        }
+        catch (Throwable t)
+        {
+            failure = t;
+        }
+
+        for (Future<Void> future : futures)
+        {
+            if (failure != null)
+            {
+                for (Subrange subrange : subranges)
+                    subrange.stop();
+            }
+
+            try
+            {
+                Uninterruptibles.getUninterruptibly(future);
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                    failure = e.getCause();
+                else
+                    failure.addSuppressed(e.getCause());
+            }
+        }
 
-                SystemKeyspace.updateCompactionHistory(cfs.keyspace.getName(), cfs.name, System.currentTimeMillis(), startsize, endsize, mergedRows);
-                logger.info(String.format("Compacted (%s) %d sstables to [%s] to level=%d.  %,d bytes to %,d (~%d%% of original) in %,dms = %fMB/s.  %,d total partitions merged to %,d.  Partition merge counts were {%s}",
-                                          taskIdLoggerMsg, oldSStables.size(), newSSTableNames.toString(), getLevel(), startsize, endsize, (int) (ratio * 100), dTime, mbps, totalSourceRows, totalKeysWritten, mergeSummary.toString()));
-                logger.debug(String.format("CF Total Bytes Compacted: %,d", CompactionTask.addToTotalBytesCompacted(endsize)));
-                logger.debug("Actual #keys: {}, Estimated #keys:{}, Err%: {}", totalKeysWritten, estimatedTotalKeys, ((double)(totalKeysWritten - estimatedTotalKeys)/totalKeysWritten));
+        List<SSTableReader> newSStables = new ArrayList<>();
+        if (failure == null)
+        {
+            try
+            {
+                for (Subrange subrange : subranges)
+                    newSStables.addAll(subrange.finish());
+                return newSStables;
+            }
+            catch (Throwable t)
+            {
+                failure = t;
             }
         }
+
+        for (Subrange subrange : subranges)
+        {
+            if (!subrange.finished)
+                subrange.writer.abort();
+        }
+        // the finished sub-ranges are complete sstables, but not tracked yet: just delete them
+        for (SSTableReader sstable : newSStables)
+        {
+            sstable.markObsolete();
+            sstable.releaseReference();
+        }
+        throw Throwables.propagate(failure);
     }
 
     private long getMinRepairedAt(Set<SSTableReader> actuallyCompact)
@@ -284,6 +415,164 @@ public class CompactionTask extends AbstractCompactionTask
                 new MetadataCollector(sstables, cfs.metadata.comparator, getLevel()));
     }
 
+    /**
+     * @return the disjoint token sub-ranges to split the compaction of the given sstables into, covering the whole
+     * ring; a single range to compact them all on the calling thread
+     */
+    protected List<Range<Token>> getSubranges(Set<SSTableReader> toCompact)
+    {
+        return splitRanges(toCompact, getSubrangeCount(toCompact), cfs.partitioner);
+    }
+
+    /**
+     * @return the number of disjoint token sub-ranges to split the compaction of the given sstables into, each
+     * merged and written on its own thread; 1 to compact them all on the calling thread
+     */
+    protected int getSubrangeCount(Set<SSTableReader> toCompact)
+    {
+        long count = Math.min(maxSubranges(), SSTableReader.getTotalBytes(toCompact) / MIN_SUBRANGE_BYTES);
+        return (int) Math.max(1, count);
+    }
+
+    /**
+     * The outputs of the sub-ranges are never merged back together, so by default there are fewer sub-ranges than
+     * the minimum compaction threshold: a bucket of similarly sized outputs would otherwise be compacted again.
+     */
+    protected int maxSubranges()
+    {
+        return Math.min(DatabaseDescriptor.getConcurrentCompactionSubranges(), cfs.getMinimumCompactionThreshold() - 1);
+    }
+
+    /**
+     * Splits the token space into at most {@code count} ranges holding about the same number of keys, based on the
+     * index summaries of the sstables.
+     */
+    @VisibleForTesting
+    static List<Range<Token>> splitRanges(Collection<SSTableReader> sstables, int count, IPartitioner partitioner)
+    {
+        Token minimum = partitioner.getMinimumToken();
+        if (count <= 1)
+            return Collections.singletonList(new Range<>(minimum, minimum, partitioner));
+
+        List<Token> samples = new ArrayList<>();
+        for (SSTableReader sstable : sstables)
+        {
+            for (DecoratedKey key : sstable.getKeySamples(new Range<>(minimum, minimum, partitioner)))
+                samples.add(key.getToken());
+        }
+        Collections.sort(samples);
+
+        List<Range<Token>> ranges = new ArrayList<>(count);
+        Token left = minimum;
+        for (int i = 1; i < count && !samples.isEmpty(); i++)
+        {
+            Token right = samples.get(i * samples.size() / count);
+            // several sstables may sample the same keys
+            if (right.compareTo(left) <= 0)
+                continue;
+            ranges.add(new Range<>(left, right, partitioner));
+            left = right;
+        }
+        ranges.add(new Range<>(left, minimum, partitioner));
+        return ranges;
+    }
+
+    /**
+     * Compacts the part of the sstables within one token range. The writer is left open, so that the sstables of
+     * all the sub-ranges only become visible together.
+     */
+    private class Subrange implements Callable<Void>
+    {
+        private final Range<Token> range;
+        private final AbstractCompactionStrategy strategy;
+        private final Set<SSTableReader> actuallyCompact;
+        private final File sstableDirectory;
+        private final long keysPerSSTable;
+        private final long repairedAt;
+        private final SSTableFormat.Type sstableFormat;
+        // the rewriter is offline: opening early would move the starts of the compacted sstables to the end of
+        // the last sub-range written, hiding the data of the sub-ranges that are still in progress
+        private final SSTableRewriter writer;
+
+        private volatile boolean stopRequested;
+        private AbstractCompactionIterable ci;
+        private long keysWritten;
+        private boolean finished;
+
+        private Subrange(Range<Token> range, AbstractCompactionStrategy strategy, Set<SSTableReader> actuallyCompact, File sstableDirectory, long keysPerSSTable, long repairedAt, long maxAge, SSTableFormat.Type sstableFormat)
+        {
+            this.range = range;
+            this.strategy = strategy;
+            this.actuallyCompact = actuallyCompact;
+            this.sstableDirectory = sstableDirectory;
+            this.keysPerSSTable = keysPerSSTable;
+            this.repairedAt = repairedAt;
+            this.sstableFormat = sstableFormat;
+            this.writer = new SSTableRewriter(cfs, sstables, maxAge, true);
+        }
+
+        public Void call()
+        {
+            try (CompactionController controller = getCompactionController(sstables);
+                 AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact, range))
+            {
+                ci = new CompactionIterable(compactionType, scanners.scanners, controller, sstableFormat);
+                Iterator<AbstractCompactedRow> iter = ci.iterator();
+                if (collector != null)
+                    collector.beginCompaction(ci);
+                try
+                {
+                    long lastCheckObsoletion = System.nanoTime();
+                    while (iter.hasNext())
+                    {
+                        if (ci.isStopRequested() || stopRequested)
+                            throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                        AbstractCompactedRow row = iter.next();
+                        if (writer.currentWriter() == null)
+                            writer.switchWriter(createCompactionWriter(sstableDirectory, keysPerSSTable, repairedAt, sstableFormat));
+
+                        if (writer.append(row) == null)
+                        {
+                            cfs.invalidateCachedRow(row.key);
+                        }
+                        else
+                        {
+                            keysWritten++;
+                            if (newSSTableSegmentThresholdReached(writer.currentWriter()))
+                                writer.switchWriter(createCompactionWriter(sstableDirectory, keysPerSSTable, repairedAt, sstableFormat));
+                        }
+
+                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                        {
+                            controller.maybeRefreshOverlaps();
+                            lastCheckObsoletion = System.nanoTime();
+                        }
+                    }
+                }
+                finally
+                {
+                    if (collector != null)
+                        collector.finishCompaction(ci);
+                }
+            }
+            return null;
+        }
+
+        public void stop()
+        {
+            stopRequested = true;
+        }
+
+        public List<SSTableReader> finish()
+        {
+            List<SSTableReader> finishedSSTables = writer.currentWriter() == null ? Collections.<SSTableReader>emptyList() : writer.finish();
+            // only now, as a writer that failed to finish still has to be aborted
+            finished = true;
+            return finishedSSTables;
+        }
+    }
+
     protected int getLevel()
     {
         return 0;
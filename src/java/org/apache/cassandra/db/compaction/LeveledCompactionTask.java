@@ -17,9 +17,19 @@
  */
 package org.apache.cassandra.db.compaction;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 
@@ -41,6 +51,68 @@ public class LeveledCompactionTask extends CompactionTask
         return writer.getOnDiskFilePointer() > maxSSTableBytes;
     }
 
+    @Override
+    protected int maxSubranges()
+    {
+        // the output is split into many disjoint sstables anyway
+        return DatabaseDescriptor.getConcurrentCompactionSubranges();
+    }
+
+    /**
+     * L0 sstables usually overlap all of L1, so only one L0 to L1 compaction can run at a time. Rather than key
+     * samples, its sub-ranges are cut at the boundaries of the L1 sstables, so that each one merges its slice of L0
+     * with whole L1 sstables that no other sub-range reads.
+     */
+    @Override
+    protected List<Range<Token>> getSubranges(Set<SSTableReader> toCompact)
+    {
+        List<SSTableReader> nextLevel = new ArrayList<>();
+        boolean hasL0 = false;
+        for (SSTableReader sstable : toCompact)
+        {
+            if (sstable.getSSTableLevel() == 0)
+                hasL0 = true;
+            else if (sstable.getSSTableLevel() == level)
+                nextLevel.add(sstable);
+        }
+
+        int count = getSubrangeCount(toCompact);
+        if (count <= 1 || !hasL0 || nextLevel.size() < 2)
+            return super.getSubranges(toCompact);
+        return splitAtBoundaries(nextLevel, count, cfs.partitioner);
+    }
+
+    /**
+     * Splits the token space into at most {@code count} ranges holding about the same amount of bytes of the given
+     * sstables, each of which is entirely contained in one range.
+     *
+     * @param sstables non-overlapping sstables
+     */
+    @VisibleForTesting
+    static List<Range<Token>> splitAtBoundaries(List<SSTableReader> sstables, int count, IPartitioner partitioner)
+    {
+        List<SSTableReader> sorted = new ArrayList<>(sstables);
+        Collections.sort(sorted, SSTableReader.sstableComparator);
+        long totalBytes = SSTableReader.getTotalBytes(sorted);
+
+        Token minimum = partitioner.getMinimumToken();
+        List<Range<Token>> ranges = new ArrayList<>(count);
+        Token left = minimum;
+        long bytes = 0;
+        for (int i = 0; i < sorted.size() - 1 && ranges.size() < count - 1; i++)
+        {
+            bytes += sorted.get(i).onDiskLength();
+            if (bytes * count < totalBytes * (ranges.size() + 1))
+                continue;
+
+            Token right = sorted.get(i).last.getToken();
+            ranges.add(new Range<>(left, right, partitioner));
+            left = right;
+        }
+        ranges.add(new Range<>(left, minimum, partitioner));
+        return ranges;
+    }
+
     @Override
     protected boolean partialCompactionsAcceptable()
     {
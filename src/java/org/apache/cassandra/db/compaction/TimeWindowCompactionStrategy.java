@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.*;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.*;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.cql3.statements.CFPropDefs;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Groups sstables into fixed size windows of time, by the maximum timestamp of their data. Only the newest window is
+ * compacted as new sstables are flushed into it, using size tiering; once a newer window starts, every older window
+ * that holds more than one sstable is compacted into a single sstable, and is then left alone. Windows whose data has
+ * all expired are dropped without being rewritten.
+ */
+public class TimeWindowCompactionStrategy extends AbstractCompactionStrategy
+{
+    private static final Logger logger = LoggerFactory.getLogger(TimeWindowCompactionStrategy.class);
+
+    protected TimeWindowCompactionStrategyOptions options;
+    protected volatile int estimatedRemainingTasks;
+    private long lastExpiredCheck;
+
+    public TimeWindowCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        super(cfs, options);
+        this.estimatedRemainingTasks = 0;
+        this.options = new TimeWindowCompactionStrategyOptions(options);
+    }
+
+    @Override
+    public synchronized AbstractCompactionTask getNextBackgroundTask(int gcBefore)
+    {
+        if (!isEnabled())
+            return null;
+
+        while (true)
+        {
+            List<SSTableReader> latestBucket = getNextBackgroundSStables(gcBefore);
+
+            if (latestBucket.isEmpty())
+                return null;
+
+            if (cfs.getDataTracker().markCompacting(latestBucket))
+                return new CompactionTask(cfs, latestBucket, gcBefore, false);
+        }
+    }
+
+    private List<SSTableReader> getNextBackgroundSStables(final int gcBefore)
+    {
+        if (!isEnabled() || cfs.getSSTables().isEmpty())
+            return Collections.emptyList();
+
+        Set<SSTableReader> uncompacting = Sets.newHashSet(filterSuspectSSTables(cfs.getUncompactingSSTables()));
+
+        // windows whose data has all expired are dropped as a whole: compacting fully expired sstables doesn't rewrite them
+        if (System.currentTimeMillis() - lastExpiredCheck >= options.expiredSSTableCheckFrequency)
+        {
+            lastExpiredCheck = System.currentTimeMillis();
+            Set<SSTableReader> expired = CompactionController.getFullyExpiredSSTables(cfs, uncompacting, cfs.getOverlappingSSTables(uncompacting), gcBefore);
+            if (!expired.isEmpty())
+            {
+                logger.debug("Dropping expired sstables {}", expired);
+                return new ArrayList<>(expired);
+            }
+        }
+
+        long now = getWindowLowerBound(getNow(), options.windowSize);
+
+        Set<SSTableReader> repairedCandidates = new HashSet<>();
+        Set<SSTableReader> unRepairedCandidates = new HashSet<>();
+        for (SSTableReader sstable : uncompacting)
+        {
+            if (sstable.isRepaired())
+            {
+                repairedCandidates.add(sstable);
+            }
+            else
+            {
+                unRepairedCandidates.add(sstable);
+            }
+        }
+
+        NavigableMap<Long, List<SSTableReader>> repairedBuckets = getBuckets(createSSTableAndMaxTimestampPairs(repairedCandidates), options.windowSize);
+        NavigableMap<Long, List<SSTableReader>> unRepairedBuckets = getBuckets(createSSTableAndMaxTimestampPairs(unRepairedCandidates), options.windowSize);
+        estimatedRemainingTasks = getEstimatedCompactionsByTasks(repairedBuckets, now) + getEstimatedCompactionsByTasks(unRepairedBuckets, now);
+
+        List<SSTableReader> mostInterestingRepaired = newestBucket(repairedBuckets, now);
+        List<SSTableReader> mostInterestingUnrepaired = newestBucket(unRepairedBuckets, now);
+        if (!mostInterestingRepaired.isEmpty() || !mostInterestingUnrepaired.isEmpty())
+            return mostInterestingRepaired.size() > mostInterestingUnrepaired.size() ? mostInterestingRepaired : mostInterestingUnrepaired;
+
+        // if there is no sstable to compact in standard way, try compacting single sstable whose droppable tombstone
+        // ratio is greater than threshold.
+        List<SSTableReader> sstablesWithTombstones = Lists.newArrayList();
+        for (SSTableReader sstable : uncompacting)
+        {
+            if (worthDroppingTombstones(sstable, gcBefore))
+                sstablesWithTombstones.add(sstable);
+        }
+        if (sstablesWithTombstones.isEmpty())
+            return Collections.emptyList();
+
+        return Collections.singletonList(Collections.min(sstablesWithTombstones, new SSTableReader.SizeComparator()));
+    }
+
+    /**
+     * Gets the timestamp that TimeWindowCompactionStrategy considers to be the "current time": the windows older
+     * than the one holding it are closed.
+     * @return the maximum timestamp across all SSTables.
+     * @throws java.util.NoSuchElementException if there are no SSTables.
+     */
+    private long getNow()
+    {
+        return Collections.max(cfs.getSSTables(), new Comparator<SSTableReader>()
+        {
+            public int compare(SSTableReader o1, SSTableReader o2)
+            {
+                return Long.compare(o1.getMaxTimestamp(), o2.getMaxTimestamp());
+            }
+        }).getMaxTimestamp();
+    }
+
+    public static List<Pair<SSTableReader, Long>> createSSTableAndMaxTimestampPairs(Iterable<SSTableReader> sstables)
+    {
+        List<Pair<SSTableReader, Long>> sstableMaxTimestampPairs = Lists.newArrayListWithCapacity(Iterables.size(sstables));
+        for (SSTableReader sstable : sstables)
+            sstableMaxTimestampPairs.add(Pair.create(sstable, sstable.getMaxTimestamp()));
+        return sstableMaxTimestampPairs;
+    }
+
+    /**
+     * @param timestamp a timestamp, in the unit of the cell timestamps
+     * @param windowSize the size of a window, in the same unit
+     * @return the start of the window holding the timestamp
+     */
+    @VisibleForTesting
+    static long getWindowLowerBound(long timestamp, long windowSize)
+    {
+        long offset = timestamp % windowSize;
+        return offset < 0 ? timestamp - offset - windowSize : timestamp - offset;
+    }
+
+    /**
+     * Group files into the window holding their max timestamp.
+     * @param files pairs consisting of a file and its max timestamp
+     * @param windowSize the size of a window, in the unit of the timestamps
+     * @return the files of each window, keyed by the start of the window
+     */
+    @VisibleForTesting
+    static <T> NavigableMap<Long, List<T>> getBuckets(Collection<Pair<T, Long>> files, long windowSize)
+    {
+        NavigableMap<Long, List<T>> buckets = new TreeMap<>();
+        for (Pair<T, Long> file : files)
+        {
+            long window = getWindowLowerBound(file.right, windowSize);
+            List<T> bucket = buckets.get(window);
+            if (bucket == null)
+            {
+                bucket = new ArrayList<>();
+                buckets.put(window, bucket);
+            }
+            bucket.add(file.left);
+        }
+        return buckets;
+    }
+
+    private int getEstimatedCompactionsByTasks(NavigableMap<Long, List<SSTableReader>> buckets, long now)
+    {
+        int n = 0;
+        for (Map.Entry<Long, List<SSTableReader>> bucket : buckets.entrySet())
+        {
+            int size = bucket.getValue().size();
+            if (size >= (bucket.getKey() >= now ? cfs.getMinimumCompactionThreshold() : 2))
+                n += Math.ceil((double) size / cfs.getMaximumCompactionThreshold());
+        }
+        return n;
+    }
+
+    private List<SSTableReader> newestBucket(NavigableMap<Long, List<SSTableReader>> buckets, long now)
+    {
+        return newestBucket(buckets, cfs.getMinimumCompactionThreshold(), cfs.getMaximumCompactionThreshold(), now, options.stcsOptions);
+    }
+
+    /**
+     * @param buckets the sstables of each window, keyed by the start of the window
+     * @param minThreshold minimum number of sstables in the current window to compact them.
+     * @param maxThreshold maximum number of sstables to compact at once.
+     * @param now the start of the current window
+     * @param stcsOptions the options to size tier the sstables of the current window with
+     * @return the sstables to compact: size tiered sstables of the current window if there are enough of them, or
+     *         else the sstables of the newest closed window that still holds more than one sstable
+     */
+    @VisibleForTesting
+    static List<SSTableReader> newestBucket(NavigableMap<Long, List<SSTableReader>> buckets, int minThreshold, int maxThreshold, long now, SizeTieredCompactionStrategyOptions stcsOptions)
+    {
+        for (Map.Entry<Long, List<SSTableReader>> entry : buckets.descendingMap().entrySet())
+        {
+            List<SSTableReader> bucket = entry.getValue();
+            if (entry.getKey() >= now)
+            {
+                if (bucket.size() >= minThreshold)
+                {
+                    List<List<SSTableReader>> stcsBuckets = SizeTieredCompactionStrategy.getBuckets(SizeTieredCompactionStrategy.createSSTableAndLengthPairs(bucket),
+                                                                                                      stcsOptions.bucketHigh,
+                                                                                                      stcsOptions.bucketLow,
+                                                                                                      stcsOptions.minSSTableSize);
+                    List<SSTableReader> stcsBucket = SizeTieredCompactionStrategy.mostInterestingBucket(stcsBuckets, minThreshold, maxThreshold);
+                    if (!stcsBucket.isEmpty())
+                        return stcsBucket;
+                }
+            }
+            else if (bucket.size() >= 2)
+            {
+                return trimToThreshold(bucket, maxThreshold);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param bucket list of sstables of a closed window
+     * @param maxThreshold maximum number of sstables in a single compaction task.
+     * @return the <code>maxThreshold</code> smallest sstables of the bucket.
+     */
+    @VisibleForTesting
+    static List<SSTableReader> trimToThreshold(List<SSTableReader> bucket, int maxThreshold)
+    {
+        List<SSTableReader> sorted = new ArrayList<>(bucket);
+        Collections.sort(sorted, new SSTableReader.SizeComparator());
+        return sorted.subList(0, Math.min(sorted.size(), maxThreshold));
+    }
+
+    /**
+     * Compacts every window into a single sstable, rather than all the windows together.
+     */
+    @Override
+    public synchronized Collection<AbstractCompactionTask> getMaximalTask(int gcBefore)
+    {
+        Iterable<SSTableReader> sstables = cfs.markAllCompacting();
+        if (sstables == null)
+            return null;
+
+        List<AbstractCompactionTask> tasks = new ArrayList<>();
+        List<SSTableReader> alone = new ArrayList<>();
+        for (List<SSTableReader> bucket : getBuckets(createSSTableAndMaxTimestampPairs(sstables), options.windowSize).values())
+        {
+            if (bucket.size() > 1)
+                tasks.add(new CompactionTask(cfs, bucket, gcBefore, false));
+            else
+                alone.addAll(bucket);
+        }
+        if (!alone.isEmpty())
+            cfs.getDataTracker().unmarkCompacting(alone);
+        return tasks;
+    }
+
+    @Override
+    public synchronized AbstractCompactionTask getUserDefinedTask(Collection<SSTableReader> sstables, int gcBefore)
+    {
+        assert !sstables.isEmpty(); // checked for by CM.submitUserDefined
+
+        if (!cfs.getDataTracker().markCompacting(sstables))
+        {
+            logger.debug("Unable to mark {} for compaction; probably a background compaction got to it first.  You can disable background compactions temporarily if this is a problem", sstables);
+            return null;
+        }
+
+        return new CompactionTask(cfs, sstables, gcBefore, false).setUserDefined(true);
+    }
+
+    public int getEstimatedRemainingTasks()
+    {
+        return estimatedRemainingTasks;
+    }
+
+    public long getMaxSSTableBytes()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    public static Map<String, String> validateOptions(Map<String, String> options) throws ConfigurationException
+    {
+        Map<String, String> uncheckedOptions = AbstractCompactionStrategy.validateOptions(options);
+        uncheckedOptions = TimeWindowCompactionStrategyOptions.validateOptions(options, uncheckedOptions);
+
+        uncheckedOptions.remove(CFPropDefs.KW_MINCOMPACTIONTHRESHOLD);
+        uncheckedOptions.remove(CFPropDefs.KW_MAXCOMPACTIONTHRESHOLD);
+
+        return uncheckedOptions;
+    }
+
+    public String toString()
+    {
+        return String.format("TimeWindowCompactionStrategy[%s/%s]",
+                cfs.getMinimumCompactionThreshold(),
+                cfs.getMaximumCompactionThreshold());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.exceptions.ConfigurationException;
+
+public final class TimeWindowCompactionStrategyOptions
+{
+    protected static final TimeUnit DEFAULT_TIMESTAMP_RESOLUTION = TimeUnit.MICROSECONDS;
+    protected static final TimeUnit DEFAULT_COMPACTION_WINDOW_UNIT = TimeUnit.DAYS;
+    protected static final int DEFAULT_COMPACTION_WINDOW_SIZE = 1;
+    protected static final long DEFAULT_EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS = 60 * 10;
+    protected static final String TIMESTAMP_RESOLUTION_KEY = "timestamp_resolution";
+    protected static final String COMPACTION_WINDOW_UNIT_KEY = "compaction_window_unit";
+    protected static final String COMPACTION_WINDOW_SIZE_KEY = "compaction_window_size";
+    protected static final String EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY = "expired_sstable_check_frequency_seconds";
+
+    private static final EnumSet<TimeUnit> VALID_WINDOW_UNITS = EnumSet.of(TimeUnit.MINUTES, TimeUnit.HOURS, TimeUnit.DAYS);
+
+    // the size of a window, in the unit of the cell timestamps
+    protected final long windowSize;
+    protected final long expiredSSTableCheckFrequency;
+    protected final SizeTieredCompactionStrategyOptions stcsOptions;
+
+    public TimeWindowCompactionStrategyOptions(Map<String, String> options)
+    {
+        String optionValue = options.get(TIMESTAMP_RESOLUTION_KEY);
+        TimeUnit timestampResolution = optionValue == null ? DEFAULT_TIMESTAMP_RESOLUTION : TimeUnit.valueOf(optionValue);
+        optionValue = options.get(COMPACTION_WINDOW_UNIT_KEY);
+        TimeUnit windowUnit = optionValue == null ? DEFAULT_COMPACTION_WINDOW_UNIT : TimeUnit.valueOf(optionValue);
+        optionValue = options.get(COMPACTION_WINDOW_SIZE_KEY);
+        windowSize = timestampResolution.convert(optionValue == null ? DEFAULT_COMPACTION_WINDOW_SIZE : Integer.parseInt(optionValue), windowUnit);
+        optionValue = options.get(EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY);
+        expiredSSTableCheckFrequency = TimeUnit.MILLISECONDS.convert(optionValue == null ? DEFAULT_EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS : Long.parseLong(optionValue), TimeUnit.SECONDS);
+        stcsOptions = new SizeTieredCompactionStrategyOptions(options);
+    }
+
+    public TimeWindowCompactionStrategyOptions()
+    {
+        windowSize = DEFAULT_TIMESTAMP_RESOLUTION.convert(DEFAULT_COMPACTION_WINDOW_SIZE, DEFAULT_COMPACTION_WINDOW_UNIT);
+        expiredSSTableCheckFrequency = TimeUnit.MILLISECONDS.convert(DEFAULT_EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS, TimeUnit.SECONDS);
+        stcsOptions = new SizeTieredCompactionStrategyOptions();
+    }
+
+    public static Map<String, String> validateOptions(Map<String, String> options, Map<String, String> uncheckedOptions) throws  ConfigurationException
+    {
+        String optionValue = options.get(TIMESTAMP_RESOLUTION_KEY);
+        TimeUnit timestampResolution = DEFAULT_TIMESTAMP_RESOLUTION;
+        try
+        {
+            if (optionValue != null)
+                timestampResolution = TimeUnit.valueOf(optionValue);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException(String.format("timestamp_resolution %s is not valid", optionValue));
+        }
+
+        optionValue = options.get(COMPACTION_WINDOW_UNIT_KEY);
+        TimeUnit windowUnit = DEFAULT_COMPACTION_WINDOW_UNIT;
+        try
+        {
+            if (optionValue != null)
+                windowUnit = TimeUnit.valueOf(optionValue);
+            if (!VALID_WINDOW_UNITS.contains(windowUnit))
+                throw new ConfigurationException(String.format("%s must be one of %s, but was %s", COMPACTION_WINDOW_UNIT_KEY, VALID_WINDOW_UNITS, optionValue));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException(String.format("%s %s is not valid", COMPACTION_WINDOW_UNIT_KEY, optionValue));
+        }
+
+        optionValue = options.get(COMPACTION_WINDOW_SIZE_KEY);
+        try
+        {
+            int windowSize = optionValue == null ? DEFAULT_COMPACTION_WINDOW_SIZE : Integer.parseInt(optionValue);
+            if (windowSize < 1)
+            {
+                throw new ConfigurationException(String.format("%s must be greater than 0, but was %d", COMPACTION_WINDOW_SIZE_KEY, windowSize));
+            }
+            // windows are sized in the unit of the timestamps, so they must hold at least one
+            if (timestampResolution.convert(windowSize, windowUnit) < 1)
+            {
+                throw new ConfigurationException(String.format("%s %s %s is shorter than the %s %s",
+                                                               COMPACTION_WINDOW_SIZE_KEY, windowSize, windowUnit,
+                                                               TIMESTAMP_RESOLUTION_KEY, timestampResolution));
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ConfigurationException(String.format("%s is not a parsable int (base10) for %s", optionValue, COMPACTION_WINDOW_SIZE_KEY), e);
+        }
+
+        optionValue = options.get(EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY);
+        try
+        {
+            long expiredCheckFrequency = optionValue == null ? DEFAULT_EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS : Long.parseLong(optionValue);
+            if (expiredCheckFrequency < 0)
+            {
+                throw new ConfigurationException(String.format("%s must be non-negative: %d", EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY, expiredCheckFrequency));
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ConfigurationException(String.format("%s is not a parsable int (base10) for %s", optionValue, EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY), e);
+        }
+
+        uncheckedOptions.remove(TIMESTAMP_RESOLUTION_KEY);
+        uncheckedOptions.remove(COMPACTION_WINDOW_UNIT_KEY);
+        uncheckedOptions.remove(COMPACTION_WINDOW_SIZE_KEY);
+        uncheckedOptions.remove(EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY);
+
+        return SizeTieredCompactionStrategyOptions.validateOptions(options, uncheckedOptions);
+    }
+}
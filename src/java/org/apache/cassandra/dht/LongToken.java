@@ -30,4 +30,9 @@ public class LongToken extends AbstractToken<Long>
     {
         return token.compareTo(((LongToken) o).token);
     }
+
+    public long longValue()
+    {
+        return token;
+    }
 }
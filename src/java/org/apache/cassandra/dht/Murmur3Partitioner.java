@@ -28,6 +28,7 @@ import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.cassandra.db.BufferDecoratedKey;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PreHashedDecoratedKey;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.LongType;
 import org.apache.cassandra.exceptions.ConfigurationException;
@@ -47,7 +48,12 @@ public class Murmur3Partitioner extends AbstractPartitioner
 
     public DecoratedKey decorateKey(ByteBuffer key)
     {
-        return new BufferDecoratedKey(getToken(key), key);
+        if (key.remaining() == 0)
+            return new BufferDecoratedKey(MINIMUM, key);
+
+        long[] hash = new long[2];
+        MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0, hash);
+        return new PreHashedDecoratedKey(new LongToken(normalize(hash[0])), key, hash[0], hash[1]);
     }
 
     public Token midpoint(Token lToken, Token rToken)
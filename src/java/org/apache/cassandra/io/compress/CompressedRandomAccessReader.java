@@ -24,6 +24,7 @@ import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.CompressedPoolingSegmentedFile;
@@ -72,10 +73,19 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     // raw checksum bytes
     private final ByteBuffer checksumBytes = ByteBuffer.wrap(new byte[4]);
 
+    // the cache of decompressed chunks, if any
+    private final ChunkCache chunkCache;
+
     protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner) throws FileNotFoundException
+    {
+        this(dataFilePath, metadata, owner, ChunkCache.instance);
+    }
+
+    protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner, ChunkCache chunkCache) throws FileNotFoundException
     {
         super(new File(dataFilePath), metadata.chunkLength(), owner);
         this.metadata = metadata;
+        this.chunkCache = chunkCache;
         checksum = metadata.hasPostCompressionAdlerChecksums ? new Adler32() : new CRC32();
         compressed = ByteBuffer.wrap(new byte[metadata.compressor().initialCompressedBufferLength(metadata.chunkLength())]);
     }
@@ -94,6 +104,15 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             long position = current();
             assert position < metadata.dataLength;
 
+            // buffer offset is always aligned
+            long chunkPosition = position & ~(buffer.capacity() - 1);
+            if (chunkCache != null && chunkCache.read(getPath(), chunkPosition, buffer))
+            {
+                bufferOffset = chunkPosition;
+                buffer.position((int) (position - bufferOffset));
+                return;
+            }
+
             CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
 
             if (channel.position() != chunk.offset)
@@ -142,8 +161,10 @@ public class CompressedRandomAccessReader extends RandomAccessReader
                 checksum.reset();
             }
 
-            // buffer offset is always aligned
-            bufferOffset = position & ~(buffer.capacity() - 1);
+            if (chunkCache != null)
+                chunkCache.write(getPath(), chunkPosition, buffer);
+
+            bufferOffset = chunkPosition;
             buffer.position((int) (position - bufferOffset));
         }
         catch (CorruptBlockException e)
@@ -170,6 +191,12 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         return super.getTotalBufferSize() + compressed.capacity();
     }
 
+    @Override
+    protected boolean readDirect(ByteBuffer dest)
+    {
+        return false;
+    }
+
     @Override
     public long length()
     {
@@ -31,7 +31,8 @@ public class CompressedThrottledReader extends CompressedRandomAccessReader
 
     public CompressedThrottledReader(String file, CompressionMetadata metadata, RateLimiter limiter) throws FileNotFoundException
     {
-        super(file, metadata, null);
+        // compactions read each chunk once, and do not evict the chunks cached for reads
+        super(file, metadata, null, null);
         this.limiter = limiter;
     }
 
@@ -55,6 +55,8 @@ public class Component
         SUMMARY("Summary.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
+        // byte-comparable trie of the row keys with pointers to their positions in the index file
+        PARTITION_INDEX("PartitionIndex.db"),
         // custom component, used by e.g. custom compaction strategy
         CUSTOM(null);
 
@@ -83,6 +85,7 @@ public class Component
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
     public final static Component TOC = new Component(Type.TOC);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
 
     public final Type type;
     public final String name;
@@ -134,6 +137,7 @@ public class Component
             case CRC:               component = Component.CRC;                          break;
             case SUMMARY:           component = Component.SUMMARY;                      break;
             case TOC:               component = Component.TOC;                          break;
+            case PARTITION_INDEX:   component = Component.PARTITION_INDEX;              break;
             case CUSTOM:            component = new Component(Type.CUSTOM, path.right); break;
             default:
                  throw new IllegalStateException();
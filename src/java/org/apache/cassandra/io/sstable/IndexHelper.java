@@ -18,10 +18,12 @@
 package org.apache.cassandra.io.sstable;
 
 import java.io.*;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.RandomAccess;
 
 import org.apache.cassandra.db.composites.CType;
 import org.apache.cassandra.db.composites.Composite;
@@ -31,6 +33,7 @@ import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileMark;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.utils.*;
 
 /**
@@ -128,6 +131,54 @@ public class IndexHelper
         return reversed ? nameComparator.indexReverseComparator() : nameComparator.indexComparator();
     }
 
+    /**
+     * A column index serialized after a table of the offsets of its IndexInfo, relative to the end of the table, that
+     * reads each IndexInfo from the file when it is asked for, so that {@link #indexFor} can binary search the
+     * column index without deserializing all of it.
+     */
+    public static class SerializedIndexInfoList extends AbstractList<IndexInfo> implements RandomAccess
+    {
+        private final SegmentedFile file;
+        private final long position;
+        private final int size;
+        private final ISerializer<IndexInfo> serializer;
+
+        public SerializedIndexInfoList(SegmentedFile file, long position, int size, ISerializer<IndexInfo> serializer)
+        {
+            this.file = file;
+            this.position = position;
+            this.size = size;
+            this.serializer = serializer;
+        }
+
+        public IndexInfo get(int index)
+        {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+            FileDataInput in = file.getSegment(position + index * 4L);
+            try
+            {
+                int offset = in.readInt();
+                in.seek(position + size * 4L + offset);
+                return serializer.deserialize(in);
+            }
+            catch (IOException e)
+            {
+                throw new CorruptSSTableException(e, in.getPath());
+            }
+            finally
+            {
+                FileUtils.closeQuietly(in);
+            }
+        }
+
+        public int size()
+        {
+            return size;
+        }
+    }
+
     public static class IndexInfo
     {
         private static final long EMPTY_SIZE = ObjectSizes.measure(new IndexInfo(null, null, 0, 0));
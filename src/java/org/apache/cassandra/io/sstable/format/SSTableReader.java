@@ -26,6 +26,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.RateLimiter;
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.cache.CachingOptions;
 import org.apache.cassandra.cache.InstrumentingCache;
 import org.apache.cassandra.cache.KeyCacheKey;
@@ -141,6 +142,8 @@ public abstract class SSTableReader extends SSTable
 
     // not final since we need to be able to change level on a file.
     protected volatile StatsMetadata sstableMetadata;
+    private volatile TombstoneMetadata tombstoneMetadata;
+    private volatile boolean tombstoneMetadataLoaded;
 
     protected final AtomicLong keyCacheHit = new AtomicLong(0);
     protected final AtomicLong keyCacheRequest = new AtomicLong(0);
@@ -584,7 +587,10 @@ public abstract class SSTableReader extends SSTable
                 {
                     ifile.cleanup();
                     dfile.cleanup();
+                    if (compression && ChunkCache.instance != null)
+                        ChunkCache.instance.invalidateFile(new File(dfile.path).getAbsolutePath());
                 }
+                releaseComponents();
                 if (runOnClose != null)
                     runOnClose.run();
                 if (deleteAll)
@@ -608,6 +614,14 @@ public abstract class SSTableReader extends SSTable
         });
     }
 
+    /**
+     * Releases the resources held by a subclass for the components it opens itself. Called once the reader is tidied
+     * and no read can be using them anymore.
+     */
+    protected void releaseComponents()
+    {
+    }
+
     public boolean equals(Object that)
     {
         return that instanceof SSTableReader && ((SSTableReader) that).descriptor.equals(this.descriptor);
@@ -674,7 +688,7 @@ public abstract class SSTableReader extends SSTable
         try
         {
             stream = new DataInputStream(new BufferedInputStream(new FileInputStream(descriptor.filenameFor(Component.FILTER))));
-            bf = FilterFactory.deserialize(stream, true);
+            bf = FilterFactory.deserialize(stream, descriptor.version.filterType(), true);
         }
         finally
         {
@@ -727,7 +741,7 @@ public abstract class SSTableReader extends SSTable
                     : estimateRowsFromIndex(primaryIndex); // statistics is supposed to be optional
 
             if (recreateBloomFilter)
-                bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), true);
+                bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), descriptor.version.filterType(), true);
 
             IndexSummaryBuilder summaryBuilder = null;
             if (!summaryLoaded)
@@ -746,7 +760,7 @@ public abstract class SSTableReader extends SSTable
                 last = decoratedKey;
 
                 if (recreateBloomFilter)
-                    bf.add(decoratedKey.getKey());
+                    bf.add(decoratedKey);
 
                 // if summary was already read from disk we don't want to re-populate it using primary index
                 if (!summaryLoaded)
@@ -1331,6 +1345,17 @@ public abstract class SSTableReader extends SSTable
      */
     public abstract RowIndexEntry getPosition(RowPosition key, Operator op, boolean updateCacheAndStats);
 
+    /**
+     * @return the column index of the row of the entry, read from the primary index as it is used if the entry only
+     * holds its position there
+     */
+    public List<IndexHelper.IndexInfo> getColumnsIndex(RowIndexEntry<?> indexEntry)
+    {
+        @SuppressWarnings("unchecked") // the row index entries of all formats index IndexInfo
+        RowIndexEntry<IndexHelper.IndexInfo> entry = (RowIndexEntry<IndexHelper.IndexInfo>) indexEntry;
+        return entry.columnsIndex(ifile, new IndexHelper.IndexInfo.Serializer(metadata.comparator));
+    }
+
     //Corresponds to a name column
     public abstract OnDiskAtomIterator iterator(DecoratedKey key, SortedSet<CellName> columns);
     public abstract OnDiskAtomIterator iterator(FileDataInput file, DecoratedKey key, SortedSet<CellName> columns, RowIndexEntry indexEntry);
@@ -1677,6 +1702,27 @@ public abstract class SSTableReader extends SSTable
         }
     }
 
+    /**
+     * @return the tombstone statistics of the sstable segments, or null for sstables written before they were recorded
+     */
+    public TombstoneMetadata getTombstoneMetadata()
+    {
+        // only needed to evaluate tombstone compactions, so loaded on first use rather than when opening the sstable
+        if (!tombstoneMetadataLoaded)
+        {
+            try
+            {
+                tombstoneMetadata = (TombstoneMetadata) descriptor.getMetadataSerializer().deserialize(descriptor, MetadataType.TOMBSTONES);
+            }
+            catch (IOException e)
+            {
+                SSTableReader.logOpenException(descriptor, e);
+            }
+            tombstoneMetadataLoaded = true;
+        }
+        return tombstoneMetadata;
+    }
+
     public int getSSTableLevel()
     {
         return sstableMetadata.sstableLevel;
@@ -17,6 +17,8 @@
  */
 package org.apache.cassandra.io.sstable.format;
 
+import org.apache.cassandra.utils.FilterFactory;
+
 /**
  * A set of feature flags associated with a SSTable format
  *
@@ -54,6 +56,8 @@ public abstract class Version
 
     public abstract boolean hasNewFileName();
 
+    public abstract FilterFactory.Type filterType();
+
     public String getVersion()
     {
         return version;
@@ -38,6 +38,7 @@ import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.utils.FilterFactory;
 
 import java.util.Iterator;
 import java.util.Set;
@@ -125,7 +126,7 @@ public class BigFormat implements SSTableFormat
     // we always incremented the major version.
     static class BigVersion extends Version
     {
-        public static final String current_version = "la";
+        public static final String current_version = "lb";
         public static final String earliest_supported_version = "ja";
 
         // ja (2.0.0): super columns are serialized as composites (note that there is no real format change,
@@ -143,6 +144,7 @@ public class BigFormat implements SSTableFormat
         //             switch uncompressed checksums to adler32
         //             tracks presense of legacy (local and remote) counter shards
         // la (3.0.0): new file name format
+        // lb (3.0.0): blocked bloom filters
 
         private final boolean isLatestVersion;
         private final boolean hasPostCompressionAdlerChecksums;
@@ -152,6 +154,7 @@ public class BigFormat implements SSTableFormat
         private final boolean hasRepairedAt;
         private final boolean tracksLegacyCounterShards;
         private final boolean newFileName;
+        private final FilterFactory.Type filterType;
 
         public BigVersion(String version)
         {
@@ -165,6 +168,7 @@ public class BigFormat implements SSTableFormat
             hasRepairedAt = version.compareTo("ka") >= 0;
             tracksLegacyCounterShards = version.compareTo("ka") >= 0;
             newFileName = version.compareTo("la") >= 0;
+            filterType = version.compareTo("lb") >= 0 ? FilterFactory.Type.BLOCKED : FilterFactory.Type.MURMUR3;
         }
 
         @Override
@@ -215,6 +219,12 @@ public class BigFormat implements SSTableFormat
             return newFileName;
         }
 
+        @Override
+        public FilterFactory.Type filterType()
+        {
+            return filterType;
+        }
+
         @Override
         public boolean isCompatible()
         {
@@ -56,7 +56,7 @@ public class BigTableReader extends SSTableReader
 {
     private static final Logger logger = LoggerFactory.getLogger(BigTableReader.class);
 
-    BigTableReader(Descriptor desc, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, Long maxDataAge, StatsMetadata sstableMetadata, OpenReason openReason)
+    protected BigTableReader(Descriptor desc, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, Long maxDataAge, StatsMetadata sstableMetadata, OpenReason openReason)
     {
         super(desc, components, metadata, partitioner, maxDataAge, sstableMetadata, openReason);
     }
@@ -121,7 +121,7 @@ public class BigTableReader extends SSTableReader
         if (op == Operator.EQ)
         {
             assert key instanceof DecoratedKey; // EQ only make sense if the key is a valid row key
-            if (!bf.isPresent(((DecoratedKey)key).getKey()))
+            if (!bf.isPresent((DecoratedKey)key))
             {
                 Tracing.trace("Bloom filter allows skipping sstable {}", descriptor.generation);
                 return null;
@@ -154,6 +154,15 @@ public class BigTableReader extends SSTableReader
             }
         }
 
+        return getIndexEntry(key, op, updateCacheAndStats);
+    }
+
+    /**
+     * Looks the key up in the primary index, once the bloom filter, the key cache and the bounds of the sstable have
+     * been checked.
+     */
+    protected RowIndexEntry<?> getIndexEntry(RowPosition key, Operator op, boolean updateCacheAndStats)
+    {
         int binarySearchResult = indexSummary.binarySearch(key);
         long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
         int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
@@ -228,7 +237,7 @@ public class BigTableReader extends SSTableReader
                         }
                         if (op == Operator.EQ && updateCacheAndStats)
                             bloomFilterTracker.addTruePositive();
-                        Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndex().size(), descriptor.generation);
+                        Tracing.trace("Partition index with {} entries found for sstable {}", getColumnsIndex(indexEntry).size(), descriptor.generation);
                         return indexEntry;
                     }
 
@@ -26,6 +26,7 @@ import java.util.List;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.util.concurrent.RateLimiter;
 
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
 import org.apache.cassandra.db.DataRange;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.RowIndexEntry;
@@ -34,6 +35,7 @@ import org.apache.cassandra.db.columniterator.IColumnIteratorFactory;
 import org.apache.cassandra.db.columniterator.LazyColumnIterator;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.compaction.ICompactionScanner;
+import org.apache.cassandra.db.filter.IDiskAtomFilter;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Bounds;
 import org.apache.cassandra.dht.Range;
@@ -55,6 +57,8 @@ public class BigTableScanner implements ICompactionScanner
     private AbstractBounds<RowPosition> currentRange;
 
     private final DataRange dataRange;
+    // true if the sstable may hold tombstones or expiring cells, which must be read even when the filter misses the data
+    private final boolean mayHaveTombstones;
     private final RowIndexEntry.IndexSerializer rowIndexEntrySerializer;
 
     protected Iterator<OnDiskAtomIterator> iterator;
@@ -72,6 +76,7 @@ public class BigTableScanner implements ICompactionScanner
         this.ifile = sstable.openIndexReader();
         this.sstable = sstable;
         this.dataRange = dataRange;
+        this.mayHaveTombstones = sstable.getSSTableMetadata().maxLocalDeletionTime != Integer.MAX_VALUE;
         this.rowIndexEntrySerializer = sstable.descriptor.version.getSSTableFormat().getIndexSerializer(sstable.metadata);
 
         List<AbstractBounds<RowPosition>> boundsList = new ArrayList<>(2);
@@ -102,6 +107,7 @@ public class BigTableScanner implements ICompactionScanner
         this.ifile = sstable.openIndexReader();
         this.sstable = sstable;
         this.dataRange = null;
+        this.mayHaveTombstones = true;
         this.rowIndexEntrySerializer = sstable.descriptor.version.getSSTableFormat().getIndexSerializer(sstable.metadata);
 
         List<Range<Token>> normalized = Range.normalize(tokenRanges);
@@ -270,11 +276,17 @@ public class BigTableScanner implements ICompactionScanner
                     return new SSTableIdentityIterator(sstable, dfile, currentKey);
                 }
 
+                final IDiskAtomFilter columnFilter = dataRange.columnFilter(currentKey.getKey());
+                // if the min/max column names of the sstable don't intersect the filter, and there are no tombstones
+                // that could shadow data from other sstables, the row can only contribute its key: skip the data file
+                if (!mayHaveTombstones && !columnFilter.shouldInclude(sstable))
+                    return columnFilter.getColumnIterator(currentKey, ArrayBackedSortedColumns.factory.create(sstable.metadata));
+
                 return new LazyColumnIterator(currentKey, new IColumnIteratorFactory()
                 {
                     public OnDiskAtomIterator create()
                     {
-                        return dataRange.columnFilter(currentKey.getKey()).getSSTableColumnIterator(sstable, dfile, currentKey, currentEntry);
+                        return columnFilter.getSSTableColumnIterator(sstable, dfile, currentKey, currentEntry);
                     }
                 });
 
@@ -75,7 +75,7 @@ public class BigTableWriter extends SSTableWriter
     private DecoratedKey lastWrittenKey;
     private FileMark dataMark;
 
-    BigTableWriter(Descriptor descriptor, Long keyCount, Long repairedAt, CFMetaData metadata, IPartitioner partitioner, MetadataCollector metadataCollector)
+    protected BigTableWriter(Descriptor descriptor, Long keyCount, Long repairedAt, CFMetaData metadata, IPartitioner partitioner, MetadataCollector metadataCollector)
     {
         super(descriptor, keyCount, repairedAt, metadata, partitioner, metadataCollector);
 
@@ -151,7 +151,7 @@ public class BigTableWriter extends SSTableWriter
         {
             throw new FSWriteError(e, dataFile.getPath());
         }
-        metadataCollector.update(dataFile.getFilePointer() - currentPosition, row.columnStats());
+        metadataCollector.update(row.key.getKey(), dataFile.getFilePointer() - currentPosition, row.columnStats());
         afterAppend(row.key, currentPosition, entry);
         return entry;
     }
@@ -168,7 +168,7 @@ public class BigTableWriter extends SSTableWriter
         {
             throw new FSWriteError(e, dataFile.getPath());
         }
-        metadataCollector.update(dataFile.getFilePointer() - startPosition, cf.getColumnStats());
+        metadataCollector.update(decoratedKey.getKey(), dataFile.getFilePointer() - startPosition, cf.getColumnStats());
     }
 
     private static RowIndexEntry rawAppend(ColumnFamily cf, long startPosition, DecoratedKey key, DataOutputPlus out) throws IOException
@@ -266,7 +266,8 @@ public class BigTableWriter extends SSTableWriter
                          .mergeTombstoneHistogram(tombstones)
                          .updateMinColumnNames(minColumnNames)
                          .updateMaxColumnNames(maxColumnNames)
-                         .updateHasLegacyCounterShards(hasLegacyCounterShards);
+                         .updateHasLegacyCounterShards(hasLegacyCounterShards)
+                         .updatePartitionTombstones(key.getKey(), columnIndexer.writtenAtomCount(), maxTimestampTracker.get(), tombstones);
 
         afterAppend(key, currentPosition, RowIndexEntry.create(currentPosition, cf.deletionInfo().getTopLevelDeletion(), columnIndexer.build()));
         return currentPosition;
@@ -402,6 +403,7 @@ public class BigTableWriter extends SSTableWriter
 
         // index and filter
         iwriter.close();
+        indexComplete();
         // main data, close will truncate if necessary
         dataFile.close();
         dataFile.writeFullChecksum(descriptor);
@@ -421,6 +423,14 @@ public class BigTableWriter extends SSTableWriter
     }
 
 
+    /**
+     * Called once the primary index is written in full, before the components of the sstable are renamed, so that
+     * subclasses can derive their own components from it.
+     */
+    protected void indexComplete()
+    {
+    }
+
     private static void writeMetadata(Descriptor desc, Map<MetadataType, MetadataComponent> components)
     {
         SequentialWriter out = SequentialWriter.open(new File(desc.filenameFor(Component.STATS)));
@@ -464,7 +474,7 @@ public class BigTableWriter extends SSTableWriter
             indexFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)));
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
             summary = new IndexSummaryBuilder(keyCount, metadata.getMinIndexInterval(), Downsampling.BASE_SAMPLING_LEVEL);
-            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), true);
+            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), descriptor.version.filterType(), true);
         }
 
         // finds the last (-offset) decorated key that can be guaranteed to occur fully in the flushed portion of the index file
@@ -476,7 +486,7 @@ public class BigTableWriter extends SSTableWriter
 
         public void append(DecoratedKey key, RowIndexEntry indexEntry)
         {
-            bf.add(key.getKey());
+            bf.add(key);
             long indexPosition = indexFile.getFilePointer();
             try
             {
@@ -112,7 +112,7 @@ class SSTableNamesIterator extends AbstractIterator<OnDiskAtom> implements OnDis
             assert keyInDisk.equals(key) : String.format("%s != %s in %s", keyInDisk, key, file.getPath());
         }
 
-        indexList = indexEntry.columnsIndex();
+        indexList = sstable.getColumnsIndex(indexEntry);
 
         if (!indexEntry.isIndexed())
         {
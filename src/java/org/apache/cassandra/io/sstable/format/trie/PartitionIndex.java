@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trie;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileUtils;
+
+/**
+ * The partition index of an sstable: an on-disk trie mapping the byte-comparable form of its row keys to the position
+ * of their entries in the primary index, memory-mapped for reading.
+ *
+ * Keys are only stored up to the shortest prefix telling them apart from their neighbours, so a walk down the trie
+ * finds the only index entry that can match a key, or the entry from which the first greater key follows, and the key
+ * of that entry must be compared with the one looked for. The nodes are written children first by
+ * {@link PartitionIndexBuilder}, and the position of the root is stored in the last 8 bytes of the file.
+ *
+ * A node starts with a header byte, whose low bits give the width in bytes of the numbers in the node. A leaf has its
+ * high bit set and is followed by the index position of its key; other nodes are followed by their number of children
+ * minus one, the byte of the transition to each child, in increasing order, and the distance back from the node to
+ * each child.
+ */
+public class PartitionIndex implements Closeable
+{
+    static final int LEAF = 0x80;
+    static final int WIDTH_MASK = 0x0F;
+    static final int MAX_NODE_SIZE = 2 + 256 + 256 * 8;
+
+    // the file is mapped in regions overlapping by the largest node size, so that any node is fully within the region
+    // it starts in
+    private static final int REGION_SIZE = 1 << 30;
+
+    private final IPartitioner partitioner;
+    private final String path;
+    private final int regionSize;
+    private final MappedByteBuffer[] regions;
+    private final long root;
+
+    private PartitionIndex(IPartitioner partitioner, String path, int regionSize, MappedByteBuffer[] regions, long root)
+    {
+        this.partitioner = partitioner;
+        this.path = path;
+        this.regionSize = regionSize;
+        this.regions = regions;
+        this.root = root;
+    }
+
+    public static PartitionIndex open(String path, IPartitioner partitioner) throws IOException
+    {
+        return open(path, partitioner, REGION_SIZE);
+    }
+
+    @VisibleForTesting
+    static PartitionIndex open(String path, IPartitioner partitioner, int regionSize) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(new File(path), "r"))
+        {
+            long length = raf.length();
+            if (length < 8)
+                throw new IOException("Truncated partition index " + path);
+            raf.seek(length - 8);
+            long root = raf.readLong();
+
+            int count = (int) ((length + regionSize - 1) / regionSize);
+            MappedByteBuffer[] regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++)
+            {
+                long start = (long) i * regionSize;
+                long size = Math.min(regionSize + MAX_NODE_SIZE, length - start);
+                regions[i] = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+            return new PartitionIndex(partitioner, path, regionSize, regions, root);
+        }
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return the index position of the only entry that may have the given key, or -1 if the key is not present
+     */
+    public long exactCandidate(DecoratedKey key)
+    {
+        byte[] bytes = encode(partitioner, key);
+        if (root < 0)
+            return -1;
+
+        long node = root;
+        for (int depth = 0; !isLeaf(node); depth++)
+        {
+            if (depth == bytes.length)
+                return -1;
+            int i = search(node, bytes[depth] & 0xFF);
+            if (i < 0)
+                return -1;
+            node = child(node, i);
+        }
+        return payload(node);
+    }
+
+    /**
+     * Finds the first entry greater than or equal to the given position: that is either the returned entry, if its
+     * key is greater than or equal to the position, or the entry following it in the index.
+     *
+     * @return the index position of the candidate entry, or -1 if the first entry of the index is the one looked for
+     */
+    public long ceilingCandidate(RowPosition position)
+    {
+        byte[] bytes = encode(partitioner, position);
+        if (root < 0)
+            return -1;
+
+        // the subtree of the greatest keys known to be smaller than the position
+        long floor = -1;
+        long node = root;
+        for (int depth = 0; !isLeaf(node); depth++)
+        {
+            if (depth == bytes.length)
+            {
+                // the position is a bound, of which all the keys below this node share the token
+                if (position.kind() == RowPosition.Kind.MAX_BOUND)
+                    floor = node;
+                break;
+            }
+
+            int i = search(node, bytes[depth] & 0xFF);
+            int lesser = i >= 0 ? i - 1 : -i - 2;
+            if (lesser >= 0)
+                floor = child(node, lesser);
+            if (i < 0)
+                break;
+            node = child(node, i);
+        }
+
+        if (isLeaf(node))
+            return payload(node);
+
+        if (floor < 0)
+            return -1;
+        while (!isLeaf(floor))
+            floor = child(floor, childCount(floor) - 1);
+        return payload(floor);
+    }
+
+    private ByteBuffer region(long node)
+    {
+        return regions[(int) (node / regionSize)];
+    }
+
+    private int offset(long node)
+    {
+        return (int) (node % regionSize);
+    }
+
+    private boolean isLeaf(long node)
+    {
+        return (region(node).get(offset(node)) & LEAF) != 0;
+    }
+
+    private int width(long node)
+    {
+        return region(node).get(offset(node)) & WIDTH_MASK;
+    }
+
+    private int childCount(long node)
+    {
+        return (region(node).get(offset(node) + 1) & 0xFF) + 1;
+    }
+
+    private long payload(long node)
+    {
+        return read(region(node), offset(node) + 1, width(node));
+    }
+
+    /**
+     * @return the index of the child with the given transition, or (-(insertion point) - 1) if there is none
+     */
+    private int search(long node, int transition)
+    {
+        ByteBuffer region = region(node);
+        int transitions = offset(node) + 2;
+        int low = 0, high = childCount(node) - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = (region.get(transitions + mid) & 0xFF) - transition;
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    private long child(long node, int i)
+    {
+        int width = width(node);
+        int pointers = offset(node) + 2 + childCount(node);
+        return node - read(region(node), pointers + i * width, width);
+    }
+
+    private static long read(ByteBuffer buffer, int offset, int width)
+    {
+        long value = 0;
+        for (int i = 0; i < width; i++)
+            value = (value << 8) | (buffer.get(offset + i) & 0xFF);
+        return value;
+    }
+
+    public void close()
+    {
+        for (MappedByteBuffer region : regions)
+            FileUtils.clean(region);
+    }
+
+    /**
+     * @return whether the tokens of the partitioner have a byte-comparable form, so that its keys can be indexed
+     */
+    public static boolean supports(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner
+               || partitioner instanceof RandomPartitioner
+               || partitioner instanceof ByteOrderedPartitioner;
+    }
+
+    /**
+     * Encodes a row key or a token bound so that the unsigned lexicographic order of the encoded bytes is the order of
+     * the positions; no key is encoded as a prefix of another key. A bound is encoded as the prefix shared by the keys
+     * of its token, and is smaller or greater than all of them depending on its kind.
+     */
+    @VisibleForTesting
+    static byte[] encode(IPartitioner partitioner, RowPosition position)
+    {
+        DataOutputBuffer out = new DataOutputBuffer(32);
+        ByteBuffer token = partitioner.getTokenFactory().toByteArray(position.getToken());
+        if (partitioner instanceof ByteOrderedPartitioner)
+        {
+            // the token is the key itself
+            if (position.kind() == RowPosition.Kind.MIN_BOUND)
+                writeEscaped(token, out);
+            else
+                writeTerminated(token, out);
+            return out.toByteArray();
+        }
+
+        if (partitioner instanceof Murmur3Partitioner)
+        {
+            // flip the sign bit to order negative tokens first
+            out.write((token.get(token.position()) ^ 0x80) & 0xFF);
+            for (int i = token.position() + 1; i < token.limit(); i++)
+                out.write(token.get(i));
+        }
+        else
+        {
+            // a non-negative integer, as its length followed by its magnitude
+            if (token.remaining() > 0 && token.get(token.position()) < 0)
+            {
+                out.write(0);
+            }
+            else
+            {
+                int start = token.position();
+                while (start < token.limit() && token.get(start) == 0)
+                    start++;
+                out.write(1 + token.limit() - start);
+                for (int i = start; i < token.limit(); i++)
+                    out.write(token.get(i));
+            }
+        }
+        if (position.kind() == RowPosition.Kind.ROW_KEY)
+            writeTerminated(((DecoratedKey) position).getKey(), out);
+        return out.toByteArray();
+    }
+
+    // escapes zeros as 0x00 0xFF, so that 0x00 0x00 can terminate the bytes
+    private static void writeEscaped(ByteBuffer bytes, DataOutputBuffer out)
+    {
+        for (int i = bytes.position(); i < bytes.limit(); i++)
+        {
+            byte b = bytes.get(i);
+            out.write(b);
+            if (b == 0)
+                out.write(0xFF);
+        }
+    }
+
+    private static void writeTerminated(ByteBuffer bytes, DataOutputBuffer out)
+    {
+        writeEscaped(bytes, out);
+        out.write(0);
+        out.write(0);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trie;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.SequentialWriter;
+
+/**
+ * Writes a {@link PartitionIndex} from keys added in increasing order.
+ *
+ * A key is only written once the next one is known, as that decides how long a prefix of it is needed to tell them
+ * apart. The nodes on the path of the latest key are kept in memory, and written as soon as a key leaves their
+ * subtree, so that the builder only holds as many nodes as the longest key prefix has bytes.
+ */
+public class PartitionIndexBuilder
+{
+    private final IPartitioner partitioner;
+    private final SequentialWriter writer;
+
+    // the latest key added, not written yet
+    private byte[] pendingKey;
+    private long pendingPosition;
+    private int pendingCommonPrefix;
+
+    // the nodes on the path of the latest key written, indexed by depth, and the position of that key
+    private final List<Node> path = new ArrayList<>();
+    private long leafPosition = -1;
+
+    public PartitionIndexBuilder(String path, IPartitioner partitioner)
+    {
+        this.partitioner = partitioner;
+        this.writer = SequentialWriter.open(new File(path));
+    }
+
+    /**
+     * @param key the key, greater than all keys added so far
+     * @param indexPosition the position of the entry of the key in the primary index
+     */
+    public void add(DecoratedKey key, long indexPosition)
+    {
+        byte[] bytes = PartitionIndex.encode(partitioner, key);
+        if (pendingKey != null)
+        {
+            int commonPrefix = commonPrefix(pendingKey, bytes);
+            assert commonPrefix < bytes.length && commonPrefix < pendingKey.length && (bytes[commonPrefix] & 0xFF) > (pendingKey[commonPrefix] & 0xFF)
+                   : "keys must be added in increasing order";
+            addLeaf(pendingKey, pendingPosition, pendingCommonPrefix, commonPrefix);
+            pendingCommonPrefix = commonPrefix;
+        }
+        pendingKey = bytes;
+        pendingPosition = indexPosition;
+    }
+
+    /**
+     * Writes the remaining nodes and closes the file.
+     */
+    public void complete()
+    {
+        try
+        {
+            long root = -1;
+            if (pendingKey != null)
+            {
+                addLeaf(pendingKey, pendingPosition, pendingCommonPrefix, 0);
+                long child = writeLeaf(leafPosition);
+                for (int depth = path.size() - 1; depth >= 0; depth--)
+                {
+                    Node node = path.get(depth);
+                    node.addChild(child);
+                    child = writeNode(node);
+                }
+                root = child;
+            }
+            writer.stream.writeLong(root);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+        writer.close();
+    }
+
+    /**
+     * Adds a leaf for the key, at the shortest prefix telling it apart from both the previous and the next key.
+     */
+    private void addLeaf(byte[] key, long position, int previousCommonPrefix, int nextCommonPrefix)
+    {
+        int length = 1 + Math.max(previousCommonPrefix, nextCommonPrefix);
+        try
+        {
+            if (leafPosition >= 0)
+            {
+                // the nodes deeper than the prefix shared with the previous key are complete
+                long child = writeLeaf(leafPosition);
+                for (int depth = path.size() - 1; depth > previousCommonPrefix; depth--)
+                {
+                    Node node = path.remove(depth);
+                    node.addChild(child);
+                    child = writeNode(node);
+                }
+                path.get(previousCommonPrefix).addChild(child);
+            }
+            else
+            {
+                path.add(new Node());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+
+        path.get(previousCommonPrefix).pendingTransition = key[previousCommonPrefix] & 0xFF;
+        for (int depth = previousCommonPrefix + 1; depth < length; depth++)
+        {
+            Node node = new Node();
+            node.pendingTransition = key[depth] & 0xFF;
+            path.add(node);
+        }
+        leafPosition = position;
+    }
+
+    private long writeLeaf(long indexPosition) throws IOException
+    {
+        long position = writer.getFilePointer();
+        int width = width(indexPosition);
+        DataOutputPlus out = writer.stream;
+        out.writeByte(PartitionIndex.LEAF | width);
+        write(out, indexPosition, width);
+        return position;
+    }
+
+    private long writeNode(Node node) throws IOException
+    {
+        long position = writer.getFilePointer();
+        int count = node.transitions.size();
+        // children are written first, so the first is the farthest
+        int width = width(position - node.children.get(0));
+        DataOutputPlus out = writer.stream;
+        out.writeByte(width);
+        out.writeByte(count - 1);
+        for (int i = 0; i < count; i++)
+            out.writeByte(node.transitions.get(i));
+        for (int i = 0; i < count; i++)
+            write(out, position - node.children.get(i), width);
+        return position;
+    }
+
+    private static int width(long value)
+    {
+        int width = 1;
+        while (width < 8 && (value >>> (8 * width)) != 0)
+            width++;
+        return width;
+    }
+
+    private static void write(DataOutputPlus out, long value, int width) throws IOException
+    {
+        for (int i = width - 1; i >= 0; i--)
+            out.writeByte((int) (value >>> (8 * i)));
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b)
+    {
+        int length = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < length && a[i] == b[i])
+            i++;
+        return i;
+    }
+
+    private static final class Node
+    {
+        final List<Integer> transitions = new ArrayList<>();
+        final List<Long> children = new ArrayList<>();
+        // the transition to the child on the path of the latest key
+        int pendingTransition = -1;
+
+        void addChild(long child)
+        {
+            transitions.add(pendingTransition);
+            children.add(child);
+        }
+    }
+}
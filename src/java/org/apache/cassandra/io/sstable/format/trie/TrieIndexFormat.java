@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trie;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.ColumnSerializer;
+import org.apache.cassandra.db.OnDiskAtom;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
+import org.apache.cassandra.db.compaction.AbstractCompactedRow;
+import org.apache.cassandra.db.compaction.CompactionController;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.SSTableWriter;
+import org.apache.cassandra.io.sstable.format.Version;
+import org.apache.cassandra.io.sstable.format.big.BigFormat;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.utils.FilterFactory;
+
+/**
+ * The bigtable format, with a {@link PartitionIndex} trie over the primary index, so that finding a key takes a
+ * walk down the trie rather than a binary search of the index summary followed by a scan of the primary index.
+ *
+ * The column indexes of the primary index are written so that they can be binary searched where they are, and are
+ * only read as they are searched; entries of the primary index, and those of the key cache, do not hold them.
+ *
+ * The trie is only written for partitioners whose tokens have a byte-comparable form; other sstables of this format,
+ * like those of secondary indexes, are read as bigtable ones.
+ */
+public class TrieIndexFormat implements SSTableFormat
+{
+    public static final TrieIndexFormat instance = new TrieIndexFormat();
+    public static final TrieIndexVersion latestVersion = new TrieIndexVersion(TrieIndexVersion.current_version);
+    private static final SSTableReader.Factory readerFactory = new ReaderFactory();
+    private static final SSTableWriter.Factory writerFactory = new WriterFactory();
+
+    private TrieIndexFormat()
+    {
+
+    }
+
+    @Override
+    public Version getLatestVersion()
+    {
+        return latestVersion;
+    }
+
+    @Override
+    public Version getVersion(String version)
+    {
+        return new TrieIndexVersion(version);
+    }
+
+    @Override
+    public SSTableWriter.Factory getWriterFactory()
+    {
+        return writerFactory;
+    }
+
+    @Override
+    public SSTableReader.Factory getReaderFactory()
+    {
+        return readerFactory;
+    }
+
+    @Override
+    public Iterator<OnDiskAtom> getOnDiskIterator(FileDataInput in, ColumnSerializer.Flag flag, int expireBefore, CFMetaData cfm, Version version)
+    {
+        return BigFormat.instance.getOnDiskIterator(in, flag, expireBefore, cfm, version);
+    }
+
+    @Override
+    public AbstractCompactedRow getCompactedRowWriter(CompactionController controller, ImmutableList<OnDiskAtomIterator> onDiskAtomIterators)
+    {
+        return BigFormat.instance.getCompactedRowWriter(controller, onDiskAtomIterators);
+    }
+
+    @Override
+    public RowIndexEntry.IndexSerializer<IndexHelper.IndexInfo> getIndexSerializer(CFMetaData cfMetaData)
+    {
+        return new RowIndexEntry.ShallowSerializer(new IndexHelper.IndexInfo.Serializer(cfMetaData.comparator));
+    }
+
+    static class WriterFactory extends SSTableWriter.Factory
+    {
+        @Override
+        public SSTableWriter open(Descriptor descriptor, long keyCount, long repairedAt, CFMetaData metadata, IPartitioner partitioner, MetadataCollector metadataCollector)
+        {
+            return new TrieIndexTableWriter(descriptor, keyCount, repairedAt, metadata, partitioner, metadataCollector);
+        }
+    }
+
+    static class ReaderFactory extends SSTableReader.Factory
+    {
+        @Override
+        public SSTableReader open(Descriptor descriptor, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, Long maxDataAge, StatsMetadata sstableMetadata, SSTableReader.OpenReason openReason)
+        {
+            return new TrieIndexTableReader(descriptor, components, metadata, partitioner, maxDataAge, sstableMetadata, openReason);
+        }
+    }
+
+    // Versions of this format follow those of the bigtable format, whose features they all have.
+    static class TrieIndexVersion extends Version
+    {
+        public static final String current_version = "ab";
+        public static final String earliest_supported_version = "aa";
+
+        // aa (3.0.0): bigtable format "la" with a partition index, and column indexes after a table of their offsets
+        // ab (3.0.0): blocked bloom filters, as in bigtable format "lb"
+
+        private final boolean isLatestVersion;
+        private final FilterFactory.Type filterType;
+
+        public TrieIndexVersion(String version)
+        {
+            super(instance, version);
+
+            isLatestVersion = version.compareTo(current_version) == 0;
+            filterType = version.compareTo("ab") >= 0 ? FilterFactory.Type.BLOCKED : FilterFactory.Type.MURMUR3;
+        }
+
+        @Override
+        public boolean isLatestVersion()
+        {
+            return isLatestVersion;
+        }
+
+        @Override
+        public boolean hasPostCompressionAdlerChecksums()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean hasSamplingLevel()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean hasNewStatsFile()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean hasAllAdlerChecksums()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean hasRepairedAt()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean tracksLegacyCounterShards()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean hasNewFileName()
+        {
+            return true;
+        }
+
+        @Override
+        public FilterFactory.Type filterType()
+        {
+            return filterType;
+        }
+
+        @Override
+        public boolean isCompatible()
+        {
+            return version.compareTo(earliest_supported_version) >= 0 && version.charAt(0) <= current_version.charAt(0);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.CorruptSSTableException;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.format.big.BigTableReader;
+import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Finds keys with the partition index when the sstable has one; early opened sstables do not, as the partition
+ * index is only written once the primary index is complete, and are read with the index summary.
+ */
+public class TrieIndexTableReader extends BigTableReader
+{
+    private final PartitionIndex partitionIndex;
+
+    TrieIndexTableReader(Descriptor desc, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, Long maxDataAge, StatsMetadata sstableMetadata, OpenReason openReason)
+    {
+        super(desc, components, metadata, partitioner, maxDataAge, sstableMetadata, openReason);
+
+        if (components.contains(Component.PARTITION_INDEX) && openReason != OpenReason.EARLY)
+        {
+            String path = descriptor.filenameFor(Component.PARTITION_INDEX);
+            try
+            {
+                partitionIndex = PartitionIndex.open(path, partitioner);
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, path);
+            }
+        }
+        else
+        {
+            partitionIndex = null;
+        }
+    }
+
+    @Override
+    protected RowIndexEntry<?> getIndexEntry(RowPosition key, Operator op, boolean updateCacheAndStats)
+    {
+        if (partitionIndex == null)
+            return super.getIndexEntry(key, op, updateCacheAndStats);
+
+        long indexPosition = op == Operator.EQ
+                           ? partitionIndex.exactCandidate((DecoratedKey) key)
+                           : partitionIndex.ceilingCandidate(key);
+        if (indexPosition < 0)
+        {
+            if (op == Operator.EQ)
+                return falsePositive(updateCacheAndStats);
+            indexPosition = 0;
+        }
+
+        // read the candidate entry; for inequalities, the one looked for may be one of the next two
+        Iterator<FileDataInput> segments = ifile.iterator(indexPosition);
+        while (segments.hasNext())
+        {
+            FileDataInput in = segments.next();
+            try
+            {
+                while (!in.isEOF())
+                {
+                    ByteBuffer indexKey = ByteBufferUtil.readWithShortLength(in);
+
+                    boolean opSatisfied; // did we find an appropriate position for the op requested
+                    boolean exactMatch; // is the current position an exact match for the key, suitable for caching
+
+                    if (op == Operator.EQ)
+                    {
+                        opSatisfied = exactMatch = indexKey.equals(((DecoratedKey) key).getKey());
+                        if (!opSatisfied)
+                            return falsePositive(updateCacheAndStats);
+                    }
+                    else
+                    {
+                        int comparison = partitioner.decorateKey(indexKey).compareTo(key);
+                        opSatisfied = op.apply(comparison) == 0;
+                        exactMatch = comparison == 0;
+                    }
+
+                    if (opSatisfied)
+                    {
+                        RowIndexEntry<?> indexEntry = rowIndexEntrySerializer.deserialize(in, descriptor.version);
+                        if (exactMatch && updateCacheAndStats)
+                            cacheKey((DecoratedKey) key, indexEntry);
+                        if (op == Operator.EQ && updateCacheAndStats)
+                            bloomFilterTracker.addTruePositive();
+                        Tracing.trace("Partition index with {} entries found for sstable {}", getColumnsIndex(indexEntry).size(), descriptor.generation);
+                        return indexEntry;
+                    }
+
+                    RowIndexEntry.Serializer.skip(in);
+                }
+            }
+            catch (IOException e)
+            {
+                markSuspect();
+                throw new CorruptSSTableException(e, in.getPath());
+            }
+            finally
+            {
+                FileUtils.closeQuietly(in);
+            }
+        }
+        return null;
+    }
+
+    private RowIndexEntry<?> falsePositive(boolean updateCacheAndStats)
+    {
+        if (updateCacheAndStats)
+            bloomFilterTracker.addFalsePositive();
+        Tracing.trace("Partition index lookup complete (bloom filter false positive) for sstable {}", descriptor.generation);
+        return null;
+    }
+
+    /**
+     * With a partition index, the position returned is that of the first entry greater than or equal to the key, or
+     * of the entry just before it.
+     */
+    @Override
+    public long getIndexScanPosition(RowPosition key)
+    {
+        if (partitionIndex == null)
+            return super.getIndexScanPosition(key);
+        return partitionIndex.ceilingCandidate(key);
+    }
+
+    @Override
+    protected void releaseComponents()
+    {
+        if (partitionIndex != null)
+            partitionIndex.close();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trie;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.format.big.BigTableWriter;
+import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class TrieIndexTableWriter extends BigTableWriter
+{
+    TrieIndexTableWriter(Descriptor descriptor, Long keyCount, Long repairedAt, CFMetaData metadata, IPartitioner partitioner, MetadataCollector metadataCollector)
+    {
+        super(descriptor, keyCount, repairedAt, metadata, partitioner, metadataCollector);
+
+        if (PartitionIndex.supports(partitioner))
+            components.add(Component.PARTITION_INDEX);
+    }
+
+    /**
+     * Builds the partition index from the complete primary index, rather than as rows are appended, so that it does
+     * not have to follow the primary index through marks and resets.
+     */
+    @Override
+    protected void indexComplete()
+    {
+        if (!components.contains(Component.PARTITION_INDEX))
+            return;
+
+        PartitionIndexBuilder builder = new PartitionIndexBuilder(descriptor.filenameFor(Component.PARTITION_INDEX), partitioner);
+        RandomAccessReader in = RandomAccessReader.open(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)));
+        try
+        {
+            while (!in.isEOF())
+            {
+                long indexPosition = in.getFilePointer();
+                DecoratedKey key = partitioner.decorateKey(ByteBufferUtil.readWithShortLength(in));
+                RowIndexEntry.Serializer.skip(in);
+                builder.add(key, indexPosition);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, in.getPath());
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+        builder.complete();
+    }
+}
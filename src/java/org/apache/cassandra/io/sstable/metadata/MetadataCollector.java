@@ -94,6 +94,7 @@ public class MetadataCollector
     protected List<ByteBuffer> minColumnNames = Collections.emptyList();
     protected List<ByteBuffer> maxColumnNames = Collections.emptyList();
     protected boolean hasLegacyCounterShards = false;
+    protected final TombstoneMetadata.Collector tombstoneSegments = new TombstoneMetadata.Collector();
 
     /**
      * Default cardinality estimation method is to use HyperLogLog++.
@@ -229,6 +230,18 @@ public class MetadataCollector
         return this;
     }
 
+    public MetadataCollector updatePartitionTombstones(ByteBuffer key, long columnCount, long maxTimestamp, StreamingHistogram tombstones)
+    {
+        tombstoneSegments.update(key, columnCount, maxTimestamp, tombstones);
+        return this;
+    }
+
+    public MetadataCollector update(ByteBuffer key, long rowSize, ColumnStats stats)
+    {
+        updatePartitionTombstones(key, stats.columnCount, stats.maxTimestamp, stats.tombstoneHistogram);
+        return update(rowSize, stats);
+    }
+
     public MetadataCollector update(long rowSize, ColumnStats stats)
     {
         updateMinTimestamp(stats.minTimestamp);
@@ -261,6 +274,7 @@ public class MetadataCollector
                                                              hasLegacyCounterShards,
                                                              repairedAt));
         components.put(MetadataType.COMPACTION, new CompactionMetadata(ancestors, cardinality));
+        components.put(MetadataType.TOMBSTONES, tombstoneSegments.build());
         return components;
     }
 }
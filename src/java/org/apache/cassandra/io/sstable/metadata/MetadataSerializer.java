@@ -113,13 +113,12 @@ public class MetadataSerializer implements IMetadataSerializer
         }
         for (MetadataType type : types)
         {
-            MetadataComponent component = null;
+            // sstables written before a component was introduced don't have it
             if (toc.containsKey(type))
             {
                 in.seek(toc.get(type));
-                component = type.serializer.deserialize(descriptor.version, in);
+                components.put(type, type.serializer.deserialize(descriptor.version, in));
             }
-            components.put(type, component);
         }
         return components;
     }
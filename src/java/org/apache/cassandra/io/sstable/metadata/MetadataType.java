@@ -27,7 +27,9 @@ public enum MetadataType
     /** Metadata only used at compaction */
     COMPACTION(CompactionMetadata.serializer),
     /** Metadata always keep in memory */
-    STATS(StatsMetadata.serializer);
+    STATS(StatsMetadata.serializer),
+    /** Metadata only used to evaluate tombstone compactions */
+    TOMBSTONES(TombstoneMetadata.serializer);
 
     public final IMetadataComponentSerializer<MetadataComponent> serializer;
 
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.metadata;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.Version;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.StreamingHistogram;
+
+/**
+ * Tombstone statistics of the partitions of an SSTable, collected over contiguous segments of its token range.
+ *
+ * Only loaded to evaluate single-SSTable tombstone compactions: unlike the drop time histogram of
+ * {@link StatsMetadata}, it tells where the tombstones are, so those that may still shadow data of
+ * overlapping SSTables are not counted as droppable.
+ */
+public class TombstoneMetadata extends MetadataComponent
+{
+    public static final IMetadataComponentSerializer serializer = new TombstoneMetadataSerializer();
+
+    @VisibleForTesting
+    static final int MAX_SEGMENTS = 32;
+    static final int SEGMENT_HISTOGRAM_BIN_SIZE = 8;
+
+    public final List<Segment> segments;
+
+    public TombstoneMetadata(List<Segment> segments)
+    {
+        this.segments = segments;
+    }
+
+    public MetadataType getType()
+    {
+        return MetadataType.TOMBSTONES;
+    }
+
+    public long getCellCount()
+    {
+        long cells = 0;
+        for (Segment segment : segments)
+            cells += segment.cells;
+        return cells;
+    }
+
+    /**
+     * @param partitioner the partitioner of the SSTable
+     * @param overlapping the SSTables overlapping the one this metadata belongs to
+     * @param gcBefore gc time in seconds
+     * @return estimated amount of tombstones that a compaction of this SSTable alone would purge at gcBefore: the ones
+     * past gcBefore in segments where no overlapping SSTable holds data older than the segment tombstones
+     */
+    public double getPurgeableTombstonesBefore(IPartitioner partitioner, Collection<SSTableReader> overlapping, int gcBefore)
+    {
+        double purgeable = 0;
+        DecoratedKey previousLast = null;
+        for (Segment segment : segments)
+        {
+            DecoratedKey last = partitioner.decorateKey(segment.lastKey);
+            double droppable = segment.tombstoneDropTime.sum(gcBefore);
+            if (droppable > 0 && !mayShadowOverlappingData(segment, previousLast, last, overlapping))
+                purgeable += droppable;
+            previousLast = last;
+        }
+        return purgeable;
+    }
+
+    /**
+     * @return true if an SSTable overlapping the (previousLast, last] range holds data that is not newer than the
+     * tombstones of the segment
+     */
+    private static boolean mayShadowOverlappingData(Segment segment, DecoratedKey previousLast, DecoratedKey last, Collection<SSTableReader> overlapping)
+    {
+        for (SSTableReader sstable : overlapping)
+        {
+            if (sstable.first.compareTo(last) > 0 || (previousLast != null && sstable.last.compareTo(previousLast) <= 0))
+                continue;
+            if (sstable.getMinTimestamp() <= segment.maxTombstoneTimestamp)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TombstoneMetadata that = (TombstoneMetadata) o;
+        return segments.equals(that.segments);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return segments.hashCode();
+    }
+
+    /**
+     * Statistics of a run of consecutive partitions. A segment starts right after the last key of the previous one.
+     */
+    public static class Segment
+    {
+        public final ByteBuffer lastKey;
+        public final long partitions;
+        public final long cells;
+        // highest timestamp of the partitions holding tombstones, Long.MIN_VALUE if there is none
+        public final long maxTombstoneTimestamp;
+        public final StreamingHistogram tombstoneDropTime;
+
+        public Segment(ByteBuffer lastKey, long partitions, long cells, long maxTombstoneTimestamp, StreamingHistogram tombstoneDropTime)
+        {
+            this.lastKey = lastKey;
+            this.partitions = partitions;
+            this.cells = cells;
+            this.maxTombstoneTimestamp = maxTombstoneTimestamp;
+            this.tombstoneDropTime = tombstoneDropTime;
+        }
+
+        private static Segment merge(Segment left, Segment right)
+        {
+            StreamingHistogram tombstoneDropTime = new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE);
+            tombstoneDropTime.merge(left.tombstoneDropTime);
+            tombstoneDropTime.merge(right.tombstoneDropTime);
+            return new Segment(right.lastKey,
+                               left.partitions + right.partitions,
+                               left.cells + right.cells,
+                               Math.max(left.maxTombstoneTimestamp, right.maxTombstoneTimestamp),
+                               tombstoneDropTime);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Segment that = (Segment) o;
+            return lastKey.equals(that.lastKey)
+                   && partitions == that.partitions
+                   && cells == that.cells
+                   && maxTombstoneTimestamp == that.maxTombstoneTimestamp
+                   && tombstoneDropTime.equals(that.tombstoneDropTime);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(lastKey, partitions, cells, maxTombstoneTimestamp, tombstoneDropTime);
+        }
+    }
+
+    /**
+     * Collects the segments of an SSTable as its partitions are written. Segments start with a single partition, and
+     * adjacent segments are merged two by two whenever there are MAX_SEGMENTS of them, so their count stays bounded
+     * whatever the size of the SSTable.
+     */
+    public static class Collector
+    {
+        private final List<Segment> segments = new ArrayList<>();
+        private long partitionsPerSegment = 1;
+
+        private ByteBuffer lastKey;
+        private long partitions;
+        private long cells;
+        private long maxTombstoneTimestamp = Long.MIN_VALUE;
+        private StreamingHistogram tombstoneDropTime = new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE);
+
+        public void update(ByteBuffer key, long columnCount, long maxTimestamp, StreamingHistogram tombstones)
+        {
+            lastKey = key;
+            partitions++;
+            cells += columnCount;
+            if (!tombstones.getAsMap().isEmpty())
+            {
+                maxTombstoneTimestamp = Math.max(maxTombstoneTimestamp, maxTimestamp);
+                tombstoneDropTime.merge(tombstones);
+            }
+
+            if (partitions == partitionsPerSegment)
+                closeSegment();
+        }
+
+        private void closeSegment()
+        {
+            segments.add(new Segment(ByteBufferUtil.clone(lastKey), partitions, cells, maxTombstoneTimestamp, tombstoneDropTime));
+            partitions = 0;
+            cells = 0;
+            maxTombstoneTimestamp = Long.MIN_VALUE;
+            tombstoneDropTime = new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE);
+
+            if (segments.size() < MAX_SEGMENTS)
+                return;
+
+            List<Segment> merged = new ArrayList<>(MAX_SEGMENTS / 2);
+            for (int i = 0; i < segments.size(); i += 2)
+                merged.add(Segment.merge(segments.get(i), segments.get(i + 1)));
+            segments.clear();
+            segments.addAll(merged);
+            partitionsPerSegment *= 2;
+        }
+
+        /**
+         * @return the segments collected so far; the collector can keep being updated afterwards
+         */
+        public TombstoneMetadata build()
+        {
+            List<Segment> built = new ArrayList<>(segments.size() + 1);
+            built.addAll(segments);
+            if (partitions > 0)
+            {
+                // copy the histogram, which keeps being updated
+                StreamingHistogram histogram = new StreamingHistogram(SEGMENT_HISTOGRAM_BIN_SIZE);
+                histogram.merge(tombstoneDropTime);
+                built.add(new Segment(ByteBufferUtil.clone(lastKey), partitions, cells, maxTombstoneTimestamp, histogram));
+            }
+            return new TombstoneMetadata(built);
+        }
+    }
+
+    public static class TombstoneMetadataSerializer implements IMetadataComponentSerializer<TombstoneMetadata>
+    {
+        public int serializedSize(TombstoneMetadata component) throws IOException
+        {
+            int size = TypeSizes.NATIVE.sizeof(component.segments.size());
+            for (Segment segment : component.segments)
+            {
+                size += TypeSizes.NATIVE.sizeofWithShortLength(segment.lastKey);
+                size += TypeSizes.NATIVE.sizeof(segment.partitions);
+                size += TypeSizes.NATIVE.sizeof(segment.cells);
+                size += TypeSizes.NATIVE.sizeof(segment.maxTombstoneTimestamp);
+                size += StreamingHistogram.serializer.serializedSize(segment.tombstoneDropTime, TypeSizes.NATIVE);
+            }
+            return size;
+        }
+
+        public void serialize(TombstoneMetadata component, DataOutputPlus out) throws IOException
+        {
+            out.writeInt(component.segments.size());
+            for (Segment segment : component.segments)
+            {
+                ByteBufferUtil.writeWithShortLength(segment.lastKey, out);
+                out.writeLong(segment.partitions);
+                out.writeLong(segment.cells);
+                out.writeLong(segment.maxTombstoneTimestamp);
+                StreamingHistogram.serializer.serialize(segment.tombstoneDropTime, out);
+            }
+        }
+
+        public TombstoneMetadata deserialize(Version version, DataInput in) throws IOException
+        {
+            int count = in.readInt();
+            List<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                ByteBuffer lastKey = ByteBufferUtil.readWithShortLength(in);
+                long partitions = in.readLong();
+                long cells = in.readLong();
+                long maxTombstoneTimestamp = in.readLong();
+                StreamingHistogram tombstoneDropTime = StreamingHistogram.serializer.deserialize(in);
+                segments.add(new Segment(lastKey, partitions, cells, maxTombstoneTimestamp, tombstoneDropTime));
+            }
+            return new TombstoneMetadata(segments);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * A FileDataInput over an in-memory copy of a segment of a file, e.g. a decompressed section of a commit log.
+ * Positions are reported relative to the start of the file, offset being the position of the first byte of the buffer.
+ */
+public class FileSegmentInputStream extends AbstractDataInput implements FileDataInput
+{
+    private final ByteBuffer buffer;
+    private final String filePath;
+    private final long offset;
+    private int position;
+
+    public FileSegmentInputStream(ByteBuffer buffer, String filePath, long offset)
+    {
+        this.buffer = buffer;
+        this.filePath = filePath;
+        this.offset = offset;
+        this.position = buffer.position();
+    }
+
+    public String getPath()
+    {
+        return filePath;
+    }
+
+    public void seek(long pos) throws IOException
+    {
+        long inSegmentPos = pos - offset + buffer.position();
+        if (inSegmentPos < buffer.position() || inSegmentPos > buffer.limit())
+            throw new IOException(String.format("Seek position %d is not within segment (offset: %d, length: %d)", pos, offset, buffer.remaining()));
+
+        position = (int) inSegmentPos;
+    }
+
+    public long getFilePointer()
+    {
+        return getPosition();
+    }
+
+    public long getPosition()
+    {
+        return offset + position - buffer.position();
+    }
+
+    public long getPositionLimit()
+    {
+        return offset + buffer.remaining();
+    }
+
+    public boolean isEOF()
+    {
+        return position == buffer.limit();
+    }
+
+    public long bytesRemaining()
+    {
+        return buffer.limit() - position;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    public FileMark mark()
+    {
+        return new FileSegmentMark(position);
+    }
+
+    public void reset(FileMark mark)
+    {
+        assert mark instanceof FileSegmentMark;
+        position = ((FileSegmentMark) mark).position;
+    }
+
+    public long bytesPastMark(FileMark mark)
+    {
+        assert mark instanceof FileSegmentMark;
+        assert position >= ((FileSegmentMark) mark).position;
+        return position - ((FileSegmentMark) mark).position;
+    }
+
+    public int read()
+    {
+        if (isEOF())
+            return -1;
+        return buffer.get(position++) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len)
+    {
+        if (isEOF())
+            return -1;
+        int toCopy = Math.min(len, (int) bytesRemaining());
+        ByteBufferUtil.arrayCopy(buffer, position, bytes, off, toCopy);
+        position += toCopy;
+        return toCopy;
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int off, int len) throws IOException
+    {
+        if (len > bytesRemaining())
+            throw new EOFException();
+        ByteBufferUtil.arrayCopy(buffer, position, bytes, off, len);
+        position += len;
+    }
+
+    public ByteBuffer readBytes(int length) throws IOException
+    {
+        if (length > bytesRemaining())
+            throw new EOFException();
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        ByteBufferUtil.arrayCopy(buffer, position, bytes.array(), 0, length);
+        position += length;
+        return bytes;
+    }
+
+    private static class FileSegmentMark implements FileMark
+    {
+        final int position;
+
+        FileSegmentMark(int position)
+        {
+            this.position = position;
+        }
+    }
+}
@@ -46,13 +46,22 @@ public class Memory
     }
 
     protected long peer;
+    // the address allocated, before peer if the region is aligned
+    private final long base;
     // size of the memory region
     private final long size;
 
     protected Memory(long bytes)
     {
         size = bytes;
-        peer = allocator.allocate(size);
+        peer = base = allocator.allocate(size);
+    }
+
+    private Memory(long bytes, int alignment)
+    {
+        size = bytes;
+        base = allocator.allocate(size + alignment - 1);
+        peer = (base + alignment - 1) & -alignment;
     }
 
     public static Memory allocate(long bytes)
@@ -63,6 +72,17 @@ public class Memory
         return new Memory(bytes);
     }
 
+    /**
+     * @return a region starting at a multiple of alignment, which must be a power of two
+     */
+    public static Memory allocateAligned(long bytes, int alignment)
+    {
+        if (bytes < 0 || Integer.bitCount(alignment) != 1)
+            throw new IllegalArgumentException();
+
+        return new Memory(bytes, alignment);
+    }
+
     public void setByte(long offset, byte b)
     {
         checkPosition(offset);
@@ -297,7 +317,7 @@ public class Memory
     public void free()
     {
         assert peer != 0;
-        allocator.free(peer);
+        allocator.free(base);
         peer = 0;
     }
 
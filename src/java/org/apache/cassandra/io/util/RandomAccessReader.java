@@ -353,7 +353,12 @@ public class RandomAccessReader extends AbstractDataInput implements FileDataInp
                 if (isEOF())
                     throw new EOFException();
                 if (!buffer.hasRemaining())
+                {
+                    // large values, typically blobs, skip the copy through our buffer
+                    if (result.remaining() >= buffer.capacity() && readDirect(result))
+                        break;
                     reBuffer();
+                }
                 ByteBufferUtil.put(buffer, result);
             }
             result.flip();
@@ -369,6 +374,40 @@ public class RandomAccessReader extends AbstractDataInput implements FileDataInp
         }
     }
 
+    /**
+     * Reads the remaining bytes of dest straight from the file at the current position, bypassing the buffer.
+     * Readers whose buffer doesn't hold the file's bytes as they are on disk, like the compressed ones, can't.
+     *
+     * The channel reads into heap buffers through a temporary direct buffer of the size of each read, which each
+     * thread keeps, so reads are at most the size of the buffer.
+     *
+     * @return false if the reader can't read directly, in which case nothing was read
+     */
+    protected boolean readDirect(ByteBuffer dest) throws IOException
+    {
+        long position = current();
+        int limit = dest.limit();
+        try
+        {
+            while (dest.position() < limit)
+            {
+                dest.limit(Math.min(limit, dest.position() + buffer.capacity()));
+                int n = channel.read(dest, position);
+                if (n < 0)
+                    throw new EOFException();
+                position += n;
+            }
+        }
+        finally
+        {
+            dest.limit(limit);
+        }
+        bufferOffset = position;
+        buffer.clear();
+        buffer.limit(0);
+        return true;
+    }
+
     public long length()
     {
         return fileLength;
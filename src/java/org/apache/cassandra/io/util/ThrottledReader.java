@@ -23,6 +23,8 @@ package org.apache.cassandra.io.util;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.google.common.util.concurrent.RateLimiter;
 
@@ -42,6 +44,13 @@ public class ThrottledReader extends RandomAccessReader
         super.reBuffer();
     }
 
+    @Override
+    protected boolean readDirect(ByteBuffer dest) throws IOException
+    {
+        limiter.acquire(dest.remaining());
+        return super.readDirect(dest);
+    }
+
     public static ThrottledReader open(File file, RateLimiter limiter)
     {
         try
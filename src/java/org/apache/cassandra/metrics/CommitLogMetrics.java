@@ -19,6 +19,7 @@ package org.apache.cassandra.metrics;
 
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
 
 import com.yammer.metrics.core.Timer;
 import org.apache.cassandra.db.commitlog.AbstractCommitLogService;
@@ -43,6 +44,10 @@ public class CommitLogMetrics
     public final Timer waitingOnSegmentAllocation;
     /** The time spent waiting on CL sync; for Periodic this is only occurs when the sync is lagging its sync interval */
     public final Timer waitingOnCommit;
+    /** Mutations applied during commit log replay */
+    public final Meter replayedMutations;
+    /** Bytes of mutations read during commit log replay */
+    public final Meter replayedBytes;
 
     public CommitLogMetrics(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
     {
@@ -69,5 +74,7 @@ public class CommitLogMetrics
         });
         waitingOnSegmentAllocation = Metrics.newTimer(factory.createMetricName("WaitingOnSegmentAllocation"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
         waitingOnCommit = Metrics.newTimer(factory.createMetricName("WaitingOnCommit"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        replayedMutations = Metrics.newMeter(factory.createMetricName("ReplayedMutations"), "mutations", TimeUnit.SECONDS);
+        replayedBytes = Metrics.newMeter(factory.createMetricName("ReplayedBytes"), "bytes", TimeUnit.SECONDS);
     }
 }
@@ -48,6 +48,7 @@ import org.apache.cassandra.cql3.functions.Functions;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Directories;
 import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.MemtableFlushScheduler;
 import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.compaction.CompactionManager;
@@ -186,8 +187,8 @@ public class CassandraDaemon
 
         // check all directories(data, commitlog, saved cache) for existence and permission
         Iterable<String> dirs = Iterables.concat(Arrays.asList(DatabaseDescriptor.getAllDataFileLocations()),
-                                                 Arrays.asList(DatabaseDescriptor.getCommitLogLocation(),
-                                                               DatabaseDescriptor.getSavedCachesLocation()));
+                                                 Arrays.asList(DatabaseDescriptor.getCommitLogLocations()),
+                                                 Arrays.asList(DatabaseDescriptor.getSavedCachesLocation()));
 
         SigarLibrary sigarLibrary = new SigarLibrary();
         if (sigarLibrary.initialized())
@@ -334,6 +335,9 @@ public class CassandraDaemon
             }
         };
         StorageService.optionalTasks.schedule(runnable, 5 * 60, TimeUnit.SECONDS);
+        CompactionManager.instance.scheduleExpiredSSTableDrops();
+
+        MemtableFlushScheduler.instance.start();
 
         SystemKeyspace.finishStartup();
 
@@ -2122,6 +2122,14 @@ public class StorageService extends NotificationBroadcasterSupport implements IE
         return FileUtils.getCanonicalPath(DatabaseDescriptor.getCommitLogLocation());
     }
 
+    public String[] getCommitLogLocations()
+    {
+        String[] locations = DatabaseDescriptor.getCommitLogLocations().clone();
+        for (int i = 0; i < locations.length; i++)
+            locations[i] = FileUtils.getCanonicalPath(locations[i]);
+        return locations;
+    }
+
     public String getSavedCachesLocation()
     {
         return FileUtils.getCanonicalPath(DatabaseDescriptor.getSavedCachesLocation());
@@ -106,11 +106,17 @@ public interface StorageServiceMBean extends NotificationEmitter
     public String[] getAllDataFileLocations();
 
     /**
-     * Get location of the commit log
+     * Get location of the commit log, the first of its directories if there are several
      * @return a string path
      */
     public String getCommitLogLocation();
 
+    /**
+     * Get the list of all commit log directories from conf
+     * @return String array of all locations
+     */
+    public String[] getCommitLogLocations();
+
     /**
      * Get location of the saved caches dir
      * @return a string path
@@ -26,8 +26,15 @@ public class AlwaysPresentFilter implements IFilter
         return true;
     }
 
+    public boolean isPresent(FilterKey key)
+    {
+        return true;
+    }
+
     public void add(ByteBuffer key) { }
 
+    public void add(FilterKey key) { }
+
     public void clear() { }
 
     public void close() { }
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.ISerializer;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.utils.obs.IBitSet;
+import org.apache.cassandra.utils.obs.OffHeapBitSet;
+import org.apache.cassandra.utils.obs.OpenBitSet;
+
+/**
+ * A Bloom filter whose hashes for a key all fall in one block of BLOCK_BITS bits, that is 64 bytes, so that a lookup
+ * costs a single cache miss rather than one per hash. Off-heap bitsets are aligned on cache lines for that; blocks of
+ * on-heap ones, which the JVM doesn't align, may straddle two lines.
+ *
+ * The first half of the key's murmur3 hash picks the block, and the bits within it are read off the top of the
+ * second half and of its successive products by a constant. The combinatorial generation used by BloomFilter
+ * doesn't do here: over a block's few bits its hashes repeat too often, which raises the false positive rate.
+ */
+public class BlockedBloomFilter implements IFilter
+{
+    public static final BlockedBloomFilterSerializer serializer = new BlockedBloomFilterSerializer();
+
+    public static final int BLOCK_BITS = 512;
+    private static final int BLOCK_SHIFT = 9;
+    // bits within a block are taken from the top of 64 bit hashes, where multiplication mixes in all of their bits
+    private static final int BIT_SHIFT = 64 - BLOCK_SHIFT;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final ThreadLocal<long[]> reusableHash = new ThreadLocal<long[]>()
+    {
+        protected long[] initialValue()
+        {
+            return new long[2];
+        }
+    };
+
+    public final IBitSet bitset;
+    public final int hashCount;
+    private final long blockCount;
+
+    public BlockedBloomFilter(int hashes, IBitSet bitset)
+    {
+        assert bitset.capacity() >= BLOCK_BITS : bitset.capacity();
+        this.hashCount = hashes;
+        this.bitset = bitset;
+        this.blockCount = bitset.capacity() >> BLOCK_SHIFT;
+    }
+
+    /**
+     * @return the number of bits to allocate to hold numBits in whole blocks
+     */
+    public static long roundToBlocks(long numBits)
+    {
+        return Math.max(1, (numBits + BLOCK_BITS - 1) >> BLOCK_SHIFT) << BLOCK_SHIFT;
+    }
+
+    private long[] hash(ByteBuffer key)
+    {
+        long[] hash = reusableHash.get();
+        MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0L, hash);
+        return hash;
+    }
+
+    private long[] hash(FilterKey key)
+    {
+        long[] hash = reusableHash.get();
+        key.filterHash(hash);
+        return hash;
+    }
+
+    public void add(ByteBuffer key)
+    {
+        add(hash(key));
+    }
+
+    public void add(FilterKey key)
+    {
+        add(hash(key));
+    }
+
+    private void add(long[] hash)
+    {
+        long block = FBUtilities.abs(hash[0] % blockCount) << BLOCK_SHIFT;
+        long bits = hash[1];
+        for (int i = 0; i < hashCount; i++)
+        {
+            bitset.set(block + (bits >>> BIT_SHIFT));
+            bits *= MULTIPLIER;
+        }
+    }
+
+    public boolean isPresent(ByteBuffer key)
+    {
+        return isPresent(hash(key));
+    }
+
+    public boolean isPresent(FilterKey key)
+    {
+        return isPresent(hash(key));
+    }
+
+    private boolean isPresent(long[] hash)
+    {
+        long block = FBUtilities.abs(hash[0] % blockCount) << BLOCK_SHIFT;
+        long bits = hash[1];
+        for (int i = 0; i < hashCount; i++)
+        {
+            if (!bitset.get(block + (bits >>> BIT_SHIFT)))
+                return false;
+            bits *= MULTIPLIER;
+        }
+        return true;
+    }
+
+    public void clear()
+    {
+        bitset.clear();
+    }
+
+    public long serializedSize()
+    {
+        return serializer.serializedSize(this, TypeSizes.NATIVE);
+    }
+
+    public void close()
+    {
+        bitset.close();
+    }
+
+    public static class BlockedBloomFilterSerializer implements ISerializer<BlockedBloomFilter>
+    {
+        public void serialize(BlockedBloomFilter bf, DataOutputPlus out) throws IOException
+        {
+            out.writeInt(bf.hashCount);
+            bf.bitset.serialize(out);
+        }
+
+        public BlockedBloomFilter deserialize(DataInput in) throws IOException
+        {
+            return deserialize(in, false);
+        }
+
+        public BlockedBloomFilter deserialize(DataInput in, boolean offheap) throws IOException
+        {
+            int hashes = in.readInt();
+            IBitSet bs = offheap ? OffHeapBitSet.deserialize(in) : OpenBitSet.deserialize(in);
+            return new BlockedBloomFilter(hashes, bs);
+        }
+
+        public long serializedSize(BlockedBloomFilter bf, TypeSizes typeSizes)
+        {
+            return typeSizes.sizeof(bf.hashCount) + bf.bitset.serializedSize(typeSizes);
+        }
+    }
+}
@@ -167,12 +167,72 @@ class BloomCalculations {
         return new BloomSpecification(K, bucketsPerElement);
     }
 
+    private static final int maxBlockedBuckets = 40;
+    private static final int maxBlockedK = 20;
+
+    /**
+     * Same as computeBloomSpec, for a filter whose hashes for an element all fall in one block of blockBits
+     * buckets. The elements are not spread evenly over the blocks, so such a filter needs more buckets per element
+     * than a plain one to reach the same false positive rate; the rate is computed rather than looked up in probs.
+     *
+     * @throws UnsupportedOperationException if maxFalsePosProb can't be met with maxBucketsPerElement buckets per element
+     */
+    public static BloomSpecification computeBlockedBloomSpec(int blockBits, int maxBucketsPerElement, double maxFalsePosProb)
+    {
+        for (int bucketsPerElement = minBuckets; bucketsPerElement <= maxBucketsPerElement; bucketsPerElement++)
+        {
+            for (int K = minK; K <= maxBlockedK; K++)
+            {
+                if (blockedFalsePosProb(blockBits, bucketsPerElement, K) <= maxFalsePosProb)
+                    return new BloomSpecification(K, bucketsPerElement);
+            }
+        }
+        throw new UnsupportedOperationException(String.format("Unable to satisfy %s with %s buckets per element",
+                                                              maxFalsePosProb, maxBucketsPerElement));
+    }
+
+    /**
+     * The number of elements in a block follows a Poisson distribution of mean blockBits / bucketsPerElement, and a
+     * block holding i elements has the false positive rate of a plain filter of blockBits buckets holding i elements.
+     */
+    static double blockedFalsePosProb(int blockBits, int bucketsPerElement, int K)
+    {
+        double mean = (double) blockBits / bucketsPerElement;
+        // chance that one hash leaves a given bucket of the block unset
+        double unset = Math.pow(1 - 1.0 / blockBits, K);
+
+        double prob = 0;
+        double poisson = Math.exp(-mean);
+        double unsetByAll = 1;
+        for (int i = 0; i <= mean || poisson > 1e-15; i++)
+        {
+            prob += poisson * Math.pow(1 - unsetByAll, K);
+            poisson *= mean / (i + 1);
+            unsetByAll *= unset;
+        }
+        return prob;
+    }
+
     /**
      * Calculates the maximum number of buckets per element that this implementation
      * can support.  Crucially, it will lower the bucket count if necessary to meet
      * BitSet's size restrictions.
      */
     public static int maxBucketsPerElement(long numElements)
+    {
+        return Math.min(BloomCalculations.probs.length - 1, maxBucketsForSize(numElements));
+    }
+
+    /**
+     * Same as maxBucketsPerElement, for a blocked filter. Its false positive rate is computed rather than looked up
+     * in probs, so it can have more buckets per element than probs has rows.
+     */
+    public static int maxBlockedBucketsPerElement(long numElements)
+    {
+        return Math.min(maxBlockedBuckets, maxBucketsForSize(numElements));
+    }
+
+    private static int maxBucketsForSize(long numElements)
     {
         numElements = Math.max(1, numElements);
         double v = (Long.MAX_VALUE - EXCESS) / (double)numElements;
@@ -180,6 +240,6 @@ class BloomCalculations {
         {
             throw new UnsupportedOperationException("Cannot compute probabilities for " + numElements + " elements.");
         }
-        return Math.min(BloomCalculations.probs.length - 1, (int)v);
+        return (int) Math.min(Integer.MAX_VALUE, v);
     }
 }
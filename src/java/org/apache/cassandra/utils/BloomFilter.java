@@ -75,6 +75,15 @@ public abstract class BloomFilter implements IFilter
         return indexes;
     }
 
+    // the filter hash of keys is the murmur3 hash that hash() computes
+    private long[] indexes(FilterKey key)
+    {
+        long[] indexes = reusableIndexes.get();
+        key.filterHash(indexes);
+        setIndexes(indexes[0], indexes[1], hashCount, bitset.capacity(), indexes);
+        return indexes;
+    }
+
     private void setIndexes(long base, long inc, int count, long max, long[] results)
     {
         for (int i = 0; i < count; i++)
@@ -86,7 +95,16 @@ public abstract class BloomFilter implements IFilter
 
     public void add(ByteBuffer key)
     {
-        long[] indexes = indexes(key);
+        add(indexes(key));
+    }
+
+    public void add(FilterKey key)
+    {
+        add(indexes(key));
+    }
+
+    private void add(long[] indexes)
+    {
         for (int i = 0; i < hashCount; i++)
         {
             bitset.set(indexes[i]);
@@ -95,7 +113,16 @@ public abstract class BloomFilter implements IFilter
 
     public final boolean isPresent(ByteBuffer key)
     {
-        long[] indexes = indexes(key);
+        return isPresent(indexes(key));
+    }
+
+    public final boolean isPresent(FilterKey key)
+    {
+        return isPresent(indexes(key));
+    }
+
+    private boolean isPresent(long[] indexes)
+    {
         for (int i = 0; i < hashCount; i++)
         {
             if (!bitset.get(indexes[i]))
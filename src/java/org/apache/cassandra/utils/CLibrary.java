@@ -24,8 +24,11 @@ import java.lang.reflect.Field;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+
 import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
+import com.sun.jna.Platform;
 
 public final class CLibrary
 {
@@ -39,7 +42,7 @@ public final class CLibrary
     private static final int F_GETFL   = 3;  /* get file status flags */
     private static final int F_SETFL   = 4;  /* set file status flags */
     private static final int F_NOCACHE = 48; /* Mac OS X specific flag, turns cache on/off */
-    private static final int O_DIRECT  = 040000; /* fcntl.h */
+    private static final int O_DIRECT  = oDirect(System.getProperty("os.arch")); /* fcntl.h */
     private static final int O_RDONLY  = 00000000; /* fcntl.h */
 
     private static final int POSIX_FADV_NORMAL     = 0; /* fadvise.h */
@@ -209,6 +212,50 @@ public final class CLibrary
         return result;
     }
 
+    /**
+     * Asks the kernel to bypass the page cache for the file: O_DIRECT on Linux (on the architectures whose flag value
+     * is known), F_NOCACHE on Mac OS X.
+     * With O_DIRECT, the caller must align the memory address, file offset and length of all transfers.
+     *
+     * @return true if the page cache is bypassed for the file from now on
+     */
+    public static boolean tryDirectIO(int fd)
+    {
+        if (fd < 0)
+            return false;
+
+        if (Platform.isMac())
+            return tryFcntl(fd, F_NOCACHE, 1) != -1;
+
+        if (!Platform.isLinux() || O_DIRECT == -1)
+            return false;
+
+        int flags = tryFcntl(fd, F_GETFL, 0);
+        return flags != -1 && tryFcntl(fd, F_SETFL, flags | O_DIRECT) != -1;
+    }
+
+    /**
+     * @return the value of the O_DIRECT flag on Linux for the given os.arch, or -1 if it isn't known
+     */
+    @VisibleForTesting
+    static int oDirect(String arch)
+    {
+        switch (arch)
+        {
+            case "x86":
+            case "i386":
+            case "i686":
+            case "amd64":
+            case "x86_64":
+                return 040000;
+            case "arm":
+            case "aarch64":
+                return 0200000;
+            default:
+                return -1;
+        }
+    }
+
     public static int tryOpenDirectory(String path)
     {
         int fd = -1;
@@ -35,14 +35,37 @@ public class FilterFactory
     private static final Logger logger = LoggerFactory.getLogger(FilterFactory.class);
     private static final long BITSET_EXCESS = 20;
 
+    /**
+     * The kinds of filters, of which sstable versions record the one they use.
+     */
+    public enum Type
+    {
+        MURMUR3,
+        BLOCKED
+    }
+
     public static void serialize(IFilter bf, DataOutputPlus output) throws IOException
     {
-        Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
+        if (bf instanceof BlockedBloomFilter)
+            BlockedBloomFilter.serializer.serialize((BlockedBloomFilter) bf, output);
+        else
+            Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
     }
 
     public static IFilter deserialize(DataInput input, boolean offheap) throws IOException
     {
-        return Murmur3BloomFilter.serializer.deserialize(input, offheap);
+        return deserialize(input, Type.MURMUR3, offheap);
+    }
+
+    public static IFilter deserialize(DataInput input, Type type, boolean offheap) throws IOException
+    {
+        switch (type)
+        {
+            case BLOCKED:
+                return BlockedBloomFilter.serializer.deserialize(input, offheap);
+            default:
+                return Murmur3BloomFilter.serializer.deserialize(input, offheap);
+        }
     }
 
     /**
@@ -69,10 +92,25 @@ public class FilterFactory
      *         filter.
      */
     public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap)
+    {
+        return getFilter(numElements, maxFalsePosProbability, Type.MURMUR3, offheap);
+    }
+
+    /**
+     * @return The smallest filter of the given type that can provide the given false
+     *         positive probability rate for the given number of elements.
+     */
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, Type type, boolean offheap)
     {
         assert maxFalsePosProbability <= 1.0 : "Invalid probability";
         if (maxFalsePosProbability == 1.0)
             return new AlwaysPresentFilter();
+        if (type == Type.BLOCKED)
+        {
+            int maxBucketsPerElement = BloomCalculations.maxBlockedBucketsPerElement(numElements);
+            BloomCalculations.BloomSpecification spec = BloomCalculations.computeBlockedBloomSpec(BlockedBloomFilter.BLOCK_BITS, maxBucketsPerElement, maxFalsePosProbability);
+            return createBlockedFilter(spec.K, numElements, spec.bucketsPerElement, offheap);
+        }
         int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
         return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap);
@@ -84,4 +122,11 @@ public class FilterFactory
         IBitSet bitset = offheap ? new OffHeapBitSet(numBits) : new OpenBitSet(numBits);
         return new Murmur3BloomFilter(hash, bitset);
     }
+
+    private static IFilter createBlockedFilter(int hash, long numElements, int bucketsPer, boolean offheap)
+    {
+        long numBits = BlockedBloomFilter.roundToBlocks((numElements * bucketsPer) + BITSET_EXCESS);
+        IBitSet bitset = offheap ? new OffHeapBitSet(numBits) : new OpenBitSet(numBits);
+        return new BlockedBloomFilter(hash, bitset);
+    }
 }
@@ -22,10 +22,23 @@ import java.nio.ByteBuffer;
 
 public interface IFilter extends Closeable
 {
+    /**
+     * A key that provides its filter hash, the 128 bit murmur3 hash of the key with a zero seed, so that it can be
+     * computed once for the lookups of a key in several filters, or reused from the partitioner.
+     */
+    interface FilterKey
+    {
+        void filterHash(long[] dest);
+    }
+
     void add(ByteBuffer key);
 
+    void add(FilterKey key);
+
     boolean isPresent(ByteBuffer key);
 
+    boolean isPresent(FilterKey key);
+
     void clear();
 
     long serializedSize();
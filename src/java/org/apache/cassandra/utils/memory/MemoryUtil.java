@@ -110,6 +110,20 @@ public abstract class MemoryUtil
         return UNALIGNED ? unsafe.getLong(address) : getLongByByte(address);
     }
 
+    /**
+     * @return the native address of the first byte of the given direct buffer, regardless of its position
+     */
+    public static long getAddress(ByteBuffer buffer)
+    {
+        assert buffer.isDirect();
+        return unsafe.getLong(buffer, DIRECT_BYTE_BUFFER_ADDRESS_OFFSET);
+    }
+
+    public static void setMemory(long address, long count, byte b)
+    {
+        unsafe.setMemory(address, count, b);
+    }
+
     public static ByteBuffer getByteBuffer(long address, int length)
     {
         ByteBuffer instance;
@@ -30,6 +30,9 @@ import org.apache.cassandra.io.util.Memory;
  */
 public class OffHeapBitSet implements IBitSet
 {
+    // start on a cache line, so that the blocks of a BlockedBloomFilter are each in one
+    private static final int ALIGNMENT = 64;
+
     private final Memory bytes;
 
     public OffHeapBitSet(long numBits)
@@ -41,7 +44,7 @@ public class OffHeapBitSet implements IBitSet
         try
         {
             long byteCount = wordCount * 8L;
-            bytes = Memory.allocate(byteCount);
+            bytes = Memory.allocateAligned(byteCount, ALIGNMENT);
         }
         catch (OutOfMemoryError e)
         {
@@ -122,7 +125,7 @@ public class OffHeapBitSet implements IBitSet
     public static OffHeapBitSet deserialize(DataInput in) throws IOException
     {
         long byteCount = in.readInt() * 8L;
-        Memory memory = Memory.allocate(byteCount);
+        Memory memory = Memory.allocateAligned(byteCount, ALIGNMENT);
         for (long i = 0; i < byteCount;)
         {
             long v = in.readLong();
@@ -18,6 +18,7 @@
  */
 package org.apache.cassandra.utils;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.junit.Test;
@@ -69,4 +70,62 @@ public class LongBloomFilterTest
         }
         logger.info("Bloom filter mean false positive: {}", sumfp / 10);
     }
+
+    @Test
+    public void testBlockedBigRandom()
+    {
+        int size = 10 * 1000 * 1000;
+        double fpChance = 0.01;
+        IFilter bf = FilterFactory.getFilter(size, fpChance, FilterFactory.Type.BLOCKED, true);
+        ResetableIterator<ByteBuffer> keys = new KeyGenerator.RandomStringGenerator(new Random().nextInt(), size);
+        while (keys.hasNext())
+            bf.add(keys.next());
+
+        ResetableIterator<ByteBuffer> otherKeys = new KeyGenerator.RandomStringGenerator(new Random().nextInt(), size);
+        int fp = 0;
+        while (otherKeys.hasNext())
+        {
+            if (bf.isPresent(otherKeys.next()))
+                fp++;
+        }
+        double fpRatio = fp / (size * fpChance);
+        logger.info("Blocked bloom filter false positive ratio: {}", fpRatio);
+        assert fpRatio < 1.03 : fpRatio;
+        bf.close();
+    }
+
+    /**
+     * Compares the rate of negative lookups of plain and blocked filters too large to fit in the CPU caches.
+     */
+    @Test
+    public void timeitBlocked()
+    {
+        int size = 10 * 1000 * 1000;
+        for (FilterFactory.Type type : FilterFactory.Type.values())
+        {
+            IFilter bf = FilterFactory.getFilter(size, 0.01, type, true);
+            for (int i = 0; i < size; i++)
+                bf.add(ByteBufferUtil.bytes(i));
+
+            // keys are generated up front so that the loop measures the lookups only
+            ByteBuffer[] others = new ByteBuffer[1000 * 1000];
+            for (int i = 0; i < others.length; i++)
+                others[i] = ByteBufferUtil.bytes((long) size + i);
+
+            for (int round = 0; round < 5; round++)
+            {
+                int fp = 0;
+                long start = System.nanoTime();
+                for (ByteBuffer key : others)
+                {
+                    if (bf.isPresent(key))
+                        fp++;
+                }
+                long elapsed = System.nanoTime() - start;
+                logger.info("{} filter: {} lookups/ms, {} false positives, {} bytes",
+                            type, others.length * 1000000L / elapsed, fp, bf.serializedSize());
+            }
+            bf.close();
+        }
+    }
 }
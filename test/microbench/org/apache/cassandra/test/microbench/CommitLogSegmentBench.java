@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.commitlog.CommitLog;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/*
+ * Compares memory-mapped and direct I/O commit log segments. The test configuration syncs the commit log in batch
+ * mode, so every add waits for its sync, and the sampled times reflect the sync latency.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512M")
+@Threads(4)
+@State(Scope.Benchmark)
+public class CommitLogSegmentBench
+{
+    private static final String KEYSPACE = "CommitLogSegmentBench";
+    private static final String CF = "Standard1";
+
+    @Param({"mmap", "direct"})
+    private String accessMode;
+
+    @Param({"256", "4096"})
+    private int valueSize;
+
+    private final AtomicLong nextKey = new AtomicLong();
+
+    @Setup
+    public void setup() throws Exception
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, CF));
+        DatabaseDescriptor.setCommitLogDiskAccessMode(Config.CommitLogDiskAccessMode.valueOf(accessMode));
+        CommitLog.instance.resetUnsafe();
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        CommitLog.instance.resetUnsafe();
+    }
+
+    @Benchmark
+    public void add()
+    {
+        Mutation rm = new Mutation(KEYSPACE, ByteBufferUtil.bytes(nextKey.getAndIncrement()));
+        rm.add(CF, Util.cellname("c"), ByteBuffer.allocate(valueSize), 0);
+        CommitLog.instance.add(rm);
+    }
+}
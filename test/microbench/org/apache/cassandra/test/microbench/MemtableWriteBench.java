@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/*
+ * Measures the heap allocated by applying mutations to the memtables, without the commit log. The mutations are built
+ * up front, so that only the write path itself is measured; the first pass over them inserts new partitions, the
+ * following ones overwrite them. The bytes allocated per write are printed at the end of every iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1G")
+@Threads(1)
+@State(Scope.Benchmark)
+public class MemtableWriteBench
+{
+    private static final String KEYSPACE = "MemtableWriteBench";
+    private static final String CF = "Standard1";
+    private static final int KEYS = 100000;
+
+    @Param({"1", "10"})
+    private int cellsPerWrite;
+
+    private Keyspace keyspace;
+    private Mutation[] mutations;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, CF));
+        keyspace = Keyspace.open(KEYSPACE);
+        mutations = new Mutation[KEYS];
+        for (int i = 0; i < KEYS; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE, ByteBufferUtil.bytes(i));
+            for (int j = 0; j < cellsPerWrite; j++)
+                rm.add(CF, Util.cellname("c" + j), ByteBuffer.allocate(64), 0);
+            mutations[i] = rm;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Allocations
+    {
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private int next;
+        private long writes;
+        private long allocatedBefore;
+
+        @Setup(Level.Iteration)
+        public void start()
+        {
+            writes = 0;
+            allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        @TearDown(Level.Iteration)
+        public void report()
+        {
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+            System.out.printf("%n%.1f bytes allocated per write%n", (double) allocated / writes);
+        }
+    }
+
+    @Benchmark
+    public void apply(Allocations allocations)
+    {
+        keyspace.apply(mutations[allocations.next], false);
+        allocations.next = (allocations.next + 1) % KEYS;
+        allocations.writes++;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class OffHeapKeyCacheTest
+{
+    private static final String KEYSPACE1 = "OffHeapKeyCacheTest";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD1));
+    }
+
+    private static Descriptor descriptor(int generation)
+    {
+        return new Descriptor(new File("."), KEYSPACE1, CF_STANDARD1, generation, Descriptor.Type.FINAL);
+    }
+
+    private static KeyCacheKey key(Descriptor desc, String key)
+    {
+        CFMetaData cfm = Schema.instance.getCFMetaData(KEYSPACE1, CF_STANDARD1);
+        return new KeyCacheKey(cfm.cfId, desc, ByteBufferUtil.bytes(key));
+    }
+
+    @Test
+    public void testPutAndGet()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(1024 * 1024);
+        Descriptor desc1 = descriptor(1);
+        Descriptor desc2 = descriptor(2);
+
+        cache.put(key(desc1, "a"), new RowIndexEntry(10));
+        cache.put(key(desc2, "a"), new RowIndexEntry(20));
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.get(key(desc1, "a")).position);
+        assertEquals(20, cache.get(key(desc2, "a")).position);
+        assertNull(cache.get(key(desc1, "b")));
+        assertTrue(cache.containsKey(key(desc1, "a")));
+
+        // put replaces, putIfAbsent does not
+        cache.put(key(desc1, "a"), new RowIndexEntry(11));
+        assertFalse(cache.putIfAbsent(key(desc1, "a"), new RowIndexEntry(12)));
+        assertEquals(11, cache.get(key(desc1, "a")).position);
+        assertTrue(cache.putIfAbsent(key(desc1, "b"), new RowIndexEntry(13)));
+        assertEquals(13, cache.get(key(desc1, "b")).position);
+
+        // replace only if the current value matches
+        assertFalse(cache.replace(key(desc1, "a"), new RowIndexEntry(10), new RowIndexEntry(14)));
+        assertTrue(cache.replace(key(desc1, "a"), new RowIndexEntry(11), new RowIndexEntry(14)));
+        assertEquals(14, cache.get(key(desc1, "a")).position);
+
+        cache.remove(key(desc1, "a"));
+        assertNull(cache.get(key(desc1, "a")));
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+        assertNull(cache.get(key(desc2, "a")));
+    }
+
+    @Test
+    public void testKeySet()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(1024 * 1024);
+        Descriptor desc = descriptor(3);
+        for (int i = 0; i < 100; i++)
+            cache.put(key(desc, "key" + i), new RowIndexEntry(i));
+
+        Set<KeyCacheKey> keys = cache.keySet();
+        assertEquals(100, keys.size());
+        for (int i = 0; i < 100; i++)
+            assertTrue(keys.contains(key(desc, "key" + i)));
+
+        // referenced keys come first
+        cache.get(key(desc, "key42"));
+        Set<KeyCacheKey> hot = cache.hotKeySet(1);
+        assertEquals(1, hot.size());
+        assertTrue(hot.contains(key(desc, "key42")));
+    }
+
+    @Test
+    public void testEviction()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(64 * 1024);
+        Descriptor desc = descriptor(4);
+        for (int i = 0; i < 100000; i++)
+            cache.put(key(desc, "key" + i), new RowIndexEntry(i));
+
+        assertTrue(cache.weightedSize() <= cache.capacity());
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.size() < 100000);
+
+        cache.setCapacity(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+}
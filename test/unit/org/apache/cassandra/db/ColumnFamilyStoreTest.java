@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -113,6 +114,7 @@ public class ColumnFamilyStoreTest
     public static final String CF_STANDARD2 = "Standard2";
     public static final String CF_STANDARD3 = "Standard3";
     public static final String CF_STANDARD4 = "Standard4";
+    public static final String CF_STANDARD5 = "Standard5";
     public static final String CF_STANDARDINT = "StandardInteger1";
     public static final String CF_SUPER1 = "Super1";
     public static final String CF_SUPER6 = "Super6";
@@ -140,6 +142,7 @@ public class ColumnFamilyStoreTest
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD2),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD3),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD4),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD5),
                                     SchemaLoader.indexCFMD(KEYSPACE1, CF_INDEX1, true),
                                     SchemaLoader.indexCFMD(KEYSPACE1, CF_INDEX2, false),
                                     SchemaLoader.superCFMD(KEYSPACE1, CF_SUPER1, LongType.instance),
@@ -2204,6 +2207,47 @@ public class ColumnFamilyStoreTest
         }
     }
 
+    @Test
+    public void testFlushSplitIntoTokenRanges()
+    {
+        int prevRanges = DatabaseDescriptor.getMemtableFlushRanges();
+        DatabaseDescriptor.setMemtableFlushRanges(4);
+        try
+        {
+            ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD5);
+            cfs.truncateBlocking();
+
+            // enough data for every range to reach the minimum size of a split flush
+            ByteBuffer value = ByteBuffer.wrap(new byte[10 * 1024]);
+            int keys = (int) (4 * Memtable.MIN_FLUSH_RANGE_SIZE / value.remaining()) + 100;
+            for (int i = 0; i < keys; i++)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, bytes("key" + i));
+                rm.add(CF_STANDARD5, cellname("c"), value, 0);
+                rm.applyUnsafe();
+            }
+            cfs.forceBlockingFlush();
+
+            List<SSTableReader> sstables = new ArrayList<>(cfs.getSSTables());
+            assertEquals(4, sstables.size());
+            Collections.sort(sstables, SSTableReader.sstableComparator);
+            for (int i = 1; i < sstables.size(); i++)
+                assertTrue(sstables.get(i - 1).last.compareTo(sstables.get(i).first) < 0);
+            assertEquals(keys, Util.getRangeSlice(cfs).size());
+
+            // small memtables are not split
+            Mutation rm = new Mutation(KEYSPACE1, bytes("key" + keys));
+            rm.add(CF_STANDARD5, cellname("c"), value, 0);
+            rm.applyUnsafe();
+            cfs.forceBlockingFlush();
+            assertEquals(5, cfs.getSSTables().size());
+        }
+        finally
+        {
+            DatabaseDescriptor.setMemtableFlushRanges(prevRanges);
+        }
+    }
+
     private void printRow(ColumnFamilyStore cfs, String rowKey, Collection<Cell> cols)
     {
         DecoratedKey ROW = Util.dk(rowKey);
@@ -21,7 +21,13 @@ package org.apache.cassandra.db;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
@@ -35,8 +41,10 @@ import org.apache.cassandra.Util;
 import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.config.ParameterizedClass;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
+import org.apache.cassandra.db.commitlog.CommitLogReplayer;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.commitlog.CommitLogSegment;
 import org.apache.cassandra.db.composites.CellName;
@@ -304,6 +312,170 @@ public class CommitLogTest
         Assert.assertEquals(MessagingService.current_version, CommitLogDescriptor.fromFileName(newCLName).getMessagingVersion());
     }
 
+    @Test
+    public void testDescriptorHeader() throws IOException
+    {
+        for (ParameterizedClass compression : Arrays.asList(null, new ParameterizedClass("LZ4Compressor", Collections.singletonMap("k", "v"))))
+        {
+            CommitLogDescriptor desc = new CommitLogDescriptor(1340512736956320000L, compression);
+            ByteBuffer buffer = ByteBuffer.allocate(desc.headerSize());
+            CommitLogDescriptor.writeHeader(buffer, desc);
+
+            CommitLogDescriptor read = CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(buffer.array())));
+            Assert.assertEquals(desc, read);
+            Assert.assertEquals(compression, read.compression);
+
+            // a corrupted header is not trusted
+            buffer.put(5, (byte) (buffer.get(5) + 1));
+            Assert.assertNull(CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(buffer.array()))));
+        }
+    }
+
+    private static File segmentFile(String name)
+    {
+        for (String directory : DatabaseDescriptor.getCommitLogLocations())
+        {
+            File file = new File(directory, name);
+            if (file.exists())
+                return file;
+        }
+        throw new AssertionError("No commit log segment " + name);
+    }
+
+    @Test
+    public void testCompressedSegmentReplay() throws Exception
+    {
+        ParameterizedClass prev = DatabaseDescriptor.getCommitLogCompression();
+        DatabaseDescriptor.setCommitLogCompression(new ParameterizedClass("LZ4Compressor", Collections.<String, String>emptyMap()));
+        try
+        {
+            CommitLog.instance.resetUnsafe();
+
+            // span several segments, so that both closed and active compressed segments are replayed
+            int count = 0;
+            while (CommitLog.instance.activeSegments() < 3)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, bytes("k" + count));
+                rm.add(CF1, Util.cellname("c1"), ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize() / 64), 0);
+                CommitLog.instance.add(rm);
+                count++;
+            }
+            CommitLog.instance.sync(true);
+
+            List<File> files = new ArrayList<>();
+            for (String name : CommitLog.instance.getActiveSegmentNames())
+            {
+                File file = segmentFile(name);
+                Assert.assertNotNull(CommitLogDescriptor.fromHeader(file).compression);
+                // the mutations are all zeroes, so compression should shrink them a lot
+                Assert.assertTrue(file.length() < DatabaseDescriptor.getCommitLogSegmentSize() / 4);
+                files.add(file);
+            }
+
+            Assert.assertEquals(count, CommitLog.instance.recover(files.toArray(new File[files.size()])));
+        }
+        finally
+        {
+            DatabaseDescriptor.setCommitLogCompression(prev);
+            CommitLog.instance.resetUnsafe();
+        }
+    }
+
+    @Test
+    public void testDirectIOSegmentReplay() throws Exception
+    {
+        Config.CommitLogDiskAccessMode prev = DatabaseDescriptor.getCommitLogDiskAccessMode();
+        DatabaseDescriptor.setCommitLogDiskAccessMode(Config.CommitLogDiskAccessMode.direct);
+        try
+        {
+            CommitLog.instance.resetUnsafe();
+
+            // mutations of odd sizes, so that sync markers fall within blocks rather than on their boundaries
+            int count = 0;
+            while (CommitLog.instance.activeSegments() < 3)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, bytes("k" + count));
+                rm.add(CF1, Util.cellname("c1"), ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize() / 64 + count), 0);
+                CommitLog.instance.add(rm);
+                count++;
+            }
+            CommitLog.instance.sync(true);
+
+            List<File> files = new ArrayList<>();
+            for (String name : CommitLog.instance.getActiveSegmentNames())
+            {
+                File file = segmentFile(name);
+                Assert.assertEquals(DatabaseDescriptor.getCommitLogSegmentSize(), file.length());
+                files.add(file);
+            }
+
+            Assert.assertEquals(count, CommitLog.instance.recover(files.toArray(new File[files.size()])));
+        }
+        finally
+        {
+            DatabaseDescriptor.setCommitLogDiskAccessMode(prev);
+            CommitLog.instance.resetUnsafe();
+        }
+    }
+
+    @Test
+    public void testParallelReplayKeepsPartitionOrder() throws Exception
+    {
+        CommitLog.instance.resetUnsafe();
+        try
+        {
+            // several partitions, each updated many times in a row
+            int partitions = 8;
+            int count = 0;
+            while (CommitLog.instance.activeSegments() < 2)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, bytes("k" + count % partitions));
+                rm.add(CF2, Util.cellname("c1"), ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize() / 256), count);
+                CommitLog.instance.add(rm);
+                count++;
+            }
+            CommitLog.instance.sync(true);
+
+            List<File> files = new ArrayList<>();
+            for (String name : CommitLog.instance.getActiveSegmentNames())
+                files.add(segmentFile(name));
+
+            // record the order mutations are applied in, on the replay threads
+            final ConcurrentMap<ByteBuffer, List<Long>> replayed = new ConcurrentHashMap<>();
+            CommitLogReplayer replayer = new CommitLogReplayer()
+            {
+                protected boolean pointInTimeExceeded(Mutation fm)
+                {
+                    List<Long> timestamps = replayed.get(fm.key());
+                    if (timestamps == null)
+                    {
+                        replayed.putIfAbsent(fm.key(), Collections.synchronizedList(new ArrayList<Long>()));
+                        timestamps = replayed.get(fm.key());
+                    }
+                    timestamps.add(fm.getColumnFamilies().iterator().next().maxTimestamp());
+                    return super.pointInTimeExceeded(fm);
+                }
+            };
+            replayer.recover(files.toArray(new File[files.size()]));
+            Assert.assertEquals(count, replayer.blockForWrites());
+
+            Assert.assertEquals(partitions, replayed.size());
+            int total = 0;
+            for (List<Long> timestamps : replayed.values())
+            {
+                List<Long> sorted = new ArrayList<>(timestamps);
+                Collections.sort(sorted);
+                Assert.assertEquals(sorted, timestamps);
+                total += timestamps.size();
+            }
+            Assert.assertEquals(count, total);
+        }
+        finally
+        {
+            CommitLog.instance.resetUnsafe();
+        }
+    }
+
     @Test
     public void testCommitFailurePolicy_stop() throws ConfigurationException
     {
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.collect.Iterables;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs reads of partitions spread over several sstables with concurrent_sstable_reads set.
+ */
+public class ConcurrentSSTableReadsTest
+{
+    private static final String KEYSPACE1 = "ConcurrentSSTableReadsTest";
+    private static final String CF1 = "Standard1";
+    private static final String CF2 = "Standard2";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        DatabaseDescriptor.setConcurrentSSTableReaders(2);
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF2));
+    }
+
+    @Test
+    public void testNewestValuesWin() throws CharacterCodingException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF1);
+        cfs.disableAutoCompaction();
+        DecoratedKey dk = Util.dk("newest");
+
+        for (int i = 1; i <= 4; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, dk.getKey());
+            for (int c = i; c <= 4; c++)
+                rm.add(cfs.name, Util.cellname("c" + c), ByteBufferUtil.bytes("v" + i), i);
+            rm.applyUnsafe();
+            cfs.forceBlockingFlush();
+        }
+
+        for (QueryFilter filter : filters(cfs, dk, "c1", "c2", "c3", "c4"))
+        {
+            ColumnFamily cf = cfs.getColumnFamily(filter);
+            for (int c = 1; c <= 4; c++)
+                assertEquals("v" + c, ByteBufferUtil.string(cf.getColumn(Util.cellname("c" + c)).value()));
+        }
+        assertTrue(sstableReadThreadStarted());
+    }
+
+    @Test
+    public void testTombstonesShadowOlderSSTables() throws CharacterCodingException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF2);
+        cfs.disableAutoCompaction();
+        DecoratedKey dk = Util.dk("shadowed");
+
+        Mutation rm = new Mutation(KEYSPACE1, dk.getKey());
+        for (int c = 1; c <= 4; c++)
+            rm.add(cfs.name, Util.cellname("c" + c), ByteBufferUtil.bytes("old"), 10);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+        SSTableReader oldest = Iterables.getOnlyElement(cfs.getSSTables());
+
+        rm = new Mutation(KEYSPACE1, dk.getKey());
+        rm.delete(cfs.name, Util.cellname("c2"), 20);
+        rm.add(cfs.name, Util.cellname("c3"), ByteBufferUtil.bytes("new"), 20);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+
+        rm = new Mutation(KEYSPACE1, dk.getKey());
+        rm.delete(cfs.name, 15);
+        rm.add(cfs.name, Util.cellname("c4"), ByteBufferUtil.bytes("new"), 30);
+        rm.applyUnsafe();
+        cfs.forceBlockingFlush();
+
+        for (QueryFilter filter : filters(cfs, dk, "c1", "c2", "c3", "c4"))
+        {
+            // the row tombstone of the newest sstable shadows all of the oldest, which is not even opened
+            CacheService.instance.invalidateKeyCache();
+            long oldestReads = oldest.getBloomFilterTruePositiveCount();
+
+            // purge the tombstones, leaving the live cells only
+            ColumnFamily cf = ColumnFamilyStore.removeDeleted(cfs.getColumnFamily(filter), Integer.MAX_VALUE);
+            assertEquals(2, cf.getColumnCount());
+            assertEquals("new", ByteBufferUtil.string(cf.getColumn(Util.cellname("c3")).value()));
+            assertEquals("new", ByteBufferUtil.string(cf.getColumn(Util.cellname("c4")).value()));
+            assertNull(cf.getColumn(Util.cellname("c1")));
+            assertNull(cf.getColumn(Util.cellname("c2")));
+            assertEquals(oldestReads, oldest.getBloomFilterTruePositiveCount());
+        }
+        assertTrue(sstableReadThreadStarted());
+    }
+
+    /**
+     * @return a names filter, read from the sstables by decreasing timestamp, and a slice filter, read from all of them
+     */
+    private static List<QueryFilter> filters(ColumnFamilyStore cfs, DecoratedKey dk, String... names)
+    {
+        List<QueryFilter> filters = new ArrayList<>();
+        filters.add(Util.namesQueryFilter(cfs, dk, names));
+        filters.add(QueryFilter.getIdentityFilter(dk, cfs.name, System.currentTimeMillis()));
+        return filters;
+    }
+
+    private static boolean sstableReadThreadStarted()
+    {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().startsWith("SSTableReads"))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.locator.SimpleStrategy;
+
+import static org.apache.cassandra.Util.cellname;
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class MemtableFlushSchedulerTest
+{
+    private static final String KEYSPACE1 = "MemtableFlushSchedulerTest";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD1));
+    }
+
+    @Test
+    public void testDecisions()
+    {
+        assertEquals(0, MemtableFlushScheduler.secondsToThreshold(0.5f, 0.4f, 0.1), 0);
+        assertEquals(2, MemtableFlushScheduler.secondsToThreshold(0.2f, 0.4f, 0.1), 0.0001);
+        assertTrue(Double.isInfinite(MemtableFlushScheduler.secondsToThreshold(0.2f, 0.4f, 0)));
+
+        // flushed when the threshold would be crossed before the flush could complete on the next run
+        assertTrue(MemtableFlushScheduler.shouldFlush(5, 0.5, 4.5));
+        assertFalse(MemtableFlushScheduler.shouldFlush(10, 0.5, 4.5));
+        // but not when the memtable is too small to be worth it
+        assertFalse(MemtableFlushScheduler.shouldFlush(5, MemtableFlushScheduler.MIN_FLUSH_FRACTION / 2, 4.5));
+    }
+
+    @Test
+    public void testWriteRates() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+        MemtableFlushScheduler scheduler = new MemtableFlushScheduler();
+        scheduler.schedule();
+        assertEquals(0, scheduler.getWriteRates().get(KEYSPACE1 + '.' + CF_STANDARD1), 0);
+        assertEquals("disabled", scheduler.getLastDecision());
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[1024]);
+        for (int i = 0; i < 1000; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, bytes("key" + i));
+            rm.add(CF_STANDARD1, cellname("c"), value, 0);
+            rm.applyUnsafe();
+        }
+        Thread.sleep(10);
+        scheduler.schedule();
+        assertTrue(scheduler.getWriteRates().get(KEYSPACE1 + '.' + CF_STANDARD1) > 0);
+        assertTrue(scheduler.getSecondsToCleanupThreshold() < Double.POSITIVE_INFINITY);
+
+        scheduler.setEnabled(true);
+        scheduler.schedule();
+        assertEquals("waiting for a first flush to estimate the flush throughput", scheduler.getLastDecision());
+
+        long size = cfs.getDataTracker().getView().getCurrentMemtable().getLiveDataSize();
+        scheduler.flushCompleted(size, 1000000000L);
+        assertEquals(size, scheduler.getFlushThroughput(), 0.0001);
+        scheduler.schedule();
+        assertTrue(scheduler.getLastDecision(), scheduler.getLastDecision().startsWith("not flushing"));
+    }
+}
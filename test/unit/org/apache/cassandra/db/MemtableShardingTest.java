@@ -0,0 +1,118 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.util.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.locator.SimpleStrategy;
+
+import static org.apache.cassandra.Util.cellname;
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class MemtableShardingTest
+{
+    private static final String KEYSPACE1 = "MemtableShardingTest";
+    private static final String CF_STANDARD1 = "Standard1";
+
+    private static IPartitioner oldPartitioner;
+    private static int oldShards;
+
+    /*
+     * Memtables are only sharded with a hashing partitioner, and the partitioner has to be changed
+     * before loading the schema, so we call the SchemaLoader ourselves.
+     */
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        oldPartitioner = DatabaseDescriptor.getPartitioner();
+        DatabaseDescriptor.setPartitioner(new Murmur3Partitioner());
+        oldShards = DatabaseDescriptor.getMemtableShards();
+        DatabaseDescriptor.setMemtableShards(4);
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD1));
+    }
+
+    @AfterClass
+    public static void tearDown()
+    {
+        DatabaseDescriptor.setMemtableShards(oldShards);
+        DatabaseDescriptor.setPartitioner(oldPartitioner);
+    }
+
+    @Test
+    public void testShardedMemtable()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+
+        List<DecoratedKey> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE1, bytes("key" + i));
+            rm.add(CF_STANDARD1, cellname("c"), bytes(i), 0);
+            rm.applyUnsafe();
+            keys.add(Util.dk("key" + i));
+        }
+        Collections.sort(keys);
+
+        Memtable memtable = cfs.getDataTracker().getView().getCurrentMemtable();
+        assertEquals(4, memtable.shardCount());
+        for (DecoratedKey key : keys)
+            assertNotNull(memtable.getColumnFamily(key));
+
+        // iteration crosses the shards in token order, whatever the bounds
+        assertEntries(keys, 0, keys.size(), memtable.getEntryIterator(keys.get(0), cfs.partitioner.getMinimumToken().minKeyBound()));
+        Random rand = new Random();
+        for (int i = 0; i < 100; i++)
+        {
+            int from = rand.nextInt(keys.size());
+            int to = from + rand.nextInt(keys.size() - from);
+            assertEntries(keys, from, to + 1, memtable.getEntryIterator(keys.get(from), keys.get(to)));
+        }
+
+        assertEquals(keys.size(), Util.getRangeSlice(cfs).size());
+        cfs.forceBlockingFlush();
+        assertEquals(keys.size(), Util.getRangeSlice(cfs).size());
+    }
+
+    private static void assertEntries(List<DecoratedKey> keys, int from, int to, Iterator<Map.Entry<DecoratedKey, ColumnFamily>> iter)
+    {
+        for (int i = from; i < to; i++)
+        {
+            assertTrue(iter.hasNext());
+            assertEquals(keys.get(i), iter.next().getKey());
+        }
+        assertFalse(iter.hasNext());
+    }
+}
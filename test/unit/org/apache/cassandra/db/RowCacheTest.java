@@ -43,6 +43,8 @@ import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class RowCacheTest
 {
@@ -251,6 +253,56 @@ public class RowCacheTest
         }
     }
 
+    @Test
+    public void testRowCacheHeadWrites()
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        Keyspace keyspace = Keyspace.open(KEYSPACE_CACHED);
+        ColumnFamilyStore cachedStore  = keyspace.getColumnFamilyStore(CF_CACHEDINT);
+        CacheService.instance.invalidateRowCache();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+
+        ByteBuffer key = ByteBufferUtil.bytes("rowcacheheadkey");
+        DecoratedKey dk = cachedStore.partitioner.decorateKey(key);
+        RowCacheKey rck = new RowCacheKey(cachedStore.metadata.cfId, dk);
+        Mutation mutation = new Mutation(KEYSPACE_CACHED, key);
+        for (int i = 0; i < 200; i++)
+            mutation.add(CF_CACHEDINT, Util.cellname(i), ByteBufferUtil.bytes("val" + i), System.currentTimeMillis());
+        mutation.applyUnsafe();
+
+        // cache the first 100 rows
+        cachedStore.getColumnFamily(QueryFilter.getSliceFilter(dk, CF_CACHEDINT, Composites.EMPTY, Composites.EMPTY, false, 10, System.currentTimeMillis()));
+        assertTrue(cachedStore.containsCachedRow(dk));
+
+        // writes after the cached head keep it
+        mutation = new Mutation(KEYSPACE_CACHED, key);
+        mutation.add(CF_CACHEDINT, Util.cellname(150), ByteBufferUtil.bytes("newval"), System.currentTimeMillis());
+        mutation.delete(CF_CACHEDINT, Util.cellname(300), System.currentTimeMillis());
+        mutation.applyUnsafe();
+        assertTrue(cachedStore.containsCachedRow(dk));
+        assertEquals(100, ((ColumnFamily) CacheService.instance.rowCache.get(rck)).getColumnCount());
+
+        // writes in it invalidate it
+        mutation = new Mutation(KEYSPACE_CACHED, key);
+        mutation.add(CF_CACHEDINT, Util.cellname(99), ByteBufferUtil.bytes("newval"), System.currentTimeMillis());
+        mutation.applyUnsafe();
+        assertFalse(cachedStore.containsCachedRow(dk));
+
+        // as do writes to a partition shorter than the head, which is then cached whole
+        ByteBuffer shortKey = ByteBufferUtil.bytes("rowcacheshortkey");
+        DecoratedKey shortDk = cachedStore.partitioner.decorateKey(shortKey);
+        mutation = new Mutation(KEYSPACE_CACHED, shortKey);
+        mutation.add(CF_CACHEDINT, Util.cellname(0), ByteBufferUtil.bytes("val"), System.currentTimeMillis());
+        mutation.applyUnsafe();
+        cachedStore.getColumnFamily(QueryFilter.getSliceFilter(shortDk, CF_CACHEDINT, Composites.EMPTY, Composites.EMPTY, false, 10, System.currentTimeMillis()));
+        assertTrue(cachedStore.containsCachedRow(shortDk));
+        mutation = new Mutation(KEYSPACE_CACHED, shortKey);
+        mutation.add(CF_CACHEDINT, Util.cellname(1), ByteBufferUtil.bytes("val"), System.currentTimeMillis());
+        mutation.applyUnsafe();
+        assertFalse(cachedStore.containsCachedRow(shortDk));
+    }
+
     public void rowCacheLoad(int totalKeys, int keysToSave, int offset) throws Exception
     {
         CompactionManager.instance.disableAutoCompaction();
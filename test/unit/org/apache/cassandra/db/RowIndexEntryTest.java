@@ -17,11 +17,18 @@
  */
 package org.apache.cassandra.db;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import junit.framework.Assert;
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.KSMetaData;
 import org.apache.cassandra.config.Schema;
@@ -30,6 +37,8 @@ import org.apache.cassandra.db.composites.SimpleDenseCellNameType;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.locator.SimpleStrategy;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
@@ -50,13 +59,89 @@ public class RowIndexEntryTest extends SchemaLoader
         Assert.assertEquals(buffer.getLength(), serializer.serializedSize(simple));
 
         buffer = new DataOutputBuffer();
+        RowIndexEntry<IndexHelper.IndexInfo> withIndex = RowIndexEntry.create(0xdeadbeef, DeletionTime.LIVE, buildColumnIndex());
+
+        serializer.serialize(withIndex, buffer);
+        Assert.assertEquals(buffer.getLength(), serializer.serializedSize(withIndex));
+    }
+
+    @Test
+    public void testShallowSerializer() throws IOException
+    {
+        IndexHelper.IndexInfo.Serializer idxSerializer = new IndexHelper.IndexInfo.Serializer(new SimpleDenseCellNameType(UTF8Type.instance));
+        RowIndexEntry.ShallowSerializer serializer = new RowIndexEntry.ShallowSerializer(idxSerializer);
+        RowIndexEntry<IndexHelper.IndexInfo> withIndex = RowIndexEntry.create(0xdeadbeef, new DeletionTime(1, 2), buildColumnIndex());
+        List<IndexHelper.IndexInfo> columnsIndex = withIndex.columnsIndex();
+
+        // write the entry after some other bytes, as in the primary index
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        buffer.write(new byte[7]);
+        serializer.serialize(withIndex, buffer);
+        Assert.assertEquals(buffer.getLength() - 7, serializer.serializedSize(withIndex));
+        File file = File.createTempFile("RowIndexEntryTest", "Index.db");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write(buffer.getData(), 0, buffer.getLength());
+        }
+
+        RandomAccessReader in = RandomAccessReader.open(file);
+        in.seek(7);
+        RowIndexEntry<IndexHelper.IndexInfo> shallow = serializer.deserialize(in, null);
+        Assert.assertTrue(in.isEOF());
+        in.close();
+
+        // the entry deserialized from the file only has the position of its column index, as it is cached
+        buffer = new DataOutputBuffer();
+        serializer.serialize(shallow, buffer);
+        Assert.assertEquals(buffer.getLength(), serializer.serializedSize(shallow));
+        Assert.assertTrue(buffer.getLength() < serializer.serializedSize(withIndex));
+        RowIndexEntry<IndexHelper.IndexInfo> cached = serializer.deserialize(new DataInputStream(new ByteArrayInputStream(buffer.getData(), 0, buffer.getLength())), null);
+
+        for (Config.DiskAccessMode mode : new Config.DiskAccessMode[]{ Config.DiskAccessMode.mmap, Config.DiskAccessMode.standard })
+        {
+            SegmentedFile.Builder builder = SegmentedFile.getBuilder(mode);
+            builder.addPotentialBoundary(7);
+            SegmentedFile indexFile = builder.complete(file.getPath());
+            for (RowIndexEntry<IndexHelper.IndexInfo> entry : Arrays.asList(shallow, cached))
+            {
+                Assert.assertEquals(withIndex.position, entry.position);
+                Assert.assertTrue(entry.isIndexed());
+                Assert.assertEquals(withIndex.deletionTime(), entry.deletionTime());
+
+                List<IndexHelper.IndexInfo> read = entry.columnsIndex(indexFile, idxSerializer);
+                Assert.assertEquals(columnsIndex.size(), read.size());
+                for (int i = 0; i < columnsIndex.size(); i++)
+                {
+                    Assert.assertEquals(columnsIndex.get(i).firstName, read.get(i).firstName);
+                    Assert.assertEquals(columnsIndex.get(i).lastName, read.get(i).lastName);
+                    Assert.assertEquals(columnsIndex.get(i).offset, read.get(i).offset);
+                    Assert.assertEquals(columnsIndex.get(i).width, read.get(i).width);
+                }
+            }
+            indexFile.cleanup();
+        }
+
+        // shallow entries hold no column index, so the original format writes them as unindexed entries
+        Assert.assertTrue(shallow.columnsIndex().isEmpty());
+        RowIndexEntry.Serializer bigSerializer = new RowIndexEntry.Serializer(idxSerializer);
+        buffer = new DataOutputBuffer();
+        bigSerializer.serialize(shallow, buffer);
+        Assert.assertEquals(buffer.getLength(), bigSerializer.serializedSize(shallow));
+        RowIndexEntry<IndexHelper.IndexInfo> unindexed = bigSerializer.deserialize(new DataInputStream(new ByteArrayInputStream(buffer.getData(), 0, buffer.getLength())), null);
+        Assert.assertEquals(withIndex.position, unindexed.position);
+        Assert.assertFalse(unindexed.isIndexed());
+    }
+
+    private static ColumnIndex buildColumnIndex() throws IOException
+    {
         Schema.instance.setKeyspaceDefinition(KSMetaData.newKeyspace("Keyspace1",
                                                                      SimpleStrategy.class,
                                                                      Collections.<String,String>emptyMap(),
                                                                      false,
                                                                      Collections.singleton(standardCFMD("Keyspace1", "Standard1"))));
         ColumnFamily cf = ArrayBackedSortedColumns.factory.create("Keyspace1", "Standard1");
-        ColumnIndex columnIndex = new ColumnIndex.Builder(cf, ByteBufferUtil.bytes("a"), new DataOutputBuffer())
+        return new ColumnIndex.Builder(cf, ByteBufferUtil.bytes("a"), new DataOutputBuffer())
         {{
             int idx = 0, size = 0;
             Cell column;
@@ -70,10 +155,5 @@ public class RowIndexEntryTest extends SchemaLoader
             while (size < DatabaseDescriptor.getColumnIndexSize() * 3);
 
         }}.build();
-
-        RowIndexEntry<IndexHelper.IndexInfo> withIndex = RowIndexEntry.create(0xdeadbeef, DeletionTime.LIVE, columnIndex);
-
-        serializer.serialize(withIndex, buffer);
-        Assert.assertEquals(buffer.getLength(), serializer.serializedSize(withIndex));
     }
 }
@@ -0,0 +1,174 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class TokenBucketPartitionIndexTest
+{
+    private static final Murmur3Partitioner partitioner = new Murmur3Partitioner();
+    private static final Random rand = new Random();
+
+    @Test
+    public void testGetAndPut()
+    {
+        TokenBucketPartitionIndex<Integer> index = new TokenBucketPartitionIndex<>();
+        assertTrue(index.isEmpty());
+
+        List<DecoratedKey> keys = randomKeys(10000);
+        for (int i = 0; i < keys.size(); i++)
+            assertNull(index.putIfAbsent(keys.get(i), i));
+        assertFalse(index.isEmpty());
+
+        for (int i = 0; i < keys.size(); i++)
+        {
+            assertEquals(Integer.valueOf(i), index.get(keys.get(i)));
+            // the existing value is kept
+            assertEquals(Integer.valueOf(i), index.putIfAbsent(keys.get(i), -1));
+        }
+        assertNull(index.get(partitioner.decorateKey(ByteBufferUtil.bytes("missing"))));
+    }
+
+    @Test
+    public void testIterationMatchesSkipList()
+    {
+        TokenBucketPartitionIndex<Integer> index = new TokenBucketPartitionIndex<>();
+        SkipListPartitionIndex<Integer> expected = new SkipListPartitionIndex<>();
+        List<DecoratedKey> keys = randomKeys(5000);
+        for (int i = 0; i < keys.size(); i++)
+        {
+            index.putIfAbsent(keys.get(i), i);
+            expected.putIfAbsent(keys.get(i), i);
+        }
+
+        assertIterEquals(expected, index, null, true, null, true);
+        for (int i = 0; i < 200; i++)
+        {
+            RowPosition from = randomBound(keys);
+            RowPosition to = randomBound(keys);
+            if (from != null && to != null && from.compareTo(to) > 0)
+            {
+                RowPosition tmp = from;
+                from = to;
+                to = tmp;
+            }
+            assertIterEquals(expected, index, from, rand.nextBoolean(), to, rand.nextBoolean());
+        }
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception
+    {
+        final TokenBucketPartitionIndex<Integer> index = new TokenBucketPartitionIndex<>();
+        final List<DecoratedKey> keys = randomKeys(20000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                futures.add(executor.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        // all threads race to add the same keys; only one value may win for each
+                        for (int i = 0; i < keys.size(); i++)
+                        {
+                            Integer previous = index.putIfAbsent(keys.get(i), i);
+                            assertTrue(previous == null || previous == i);
+                            assertEquals(Integer.valueOf(i), index.get(keys.get(i)));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        SkipListPartitionIndex<Integer> expected = new SkipListPartitionIndex<>();
+        for (int i = 0; i < keys.size(); i++)
+            expected.putIfAbsent(keys.get(i), i);
+        assertIterEquals(expected, index, null, true, null, true);
+    }
+
+    private static List<DecoratedKey> randomKeys(int count)
+    {
+        List<DecoratedKey> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ByteBuffer key = ByteBufferUtil.bytes(rand.nextLong());
+            // some keys share their token with the previous key, to exercise the ordering of keys within a token
+            if (i > 0 && rand.nextInt(10) == 0)
+                keys.add(new BufferDecoratedKey(keys.get(i - 1).getToken(), key));
+            else
+                keys.add(partitioner.decorateKey(key));
+        }
+        return keys;
+    }
+
+    // a key, a bound of its token, or null for no bound
+    private static RowPosition randomBound(List<DecoratedKey> keys)
+    {
+        DecoratedKey key = keys.get(rand.nextInt(keys.size()));
+        switch (rand.nextInt(5))
+        {
+            case 0:
+                return null;
+            case 1:
+                return key.getToken().minKeyBound();
+            case 2:
+                return key.getToken().maxKeyBound();
+            case 3:
+                return new LongToken(rand.nextLong()).minKeyBound();
+            default:
+                return key;
+        }
+    }
+
+    private static void assertIterEquals(MemtablePartitionIndex<Integer> expected, MemtablePartitionIndex<Integer> actual,
+                                         RowPosition from, boolean fromInclusive, RowPosition to, boolean toInclusive)
+    {
+        Iterator<Map.Entry<DecoratedKey, Integer>> expectedIter = expected.iterator(from, fromInclusive, to, toInclusive);
+        Iterator<Map.Entry<DecoratedKey, Integer>> actualIter = actual.iterator(from, fromInclusive, to, toInclusive);
+        while (expectedIter.hasNext())
+        {
+            assertTrue(actualIter.hasNext());
+            Map.Entry<DecoratedKey, Integer> expectedEntry = expectedIter.next();
+            Map.Entry<DecoratedKey, Integer> actualEntry = actualIter.next();
+            assertEquals(expectedEntry.getKey(), actualEntry.getKey());
+            assertEquals(expectedEntry.getValue(), actualEntry.getValue());
+        }
+        assertFalse(actualIter.hasNext());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import org.apache.cassandra.io.util.FileUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommitLogArchiverTest
+{
+    @Test
+    public void testRestoreTargetSpreadsOverDirectories() throws IOException
+    {
+        File root = Files.createTempDir();
+        try
+        {
+            String[] locations = new String[3];
+            for (int i = 0; i < locations.length; i++)
+            {
+                File directory = new File(root, "commitlog" + i);
+                directory.mkdirs();
+                locations[i] = directory.getPath();
+            }
+
+            // consecutive segments go to every directory
+            Set<File> directories = new HashSet<>();
+            for (long id = 100; id < 100 + locations.length; id++)
+            {
+                File target = CommitLogArchiver.restoreTarget(new CommitLogDescriptor(id), locations);
+                assertEquals(new CommitLogDescriptor(id).fileName(), target.getName());
+                directories.add(target.getParentFile());
+            }
+            assertEquals(locations.length, directories.size());
+
+            // a segment already restored is found wherever it is, so it isn't restored twice
+            CommitLogDescriptor descriptor = new CommitLogDescriptor(100);
+            File existing = new File(locations[2], descriptor.fileName());
+            assertTrue(existing.createNewFile());
+            assertEquals(existing, CommitLogArchiver.restoreTarget(descriptor, locations));
+        }
+        finally
+        {
+            FileUtils.deleteRecursive(root);
+        }
+    }
+}
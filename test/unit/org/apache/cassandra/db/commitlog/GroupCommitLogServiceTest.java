@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.locator.SimpleStrategy;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GroupCommitLogServiceTest
+{
+    private static final String KEYSPACE1 = "GroupCommitLogServiceTest";
+    private static final String CF1 = "Standard1";
+    private static final int WINDOW_MILLIS = 100;
+    // leeway for the sync itself on a loaded test machine
+    private static final int SYNC_MILLIS = 400;
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        DatabaseDescriptor.setCommitLogSyncGroup(WINDOW_MILLIS, 1024);
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF1));
+    }
+
+    @Test
+    public void testWriterAckedWithinWindow() throws Exception
+    {
+        assertTrue(CommitLog.instance.executor instanceof GroupCommitLogService);
+        long syncs = awaitIdle();
+
+        long start = System.nanoTime();
+        CommitLog.instance.add(mutation(0));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // synced once the window of the writer closed, rather than at a fixed tick
+        assertTrue("acked after " + elapsed + "ms", elapsed < WINDOW_MILLIS + SYNC_MILLIS);
+        assertEquals(syncs + 1, CommitLog.instance.executor.getSyncCount());
+    }
+
+    @Test
+    public void testConcurrentWritersShareSync() throws Exception
+    {
+        int writers = 16;
+        long syncs = awaitIdle();
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try
+        {
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            List<Future<Long>> latencies = new ArrayList<>();
+            for (int i = 0; i < writers; i++)
+            {
+                final int key = i;
+                latencies.add(executor.submit(new Callable<Long>()
+                {
+                    public Long call() throws Exception
+                    {
+                        startLatch.await();
+                        long start = System.nanoTime();
+                        CommitLog.instance.add(mutation(key));
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                }));
+            }
+            startLatch.countDown();
+
+            for (Future<Long> latency : latencies)
+                assertTrue("acked after " + latency.get() + "ms", latency.get() < WINDOW_MILLIS + SYNC_MILLIS);
+            assertEquals(syncs + 1, CommitLog.instance.executor.getSyncCount());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static Mutation mutation(int key)
+    {
+        Mutation rm = new Mutation(KEYSPACE1, bytes("k" + key));
+        rm.add(CF1, Util.cellname("c1"), ByteBuffer.allocate(100), 0);
+        return rm;
+    }
+
+    /**
+     * @return the number of syncs so far, once the sync thread has been idle for a few windows
+     */
+    private static long awaitIdle() throws InterruptedException
+    {
+        long syncs = CommitLog.instance.executor.getSyncCount();
+        while (true)
+        {
+            Thread.sleep(3 * WINDOW_MILLIS);
+            long current = CommitLog.instance.executor.getSyncCount();
+            if (current == syncs)
+                return syncs;
+            syncs = current;
+        }
+    }
+}
@@ -53,6 +53,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
@@ -66,6 +67,7 @@ public class CompactionsTest
     private static final String CF_STANDARD2 = "Standard2";
     private static final String CF_STANDARD3 = "Standard3";
     private static final String CF_STANDARD4 = "Standard4";
+    private static final String CF_STANDARD5 = "Standard5";
     private static final String CF_SUPER1 = "Super1";
     private static final String CF_SUPER5 = "Super5";
     private static final String CF_SUPERGC = "SuperDirectGC";
@@ -83,6 +85,7 @@ public class CompactionsTest
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD2),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD3),
                                     SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD4),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD5),
                                     SchemaLoader.superCFMD(KEYSPACE1, CF_SUPER1, LongType.instance),
                                     SchemaLoader.superCFMD(KEYSPACE1, CF_SUPER5, BytesType.instance),
                                     SchemaLoader.superCFMD(KEYSPACE1, CF_SUPERGC, BytesType.instance).gcGraceSeconds(0));
@@ -215,15 +218,17 @@ public class CompactionsTest
         populate(KEYSPACE1, CF_STANDARD1, 0, 9, 3); //ttl=3s
         store.forceBlockingFlush();
 
+        // make sure sstable2 is strictly newer than sstable1
+        TimeUnit.MILLISECONDS.sleep(10);
+
         //Populate sstable2 with with keys [10..19] (keys do not overlap with SSTable1)
         long timestamp2 = populate(KEYSPACE1, CF_STANDARD1, 10, 19, 3); //ttl=3s
         store.forceBlockingFlush();
 
         assertEquals(2, store.getSSTables().size());
 
-        Iterator<SSTableReader> it = store.getSSTables().iterator();
-        long originalSize1 = it.next().uncompressedLength();
-        long originalSize2 = it.next().uncompressedLength();
+        long originalSize1 = getSSTableStartingWith(store, "0").uncompressedLength();
+        long originalSize2 = getSSTableStartingWith(store, "10").uncompressedLength();
 
         // wait enough to force single compaction
         TimeUnit.SECONDS.sleep(5);
@@ -234,15 +239,13 @@ public class CompactionsTest
         while (CompactionManager.instance.getPendingTasks() > 0 || CompactionManager.instance.getActiveCompactions() > 0)
             TimeUnit.SECONDS.sleep(1);
 
-        // even though both sstables were candidate for tombstone compaction
-        // it was not executed because they have an overlapping token range
+        // both sstables were candidate for tombstone compaction and have an overlapping token range, but the expired
+        // cells of sstable1 can't shadow anything in the newer sstable2, so only sstable1 was compacted
         assertEquals(2, store.getSSTables().size());
-        it = store.getSSTables().iterator();
-        long newSize1 = it.next().uncompressedLength();
-        long newSize2 = it.next().uncompressedLength();
-        assertEquals("candidate sstable should not be tombstone-compacted because its key range overlap with other sstable",
-                      originalSize1, newSize1);
-        assertEquals("candidate sstable should not be tombstone-compacted because its key range overlap with other sstable",
+        long newSize1 = getSSTableStartingWith(store, "0").uncompressedLength();
+        long newSize2 = getSSTableStartingWith(store, "10").uncompressedLength();
+        assertTrue("should be less than " + originalSize1 + ", but was " + newSize1, newSize1 < originalSize1);
+        assertEquals("candidate sstable should not be tombstone-compacted because it may shadow data of an overlapping sstable",
                       originalSize2, newSize2);
 
         // now let's enable the magic property
@@ -256,16 +259,21 @@ public class CompactionsTest
 
         //we still have 2 sstables, since they were not compacted against each other
         assertEquals(2, store.getSSTables().size());
-        it = store.getSSTables().iterator();
-        newSize1 = it.next().uncompressedLength();
-        newSize2 = it.next().uncompressedLength();
-        assertTrue("should be less than " + originalSize1 + ", but was " + newSize1, newSize1 < originalSize1);
+        newSize2 = getSSTableStartingWith(store, "10").uncompressedLength();
         assertTrue("should be less than " + originalSize2 + ", but was " + newSize2, newSize2 < originalSize2);
 
         // make sure max timestamp of compacted sstables is recorded properly after compaction.
         assertMaxTimestamp(store, timestamp2);
     }
 
+    private static SSTableReader getSSTableStartingWith(ColumnFamilyStore cfs, String key)
+    {
+        for (SSTableReader sstable : cfs.getSSTables())
+            if (sstable.first.equals(Util.dk(key)))
+                return sstable;
+        throw new AssertionError("No sstable starting with " + key);
+    }
+
     public static void assertMaxTimestamp(ColumnFamilyStore cfs, long maxTimestampExpected)
     {
         long maxTimestampObserved = Long.MIN_VALUE;
@@ -634,4 +642,119 @@ public class CompactionsTest
                                                                        200, 209,
                                                                        300, 301)));
     }
+
+    @Test
+    public void testSubrangeCompaction() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_STANDARD5);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        final int ROWS = 1000;
+        populateOverlapping(cfs, 4, ROWS);
+        Collection<SSTableReader> sstables = cfs.getSSTables();
+        assertEquals(4, sstables.size());
+
+        // the split ranges cover the whole ring, in order
+        List<Range<Token>> ranges = CompactionTask.splitRanges(sstables, 4, cfs.partitioner);
+        assertEquals(4, ranges.size());
+        assertTrue(ranges.get(0).left.isMinimum());
+        assertTrue(ranges.get(3).right.isMinimum());
+        for (int i = 1; i < ranges.size(); i++)
+            assertEquals(ranges.get(i - 1).right, ranges.get(i).left);
+
+        assertTrue(cfs.getDataTracker().markCompacting(sstables));
+        new CompactionTask(cfs, sstables, CompactionManager.NO_GC, false)
+        {
+            protected int getSubrangeCount(Set<SSTableReader> toCompact)
+            {
+                return 4;
+            }
+        }.execute(null);
+
+        // one disjoint sstable per sub-range, holding the merged rows
+        List<SSTableReader> compacted = new ArrayList<>(cfs.getSSTables());
+        assertEquals(4, compacted.size());
+        Collections.sort(compacted, SSTableReader.sstableComparator);
+        for (int i = 1; i < compacted.size(); i++)
+            assertTrue(compacted.get(i - 1).last.compareTo(compacted.get(i).first) < 0);
+        List<Row> rows = Util.getRangeSlice(cfs);
+        assertEquals(ROWS, rows.size());
+        for (Row row : rows)
+            assertEquals(4, row.cf.getColumnCount());
+    }
+
+    @Test
+    public void testFailedSubrangeCompaction() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_STANDARD5);
+        cfs.clearUnsafe();
+        cfs.disableAutoCompaction();
+
+        final int ROWS = 1000;
+        populateOverlapping(cfs, 4, ROWS);
+        Set<SSTableReader> sstables = new HashSet<>(cfs.getSSTables());
+        assertEquals(4, sstables.size());
+
+        // the last sub-range fails while the others write their sstables
+        final DecoratedKey failingKey = Util.dk(String.format("%04d", ROWS - 10));
+        assertTrue(cfs.getDataTracker().markCompacting(sstables));
+        try
+        {
+            new CompactionTask(cfs, sstables, CompactionManager.NO_GC, false)
+            {
+                protected int getSubrangeCount(Set<SSTableReader> toCompact)
+                {
+                    return 4;
+                }
+
+                protected CompactionController getCompactionController(Set<SSTableReader> toCompact)
+                {
+                    return new CompactionController(cfs, toCompact, gcBefore)
+                    {
+                        public long maxPurgeableTimestamp(DecoratedKey key)
+                        {
+                            if (key.equals(failingKey))
+                                throw new RuntimeException("failing sub-range");
+                            return super.maxPurgeableTimestamp(key);
+                        }
+                    };
+                }
+            }.execute(null);
+            fail("the compaction should have failed");
+        }
+        catch (RuntimeException e)
+        {
+            assertEquals("failing sub-range", Throwables.getRootCause(e).getMessage());
+        }
+
+        // the compacted sstables are still live, and the output of every sub-range is gone
+        assertEquals(sstables, new HashSet<>(cfs.getSSTables()));
+        assertTrue(cfs.getDataTracker().getCompacting().isEmpty());
+        for (File directory : cfs.directories.getCFDirectories())
+        {
+            for (String file : directory.list())
+                assertFalse(file, file.contains("tmp-"));
+        }
+        assertEquals(ROWS, Util.getRangeSlice(cfs).size());
+    }
+
+    /**
+     * Flushes the given number of sstables that all hold the same keys, with a different column each.
+     */
+    private static void populateOverlapping(ColumnFamilyStore cfs, int sstables, int rows)
+    {
+        for (int s = 0; s < sstables; s++)
+        {
+            for (int i = 0; i < rows; i++)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, ByteBufferUtil.bytes(String.format("%04d", i)));
+                rm.add(cfs.name, Util.cellname("col" + s), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
+                rm.applyUnsafe();
+            }
+            cfs.forceBlockingFlush();
+        }
+    }
 }
@@ -18,12 +18,16 @@
 package org.apache.cassandra.db.compaction;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.cassandra.io.sstable.format.SSTableReader;
@@ -37,6 +41,7 @@ import org.apache.cassandra.OrderedJUnit4ClassRunner;
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
 import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.Keyspace;
@@ -274,6 +279,87 @@ public class LeveledCompactionStrategyTest
         assertEquals(cfs.getSSTables().size(), levels[6]);
     }
 
+    @Test
+    public void testL0SubrangesSplitAtL1Boundaries() throws Exception
+    {
+        ByteBuffer value = ByteBuffer.wrap(new byte[100 * 1024]); // 100 KB value, make it easy to have multiple files
+
+        // Enough data to have several sstables in level 1
+        int rows = 20;
+        int columns = 10;
+        for (int r = 0; r < rows; r++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(r));
+            Mutation rm = new Mutation(KEYSPACE1, key.getKey());
+            for (int c = 0; c < columns; c++)
+            {
+                rm.add(CF_STANDARDDLEVELED, Util.cellname("column" + c), value, 0);
+            }
+            rm.applyUnsafe();
+            cfs.forceBlockingFlush();
+        }
+        waitForLeveling(cfs);
+        cfs.disableAutoCompaction();
+
+        while(CompactionManager.instance.isCompacting(Arrays.asList(cfs)))
+            Thread.sleep(100);
+
+        // L0 sstables spanning all of L1
+        for (int s = 0; s < 2; s++)
+        {
+            for (int r = 0; r < rows; r += 5)
+            {
+                Mutation rm = new Mutation(KEYSPACE1, Util.dk(String.valueOf(r)).getKey());
+                rm.add(CF_STANDARDDLEVELED, Util.cellname("l0column" + s), value, 1);
+                rm.applyUnsafe();
+            }
+            cfs.forceBlockingFlush();
+        }
+
+        LeveledCompactionStrategy strategy = (LeveledCompactionStrategy) cfs.getCompactionStrategy();
+        List<SSTableReader> l1 = new ArrayList<>(strategy.manifest.getLevel(1));
+        assertTrue(l1.size() > 3);
+        Set<SSTableReader> sstables = new HashSet<>(l1);
+        sstables.addAll(strategy.manifest.getLevel(0));
+
+        assertTrue(cfs.getDataTracker().markCompacting(sstables));
+        LeveledCompactionTask task = new LeveledCompactionTask(cfs, sstables, 1, CompactionManager.NO_GC, strategy.getMaxSSTableBytes())
+        {
+            protected int getSubrangeCount(Set<SSTableReader> toCompact)
+            {
+                return 3;
+            }
+        };
+
+        // every L1 sstable is compacted by a single sub-range
+        List<Range<Token>> ranges = task.getSubranges(sstables);
+        assertEquals(3, ranges.size());
+        for (SSTableReader sstable : l1)
+        {
+            int containing = 0;
+            for (Range<Token> range : ranges)
+            {
+                if (range.contains(sstable.first.getToken()) && range.contains(sstable.last.getToken()))
+                    containing++;
+            }
+            assertEquals(1, containing);
+        }
+
+        task.execute(null);
+
+        // the output is still non-overlapping, and holds the columns of both levels
+        List<SSTableReader> compacted = new ArrayList<>(strategy.manifest.getLevel(1));
+        assertTrue(strategy.manifest.getLevel(0).isEmpty());
+        Collections.sort(compacted, SSTableReader.sstableComparator);
+        for (int i = 1; i < compacted.size(); i++)
+            assertTrue(compacted.get(i - 1).last.compareTo(compacted.get(i).first) < 0);
+        for (int r = 0; r < rows; r++)
+        {
+            ColumnFamily cf = Util.getColumnFamily(keyspace, Util.dk(String.valueOf(r)), CF_STANDARDDLEVELED);
+            assertEquals(r % 5 == 0 ? columns + 2 : columns, cf.getColumnCount());
+        }
+    }
+
     @Test
     public void testNewRepairedSSTable() throws Exception
     {
@@ -20,6 +20,12 @@ package org.apache.cassandra.db.compaction;
  * 
  */
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -35,6 +41,7 @@ import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.locator.SimpleStrategy;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(OrderedJUnit4ClassRunner.class)
@@ -155,4 +162,68 @@ public class TTLExpiryTest
             assertEquals(noTTLKey, iter.getKey());
         }
     }
+
+    @Test
+    public void testDropExpiredSSTables() throws InterruptedException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore("Standard1");
+        cfs.disableAutoCompaction();
+        cfs.truncateBlocking();
+        cfs.metadata.gcGraceSeconds(0);
+        long timestamp = System.currentTimeMillis();
+
+        // expired, but only overlapped by newer data: can be dropped
+        SSTableReader expired = writeSSTable(cfs, "shadowing", timestamp, 1);
+        writeSSTable(cfs, "shadowing", timestamp + 1, 0);
+        // expired, but may shadow older data: must be kept
+        SSTableReader shadowing = writeSSTable(cfs, "shadowed", timestamp, 1);
+        writeSSTable(cfs, "shadowed", timestamp - 1, 0);
+        // older data that doesn't overlap the expired sstables doesn't prevent dropping them
+        writeSSTable(cfs, "unrelated", timestamp - 10, 0);
+
+        Thread.sleep(2000); // wait for ttl to expire
+        assertEquals(5, cfs.getSSTables().size());
+        assertEquals(Collections.singleton(expired), CompactionManager.instance.dropExpiredSSTables(cfs));
+        assertEquals(4, cfs.getSSTables().size());
+        assertFalse(cfs.getSSTables().contains(expired));
+        assertTrue(cfs.getSSTables().contains(shadowing));
+        assertTrue(cfs.getDataTracker().getCompacting().isEmpty());
+    }
+
+    @Test
+    public void testDropExpiredSSTablesOverlappedAfterCheck() throws InterruptedException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore("Standard1");
+        cfs.disableAutoCompaction();
+        cfs.truncateBlocking();
+        cfs.metadata.gcGraceSeconds(0);
+        long timestamp = System.currentTimeMillis();
+
+        SSTableReader expired = writeSSTable(cfs, "dropped", timestamp, 1);
+        SSTableReader overlapped = writeSSTable(cfs, "overlapped", timestamp, 1);
+        Thread.sleep(2000); // wait for ttl to expire
+        int gcBefore = cfs.gcBefore(System.currentTimeMillis());
+        DataTracker.View view = cfs.getDataTracker().getView();
+        Set<SSTableReader> candidates = CompactionManager.getExpiredSSTables(view, view.nonCompactingSStables(), gcBefore);
+        assertEquals(Sets.newHashSet(expired, overlapped), candidates);
+
+        // older data written after the first check makes one of the candidates unsafe to drop
+        writeSSTable(cfs, "overlapped", timestamp - 1, 0);
+        assertEquals(Collections.singleton(expired), CompactionManager.instance.dropExpiredSSTables(cfs, candidates, gcBefore));
+        assertTrue(cfs.getSSTables().contains(overlapped));
+        assertTrue(cfs.getDataTracker().getCompacting().isEmpty());
+    }
+
+    private static SSTableReader writeSSTable(ColumnFamilyStore cfs, String key, long timestamp, int ttl)
+    {
+        Mutation rm = new Mutation(KEYSPACE1, Util.dk(key).getKey());
+        if (ttl > 0)
+            rm.add("Standard1", Util.cellname("col"), ByteBufferUtil.EMPTY_BYTE_BUFFER, timestamp, ttl);
+        else
+            rm.add("Standard1", Util.cellname("col"), ByteBufferUtil.EMPTY_BYTE_BUFFER, timestamp);
+        rm.applyUnsafe();
+        Set<SSTableReader> before = new HashSet<>(cfs.getSSTables());
+        cfs.forceBlockingFlush();
+        return Sets.difference(new HashSet<>(cfs.getSSTables()), before).iterator().next();
+    }
 }
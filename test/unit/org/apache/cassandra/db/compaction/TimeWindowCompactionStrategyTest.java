@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.utils.Pair;
+
+import static org.apache.cassandra.db.compaction.TimeWindowCompactionStrategy.getBuckets;
+import static org.apache.cassandra.db.compaction.TimeWindowCompactionStrategy.getWindowLowerBound;
+import static org.apache.cassandra.db.compaction.TimeWindowCompactionStrategy.newestBucket;
+import static org.apache.cassandra.db.compaction.TimeWindowCompactionStrategy.validateOptions;
+
+import static org.junit.Assert.*;
+
+public class TimeWindowCompactionStrategyTest extends SchemaLoader
+{
+    public static final String KEYSPACE1 = "TimeWindowCompactionStrategyTest";
+    private static final String CF_STANDARD1 = "Standard1";
+    private static final String CF_GCGS0 = "StandardGCGS0";
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE1,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_STANDARD1),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_GCGS0).gcGraceSeconds(0));
+    }
+
+    @Test
+    public void testOptionsValidation() throws ConfigurationException
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "30");
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "MINUTES");
+        options.put(SizeTieredCompactionStrategyOptions.BUCKET_HIGH_KEY, "2.0");
+        Map<String, String> unvalidated = validateOptions(options);
+        assertTrue(unvalidated.isEmpty());
+
+        try
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "0");
+            validateOptions(options);
+            fail(String.format("%s == 0 should be rejected", TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "1");
+        }
+
+        try
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "SECONDS");
+            validateOptions(options);
+            fail(String.format("%s SECONDS should be rejected", TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "DAYS");
+        }
+
+        try
+        {
+            options.put(TimeWindowCompactionStrategyOptions.EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY, "-1");
+            validateOptions(options);
+            fail(String.format("Negative %s should be rejected", TimeWindowCompactionStrategyOptions.EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(TimeWindowCompactionStrategyOptions.EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY, "0");
+        }
+
+        try
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "30");
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "MINUTES");
+            options.put(TimeWindowCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "HOURS");
+            validateOptions(options);
+            fail(String.format("A window shorter than the %s should be rejected", TimeWindowCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "60");
+        }
+        validateOptions(options);
+
+        options.put("bad_option", "1.0");
+        unvalidated = validateOptions(options);
+        assertTrue(unvalidated.containsKey("bad_option"));
+    }
+
+    @Test
+    public void testWindowSize()
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_SIZE_KEY, "6");
+        options.put(TimeWindowCompactionStrategyOptions.COMPACTION_WINDOW_UNIT_KEY, "HOURS");
+        assertEquals(TimeUnit.HOURS.toMicros(6), new TimeWindowCompactionStrategyOptions(options).windowSize);
+
+        options.put(TimeWindowCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "MILLISECONDS");
+        assertEquals(TimeUnit.HOURS.toMillis(6), new TimeWindowCompactionStrategyOptions(options).windowSize);
+
+        assertEquals(TimeUnit.DAYS.toMicros(1), new TimeWindowCompactionStrategyOptions().windowSize);
+    }
+
+    @Test
+    public void testGetBuckets()
+    {
+        assertEquals(0, getWindowLowerBound(0, 100));
+        assertEquals(100, getWindowLowerBound(199, 100));
+        assertEquals(200, getWindowLowerBound(200, 100));
+        assertEquals(-100, getWindowLowerBound(-1, 100));
+
+        List<Pair<String, Long>> pairs = Lists.newArrayList(
+                Pair.create("a", 199L),
+                Pair.create("b", 299L),
+                Pair.create("a", 100L),
+                Pair.create("c", 1000L),
+                Pair.create("b", 201L)
+        );
+        NavigableMap<Long, List<String>> buckets = getBuckets(pairs, 100L);
+        assertEquals(Arrays.asList(100L, 200L, 1000L), new ArrayList<>(buckets.keySet()));
+        assertEquals(Arrays.asList("a", "a"), buckets.get(100L));
+        assertEquals(Arrays.asList("b", "b"), buckets.get(200L));
+        assertEquals(Arrays.asList("c"), buckets.get(1000L));
+    }
+
+    @Test
+    public void testNewestBucket()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_STANDARD1);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+
+        // 3 sstables in the first window, and 2 in the current one
+        long[] timestamps = { 10, 20, 30, 110, 120 };
+        for (int r = 0; r < timestamps.length; r++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(r));
+            Mutation rm = new Mutation(KEYSPACE1, key.getKey());
+            rm.add(CF_STANDARD1, Util.cellname("column"), value, timestamps[r]);
+            rm.apply();
+            cfs.forceBlockingFlush();
+        }
+
+        NavigableMap<Long, List<SSTableReader>> buckets = getBuckets(TimeWindowCompactionStrategy.createSSTableAndMaxTimestampPairs(cfs.getSSTables()), 100L);
+        assertEquals(2, buckets.size());
+        SizeTieredCompactionStrategyOptions stcsOptions = new SizeTieredCompactionStrategyOptions();
+
+        // the current window is below the min threshold, so the closed window is compacted
+        List<SSTableReader> bucket = newestBucket(buckets, 4, 32, 100L, stcsOptions);
+        assertEquals(3, bucket.size());
+        for (SSTableReader sstable : bucket)
+            assertTrue(sstable.getMaxTimestamp() < 100);
+
+        // closed windows are trimmed down to the max threshold
+        assertEquals(2, newestBucket(buckets, 4, 2, 100L, stcsOptions).size());
+
+        // the current window is size tiered once it reaches the min threshold
+        bucket = newestBucket(buckets, 2, 32, 100L, stcsOptions);
+        assertEquals(2, bucket.size());
+        for (SSTableReader sstable : bucket)
+            assertTrue(sstable.getMaxTimestamp() >= 100);
+
+        // a closed window holding a single sstable is left alone
+        buckets.get(0L).subList(1, 3).clear();
+        assertTrue(newestBucket(buckets, 4, 32, 100L, stcsOptions).isEmpty());
+    }
+
+    @Test
+    public void testDropExpiredSSTables() throws InterruptedException
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(CF_GCGS0);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+
+        // an expiring sstable, and a newer one that doesn't expire
+        DecoratedKey key = Util.dk("expired");
+        Mutation rm = new Mutation(KEYSPACE1, key.getKey());
+        rm.add(CF_GCGS0, Util.cellname("column"), value, System.currentTimeMillis() - 1000, 1);
+        rm.apply();
+        cfs.forceBlockingFlush();
+        SSTableReader expired = cfs.getSSTables().iterator().next();
+
+        key = Util.dk("live");
+        rm = new Mutation(KEYSPACE1, key.getKey());
+        rm.add(CF_GCGS0, Util.cellname("column"), value, System.currentTimeMillis());
+        rm.apply();
+        cfs.forceBlockingFlush();
+        assertEquals(2, cfs.getSSTables().size());
+
+        Thread.sleep(2000);
+
+        Map<String, String> options = new HashMap<>();
+        options.put(TimeWindowCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "MILLISECONDS");
+        options.put(TimeWindowCompactionStrategyOptions.EXPIRED_SSTABLE_CHECK_FREQUENCY_SECONDS_KEY, "0");
+        TimeWindowCompactionStrategy strategy = new TimeWindowCompactionStrategy(cfs, options);
+        strategy.startup();
+
+        AbstractCompactionTask task = strategy.getNextBackgroundTask((int) (System.currentTimeMillis() / 1000));
+        assertNotNull(task);
+        assertEquals(Collections.singleton(expired), task.sstables);
+        task.execute(null);
+
+        assertEquals(1, cfs.getSSTables().size());
+        assertFalse(cfs.getSSTables().contains(expired));
+    }
+}
@@ -20,6 +20,17 @@
  */
 package org.apache.cassandra.dht;
 
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 public class Murmur3PartitionerTest extends PartitionerTestCase
 {
     public void initPartitioner()
@@ -37,5 +48,22 @@ public class Murmur3PartitionerTest extends PartitionerTestCase
         assertMidpoint(mintoken, mintoken, 62);
         assertMidpoint(tok("a"), mintoken, 16);
     }
-}
 
+    @Test
+    public void testDecoratedKeyFilterHash()
+    {
+        // decorated keys reuse the hash of their token as filter hash
+        for (String key : new String[]{ "a", "aaa", "some longer key than the others" })
+        {
+            ByteBuffer bytes = ByteBufferUtil.bytes(key);
+            DecoratedKey decorated = partitioner.decorateKey(bytes);
+            assertEquals(partitioner.getToken(bytes), decorated.getToken());
+
+            long[] expected = new long[2];
+            new BufferDecoratedKey(decorated.getToken(), bytes).filterHash(expected);
+            long[] hash = new long[2];
+            decorated.filterHash(hash);
+            assertArrayEquals(expected, hash);
+        }
+    }
+}
@@ -21,11 +21,13 @@ package org.apache.cassandra.io.compress;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Random;
 
 import org.junit.Test;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.db.composites.SimpleDenseCellNameType;
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.exceptions.ConfigurationException;
@@ -35,6 +37,7 @@ import org.apache.cassandra.io.util.FileMark;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.io.util.SequentialWriter;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -96,6 +99,68 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testChunkCache() throws IOException, ConfigurationException
+    {
+        File f = File.createTempFile("compressed", "chunkcache");
+        String filename = f.getAbsolutePath();
+        try
+        {
+            MetadataCollector sstableMetadataCollector = new MetadataCollector(new SimpleDenseCellNameType(BytesType.instance));
+            CompressedSequentialWriter writer = new CompressedSequentialWriter(f, filename + ".metadata", new CompressionParameters(LZ4Compressor.create(Collections.<String, String>emptyMap()), 1024, Collections.<String, String>emptyMap()), sstableMetadataCollector);
+            byte[] data = new byte[10000];
+            Random random = new Random(0);
+            for (int i = 0; i < data.length; i++)
+                data[i] = (byte) random.nextInt(16);
+            writer.write(data);
+            writer.close();
+
+            CompressionMetadata metadata = new CompressionMetadata(filename + ".metadata", f.length(), true);
+            ChunkCache cache = new ChunkCache(1 << 20);
+            byte[] read = new byte[data.length];
+
+            // the first read decompresses and caches every chunk
+            CompressedRandomAccessReader reader = new CompressedRandomAccessReader(filename, metadata, null, cache);
+            reader.readFully(read);
+            reader.close();
+            assertArrayEquals(data, read);
+            assertEquals(10, cache.size());
+            assertEquals(data.length, cache.weightedSize());
+
+            // the next ones are served by the cache, whatever the chunk length of the reader
+            for (int i = 0; i < 100; i++)
+            {
+                int position = random.nextInt(data.length);
+                int length = Math.min(random.nextInt(3000), data.length - position);
+                reader = new CompressedRandomAccessReader(filename, metadata, null, cache);
+                reader.seek(position);
+                byte[] bytes = new byte[length];
+                reader.readFully(bytes);
+                reader.close();
+                for (int j = 0; j < length; j++)
+                    assertEquals(data[position + j], bytes[j]);
+            }
+            assertEquals(10, cache.size());
+
+            // only the chunks of the file are dropped
+            cache.write(filename + ".other", 0, ByteBuffer.wrap(new byte[100]));
+            cache.invalidateFile(filename);
+            assertEquals(1, cache.size());
+            assertEquals(100, cache.weightedSize());
+            cache.invalidateFile(filename + ".other");
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.weightedSize());
+        }
+        finally
+        {
+            if (f.exists())
+                f.delete();
+            File metadata = new File(filename + ".metadata");
+            if (metadata.exists())
+                metadata.delete();
+        }
+    }
+
     private void testResetAndTruncate(File f, boolean compressed, int junkSize) throws IOException
     {
         final String filename = f.getAbsolutePath();
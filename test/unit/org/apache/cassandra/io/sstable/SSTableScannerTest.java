@@ -30,7 +30,9 @@ import org.apache.cassandra.Util;
 import org.apache.cassandra.config.KSMetaData;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.compaction.ICompactionScanner;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.dht.Bounds;
 import org.apache.cassandra.dht.BytesToken;
 import org.apache.cassandra.dht.Range;
@@ -326,4 +328,83 @@ public class SSTableScannerTest
         // this will currently fail
         assertScanContainsRanges(scanner, 205, 205);
     }
+
+    private static void insertRowWithKey(int key, String column, int ttl)
+    {
+        DecoratedKey decoratedKey = Util.dk(toKey(key));
+        Mutation rm = new Mutation(KEYSPACE, decoratedKey.getKey());
+        rm.add(TABLE, Util.cellname(column), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis(), ttl);
+        rm.applyUnsafe();
+    }
+
+    /**
+     * Consumes the scanner, and returns the number of cells read.
+     */
+    private static int scanSlice(ICompactionScanner scanner, int expectedRows)
+    {
+        int rows = 0, cells = 0;
+        while (scanner.hasNext())
+        {
+            OnDiskAtomIterator row = scanner.next();
+            rows++;
+            while (row.hasNext())
+            {
+                row.next();
+                cells++;
+            }
+        }
+        assertEquals(expectedRows, rows);
+        return cells;
+    }
+
+    private static ICompactionScanner sliceScanner(SSTableReader sstable, String start, String end)
+    {
+        SliceQueryFilter filter = new SliceQueryFilter(Util.cellname(start), Util.cellname(end), false, Integer.MAX_VALUE);
+        return sstable.getScanner(new DataRange(boundsFor(0, 100), filter));
+    }
+
+    @Test
+    public void testSkipRowsOutsideSlice()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore(TABLE);
+        store.clearUnsafe();
+        store.disableAutoCompaction();
+
+        for (int i = 2; i < 10; i++)
+            insertRowWithKey(i, "b", 0);
+        store.forceBlockingFlush();
+        assertEquals(1, store.getSSTables().size());
+        SSTableReader sstable = store.getSSTables().iterator().next();
+
+        // the slice misses the sstable columns: every key is returned, without reading the data file
+        ICompactionScanner scanner = sliceScanner(sstable, "c", "d");
+        assertEquals(0, scanSlice(scanner, 8));
+        assertEquals(0, scanner.getCurrentPosition());
+
+        // the slice covers the sstable columns
+        scanner = sliceScanner(sstable, "a", "c");
+        assertEquals(8, scanSlice(scanner, 8));
+        assertTrue(scanner.getCurrentPosition() > 0);
+    }
+
+    @Test
+    public void testNoSkipWithTombstones()
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE);
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore(TABLE);
+        store.clearUnsafe();
+        store.disableAutoCompaction();
+
+        // expiring cells can shadow data elsewhere once expired, so the rows must still be read
+        for (int i = 2; i < 10; i++)
+            insertRowWithKey(i, "b", 1000);
+        store.forceBlockingFlush();
+        assertEquals(1, store.getSSTables().size());
+        SSTableReader sstable = store.getSSTables().iterator().next();
+
+        ICompactionScanner scanner = sliceScanner(sstable, "c", "d");
+        assertEquals(0, scanSlice(scanner, 8));
+        assertTrue(scanner.getCurrentPosition() > 0);
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.utils.FBUtilities;
+
+public class PartitionIndexTest
+{
+    private static final int KEYS = 5000;
+
+    @Test
+    public void testEncodingOrder()
+    {
+        for (IPartitioner partitioner : partitioners())
+        {
+            List<DecoratedKey> keys = randomKeys(partitioner, new Random(1), 1000);
+            for (int i = 1; i < keys.size(); i++)
+            {
+                byte[] previous = PartitionIndex.encode(partitioner, keys.get(i - 1));
+                byte[] current = PartitionIndex.encode(partitioner, keys.get(i));
+                assertTrue(partitioner.toString(), FBUtilities.compareUnsigned(previous, current, 0, 0, previous.length, current.length) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testLookups() throws IOException
+    {
+        for (IPartitioner partitioner : partitioners())
+        {
+            Random random = new Random(2);
+            List<DecoratedKey> keys = randomKeys(partitioner, random, KEYS);
+            // small regions, to have nodes on both sides of their boundaries
+            PartitionIndex index = build(partitioner, keys, 256);
+            try
+            {
+                for (int i = 0; i < keys.size(); i++)
+                {
+                    assertEquals(i, index.exactCandidate(keys.get(i)));
+                    assertEquals(i, ceiling(index, keys, keys.get(i)));
+                    assertEquals(i, ceiling(index, keys, keys.get(i).getToken().minKeyBound()));
+                    assertEquals(i + 1, ceiling(index, keys, keys.get(i).getToken().maxKeyBound(partitioner)));
+                }
+
+                for (DecoratedKey key : randomKeys(partitioner, random, KEYS))
+                {
+                    int expected = expectedCeiling(keys, key);
+                    assertEquals(expected, ceiling(index, keys, key));
+                    if (expected == keys.size() || !keys.get(expected).equals(key))
+                    {
+                        long candidate = index.exactCandidate(key);
+                        assertTrue(candidate < 0 || !keys.get((int) candidate).equals(key));
+                    }
+                    assertEquals(expectedCeiling(keys, key.getToken().minKeyBound()), ceiling(index, keys, key.getToken().minKeyBound()));
+                    RowPosition maxBound = key.getToken().maxKeyBound(partitioner);
+                    assertEquals(expectedCeiling(keys, maxBound), ceiling(index, keys, maxBound));
+                }
+            }
+            finally
+            {
+                index.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSmallIndexes() throws IOException
+    {
+        IPartitioner partitioner = new Murmur3Partitioner();
+        PartitionIndex empty = build(partitioner, Collections.<DecoratedKey>emptyList(), 1 << 20);
+        DecoratedKey key = partitioner.decorateKey(ByteBuffer.wrap(new byte[]{ 1 }));
+        assertEquals(-1, empty.exactCandidate(key));
+        assertEquals(-1, empty.ceilingCandidate(key));
+        empty.close();
+
+        PartitionIndex single = build(partitioner, Collections.singletonList(key), 1 << 20);
+        assertEquals(0, single.exactCandidate(key));
+        assertEquals(0, ceiling(single, Collections.singletonList(key), key));
+        assertEquals(1, ceiling(single, Collections.singletonList(key), key.getToken().maxKeyBound(partitioner)));
+        single.close();
+    }
+
+    private static List<IPartitioner> partitioners()
+    {
+        return Arrays.<IPartitioner>asList(new Murmur3Partitioner(), new RandomPartitioner(), new ByteOrderedPartitioner());
+    }
+
+    /**
+     * @return sorted distinct keys, with many shared prefixes and zero bytes
+     */
+    private static List<DecoratedKey> randomKeys(IPartitioner partitioner, Random random, int count)
+    {
+        SortedSet<DecoratedKey> keys = new TreeSet<>();
+        while (keys.size() < count)
+        {
+            byte[] bytes = new byte[1 + random.nextInt(8)];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = (byte) (random.nextInt(4) == 0 ? 0 : random.nextInt(i < 2 ? 3 : 256));
+            keys.add(partitioner.decorateKey(ByteBuffer.wrap(bytes)));
+        }
+        return new ArrayList<>(keys);
+    }
+
+    // the keys are given positions equal to their rank, as if all index entries had one byte
+    private static PartitionIndex build(IPartitioner partitioner, List<DecoratedKey> keys, int regionSize) throws IOException
+    {
+        File file = File.createTempFile("PartitionIndex", ".db");
+        file.deleteOnExit();
+        PartitionIndexBuilder builder = new PartitionIndexBuilder(file.getPath(), partitioner);
+        for (int i = 0; i < keys.size(); i++)
+            builder.add(keys.get(i), i);
+        builder.complete();
+        return PartitionIndex.open(file.getPath(), partitioner, regionSize);
+    }
+
+    // resolves the candidate of the index as a reader does
+    private static int ceiling(PartitionIndex index, List<DecoratedKey> keys, RowPosition position)
+    {
+        long candidate = index.ceilingCandidate(position);
+        if (candidate < 0)
+            return 0;
+        return keys.get((int) candidate).compareTo(position) >= 0 ? (int) candidate : (int) candidate + 1;
+    }
+
+    private static int expectedCeiling(List<DecoratedKey> keys, RowPosition position)
+    {
+        int low = 0, high = keys.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (keys.get(mid).compareTo(position) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
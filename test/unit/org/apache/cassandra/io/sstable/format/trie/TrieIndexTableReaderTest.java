@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable.format.trie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.KSMetaData;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
+import org.apache.cassandra.db.composites.CellName;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.compaction.ICompactionScanner;
+import org.apache.cassandra.dht.BytesToken;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.locator.SimpleStrategy;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class TrieIndexTableReaderTest
+{
+    public static final String KEYSPACE = "TrieIndexTableReaderTest";
+    public static final String TABLE = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema() throws Exception
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    SimpleStrategy.class,
+                                    KSMetaData.optsWithRF(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE));
+    }
+
+    private static String toKey(int key)
+    {
+        return String.format("%03d", key);
+    }
+
+    private static SSTableReader flushKeys(int count)
+    {
+        // even keys only, so that odd ones can be looked for between them
+        List<Mutation> mutations = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            Mutation rm = new Mutation(KEYSPACE, ByteBufferUtil.bytes(toKey(2 * i)));
+            rm.add(TABLE, Util.cellname("col"), ByteBufferUtil.EMPTY_BYTE_BUFFER, 0);
+            mutations.add(rm);
+        }
+        return flush(mutations);
+    }
+
+    private static SSTableReader flush(List<Mutation> mutations)
+    {
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+        store.clearUnsafe();
+        store.disableAutoCompaction();
+
+        SSTableFormat.Type format = DatabaseDescriptor.getSSTableFormat();
+        DatabaseDescriptor.setSSTableFormat(SSTableFormat.Type.TRIE);
+        try
+        {
+            for (Mutation rm : mutations)
+                rm.applyUnsafe();
+            store.forceBlockingFlush();
+        }
+        finally
+        {
+            DatabaseDescriptor.setSSTableFormat(format);
+        }
+
+        assertEquals(1, store.getSSTables().size());
+        return store.getSSTables().iterator().next();
+    }
+
+    @Test
+    public void testGetPosition()
+    {
+        SSTableReader sstable = flushKeys(100);
+        assertTrue(sstable instanceof TrieIndexTableReader);
+        assertTrue(SSTable.componentsFor(sstable.descriptor).contains(Component.PARTITION_INDEX));
+
+        for (int i = 0; i < 200; i++)
+        {
+            DecoratedKey key = Util.dk(toKey(i));
+            RowIndexEntry entry = sstable.getPosition(key, SSTableReader.Operator.EQ, false);
+            assertEquals(toKey(i), i % 2 == 0, entry != null);
+
+            // the first key at or after i, and after i, are the next even keys
+            int ge = i % 2 == 0 ? i : i + 1;
+            assertPositionOf(sstable, ge, sstable.getPosition(key, SSTableReader.Operator.GE, false));
+            assertPositionOf(sstable, i % 2 == 0 ? i + 2 : i + 1, sstable.getPosition(key, SSTableReader.Operator.GT, false));
+        }
+    }
+
+    @Test
+    public void testScanner()
+    {
+        SSTableReader sstable = flushKeys(100);
+
+        ICompactionScanner full = sstable.getScanner();
+        for (int i = 0; i < 100; i++)
+            assertEquals(toKey(2 * i), new String(full.next().getKey().getKey().array()));
+        assertFalse(full.hasNext());
+
+        Collection<Range<Token>> ranges = Arrays.asList(range(9, 20), range(40, 41), range(101, 103), range(180, 250));
+        ICompactionScanner scanner = sstable.getScanner(ranges, null);
+        for (int key : new int[]{ 10, 12, 14, 16, 18, 20, 102, 182, 184, 186, 188, 190, 192, 194, 196, 198 })
+        {
+            assertTrue(toKey(key), scanner.hasNext());
+            assertEquals(toKey(key), new String(scanner.next().getKey().getKey().array()));
+        }
+        assertFalse(scanner.hasNext());
+    }
+
+    @Test
+    public void testWidePartition() throws IOException
+    {
+        Mutation rm = new Mutation(KEYSPACE, ByteBufferUtil.bytes("wide"));
+        for (int i = 0; i < 2000; i++)
+            rm.add(TABLE, Util.cellname(toColumn(i)), ByteBuffer.allocate(100), 0);
+        SSTableReader sstable = flush(Collections.singletonList(rm));
+
+        // the column index is read from the primary index, both for entries read from it and for those of the key cache
+        DecoratedKey key = Util.dk("wide");
+        for (int i = 0; i < 2; i++)
+        {
+            RowIndexEntry entry = sstable.getPosition(key, SSTableReader.Operator.EQ);
+            assertTrue(entry.isIndexed());
+            List<IndexHelper.IndexInfo> columnsIndex = sstable.getColumnsIndex(entry);
+            assertTrue(columnsIndex.size() > 10);
+            assertEquals(Util.cellname(toColumn(0)), columnsIndex.get(0).firstName);
+            assertEquals(Util.cellname(toColumn(1999)), columnsIndex.get(columnsIndex.size() - 1).lastName);
+        }
+
+        SortedSet<CellName> names = new TreeSet<>(sstable.metadata.comparator);
+        for (int i : new int[]{ 0, 3, 777, 1500, 1999 })
+            names.add(Util.cellname(toColumn(i)));
+        assertColumns(sstable.iterator(key, names), 0, 3, 777, 1500, 1999);
+
+        ColumnSlice[] slices = new ColumnSlice[]{ new ColumnSlice(Util.cellname(toColumn(500)), Util.cellname(toColumn(503))),
+                                                  new ColumnSlice(Util.cellname(toColumn(1996)), Util.cellname(toColumn(2100))) };
+        assertColumns(sstable.iterator(key, slices, false), 500, 501, 502, 503, 1996, 1997, 1998, 1999);
+
+        ColumnSlice[] reversed = new ColumnSlice[]{ new ColumnSlice(Util.cellname(toColumn(1001)), Util.cellname(toColumn(999))) };
+        assertColumns(sstable.iterator(key, reversed, true), 1001, 1000, 999);
+    }
+
+    private static String toColumn(int column)
+    {
+        return String.format("%05d", column);
+    }
+
+    private static void assertColumns(OnDiskAtomIterator iterator, int... columns) throws IOException
+    {
+        for (int column : columns)
+        {
+            assertTrue(toColumn(column), iterator.hasNext());
+            assertEquals(Util.cellname(toColumn(column)), iterator.next().name());
+        }
+        assertFalse(iterator.hasNext());
+        iterator.close();
+    }
+
+    private static Range<Token> range(int left, int right)
+    {
+        return new Range<Token>(new BytesToken(toKey(left).getBytes()), new BytesToken(toKey(right).getBytes()));
+    }
+
+    private static void assertPositionOf(SSTableReader sstable, int key, RowIndexEntry entry)
+    {
+        if (key >= 200)
+        {
+            assertNull(toKey(key), entry);
+            return;
+        }
+        assertNotNull(toKey(key), entry);
+        assertEquals(entry.position, sstable.getPosition(Util.dk(toKey(key)), SSTableReader.Operator.EQ, false).position);
+    }
+}
@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,9 +34,12 @@ import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.dht.RandomPartitioner;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.util.DataOutputStreamAndChannel;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.EstimatedHistogram;
+import org.apache.cassandra.utils.StreamingHistogram;
 
 import static org.junit.Assert.assertEquals;
 
@@ -63,6 +67,11 @@ public class MetadataSerializerTest
         for (int i : ancestors)
             collector.addAncestor(i);
 
+        StreamingHistogram tombstones = new StreamingHistogram(SSTable.TOMBSTONE_HISTOGRAM_BIN_SIZE);
+        tombstones.update(1000);
+        for (int i = 0; i < 100; i++)
+            collector.updatePartitionTombstones(ByteBufferUtil.bytes(i), 10, maxTimestamp, tombstones);
+
         String partitioner = RandomPartitioner.class.getCanonicalName();
         double bfFpChance = 0.1;
         Map<MetadataType, MetadataComponent> originalMetadata = collector.finalizeMetadata(partitioner, bfFpChance, 0);
@@ -86,4 +95,31 @@ public class MetadataSerializerTest
             }
         }
     }
+
+    @Test
+    public void testTombstoneSegments()
+    {
+        TombstoneMetadata.Collector collector = new TombstoneMetadata.Collector();
+        StreamingHistogram tombstones = new StreamingHistogram(SSTable.TOMBSTONE_HISTOGRAM_BIN_SIZE);
+        tombstones.update(1000);
+        StreamingHistogram noTombstones = new StreamingHistogram(SSTable.TOMBSTONE_HISTOGRAM_BIN_SIZE);
+
+        int partitions = TombstoneMetadata.MAX_SEGMENTS * 4 + 1;
+        for (int i = 0; i < partitions; i++)
+            collector.update(ByteBufferUtil.bytes(i), 2, i, i % 2 == 0 ? tombstones : noTombstones);
+
+        // segments are merged as they fill up, and the partial one at the end is kept
+        List<TombstoneMetadata.Segment> segments = collector.build().segments;
+        assertEquals(TombstoneMetadata.MAX_SEGMENTS / 2 + 1, segments.size());
+        assertEquals(8, segments.get(0).partitions);
+        assertEquals(16, segments.get(0).cells);
+        assertEquals(6, segments.get(0).maxTombstoneTimestamp);
+        assertEquals(4, segments.get(0).tombstoneDropTime.sum(1000), 0);
+        assertEquals(ByteBufferUtil.bytes(7), segments.get(0).lastKey);
+
+        TombstoneMetadata.Segment last = segments.get(segments.size() - 1);
+        assertEquals(1, last.partitions);
+        assertEquals(ByteBufferUtil.bytes(partitions - 1), last.lastKey);
+        assertEquals(2L * partitions, collector.build().getCellCount());
+    }
 }
@@ -25,6 +25,8 @@ import org.apache.cassandra.utils.ByteBufferUtil;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.util.Arrays;
@@ -228,6 +230,85 @@ public class BufferedRandomAccessFileTest
         r.close();
     }
 
+    @Test
+    public void testReadBytesPastBuffer() throws IOException
+    {
+        SequentialWriter w = createTempFile("brafReadBytesPastBuffer");
+
+        byte[] data = new byte[RandomAccessReader.DEFAULT_BUFFER_SIZE * 3];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        w.write(data);
+        w.sync();
+
+        RandomAccessReader r = RandomAccessReader.open(w);
+
+        // a value larger than the buffer, read around it
+        r.seek(10);
+        ByteBuffer content = r.readBytes(RandomAccessReader.DEFAULT_BUFFER_SIZE * 2);
+        assertEquals(0, ByteBufferUtil.compare(content, Arrays.copyOfRange(data, 10, 10 + RandomAccessReader.DEFAULT_BUFFER_SIZE * 2)));
+        assertEquals(10 + RandomAccessReader.DEFAULT_BUFFER_SIZE * 2, r.getFilePointer());
+
+        // and reads after it carry on from where it ended
+        assertEquals(data[10 + RandomAccessReader.DEFAULT_BUFFER_SIZE * 2], (byte) r.read());
+        content = r.readBytes(10);
+        assertEquals(0, ByteBufferUtil.compare(content, Arrays.copyOfRange(data, 11 + RandomAccessReader.DEFAULT_BUFFER_SIZE * 2, 21 + RandomAccessReader.DEFAULT_BUFFER_SIZE * 2)));
+
+        r.seek(5);
+        assertEquals(data[5], (byte) r.read());
+
+        w.close();
+        r.close();
+    }
+
+    @Test
+    public void testReadBytesPastBufferInSlices() throws Exception
+    {
+        SequentialWriter w = createTempFile("brafReadBytesInSlices");
+
+        final byte[] data = new byte[RandomAccessReader.DEFAULT_BUFFER_SIZE * 64 + 123];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        w.write(data);
+        w.sync();
+
+        final RandomAccessReader r = RandomAccessReader.open(w);
+        final BufferPoolMXBean directPool = directBufferPool();
+
+        // read on a new thread, which has no temporary direct buffer cached yet
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        long directGrowth = executor.submit(new Callable<Long>()
+        {
+            public Long call() throws Exception
+            {
+                long used = directPool.getMemoryUsed();
+                ByteBuffer content = r.readBytes(data.length);
+                assertEquals(0, ByteBufferUtil.compare(content, data));
+                return directPool.getMemoryUsed() - used;
+            }
+        }).get();
+        executor.shutdown();
+
+        // the channel read the value through a temporary direct buffer no larger than the reader's buffer
+        assertTrue("direct memory grew by " + directGrowth, directGrowth <= RandomAccessReader.DEFAULT_BUFFER_SIZE);
+        assertEquals(data.length, r.getFilePointer());
+
+        w.close();
+        r.close();
+    }
+
+    private static BufferPoolMXBean directBufferPool()
+    {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+        {
+            if (pool.getName().equals("direct"))
+                return pool;
+        }
+        throw new AssertionError("no direct buffer pool");
+    }
+
     @Test
     public void testSeek() throws Exception
     {
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockedBloomFilterTest
+{
+    private static final double FP_CHANCE = 0.01;
+
+    private final IFilter bf = FilterFactory.getFilter(FilterTestHelper.ELEMENTS, FP_CHANCE, FilterFactory.Type.BLOCKED, true);
+
+    @After
+    public void close()
+    {
+        bf.close();
+    }
+
+    @Test
+    public void testOne()
+    {
+        bf.add(ByteBufferUtil.bytes("a"));
+        assertTrue(bf.isPresent(ByteBufferUtil.bytes("a")));
+        assertFalse(bf.isPresent(ByteBufferUtil.bytes("b")));
+    }
+
+    @Test
+    public void testFilterKey()
+    {
+        IPartitioner partitioner = new Murmur3Partitioner();
+        bf.add(partitioner.decorateKey(ByteBufferUtil.bytes("a")));
+        assertTrue(bf.isPresent(ByteBufferUtil.bytes("a")));
+        assertFalse(bf.isPresent(partitioner.decorateKey(ByteBufferUtil.bytes("b"))));
+    }
+
+    @Test
+    public void testHashesInOneBlock()
+    {
+        BlockedBloomFilter filter = (BlockedBloomFilter) bf;
+        for (int i = 0; i < 100; i++)
+        {
+            filter.clear();
+            filter.add(ByteBufferUtil.bytes(i));
+
+            long block = -1;
+            int set = 0;
+            for (long bit = 0; bit < filter.bitset.capacity(); bit++)
+            {
+                if (!filter.bitset.get(bit))
+                    continue;
+                if (block == -1)
+                    block = bit / BlockedBloomFilter.BLOCK_BITS;
+                assertEquals(block, bit / BlockedBloomFilter.BLOCK_BITS);
+                set++;
+            }
+            assertTrue(set > 0 && set <= filter.hashCount);
+        }
+    }
+
+    @Test
+    public void testFalsePositivesInt()
+    {
+        testFalsePositives(FilterTestHelper.intKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesRandom()
+    {
+        testFalsePositives(FilterTestHelper.randomKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    private void testFalsePositives(ResetableIterator<ByteBuffer> keys, ResetableIterator<ByteBuffer> otherkeys)
+    {
+        while (keys.hasNext())
+            bf.add(keys.next());
+
+        int fp = 0;
+        while (otherkeys.hasNext())
+        {
+            if (bf.isPresent(otherkeys.next()))
+                fp++;
+        }
+        // leave room for the variance of the rate measured over ELEMENTS keys
+        double fpRatio = fp / (keys.size() * FP_CHANCE);
+        assertTrue(String.valueOf(fpRatio), fpRatio < 1.3);
+    }
+
+    @Test
+    public void testSpec()
+    {
+        // blocked filters need more bits per key than plain ones for the same false positive rate, but not many more
+        for (double fpChance : new double[]{ 0.1, 0.01, 0.001, 0.0001 })
+        {
+            BloomCalculations.BloomSpecification blocked = BloomCalculations.computeBlockedBloomSpec(BlockedBloomFilter.BLOCK_BITS,
+                                                                                                     BloomCalculations.maxBlockedBucketsPerElement(FilterTestHelper.ELEMENTS),
+                                                                                                     fpChance);
+            BloomCalculations.BloomSpecification plain = BloomCalculations.computeBloomSpec(BloomCalculations.probs.length - 1, fpChance);
+            assertTrue(blocked.toString(), BloomCalculations.blockedFalsePosProb(BlockedBloomFilter.BLOCK_BITS, blocked.bucketsPerElement, blocked.K) <= fpChance);
+            assertTrue(blocked + " vs " + plain, blocked.bucketsPerElement >= plain.bucketsPerElement);
+            assertTrue(blocked + " vs " + plain, blocked.bucketsPerElement <= plain.bucketsPerElement * 1.5);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTooManyElements()
+    {
+        // the bits needed for that many keys don't fit in a long
+        FilterFactory.getFilter(Long.MAX_VALUE / 4, FP_CHANCE, FilterFactory.Type.BLOCKED, false);
+    }
+
+    @Test
+    public void testSerialize() throws IOException
+    {
+        bf.add(ByteBufferUtil.bytes("a"));
+        DataOutputBuffer out = new DataOutputBuffer();
+        FilterFactory.serialize(bf, out);
+        assertEquals(bf.serializedSize(), out.getLength());
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+        IFilter bf2 = FilterFactory.deserialize(new DataInputStream(in), FilterFactory.Type.BLOCKED, true);
+
+        assertTrue(bf2 instanceof BlockedBloomFilter);
+        assertTrue(bf2.isPresent(ByteBufferUtil.bytes("a")));
+        assertFalse(bf2.isPresent(ByteBufferUtil.bytes("b")));
+        bf2.close();
+    }
+}
@@ -35,6 +35,10 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.PreHashedDecoratedKey;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.DataOutputStreamAndChannel;
 import org.apache.cassandra.io.util.FileUtils;
@@ -90,6 +94,16 @@ public class BloomFilterTest
         assert !bf.isPresent(ByteBufferUtil.bytes("b"));
     }
 
+    @Test
+    public void testFilterKey()
+    {
+        IPartitioner partitioner = new Murmur3Partitioner();
+        bf.add(partitioner.decorateKey(ByteBufferUtil.bytes("a")));
+        assert bf.isPresent(ByteBufferUtil.bytes("a"));
+        assert bf.isPresent(PreHashedDecoratedKey.of(new BufferDecoratedKey(partitioner.getToken(ByteBufferUtil.bytes("a")), ByteBufferUtil.bytes("a"))));
+        assert !bf.isPresent(partitioner.decorateKey(ByteBufferUtil.bytes("b")));
+    }
+
     @Test
     public void testFalsePositivesInt()
     {